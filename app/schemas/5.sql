@@ -0,0 +1,11 @@
+CREATE TABLE Tasks (_id integer primary key not null, name text not null, description text, sortOrder integer);
+CREATE INDEX Tasks_SortOrder_Name on Tasks (sortOrder, name collate nocase);
+CREATE TABLE Timings (_id integer primary key not null, TaskId integer not null, StartTime integer not null, Duration integer not null default 0);
+CREATE TRIGGER Remove_Task after delete on Tasks for each row begin delete from Timings where TaskId = old._id; end;
+CREATE INDEX Timings_TaskId_StartTime on Timings (TaskId, StartTime);
+CREATE TABLE TaskDurations (_id integer primary key not null, TaskId integer not null, StartDate text not null, Duration integer not null default 0, unique (TaskId, StartDate));
+CREATE TRIGGER Timing_Inserted after insert on Timings for each row begin insert or ignore into TaskDurations (TaskId, StartDate) values (new.TaskId, date(new.StartTime, 'unixepoch', 'localtime')); update TaskDurations set Duration = Duration + new.Duration where TaskId = new.TaskId and StartDate = date(new.StartTime, 'unixepoch', 'localtime'); end;
+CREATE TRIGGER Timing_Updated after update of TaskId, StartTime, Duration on Timings for each row begin update TaskDurations set Duration = Duration - old.Duration where TaskId = old.TaskId and StartDate = date(old.StartTime, 'unixepoch', 'localtime'); insert or ignore into TaskDurations (TaskId, StartDate) values (new.TaskId, date(new.StartTime, 'unixepoch', 'localtime')); update TaskDurations set Duration = Duration + new.Duration where TaskId = new.TaskId and StartDate = date(new.StartTime, 'unixepoch', 'localtime'); end;
+CREATE TRIGGER Timing_Deleted after delete on Timings for each row begin update TaskDurations set Duration = Duration - old.Duration where TaskId = old.TaskId and StartDate = date(old.StartTime, 'unixepoch', 'localtime'); end;
+CREATE TRIGGER Remove_Task_Durations after delete on Tasks for each row begin delete from TaskDurations where TaskId = old._id; end;
+CREATE VIEW vwTaskDurations as select TaskDurations._id, TaskDurations.TaskId, Tasks.name as Name, Tasks.description as Description, TaskDurations.StartDate, TaskDurations.Duration from TaskDurations inner join Tasks on TaskDurations.TaskId = Tasks._id;
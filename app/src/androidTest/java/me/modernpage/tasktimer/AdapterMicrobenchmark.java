@@ -0,0 +1,71 @@
+package me.modernpage.tasktimer;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.annotation.UiThreadTest;
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Time and allocations of {@link CursorRecyclerViewAdapter} binding a row and swapping in a changed list,
+ * see {@link BenchmarkScenarios.Adapter}. The same scenarios run on the JVM in MicrobenchmarkTest.
+ *
+ * Timings are reported by androidx.benchmark (logcat tag Benchmark, and build/outputs/connected_android_test_additional_output),
+ * allocations to logcat (tag AdapterMicrobench) and to the instrumentation status.
+ * Benchmarks should run on a release-like build, on a debuggable build or an emulator pass
+ * -Pandroid.testInstrumentationRunnerArguments.androidx.benchmark.suppressErrors=DEBUGGABLE,EMULATOR
+ *
+ * Run with: ./gradlew connectedAndroidTest -Pandroid.testInstrumentationRunnerArguments.class=me.modernpage.tasktimer.AdapterMicrobenchmark
+ */
+@RunWith(AndroidJUnit4.class)
+public class AdapterMicrobenchmark {
+    private static final String TAG = "AdapterMicrobench";
+    private static final int ROWS = 200;
+
+    @Rule
+    public BenchmarkRule mBenchmarkRule = new BenchmarkRule();
+
+    private BenchmarkScenarios.Adapter mScenario;
+
+    @Before
+    @UiThreadTest
+    public void setUp() {
+        // views are created and laid out on the main thread, as in the app
+        mScenario = new BenchmarkScenarios.Adapter(InstrumentationRegistry.getInstrumentation().getTargetContext(), ROWS);
+    }
+
+    @Test
+    @UiThreadTest
+    public void onBindViewHolder() {
+        BenchmarkState state = mBenchmarkRule.getState();
+        while(state.keepRunning()) {
+            mScenario.bindNext();
+        }
+        Allocations.report(TAG, "onBindViewHolder", new Runnable() {
+            @Override
+            public void run() {
+                mScenario.bindNext();
+            }
+        });
+    }
+
+    @Test
+    @UiThreadTest
+    public void swapCursor() {
+        BenchmarkState state = mBenchmarkRule.getState();
+        while(state.keepRunning()) {
+            mScenario.swapNext();
+        }
+        Allocations.report(TAG, "swapCursor", new Runnable() {
+            @Override
+            public void run() {
+                mScenario.swapNext();
+            }
+        });
+    }
+}
@@ -0,0 +1,49 @@
+package me.modernpage.tasktimer;
+
+import android.os.Bundle;
+import android.os.Debug;
+import android.util.Log;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+
+/**
+ * Counts what an operation allocates on the calling thread, for the microbenchmarks.
+ * androidx.benchmark 1.0 only reports time, so the allocations are counted in a separate pass
+ * after the timed one, with the runtime's allocation counters.
+ */
+final class Allocations {
+    private static final int WARMUP_OPS = 100;
+    private static final int MEASURED_OPS = 1000;
+
+    private Allocations() {
+    }
+
+    /**
+     * Runs the operation and reports the objects and bytes it allocates per call to logcat and the instrumentation status
+     */
+    @SuppressWarnings("deprecation")
+    static void report(String tag, String name, Runnable operation) {
+        for(int i = 0; i < WARMUP_OPS; i++) {
+            operation.run();
+        }
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocCount();
+        Debug.resetThreadAllocSize();
+        for(int i = 0; i < MEASURED_OPS; i++) {
+            operation.run();
+        }
+        long count = Debug.getThreadAllocCount();
+        long size = Debug.getThreadAllocSize();
+        Debug.stopAllocCounting();
+
+        double countPerOp = (double) count / MEASURED_OPS;
+        double bytesPerOp = (double) size / MEASURED_OPS;
+        Log.i(tag, name + ": allocations per op=" + String.format("%.1f", countPerOp)
+                + " bytes per op=" + String.format("%.1f", bytesPerOp));
+
+        Bundle results = new Bundle();
+        results.putDouble(name + "_allocations_per_op", countPerOp);
+        results.putDouble(name + "_allocated_bytes_per_op", bytesPerOp);
+        InstrumentationRegistry.getInstrumentation().sendStatus(0, results);
+    }
+}
@@ -0,0 +1,158 @@
+package me.modernpage.tasktimer;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Bundle;
+import android.util.Log;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures how long a task list query takes while another thread keeps committing timings,
+ * once with the rollback journal SQLiteOpenHelper uses by default and once with {@link AppDatabase#DEFAULT_PROFILE}.
+ *
+ * With the rollback journal the reader has to wait for every write transaction to finish,
+ * with write-ahead logging it reads the last committed state while the writer carries on.
+ * Results go to logcat (tag ConcurrentReadWriteBench) and to the instrumentation status.
+ *
+ * Run with: ./gradlew connectedAndroidTest -Pandroid.testInstrumentationRunnerArguments.class=me.modernpage.tasktimer.ConcurrentReadWriteBenchmark
+ */
+@RunWith(AndroidJUnit4.class)
+public class ConcurrentReadWriteBenchmark {
+    private static final String TAG = "ConcurrentReadWriteBench";
+
+    private static final int TASK_COUNT = 2000;
+    private static final int TIMINGS_PER_COMMIT = 20;
+    private static final int WARMUP_READS = 20;
+    private static final int MEASURED_READS = 200;
+
+    private static final String[] LIST_PROJECTION = {TasksContract.Columns._ID,
+            TasksContract.Columns.TASKS_NAME,
+            TasksContract.Columns.TASKS_DESCRIPTION,
+            TasksContract.Columns.TASKS_SORTORDER};
+
+    @Test
+    public void rollbackJournal() throws Exception {
+        run("journal_bench.db", AppDatabase.ROLLBACK_JOURNAL_PROFILE);
+    }
+
+    @Test
+    public void writeAheadLogging() throws Exception {
+        run("wal_bench.db", AppDatabase.DEFAULT_PROFILE);
+    }
+
+    private void run(String databaseName, AppDatabase.PragmaProfile profile) throws InterruptedException {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(databaseName);
+        AppDatabase appDatabase = new AppDatabase(context, databaseName, profile);
+        try {
+            final SQLiteDatabase db = appDatabase.getWritableDatabase();
+            seedTasks(db);
+
+            final AtomicBoolean stop = new AtomicBoolean(false);
+            final AtomicInteger commits = new AtomicInteger();
+            Thread writer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    ContentValues values = new ContentValues();
+                    long now = System.currentTimeMillis() / 1000;
+                    while(!stop.get()) {
+                        db.beginTransaction();
+                        try {
+                            for(int i = 0; i < TIMINGS_PER_COMMIT; i++) {
+                                values.put(TimingsContract.Columns.TIMINGS_TASK_ID, 1 + (i % TASK_COUNT));
+                                values.put(TimingsContract.Columns.TIMINGS_START_TIME, now++);
+                                values.put(TimingsContract.Columns.TIMINGS_DURATION, 60);
+                                db.insert(TimingsContract.TABLE_NAME, null, values);
+                            }
+                            db.setTransactionSuccessful();
+                        } finally {
+                            db.endTransaction();
+                        }
+                        commits.incrementAndGet();
+                    }
+                }
+            }, "bench-writer");
+
+            writer.start();
+            for(int i = 0; i < WARMUP_READS; i++) {
+                readTaskList(db);
+            }
+            long[] latencies = new long[MEASURED_READS];
+            long start = System.nanoTime();
+            for(int i = 0; i < MEASURED_READS; i++) {
+                latencies[i] = readTaskList(db);
+            }
+            long elapsed = System.nanoTime() - start;
+            stop.set(true);
+            writer.join();
+
+            report(databaseName, profile, latencies, commits.get(), elapsed);
+        } finally {
+            appDatabase.close();
+            context.deleteDatabase(databaseName);
+        }
+    }
+
+    private static void seedTasks(SQLiteDatabase db) {
+        ContentValues values = new ContentValues();
+        db.beginTransaction();
+        try {
+            for(int i = 0; i < TASK_COUNT; i++) {
+                values.put(TasksContract.Columns.TASKS_NAME, "Task " + i);
+                values.put(TasksContract.Columns.TASKS_DESCRIPTION, "Description of task " + i);
+                values.put(TasksContract.Columns.TASKS_SORTORDER, i % 10);
+                db.insert(TasksContract.TABLE_NAME, null, values);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * @return nanoseconds to run the list query and read all of its rows
+     */
+    private static long readTaskList(SQLiteDatabase db) {
+        long start = System.nanoTime();
+        Cursor cursor = db.query(TasksContract.TABLE_NAME, LIST_PROJECTION, null, null, null, null,
+                TasksContract.DEFAULT_SORT_ORDER);
+        try {
+            cursor.moveToLast();
+        } finally {
+            cursor.close();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static void report(String name, AppDatabase.PragmaProfile profile, long[] latencies, int commits, long elapsedNanos) {
+        Arrays.sort(latencies);
+        long p50 = latencies[latencies.length / 2] / 1000;
+        long p90 = latencies[latencies.length * 9 / 10] / 1000;
+        long p99 = latencies[latencies.length * 99 / 100] / 1000;
+        long max = latencies[latencies.length - 1] / 1000;
+        double commitsPerSecond = commits / (elapsedNanos / 1e9);
+
+        Log.i(TAG, name + " " + profile);
+        Log.i(TAG, name + ": read latency us p50=" + p50 + " p90=" + p90 + " p99=" + p99 + " max=" + max
+                + ", writer commits/s=" + String.format("%.1f", commitsPerSecond));
+
+        Bundle results = new Bundle();
+        results.putLong(name + "_read_p50_us", p50);
+        results.putLong(name + "_read_p90_us", p90);
+        results.putLong(name + "_read_p99_us", p99);
+        results.putLong(name + "_read_max_us", max);
+        results.putDouble(name + "_commits_per_s", commitsPerSecond);
+        InstrumentationRegistry.getInstrumentation().sendStatus(0, results);
+    }
+}
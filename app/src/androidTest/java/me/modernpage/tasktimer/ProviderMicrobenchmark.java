@@ -0,0 +1,99 @@
+package me.modernpage.tasktimer;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Time and allocations of round trips through {@link AppProvider} via the ContentResolver,
+ * see {@link BenchmarkScenarios.Provider}. The same scenarios run on the JVM in MicrobenchmarkTest.
+ *
+ * The benchmark works on the app's own database, on tasks of its own that it deletes again.
+ * Results are reported as in {@link AdapterMicrobenchmark}, allocations under the logcat tag ProviderMicrobench.
+ *
+ * Run with: ./gradlew connectedAndroidTest -Pandroid.testInstrumentationRunnerArguments.class=me.modernpage.tasktimer.ProviderMicrobenchmark
+ */
+@RunWith(AndroidJUnit4.class)
+public class ProviderMicrobenchmark {
+    private static final String TAG = "ProviderMicrobench";
+    private static final int TASKS = 200;
+
+    @Rule
+    public BenchmarkRule mBenchmarkRule = new BenchmarkRule();
+
+    private BenchmarkScenarios.Provider mScenario;
+
+    @Before
+    public void setUp() {
+        mScenario = new BenchmarkScenarios.Provider(
+                InstrumentationRegistry.getInstrumentation().getTargetContext().getContentResolver(), TASKS);
+    }
+
+    @After
+    public void tearDown() {
+        mScenario.close();
+    }
+
+    @Test
+    public void queryTaskList() {
+        BenchmarkState state = mBenchmarkRule.getState();
+        while(state.keepRunning()) {
+            mScenario.queryTaskList();
+        }
+        Allocations.report(TAG, "queryTaskList", new Runnable() {
+            @Override
+            public void run() {
+                mScenario.queryTaskList();
+            }
+        });
+    }
+
+    @Test
+    public void queryTask() {
+        BenchmarkState state = mBenchmarkRule.getState();
+        while(state.keepRunning()) {
+            mScenario.queryTask();
+        }
+        Allocations.report(TAG, "queryTask", new Runnable() {
+            @Override
+            public void run() {
+                mScenario.queryTask();
+            }
+        });
+    }
+
+    @Test
+    public void insertTiming() {
+        BenchmarkState state = mBenchmarkRule.getState();
+        while(state.keepRunning()) {
+            mScenario.insertTiming();
+        }
+        Allocations.report(TAG, "insertTiming", new Runnable() {
+            @Override
+            public void run() {
+                mScenario.insertTiming();
+            }
+        });
+    }
+
+    @Test
+    public void updateTask() {
+        BenchmarkState state = mBenchmarkRule.getState();
+        while(state.keepRunning()) {
+            mScenario.updateTask();
+        }
+        Allocations.report(TAG, "updateTask", new Runnable() {
+            @Override
+            public void run() {
+                mScenario.updateTask();
+            }
+        });
+    }
+}
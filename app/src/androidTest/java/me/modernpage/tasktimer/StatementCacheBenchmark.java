@@ -0,0 +1,189 @@
+package me.modernpage.tasktimer;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Bundle;
+import android.util.Log;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Per-operation cost of the provider's hot writes through SQLiteDatabase.insert/update/delete
+ * compared with the precompiled statements in {@link StatementCache}.
+ *
+ * Every operation runs inside one transaction, so the numbers are the cost of building,
+ * preparing and binding the statement rather than of committing it.
+ * Results go to logcat (tag StatementCacheBench) and to the instrumentation status.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StatementCacheBenchmark {
+    private static final String TAG = "StatementCacheBench";
+    private static final String DATABASE_NAME = "statement_bench.db";
+
+    private static final int WARMUP_OPS = 500;
+    private static final int MEASURED_OPS = 5000;
+
+    private Context mContext;
+    private AppDatabase mAppDatabase;
+    private SQLiteDatabase mDatabase;
+    private StatementCache mStatementCache;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        mContext.deleteDatabase(DATABASE_NAME);
+        mAppDatabase = new AppDatabase(mContext, DATABASE_NAME, AppDatabase.DEFAULT_PROFILE);
+        mDatabase = mAppDatabase.getWritableDatabase();
+        mStatementCache = new StatementCache(mDatabase);
+    }
+
+    @After
+    public void tearDown() {
+        mStatementCache.close();
+        mAppDatabase.close();
+        mContext.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void insertTask() {
+        ContentValues values = taskValues();
+        long plain = measure(new Op() {
+            @Override
+            public void run(int i, ContentValues values) {
+                mDatabase.insert(TasksContract.TABLE_NAME, null, values);
+            }
+        }, values);
+        long cached = measure(new Op() {
+            @Override
+            public void run(int i, ContentValues values) {
+                mStatementCache.insert(TasksContract.TABLE_NAME, values);
+            }
+        }, values);
+        report("insertTask", plain, cached);
+    }
+
+    @Test
+    public void updateTaskById() {
+        seedTasks(WARMUP_OPS + MEASURED_OPS);
+        ContentValues values = new ContentValues();
+        values.put(TasksContract.Columns.TASKS_SORTORDER, 7);
+        long plain = measure(new Op() {
+            @Override
+            public void run(int i, ContentValues values) {
+                // the way AppProvider built it before: the id concatenated into the where clause
+                mDatabase.update(TasksContract.TABLE_NAME, values, TasksContract.Columns._ID + " = " + (i + 1), null);
+            }
+        }, values);
+        long cached = measure(new Op() {
+            @Override
+            public void run(int i, ContentValues values) {
+                mStatementCache.updateById(TasksContract.TABLE_NAME, TasksContract.Columns._ID, i + 1, values);
+            }
+        }, values);
+        report("updateTaskById", plain, cached);
+    }
+
+    @Test
+    public void deleteTaskById() {
+        final int count = WARMUP_OPS + MEASURED_OPS;
+        seedTasks(count * 2);
+        long plain = measure(new Op() {
+            @Override
+            public void run(int i, ContentValues values) {
+                mDatabase.delete(TasksContract.TABLE_NAME, TasksContract.Columns._ID + " = " + (i + 1), null);
+            }
+        }, null);
+        long cached = measure(new Op() {
+            @Override
+            public void run(int i, ContentValues values) {
+                mStatementCache.deleteById(TasksContract.TABLE_NAME, TasksContract.Columns._ID, count + i + 1);
+            }
+        }, null);
+        report("deleteTaskById", plain, cached);
+    }
+
+    @Test
+    public void insertTiming() {
+        ContentValues values = new ContentValues();
+        values.put(TimingsContract.Columns.TIMINGS_TASK_ID, 1);
+        values.put(TimingsContract.Columns.TIMINGS_START_TIME, System.currentTimeMillis() / 1000);
+        values.put(TimingsContract.Columns.TIMINGS_DURATION, 60);
+        long plain = measure(new Op() {
+            @Override
+            public void run(int i, ContentValues values) {
+                mDatabase.insert(TimingsContract.TABLE_NAME, null, values);
+            }
+        }, values);
+        long cached = measure(new Op() {
+            @Override
+            public void run(int i, ContentValues values) {
+                mStatementCache.insert(TimingsContract.TABLE_NAME, values);
+            }
+        }, values);
+        report("insertTiming", plain, cached);
+    }
+
+    private interface Op {
+        void run(int i, ContentValues values);
+    }
+
+    /**
+     * @return average nanoseconds per operation, after a warm up
+     */
+    private long measure(Op op, ContentValues values) {
+        mDatabase.beginTransaction();
+        try {
+            for(int i = 0; i < WARMUP_OPS; i++) {
+                op.run(i, values);
+            }
+            long start = System.nanoTime();
+            for(int i = WARMUP_OPS; i < WARMUP_OPS + MEASURED_OPS; i++) {
+                op.run(i, values);
+            }
+            long elapsed = System.nanoTime() - start;
+            mDatabase.setTransactionSuccessful();
+            return elapsed / MEASURED_OPS;
+        } finally {
+            mDatabase.endTransaction();
+        }
+    }
+
+    private void seedTasks(int count) {
+        ContentValues values = taskValues();
+        mDatabase.beginTransaction();
+        try {
+            for(int i = 0; i < count; i++) {
+                mDatabase.insert(TasksContract.TABLE_NAME, null, values);
+            }
+            mDatabase.setTransactionSuccessful();
+        } finally {
+            mDatabase.endTransaction();
+        }
+    }
+
+    private static ContentValues taskValues() {
+        ContentValues values = new ContentValues();
+        values.put(TasksContract.Columns.TASKS_NAME, "Benchmark task");
+        values.put(TasksContract.Columns.TASKS_DESCRIPTION, "Task used by the statement cache benchmark");
+        values.put(TasksContract.Columns.TASKS_SORTORDER, 1);
+        return values;
+    }
+
+    private static void report(String name, long plainNanos, long cachedNanos) {
+        Log.i(TAG, name + ": SQLiteDatabase " + plainNanos + " ns/op, StatementCache " + cachedNanos + " ns/op");
+        Bundle results = new Bundle();
+        results.putLong(name + "_plain_ns", plainNanos);
+        results.putLong(name + "_cached_ns", cachedNanos);
+        InstrumentationRegistry.getInstrumentation().sendStatus(0, results);
+        assertTrue(name + " got slower with the statement cache", cachedNanos <= plainNanos);
+    }
+}
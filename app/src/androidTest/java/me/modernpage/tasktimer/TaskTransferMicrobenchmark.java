@@ -0,0 +1,69 @@
+package me.modernpage.tasktimer;
+
+import android.os.Bundle;
+import android.util.Log;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Time, allocations and Bundle size of handing a task to the edit screen as a Parcelable Task and,
+ * for comparison, as the Serializable it used to be, see {@link BenchmarkScenarios.Transfer}.
+ * The same scenarios run on the JVM in MicrobenchmarkTest.
+ *
+ * Results are reported as in {@link AdapterMicrobenchmark}, allocations and sizes under the logcat tag TaskTransferMicrobench.
+ *
+ * Run with: ./gradlew connectedAndroidTest -Pandroid.testInstrumentationRunnerArguments.class=me.modernpage.tasktimer.TaskTransferMicrobenchmark
+ */
+@RunWith(AndroidJUnit4.class)
+public class TaskTransferMicrobenchmark {
+    private static final String TAG = "TaskTransferMicrobench";
+
+    @Rule
+    public BenchmarkRule mBenchmarkRule = new BenchmarkRule();
+
+    private final BenchmarkScenarios.Transfer mScenario = new BenchmarkScenarios.Transfer();
+
+    @Test
+    public void parcelable() {
+        BenchmarkState state = mBenchmarkRule.getState();
+        while(state.keepRunning()) {
+            mScenario.parcelable();
+        }
+        Allocations.report(TAG, "parcelable", new Runnable() {
+            @Override
+            public void run() {
+                mScenario.parcelable();
+            }
+        });
+        reportSize("parcelable", mScenario.parcelableSize());
+    }
+
+    @Test
+    public void serializable() {
+        BenchmarkState state = mBenchmarkRule.getState();
+        while(state.keepRunning()) {
+            mScenario.serializable();
+        }
+        Allocations.report(TAG, "serializable", new Runnable() {
+            @Override
+            public void run() {
+                mScenario.serializable();
+            }
+        });
+        reportSize("serializable", mScenario.serializableSize());
+    }
+
+    private static void reportSize(String name, int bytes) {
+        Log.i(TAG, name + ": bundle bytes=" + bytes);
+        Bundle results = new Bundle();
+        results.putInt(name + "_bundle_bytes", bytes);
+        InstrumentationRegistry.getInstrumentation().sendStatus(0, results);
+    }
+}
@@ -83,12 +83,12 @@ public class AddEditActivityFragment extends Fragment {
         if(arguments != null) {
             Log.d(TAG, "onCreateView: retrieving task details ");
 
-            task = (Task) arguments.getSerializable(Task.class.getSimpleName());
+            task = arguments.getParcelable(Task.class.getSimpleName());
             if(task != null) {
                 Log.d(TAG, "onCreateView: task details found, editing...");
                 mNameTextView.setText(task.getName());
                 mDescriptionTextView.setText(task.getDescription());
-                mSortOrderTextView.setText(Integer.toString(task.getSortOrder()));
+                mSortOrderTextView.setText(task.getSortOrder() != null ? Long.toString(task.getSortOrder()) : "");
                 mMode = FragmentEditMode.EDIT;
             } else {
                 // no task found, so we must be adding a new task, and not editing an existing one
@@ -105,9 +105,9 @@ public class AddEditActivityFragment extends Fragment {
             public void onClick(View view) {
                 // Update the database if at least one field has changed
                 // ~ There's no need to hit the database unless there is a change
-                int so;
+                long so;
                 if(mSortOrderTextView.length() > 0)
-                    so = Integer.parseInt(mSortOrderTextView.getText().toString());
+                    so = Long.parseLong(mSortOrderTextView.getText().toString());
                 else
                     so = 0;
 
@@ -122,13 +122,14 @@ public class AddEditActivityFragment extends Fragment {
                         if(!mDescriptionTextView.getText().toString().equals(task.getDescription()))
                             values.put(TasksContract.Columns.TASKS_DESCRIPTION, mDescriptionTextView.getText().toString());
 
-                        if(so != task.getSortOrder())
-                            values.put(TasksContract.Columns.TASKS_SORTORDER, mSortOrderTextView.getText().toString());
+                        // a task without a sortOrder keeps it that way if the field is left empty
+                        Long sortOrder = task.getSortOrder();
+                        if(sortOrder == null ? mSortOrderTextView.length() > 0 : so != sortOrder)
+                            values.put(TasksContract.Columns.TASKS_SORTORDER, so);
 
                         if(values.size() != 0) {
                             Log.d(TAG, "onClick: updating task");
-                            contentResolver.update(TasksContract.CONTENT_URI, values,TasksContract.Columns._ID + " = ?",
-                                    new String[]{String.valueOf(task.getId())});
+                            contentResolver.update(TasksContract.buildTaskUri(task.getId()), values, null, null);
                         }
                         break;
                     case ADD:
@@ -1,31 +1,104 @@
 package me.modernpage.tasktimer;
 
 import android.content.Context;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.util.Log;
 
+import androidx.annotation.VisibleForTesting;
+
 /**
  * A helper class to manage database creation and version management.
  * The only class that should use this is {@link AppProvider}.
  *
  * This class makes it easy for ContentProvider implementations to defer opening and upgrading the database until first use,
  * to avoid blocking application startup with long-running database upgrades.
+ *
+ * The schema a new database gets is exported to app/schemas (see AppDatabaseSchemaTest) for the benchmarks
+ * in :persistence-benchmark, bump {@link #DATABASE_VERSION} and the file is exported again.
  */
 public class AppDatabase extends SQLiteOpenHelper {
 
     private static final String TAG = "AppDatabase";
 
     public static final String DATABASE_NAME = "TaskTimer.db";
-    public static final int DATABASE_VERSION = 1;
+    public static final int DATABASE_VERSION = 8;
 
     // Implement AppDatabase as a Singleton
 
     private static AppDatabase instance = null;
 
+    /**
+     * Connection settings applied in {@link #onConfigure(SQLiteDatabase)}.
+     *
+     * SQLite pragmas are per connection and SQLiteOpenHelper only lets us configure the primary (writing) connection,
+     * the extra read connections that write-ahead logging opens keep SQLite's defaults for cache_size, temp_store and mmap_size.
+     */
+    static final class PragmaProfile {
+        final boolean mWriteAheadLogging;
+        final String mSynchronous;      // OFF, NORMAL or FULL
+        final int mCacheSizeKiB;
+        final String mTempStore;        // DEFAULT, FILE or MEMORY
+        final long mMmapSize;           // bytes, 0 disables memory mapped I/O
+
+        PragmaProfile(boolean writeAheadLogging, String synchronous, int cacheSizeKiB, String tempStore, long mmapSize) {
+            mWriteAheadLogging = writeAheadLogging;
+            mSynchronous = synchronous;
+            mCacheSizeKiB = cacheSizeKiB;
+            mTempStore = tempStore;
+            mMmapSize = mmapSize;
+        }
+
+        @Override
+        public String toString() {
+            return "PragmaProfile{" +
+                    "mWriteAheadLogging=" + mWriteAheadLogging +
+                    ", mSynchronous='" + mSynchronous + '\'' +
+                    ", mCacheSizeKiB=" + mCacheSizeKiB +
+                    ", mTempStore='" + mTempStore + '\'' +
+                    ", mMmapSize=" + mMmapSize +
+                    '}';
+        }
+    }
+
+    /**
+     * Readers (the task list loader) keep running while a write commits, and with WAL, synchronous=NORMAL
+     * can only lose the last commits on a power failure, never corrupt the database.
+     */
+    static final PragmaProfile DEFAULT_PROFILE = new PragmaProfile(true, "NORMAL", 2048, "MEMORY", 8 * 1024 * 1024);
+
+    /**
+     * The settings SQLiteOpenHelper uses when nothing is configured: rollback journal, every reader waits for the writer.
+     */
+    static final PragmaProfile ROLLBACK_JOURNAL_PROFILE = new PragmaProfile(false, "FULL", 2000, "DEFAULT", 0);
+
+    private static PragmaProfile sPragmaProfile = DEFAULT_PROFILE;
+
+    private final PragmaProfile mPragmaProfile;
+
     private AppDatabase(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
-        Log.d(TAG, "AppDatabase: constructor");
+        this(context, DATABASE_NAME, sPragmaProfile);
+    }
+
+    @VisibleForTesting
+    AppDatabase(Context context, String name, PragmaProfile pragmaProfile) {
+        super(context, name, null, DATABASE_VERSION);
+        Log.d(TAG, "AppDatabase: constructor, " + pragmaProfile);
+        mPragmaProfile = pragmaProfile;
+    }
+
+    /**
+     * Sets the connection settings for the app's database, must be called before the database is first used.
+     */
+    static void setPragmaProfile(PragmaProfile pragmaProfile) {
+        synchronized (AppDatabase.class) {
+            if(instance != null) {
+                throw new IllegalStateException("setPragmaProfile() called after the database was created");
+            }
+            sPragmaProfile = pragmaProfile;
+        }
     }
 
     /**
@@ -34,7 +107,7 @@ public class AppDatabase extends SQLiteOpenHelper {
      * @return
      */
     static AppDatabase getInstance(Context context) {
-        Log.d(TAG, "getInstance: starts");
+        if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "getInstance: starts");
         if(instance == null) {
             synchronized (AppDatabase.class) {
                 if(instance == null) {
@@ -43,10 +116,40 @@ public class AppDatabase extends SQLiteOpenHelper {
                 }
             }
         }
-        Log.d(TAG, "getInstance: ends");
+        if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "getInstance: ends");
         return instance;
     }
 
+    /**
+     * Called when the connection is opened, before onCreate/onUpgrade.
+     * Pragmas without a result row go through execSQL, which always runs on the primary connection.
+     */
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "onConfigure: starts");
+        super.onConfigure(db);
+
+        // enabling or disabling WAL resets the synchronous mode, so it has to come first
+        if(mPragmaProfile.mWriteAheadLogging) {
+            db.enableWriteAheadLogging();
+        } else {
+            db.disableWriteAheadLogging();
+        }
+        db.execSQL("PRAGMA synchronous = " + mPragmaProfile.mSynchronous);
+        // a negative cache_size is in KiB rather than pages
+        db.execSQL("PRAGMA cache_size = -" + mPragmaProfile.mCacheSizeKiB);
+        db.execSQL("PRAGMA temp_store = " + mPragmaProfile.mTempStore);
+        // mmap_size returns the size actually granted, so it needs a query
+        try {
+            long mmapSize = DatabaseUtils.longForQuery(db, "PRAGMA mmap_size = " + mPragmaProfile.mMmapSize, null);
+            if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "onConfigure: mmap_size is " + mmapSize);
+        } catch (SQLiteDoneException e) {
+            // SQLite was built without memory mapped I/O, nothing to configure
+            if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "onConfigure: mmap_size not supported");
+        }
+        if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "onConfigure: ends");
+    }
+
     @Override
     public void onCreate(SQLiteDatabase sqLiteDatabase) {
         Log.d(TAG, "onCreate: starts");
@@ -61,6 +164,13 @@ public class AppDatabase extends SQLiteOpenHelper {
         Log.d(TAG, "onCreate: sSQL: " + sSQL);
 
         sqLiteDatabase.execSQL(sSQL);
+
+        addTasksSortIndex(sqLiteDatabase);
+        addTimingsTable(sqLiteDatabase);
+        addTimingsRangeIndexes(sqLiteDatabase);
+        addDurationsSummary(sqLiteDatabase);
+        addTasksSearch(sqLiteDatabase);
+        addTasksNameIndex(sqLiteDatabase);
         Log.d(TAG, "onCreate: ends");
     }
 
@@ -71,6 +181,33 @@ public class AppDatabase extends SQLiteOpenHelper {
         switch (oldVersion) {
             case 1:
                 // upgrade logic from version 1
+                addTimingsTable(sqLiteDatabase);
+                // fall through
+            case 2:
+                // upgrade logic from version 2
+                addDurationsSummary(sqLiteDatabase);
+                backfillDurationsSummary(sqLiteDatabase);
+                // fall through
+            case 3:
+                // upgrade logic from version 3
+                addTasksSortIndex(sqLiteDatabase);
+                // fall through
+            case 4:
+                // upgrade logic from version 4: nothing, the Timings_TaskId_StartTime index version 5 added
+                // is dropped again by version 6, the range indexes below cover its searches
+                // fall through
+            case 5:
+                // upgrade logic from version 5
+                addTimingsRangeIndexes(sqLiteDatabase);
+                // fall through
+            case 6:
+                // upgrade logic from version 6
+                addTasksSearch(sqLiteDatabase);
+                rebuildTasksSearch(sqLiteDatabase);
+                // fall through
+            case 7:
+                // upgrade logic from version 7
+                addTasksNameIndex(sqLiteDatabase);
                 break;
             default:
                 throw new IllegalStateException("onUpgrade() with unknown newVersion: " + newVersion);
@@ -78,9 +215,270 @@ public class AppDatabase extends SQLiteOpenHelper {
         Log.d(TAG, "onUpgrade: ends");
     }
 
+    /**
+     * The task list is ordered by {@link TasksContract#DEFAULT_SORT_ORDER}, this index matches that order
+     * column for column (including the NOCASE collation on the name), so the list is read in index order
+     * instead of scanning the table and sorting it in a temporary b-tree on every load.
+     */
+    private void addTasksSortIndex(SQLiteDatabase sqLiteDatabase) {
+        String sSQL = "create index " + TasksContract.TABLE_NAME + "_SortOrder_Name on " + TasksContract.TABLE_NAME + " ("
+                + TasksContract.Columns.TASKS_SORTORDER + ", "
+                + TasksContract.Columns.TASKS_NAME + " collate nocase);";
+        if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "addTasksSortIndex: sSQL: " + sSQL);
+        sqLiteDatabase.execSQL(sSQL);
+    }
+
+    /**
+     * An import finds the task a row of the export updates by its name, one search of this index per row
+     * instead of a scan of Tasks (see AppProvider#upsertTask). Exact match, the name's own collation.
+     */
+    private void addTasksNameIndex(SQLiteDatabase sqLiteDatabase) {
+        String sSQL = "create index " + TasksContract.TABLE_NAME + "_Name on " + TasksContract.TABLE_NAME + " ("
+                + TasksContract.Columns.TASKS_NAME + ");";
+        if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "addTasksNameIndex: sSQL: " + sSQL);
+        sqLiteDatabase.execSQL(sSQL);
+    }
+
+    /**
+     * Timings only ever get rows appended, so the table only has the two indexes added by
+     * {@link #addTimingsRangeIndexes(SQLiteDatabase)}, the ones the time range queries need.
+     * The trigger removes the timings of a task when the task itself is deleted.
+     */
+    private void addTimingsTable(SQLiteDatabase sqLiteDatabase) {
+        String sSQL;
+
+        sSQL = "create table " + TimingsContract.TABLE_NAME + " ("
+                + TimingsContract.Columns._ID + " integer primary key not null, "
+                + TimingsContract.Columns.TIMINGS_TASK_ID + " integer not null, "
+                + TimingsContract.Columns.TIMINGS_START_TIME + " integer not null, "
+                + TimingsContract.Columns.TIMINGS_DURATION + " integer not null default 0);";
+        if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "addTimingsTable: sSQL: " + sSQL);
+        sqLiteDatabase.execSQL(sSQL);
+
+        sSQL = "create trigger Remove_Task after delete on " + TasksContract.TABLE_NAME
+                + " for each row begin"
+                + " delete from " + TimingsContract.TABLE_NAME
+                + " where " + TimingsContract.Columns.TIMINGS_TASK_ID + " = old." + TasksContract.Columns._ID + ";"
+                + " end;";
+        if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "addTimingsTable: sSQL: " + sSQL);
+        sqLiteDatabase.execSQL(sSQL);
+    }
+
+    /**
+     * Covering indexes for the time range queries (see {@link TimingsContract#buildRangeUri(long, long)}):
+     * every column of Timings is in both (the _id is part of every index), so a range is read from one index
+     * without looking up any row. StartTime first for all the timings in a range, TaskId first for one task's,
+     * which also finds the timing a task started at a given time, how the running timer is reconciled with Timings
+     * on startup (see {@link TimerJournal}), and a task's timings for the Remove_Task trigger. Databases that
+     * version 5 gave a Timings_TaskId_StartTime index for those lose it here.
+     * Each insert now writes two index entries, still only the one row.
+     */
+    private void addTimingsRangeIndexes(SQLiteDatabase sqLiteDatabase) {
+        String sSQL = "drop index if exists " + TimingsContract.TABLE_NAME + "_TaskId_StartTime;";
+        if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "addTimingsRangeIndexes: sSQL: " + sSQL);
+        sqLiteDatabase.execSQL(sSQL);
+
+        sSQL = "create index " + TimingsContract.TABLE_NAME + "_StartTime_TaskId_Duration on " + TimingsContract.TABLE_NAME + " ("
+                + TimingsContract.Columns.TIMINGS_START_TIME + ", "
+                + TimingsContract.Columns.TIMINGS_TASK_ID + ", "
+                + TimingsContract.Columns.TIMINGS_DURATION + ");";
+        if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "addTimingsRangeIndexes: sSQL: " + sSQL);
+        sqLiteDatabase.execSQL(sSQL);
+
+        sSQL = "create index " + TimingsContract.TABLE_NAME + "_TaskId_StartTime_Duration on " + TimingsContract.TABLE_NAME + " ("
+                + TimingsContract.Columns.TIMINGS_TASK_ID + ", "
+                + TimingsContract.Columns.TIMINGS_START_TIME + ", "
+                + TimingsContract.Columns.TIMINGS_DURATION + ");";
+        if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "addTimingsRangeIndexes: sSQL: " + sSQL);
+        sqLiteDatabase.execSQL(sSQL);
+    }
+
+    /**
+     * The durations report is served from a summary table holding the total duration per task and day.
+     * Triggers on Timings apply each insert, update and delete to the matching summary row, so the cost of
+     * maintaining the report is a couple of indexed writes per timing and the report never scans Timings.
+     */
+    private void addDurationsSummary(SQLiteDatabase sqLiteDatabase) {
+        String sSQL;
+
+        sSQL = "create table " + DurationsContract.SUMMARY_TABLE_NAME + " ("
+                + DurationsContract.Columns._ID + " integer primary key not null, "
+                + DurationsContract.Columns.DURATIONS_TASK_ID + " integer not null, "
+                + DurationsContract.Columns.DURATIONS_START_DATE + " text not null, "
+                + DurationsContract.Columns.DURATIONS_DURATION + " integer not null default 0, "
+                + "unique (" + DurationsContract.Columns.DURATIONS_TASK_ID + ", "
+                + DurationsContract.Columns.DURATIONS_START_DATE + "));";
+        if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "addDurationsSummary: sSQL: " + sSQL);
+        sqLiteDatabase.execSQL(sSQL);
+
+        sSQL = "create trigger Timing_Inserted after insert on " + TimingsContract.TABLE_NAME
+                + " for each row begin"
+                + addToSummary("new")
+                + " end;";
+        if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "addDurationsSummary: sSQL: " + sSQL);
+        sqLiteDatabase.execSQL(sSQL);
+
+        sSQL = "create trigger Timing_Updated after update of "
+                + TimingsContract.Columns.TIMINGS_TASK_ID + ", "
+                + TimingsContract.Columns.TIMINGS_START_TIME + ", "
+                + TimingsContract.Columns.TIMINGS_DURATION
+                + " on " + TimingsContract.TABLE_NAME
+                + " for each row begin"
+                + subtractFromSummary("old")
+                + addToSummary("new")
+                + " end;";
+        if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "addDurationsSummary: sSQL: " + sSQL);
+        sqLiteDatabase.execSQL(sSQL);
+
+        sSQL = "create trigger Timing_Deleted after delete on " + TimingsContract.TABLE_NAME
+                + " for each row begin"
+                + subtractFromSummary("old")
+                + " end;";
+        if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "addDurationsSummary: sSQL: " + sSQL);
+        sqLiteDatabase.execSQL(sSQL);
+
+        sSQL = "create trigger Remove_Task_Durations after delete on " + TasksContract.TABLE_NAME
+                + " for each row begin"
+                + " delete from " + DurationsContract.SUMMARY_TABLE_NAME
+                + " where " + DurationsContract.Columns.DURATIONS_TASK_ID + " = old." + TasksContract.Columns._ID + ";"
+                + " end;";
+        if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "addDurationsSummary: sSQL: " + sSQL);
+        sqLiteDatabase.execSQL(sSQL);
+
+        sSQL = "create view " + DurationsContract.TABLE_NAME + " as select "
+                + DurationsContract.SUMMARY_TABLE_NAME + "." + DurationsContract.Columns._ID + ", "
+                + DurationsContract.SUMMARY_TABLE_NAME + "." + DurationsContract.Columns.DURATIONS_TASK_ID + ", "
+                + TasksContract.TABLE_NAME + "." + TasksContract.Columns.TASKS_NAME
+                + " as " + DurationsContract.Columns.DURATIONS_NAME + ", "
+                + TasksContract.TABLE_NAME + "." + TasksContract.Columns.TASKS_DESCRIPTION
+                + " as " + DurationsContract.Columns.DURATIONS_DESCRIPTION + ", "
+                + DurationsContract.SUMMARY_TABLE_NAME + "." + DurationsContract.Columns.DURATIONS_START_DATE + ", "
+                + DurationsContract.SUMMARY_TABLE_NAME + "." + DurationsContract.Columns.DURATIONS_DURATION
+                + " from " + DurationsContract.SUMMARY_TABLE_NAME
+                + " inner join " + TasksContract.TABLE_NAME
+                + " on " + DurationsContract.SUMMARY_TABLE_NAME + "." + DurationsContract.Columns.DURATIONS_TASK_ID
+                + " = " + TasksContract.TABLE_NAME + "." + TasksContract.Columns._ID + ";";
+        if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "addDurationsSummary: sSQL: " + sSQL);
+        sqLiteDatabase.execSQL(sSQL);
+    }
+
+    /**
+     * Full-text index of the task names and descriptions, for {@link TasksContract#buildSearchUri(String)}.
+     * It is an external content FTS4 table: the text stays in Tasks only and TasksSearch holds just the index,
+     * with the task's _id as its docid. FTS4 rather than FTS5 because that is what every SQLite from API 21 on has.
+     * The triggers take a task's old words out of the index before the row changes (the index reads them from Tasks)
+     * and put the new ones in afterwards. Changing only the sortOrder leaves the index alone.
+     */
+    private void addTasksSearch(SQLiteDatabase sqLiteDatabase) {
+        String sSQL;
+        String columns = TasksContract.Columns.TASKS_NAME + ", " + TasksContract.Columns.TASKS_DESCRIPTION;
+        String newValues = "new." + TasksContract.Columns._ID + ", "
+                + "new." + TasksContract.Columns.TASKS_NAME + ", "
+                + "new." + TasksContract.Columns.TASKS_DESCRIPTION;
+        String removeOld = " delete from " + TasksContract.SEARCH_TABLE_NAME
+                + " where docid = old." + TasksContract.Columns._ID + ";";
+
+        sSQL = "create virtual table " + TasksContract.SEARCH_TABLE_NAME + " using fts4("
+                + "content=\"" + TasksContract.TABLE_NAME + "\", "
+                + columns + ", tokenize=unicode61);";
+        if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "addTasksSearch: sSQL: " + sSQL);
+        sqLiteDatabase.execSQL(sSQL);
+
+        sSQL = "create trigger Task_Search_Inserted after insert on " + TasksContract.TABLE_NAME
+                + " for each row begin"
+                + " insert into " + TasksContract.SEARCH_TABLE_NAME + " (docid, " + columns + ") values (" + newValues + ");"
+                + " end;";
+        if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "addTasksSearch: sSQL: " + sSQL);
+        sqLiteDatabase.execSQL(sSQL);
+
+        String updateOf = "update of " + TasksContract.Columns._ID + ", " + columns + " on " + TasksContract.TABLE_NAME;
+        sSQL = "create trigger Task_Search_Updating before " + updateOf
+                + " for each row begin"
+                + removeOld
+                + " end;";
+        if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "addTasksSearch: sSQL: " + sSQL);
+        sqLiteDatabase.execSQL(sSQL);
+
+        sSQL = "create trigger Task_Search_Updated after " + updateOf
+                + " for each row begin"
+                + " insert into " + TasksContract.SEARCH_TABLE_NAME + " (docid, " + columns + ") values (" + newValues + ");"
+                + " end;";
+        if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "addTasksSearch: sSQL: " + sSQL);
+        sqLiteDatabase.execSQL(sSQL);
+
+        sSQL = "create trigger Task_Search_Deleting before delete on " + TasksContract.TABLE_NAME
+                + " for each row begin"
+                + removeOld
+                + " end;";
+        if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "addTasksSearch: sSQL: " + sSQL);
+        sqLiteDatabase.execSQL(sSQL);
+    }
+
+    /**
+     * Indexes the tasks that were there before the search table, only needed when upgrading
+     */
+    private void rebuildTasksSearch(SQLiteDatabase sqLiteDatabase) {
+        String sSQL = "insert into " + TasksContract.SEARCH_TABLE_NAME + " (" + TasksContract.SEARCH_TABLE_NAME + ")"
+                + " values ('rebuild');";
+        if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "rebuildTasksSearch: sSQL: " + sSQL);
+        sqLiteDatabase.execSQL(sSQL);
+    }
+
+    /**
+     * One off aggregation of the existing timings, only needed when upgrading a database
+     * that already holds timings recorded before the summary table existed.
+     */
+    private void backfillDurationsSummary(SQLiteDatabase sqLiteDatabase) {
+        String sSQL = "insert into " + DurationsContract.SUMMARY_TABLE_NAME + " ("
+                + DurationsContract.Columns.DURATIONS_TASK_ID + ", "
+                + DurationsContract.Columns.DURATIONS_START_DATE + ", "
+                + DurationsContract.Columns.DURATIONS_DURATION + ")"
+                + " select " + TimingsContract.Columns.TIMINGS_TASK_ID + ", "
+                + startDateOf(TimingsContract.TABLE_NAME) + ", "
+                + "sum(" + TimingsContract.Columns.TIMINGS_DURATION + ")"
+                + " from " + TimingsContract.TABLE_NAME
+                + " group by 1, 2;";
+        if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "backfillDurationsSummary: sSQL: " + sSQL);
+        sqLiteDatabase.execSQL(sSQL);
+    }
+
+    /**
+     * @param row "new" or "old" in a trigger, or a table name
+     * @return expression for the local calendar day a timing started on
+     */
+    private static String startDateOf(String row) {
+        return "date(" + row + "." + TimingsContract.Columns.TIMINGS_START_TIME + ", 'unixepoch', 'localtime')";
+    }
+
+    private static String addToSummary(String row) {
+        return " insert or ignore into " + DurationsContract.SUMMARY_TABLE_NAME + " ("
+                + DurationsContract.Columns.DURATIONS_TASK_ID + ", "
+                + DurationsContract.Columns.DURATIONS_START_DATE + ")"
+                + " values (" + row + "." + TimingsContract.Columns.TIMINGS_TASK_ID + ", " + startDateOf(row) + ");"
+                + changeSummary(row, "+");
+    }
+
+    private static String subtractFromSummary(String row) {
+        return changeSummary(row, "-");
+    }
+
+    private static String changeSummary(String row, String operator) {
+        return " update " + DurationsContract.SUMMARY_TABLE_NAME
+                + " set " + DurationsContract.Columns.DURATIONS_DURATION + " = "
+                + DurationsContract.Columns.DURATIONS_DURATION + " " + operator + " "
+                + row + "." + TimingsContract.Columns.TIMINGS_DURATION
+                + " where " + DurationsContract.Columns.DURATIONS_TASK_ID + " = " + row + "." + TimingsContract.Columns.TIMINGS_TASK_ID
+                + " and " + DurationsContract.Columns.DURATIONS_START_DATE + " = " + startDateOf(row) + ";";
+    }
+
     @Override
     public synchronized void close() {
         Log.d(TAG, "close: called");
-        instance.close();
+        super.close();
+        synchronized (AppDatabase.class) {
+            if(instance == this) {
+                instance = null;
+            }
+        }
     }
 }
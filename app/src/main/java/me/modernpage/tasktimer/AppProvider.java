@@ -1,18 +1,45 @@
 package me.modernpage.tasktimer;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
+import android.os.Bundle;
+import android.os.CancellationSignal;
+import android.os.ParcelFileDescriptor;
+import android.os.Trace;
+import android.provider.BaseColumns;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import java.net.URI;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Provider for the TaskTimer app. This is the only that knows about {@link AppDatabase}
@@ -21,6 +48,26 @@ public class AppProvider extends ContentProvider {
     private static final String TAG = "AppProvider";
 
     private AppDatabase mOpenHelper;
+    private StatementCache mStatementCache;
+    private TaskCache mTaskCache;
+
+    /**
+     * Uris changed by the batch running on the current thread, null when no batch is running.
+     * While a batch runs, notifications are collected here and sent once, after the commit.
+     */
+    private final ThreadLocal<PendingNotifications> mPendingNotifications = new ThreadLocal<>();
+
+    /**
+     * A change to more rows than this, by one selection or in one batch, only sends the table notifications,
+     * notifying every row would cost more than the observers save
+     */
+    static final int MAX_ROW_NOTIFICATIONS = 100;
+
+    /**
+     * Notifications of committed batches that asked to defer them ({@link #QUERY_PARAMETER_DEFER_NOTIFY}),
+     * sent by {@link #METHOD_SEND_DEFERRED_NOTIFICATIONS}. Guarded by itself.
+     */
+    private final PendingNotifications mDeferredNotifications = new PendingNotifications();
 
     /**
      * Utility class to aid in matching URIs in content providers.
@@ -53,18 +100,50 @@ public class AppProvider extends ContentProvider {
 
     private static final int TASKS = 100;
     private static final int TASKS_ID = 101;
+    private static final int TASKS_SEARCH = 102;
 
     private static final int TIMINGS = 200;
     private static final int TIMINGS_ID = 201;
+    private static final int TIMINGS_RANGE = 202;
 
     /*
     private static final int TASK_TIMINGS = 300;
     private static final int TASK_TIMINGS_ID = 301;
      */
+    private static final int TASK_TIMINGS_RANGE = 302;
 
     private static final int TASK_DURATIONS = 400;
     private static final int TASK_DURATIONS_ID = 401;
 
+    private static final int EXPORT_TASKS = 500;
+    private static final int EXPORT_TIMINGS = 501;
+
+    /**
+     * Read with ContentResolver.openInputStream, the whole table as CSV or JSON, see {@link #buildExportUri(String, String)}
+     */
+    static final String EXPORT_PATH = "export";
+    static final String QUERY_PARAMETER_FORMAT = "format";
+
+    /**
+     * Inserts to a uri with upsert=true update the matching row instead, if there is one:
+     * a task with the same _id, else with the same name, or a timing of the same task with the same start time.
+     * The returned uri is the row that was written. Used by {@link DataImport}.
+     */
+    static final String QUERY_PARAMETER_UPSERT = "upsert";
+
+    /**
+     * A bulkInsert to a uri with deferNotify=true, or an applyBatch whose operations all have it, keeps its
+     * change notifications once it has committed rather than sending them, until {@link #METHOD_SEND_DEFERRED_NOTIFICATIONS}
+     */
+    static final String QUERY_PARAMETER_DEFER_NOTIFY = "deferNotify";
+
+    private final ProviderMetrics mMetrics = new ProviderMetrics(
+            new int[]{TASKS, TASKS_ID, TASKS_SEARCH, TIMINGS, TIMINGS_ID, TIMINGS_RANGE, TASK_TIMINGS_RANGE, TASK_DURATIONS, TASK_DURATIONS_ID},
+            new String[]{TasksContract.TABLE_NAME, TasksContract.TABLE_NAME + "/#", TasksContract.TABLE_NAME + "/search",
+                    TimingsContract.TABLE_NAME, TimingsContract.TABLE_NAME + "/#",
+                    TimingsContract.TABLE_NAME + "/range", TasksContract.TABLE_NAME + "/#/" + TimingsContract.TABLE_NAME + "/range",
+                    DurationsContract.TABLE_NAME, DurationsContract.TABLE_NAME + "/#"});
+
     private static UriMatcher buildUriMatcher() {
         final UriMatcher matcher = new UriMatcher(UriMatcher.NO_MATCH);
 
@@ -72,23 +151,299 @@ public class AppProvider extends ContentProvider {
         matcher.addURI(CONTENT_AUTHORITY, TasksContract.TABLE_NAME, TASKS);
         // eg. content://com.timbuchalka.tasktimer.provider/Tasks/8
         matcher.addURI(CONTENT_AUTHORITY, TasksContract.TABLE_NAME + "/#", TASKS_ID);
+        // eg. content://me.modernpage.tasktimer.AppProvider/Tasks/search?q=write%20rep
+        matcher.addURI(CONTENT_AUTHORITY, TasksContract.TABLE_NAME + "/" + TasksContract.SEARCH_PATH, TASKS_SEARCH);
+
+        matcher.addURI(CONTENT_AUTHORITY, TimingsContract.TABLE_NAME, TIMINGS);
+        matcher.addURI(CONTENT_AUTHORITY, TimingsContract.TABLE_NAME + "/#", TIMINGS_ID);
+        // eg. content://me.modernpage.tasktimer.AppProvider/Timings/range/1600000000/1600604800
+        matcher.addURI(CONTENT_AUTHORITY, TimingsContract.TABLE_NAME + "/" + TimingsContract.RANGE_PATH + "/#/#", TIMINGS_RANGE);
+        // eg. content://me.modernpage.tasktimer.AppProvider/Tasks/8/Timings/range/1600000000/1600604800
+        matcher.addURI(CONTENT_AUTHORITY, TasksContract.TABLE_NAME + "/#/" + TimingsContract.TABLE_NAME + "/"
+                + TimingsContract.RANGE_PATH + "/#/#", TASK_TIMINGS_RANGE);
+
+        matcher.addURI(CONTENT_AUTHORITY, DurationsContract.TABLE_NAME, TASK_DURATIONS);
+        matcher.addURI(CONTENT_AUTHORITY, DurationsContract.TABLE_NAME + "/#", TASK_DURATIONS_ID);
 
-//        matcher.addURI(CONTENT_AUTHORITY, TimingsContract.TABLE_NAME, TIMINGS);
-//        matcher.addURI(CONTENT_AUTHORITY, TimingsContract.TABLE_NAME + "/#", TIMINGS_ID);
-//
-//        matcher.addURI(CONTENT_AUTHORITY, TimingsContract.TABLE_NAME, TASK_DURATIONS);
-//        matcher.addURI(CONTENT_AUTHORITY, TimingsContract.TABLE_NAME + "/#", TASK_DURATIONS_ID);
+        // eg. content://me.modernpage.tasktimer.AppProvider/export/Timings?format=json
+        matcher.addURI(CONTENT_AUTHORITY, EXPORT_PATH + "/" + TasksContract.TABLE_NAME, EXPORT_TASKS);
+        matcher.addURI(CONTENT_AUTHORITY, EXPORT_PATH + "/" + TimingsContract.TABLE_NAME, EXPORT_TIMINGS);
 
         return matcher;
     }
 
+    /**
+     * Opens (and creates or upgrades) the database off the main thread, providers are created
+     * during process start before the first activity. One thread for all providers, there is only one database.
+     */
+    private static final ExecutorService sOpenExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(@NonNull Runnable runnable) {
+            return new Thread(runnable, "AppDatabase-open");
+        }
+    });
+
+    /**
+     * Done once the database is open and the timer journal reconciled, every database access waits for it.
+     * Replaced while a snapshot is restored, see {@link #METHOD_RESTORE_SNAPSHOT}.
+     */
+    private volatile Future<?> mDatabaseReady;
+    private final AtomicBoolean mFirstQuery = new AtomicBoolean(true);
+
+    /**
+     * {@link #call(String, String, Bundle)} method that returns once the database is open and the timer journal settled
+     */
+    static final String METHOD_AWAIT_READY = "awaitReady";
+
+    /**
+     * Sends the notifications deferred by batches with {@link #QUERY_PARAMETER_DEFER_NOTIFY}, once per uri
+     */
+    static final String METHOD_SEND_DEFERRED_NOTIFICATIONS = "sendDeferredNotifications";
+
+    /**
+     * Moves the task {@link #EXTRA_TASK_ID} to between {@link #EXTRA_PREVIOUS_TASK_ID} and {@link #EXTRA_NEXT_TASK_ID}
+     * in the task list, either of them missing for the top or the bottom of the list, see {@link TaskSortOrder}
+     */
+    static final String METHOD_MOVE_TASK = "moveTask";
+    static final String EXTRA_TASK_ID = "taskId";
+    static final String EXTRA_PREVIOUS_TASK_ID = "previousTaskId";
+    static final String EXTRA_NEXT_TASK_ID = "nextTaskId";
+
+    /**
+     * Replaces the tasks and timings with the {@link DataSnapshot} read from the ParcelFileDescriptor
+     * {@link #EXTRA_SNAPSHOT}, which the caller closes. Returns {@link #EXTRA_TIMING_COUNT}, the number of timings restored,
+     * or throws an IllegalStateException if the snapshot couldn't be read, the data is then left as it was.
+     */
+    static final String METHOD_RESTORE_SNAPSHOT = "restoreSnapshot";
+    static final String EXTRA_SNAPSHOT = "snapshot";
+    static final String EXTRA_TIMING_COUNT = "timingCount";
+
     @Override
     public boolean onCreate() {
-        Log.d(TAG, "onCreate: called");
-        mOpenHelper = AppDatabase.getInstance(getContext());
+        if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "onCreate: called");
+        Trace.beginSection("AppProvider.onCreate");
+        try {
+            mOpenHelper = AppDatabase.getInstance(getContext());
+            mDatabaseReady = sOpenExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    Trace.beginSection("AppDatabase.open");
+                    try {
+                        // runs onCreate or onUpgrade, however long a migration of a big Timings table takes
+                        SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+                        reconcileTimerJournal(db);
+                    } finally {
+                        Trace.endSection();
+                    }
+                }
+            });
+        } finally {
+            Trace.endSection();
+        }
         return true;
     }
 
+    /**
+     * Waits for the database to be opened on {@link #sOpenExecutor}. Loaders query on their own threads,
+     * so normally only a write made on the main thread in the first moments after start can wait here.
+     */
+    private void awaitDatabase() {
+        boolean interrupted = false;
+        try {
+            while(true) {
+                try {
+                    mDatabaseReady.get();
+                    return;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    // opening again in getReadableDatabase/getWritableDatabase reports the error to the caller
+                    Log.e(TAG, "awaitDatabase: opening the database failed", e.getCause());
+                    return;
+                }
+            }
+        } finally {
+            if(interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private SQLiteDatabase getReadableDatabase() {
+        awaitDatabase();
+        return mOpenHelper.getReadableDatabase();
+    }
+
+    private SQLiteDatabase getWritableDatabase() {
+        awaitDatabase();
+        return mOpenHelper.getWritableDatabase();
+    }
+
+    @Nullable
+    @Override
+    public Bundle call(@NonNull String method, @Nullable String arg, @Nullable Bundle extras) {
+        if(METHOD_AWAIT_READY.equals(method)) {
+            awaitDatabase();
+            return null;
+        }
+        if(METHOD_SEND_DEFERRED_NOTIFICATIONS.equals(method)) {
+            sendDeferredNotifications();
+            return null;
+        }
+        if(METHOD_RESTORE_SNAPSHOT.equals(method) && extras != null) {
+            Bundle result = new Bundle();
+            result.putLong(EXTRA_TIMING_COUNT, restoreSnapshot((ParcelFileDescriptor) extras.getParcelable(EXTRA_SNAPSHOT)));
+            return result;
+        }
+        if(METHOD_MOVE_TASK.equals(method) && extras != null) {
+            moveTask(extras.getLong(EXTRA_TASK_ID),
+                    extras.getLong(EXTRA_PREVIOUS_TASK_ID, TaskSortOrder.NO_TASK),
+                    extras.getLong(EXTRA_NEXT_TASK_ID, TaskSortOrder.NO_TASK));
+            return null;
+        }
+        return super.call(method, arg, extras);
+    }
+
+    private void moveTask(long taskId, long previousId, long nextId) {
+        SQLiteDatabase db = getWritableDatabase();
+        // null after a rebalance, any number of tasks have new sortOrders
+        long[] changed = TaskSortOrder.move(db, taskId, previousId, nextId);
+        notifyChange(TasksContract.CONTENT_URI, changed);
+    }
+
+    /**
+     * Restores the snapshot on {@link #sOpenExecutor}, as a batch of its own, behind a new {@link #mDatabaseReady}:
+     * every query and write made meanwhile waits for it like it waits for the database to open, and a timer running
+     * when the process died is reconciled again, with the restored timings, before {@link #METHOD_AWAIT_READY} returns.
+     * @return the number of timings restored
+     */
+    private long restoreSnapshot(ParcelFileDescriptor snapshot) {
+        awaitDatabase();
+        SnapshotRestore restore = new SnapshotRestore(snapshot);
+        mDatabaseReady = sOpenExecutor.submit(restore);
+        awaitDatabase();
+        if(restore.mError != null) {
+            throw new IllegalStateException("Snapshot not restored", restore.mError);
+        }
+        return restore.mTimings;
+    }
+
+    private final class SnapshotRestore implements Runnable {
+        private final ParcelFileDescriptor mSnapshot;
+        private long mTimings;
+        // the database is left as it was
+        private Exception mError;
+
+        SnapshotRestore(ParcelFileDescriptor snapshot) {
+            mSnapshot = snapshot;
+        }
+
+        @Override
+        public void run() {
+            SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+            final boolean outermost = beginBatch(db, false);
+            boolean successful = false;
+            try {
+                // the caller closes the descriptor, the stream mustn't close it as well
+                mTimings = DataSnapshot.restore(db, new FileInputStream(mSnapshot.getFileDescriptor()).getChannel());
+                db.setTransactionSuccessful();
+                successful = true;
+                notifyChange(TasksContract.CONTENT_URI, null);
+                notifyChange(TimingsContract.CONTENT_URI, null);
+                notifyChange(DurationsContract.CONTENT_URI, null);
+            } catch (IOException e) {
+                mError = e;
+            } catch (RuntimeException e) {
+                // not left in mDatabaseReady, every access after it would fail
+                mError = e;
+            } finally {
+                endBatch(db, outermost, successful);
+            }
+            if(successful) {
+                // every row the cached statements were last used on has been replaced, nothing is reused across the restore
+                synchronized(AppProvider.this) {
+                    if(mStatementCache != null) {
+                        mStatementCache.close();
+                        mStatementCache = null;
+                    }
+                }
+                reconcileTimerJournal(db);
+            }
+        }
+    }
+
+    /**
+     * Prints the operation metrics and how often the task cache answered,
+     * adb shell dumpsys activity provider me.modernpage.tasktimer/.AppProvider
+     */
+    @Override
+    public void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        writer.println("AppProvider");
+        mMetrics.dump(writer);
+    }
+
+    ProviderMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * Finds the timing the journal entry would have become, one search of the Timings_TaskId_StartTime_Duration index
+     */
+    static final String TIMING_EXISTS_SQL = "select count(*) from " + TimingsContract.TABLE_NAME
+            + " where " + TimingsContract.Columns.TIMINGS_TASK_ID + " = ?"
+            + " and " + TimingsContract.Columns.TIMINGS_START_TIME + " = ?";
+
+    static final String FIND_TASK_SQL = "select " + TasksContract.Columns._ID + " from " + TasksContract.TABLE_NAME
+            + " where " + TasksContract.Columns._ID + " = ?";
+
+    /**
+     * The task with this _id if it also has this name, a primary key search
+     */
+    static final String FIND_SAME_TASK_SQL = "select " + TasksContract.Columns._ID + " from " + TasksContract.TABLE_NAME
+            + " where " + TasksContract.Columns._ID + " = ? and " + TasksContract.Columns.TASKS_NAME + " = ?";
+
+    /**
+     * One search of the Tasks_Name index
+     */
+    static final String FIND_TASK_BY_NAME_SQL = "select " + TasksContract.Columns._ID + " from " + TasksContract.TABLE_NAME
+            + " where " + TasksContract.Columns.TASKS_NAME + " = ? limit 1";
+
+    /**
+     * Same search as {@link #TIMING_EXISTS_SQL}, for the id of the timing
+     */
+    static final String FIND_TIMING_SQL = "select " + TimingsContract.Columns._ID + " from " + TimingsContract.TABLE_NAME
+            + " where " + TimingsContract.Columns.TIMINGS_TASK_ID + " = ?"
+            + " and " + TimingsContract.Columns.TIMINGS_START_TIME + " = ?";
+
+    static final String TASK_EXISTS_SQL = "select count(*) from " + TasksContract.TABLE_NAME
+            + " where " + TasksContract.Columns._ID + " = ?";
+
+    /**
+     * Settles a timer the process was timing when it last died, before {@link TimerEngine} reads it from the journal
+     * (it waits for {@link #METHOD_AWAIT_READY}).
+     * If its Timings row was inserted the timer had already stopped, and if its task is gone it can't be recorded;
+     * either way the entry is dropped. Otherwise it is left for {@link TimerEngine} to carry on with.
+     * Two primary key or index searches, however many timings there are, and no database access at all
+     * when no timer was running. Runs on {@link #sOpenExecutor} as part of opening the database, and after a restore.
+     */
+    private void reconcileTimerJournal(SQLiteDatabase db) {
+        TimerJournal journal = TimerJournal.getInstance(getContext());
+        TimerJournal.Entry entry = journal.read();
+        if(entry == null) {
+            return;
+        }
+        String taskId = String.valueOf(entry.mTaskId);
+        if(DatabaseUtils.longForQuery(db, TIMING_EXISTS_SQL, new String[]{taskId, String.valueOf(entry.mStartTime)}) > 0) {
+            if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "reconcileTimerJournal: the timing of task " + taskId + " was recorded");
+            journal.clear(entry.mTaskId, entry.mStartTime);
+        } else if(DatabaseUtils.longForQuery(db, TASK_EXISTS_SQL, new String[]{taskId}) == 0) {
+            if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "reconcileTimerJournal: task " + taskId + " has been deleted");
+            journal.clear(entry.mTaskId, entry.mStartTime);
+        } else {
+            if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "reconcileTimerJournal: task " + taskId + " is still being timed");
+        }
+    }
+
     /**
      * This content provider's query method calls the query builders query method passing to the database object that we get from {@link AppDatabase}(mOpenHelper)
      *
@@ -96,9 +451,113 @@ public class AppProvider extends ContentProvider {
     @Nullable
     @Override
     public Cursor query(@NonNull Uri uri, @Nullable String[] projection, @Nullable String selection, @Nullable String[] selectionArgs, @Nullable String sortOrder) {
-        Log.d(TAG, "query: called with URI " + uri);
+        return query(uri, projection, selection, selectionArgs, sortOrder, null);
+    }
+
+    /**
+     * Same as the query above, a query that is cancelled (by a loader whose result is no longer wanted)
+     * stops reading rows and throws OperationCanceledException
+     */
+    @Nullable
+    @Override
+    public Cursor query(@NonNull Uri uri, @Nullable String[] projection, @Nullable String selection, @Nullable String[] selectionArgs,
+                        @Nullable String sortOrder, @Nullable CancellationSignal cancellationSignal) {
+        long start = System.nanoTime();
+        try {
+            if(mUriMatcher.match(uri) == TASKS_SEARCH) {
+                return querySearch(uri, projection, cancellationSignal);
+            }
+            return queryUri(uri, projection, selection, selectionArgs, sortOrder, cancellationSignal);
+        } finally {
+            mMetrics.record(mUriMatcher.match(uri), ProviderMetrics.QUERY, start);
+        }
+    }
+
+    /**
+     * The tasks matching the uri's search text, best match first, see {@link TaskSearch}.
+     * Any change to Tasks can change the matches, so the cursor is notified on the Tasks uri.
+     */
+    private Cursor querySearch(Uri uri, String[] projection, CancellationSignal cancellationSignal) {
+        if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "querySearch: called with URI " + uri);
+        Cursor cursor = TaskSearch.query(getReadableDatabase(), uri.getQueryParameter(TasksContract.QUERY_PARAMETER_SEARCH),
+                projection, uri.getQueryParameter(TasksContract.QUERY_PARAMETER_LIMIT), cancellationSignal);
+        cursor.setNotificationUri(getContext().getContentResolver(), TasksContract.CONTENT_URI);
+        return cursor;
+    }
+
+    private Cursor queryUri(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder,
+                            CancellationSignal cancellationSignal) {
+        if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "query: called with URI " + uri);
+        SQLiteQueryBuilder queryBuilder = buildQuery(uri);
+        // the first query includes waiting for the database to open
+        boolean firstQuery = mFirstQuery.compareAndSet(true, false);
+        if(firstQuery) {
+            Trace.beginSection("AppProvider.firstQuery");
+        }
+        Cursor cursor;
+        try {
+            SQLiteDatabase db = getReadableDatabase();
+            String limit = uri.getQueryParameter(TasksContract.QUERY_PARAMETER_LIMIT);
+            cursor = queryTaskCache(db, uri, projection, selection, selectionArgs, sortOrder, limit, cancellationSignal);
+            if(cursor == null) {
+                if(sortOrder == null && isRange(uri)) {
+                    // the order of both range indexes, no sorting
+                    sortOrder = TimingsContract.Columns.TIMINGS_START_TIME;
+                }
+                cursor = queryBuilder.query(db, projection, selection, buildQueryArgs(uri, selectionArgs), null, null, sortOrder, limit,
+                        cancellationSignal);
+            }
+            if(firstQuery) {
+                // the rows are only read when the cursor is first moved, make it part of the first query
+                cursor.getCount();
+            }
+        } finally {
+            if(firstQuery) {
+                Trace.endSection();
+            }
+        }
+        // setting notification to contentResolver
+        // any listeners attached to content resolver are being notified of change to the data uri we specified
+        // in this case our uri is task table, any change to the table can be notified
+        // so built in cursor loader class is registering itself as the listener with the content resolver it queries
+        // so we don't have to special in client code, but custom cursor loader created by yourself should register an observer
+        // this line registers listener to receive notifications when the data changes
+        // we should trigger the notifications in insert, update and delete methods
+        // a task's timings change with Timings rather than with the task
+        cursor.setNotificationUri(getContext().getContentResolver(), isRange(uri) ? TimingsContract.CONTENT_URI : uri);
+        return cursor;
+    }
+
+    /**
+     * @return the rows from {@link TaskCache}, or null if the query has to go to the database
+     */
+    private Cursor queryTaskCache(SQLiteDatabase db, Uri uri, String[] projection, String selection, String[] selectionArgs,
+                                  String sortOrder, String limit, CancellationSignal cancellationSignal) {
+        int match = mUriMatcher.match(uri);
+        if((match != TASKS && match != TASKS_ID) || mPendingNotifications.get() != null) {
+            // a batch reads its own writes, the cache only has them once they are committed
+            return null;
+        }
+        if(match == TASKS_ID) {
+            return taskCache(db).queryTask(TasksContract.getTaskId(uri), projection, selection);
+        }
+        return taskCache(db).query(projection, selection, selectionArgs, sortOrder, limit, cancellationSignal);
+    }
+
+    private static boolean isRange(Uri uri) {
+        int match = mUriMatcher.match(uri);
+        return match == TIMINGS_RANGE || match == TASK_TIMINGS_RANGE;
+    }
+
+    /**
+     * Sets up the query builder for the table and row the uri points at.
+     * A row id is bound as the first argument (see {@link #buildQueryArgs(Uri, String[])}) instead of being
+     * appended to the SQL, so all single row queries share one statement.
+     * Package-private so tests can check the query plan of exactly the SQL that {@link #query} runs.
+     */
+    static SQLiteQueryBuilder buildQuery(Uri uri) {
         final int match = mUriMatcher.match(uri);
-        Log.d(TAG, "query: match is " + match);
+        if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "query: match is " + match);
 
         SQLiteQueryBuilder queryBuilder = new SQLiteQueryBuilder();
         switch (match) {
@@ -107,46 +566,83 @@ public class AppProvider extends ContentProvider {
                 queryBuilder.setTables(TasksContract.TABLE_NAME);
                 break;
 
-                case TASKS_ID:
+            case TASKS_ID:
                 queryBuilder.setTables(TasksContract.TABLE_NAME);
-                long taskId = TasksContract.getTaskId(uri);
-                queryBuilder.appendWhere(TasksContract.Columns._ID + " = " + taskId);
+                queryBuilder.appendWhere(TasksContract.Columns._ID + " = ?");
+                break;
+
+            case TIMINGS:
+                queryBuilder.setTables(TimingsContract.TABLE_NAME);
+                break;
+
+            case TIMINGS_ID:
+                queryBuilder.setTables(TimingsContract.TABLE_NAME);
+                queryBuilder.appendWhere(TimingsContract.Columns._ID + " = ?");
+                break;
+
+            case TIMINGS_RANGE:
+                // a range of Timings_StartTime_TaskId_Duration
+                queryBuilder.setTables(TimingsContract.TABLE_NAME);
+                queryBuilder.appendWhere(TimingsContract.Columns.TIMINGS_START_TIME + " >= ? AND "
+                        + TimingsContract.Columns.TIMINGS_START_TIME + " < ?");
+                break;
+
+            case TASK_TIMINGS_RANGE:
+                // a range of Timings_TaskId_StartTime_Duration
+                queryBuilder.setTables(TimingsContract.TABLE_NAME);
+                queryBuilder.appendWhere(TimingsContract.Columns.TIMINGS_TASK_ID + " = ? AND "
+                        + TimingsContract.Columns.TIMINGS_START_TIME + " >= ? AND "
+                        + TimingsContract.Columns.TIMINGS_START_TIME + " < ?");
+                break;
+
+            case TASK_DURATIONS:
+                queryBuilder.setTables(DurationsContract.TABLE_NAME);
                 break;
 
-//            case TIMINGS:
-//                queryBuilder.setTables(TimingContract.TABLE_NAME);
-//                break;
-//
-//            case TIMINGS_ID:
-//                queryBuilder.setTables(TimingContract.TABLE_NAME);
-//                long timingId = TimingsContract.getTimingId(uri);
-//                queryBuilder.appendWhere(TimingsContract.Colums._ID + " = " + timingId);
-//                break;
-//
-//            case TASK_DURATIONS:
-//                queryBuilder.setTables(DurationsCotract.TABLE_NAME);
-//                break;
-//
-//            case TASK_DURATIONS_ID:
-//                queryBuilder.setTables(DurationsCotract.TABLE_NAME);
-//                long timingId = DurationsCotract.getTimingId(uri);
-//                queryBuilder.appendWhere(DurationsCotract.Colums._ID + " = " + timingId);
-//                break;
+            case TASK_DURATIONS_ID:
+                queryBuilder.setTables(DurationsContract.TABLE_NAME);
+                queryBuilder.appendWhere(DurationsContract.Columns._ID + " = ?");
+                break;
 
             default:
                 throw new IllegalArgumentException("Unknown URI: " + uri);
         }
-        SQLiteDatabase db = mOpenHelper.getReadableDatabase();
-        Cursor cursor = queryBuilder.query(db,projection, selection, selectionArgs, null, null, sortOrder);
-        // setting notification to contentResolver
-        // any listeners attached to content resolver are being notified of change to the data uri we specified
-        // in this case our uri is task table, any change to the table can be notified
-        // so built in cursor loader class is registering itself as the listener with the content resolver it queries
-        // so we don't have to special in client code, but custom cursor loader created by yourself should register an observer
-        // this line registers listener to receive notifications when the data changes
-        // we should trigger the notifications in insert, update and delete methods
-        cursor.setNotificationUri(getContext().getContentResolver(), uri);
-        return cursor;
+        return queryBuilder;
+    }
+
+    /**
+     * @return the selection arguments for the query built by {@link #buildQuery(Uri)},
+     * with the row id in front of them when the uri points at a single row, or the task and the range for a range
+     */
+    static String[] buildQueryArgs(Uri uri, String[] selectionArgs) {
+        switch (mUriMatcher.match(uri)) {
+            case TASKS_ID:
+            case TIMINGS_ID:
+            case TASK_DURATIONS_ID:
+                return prependId(ContentUris.parseId(uri), selectionArgs);
+            case TIMINGS_RANGE:
+                return prependArgs(selectionArgs, String.valueOf(TimingsContract.getRangeFrom(uri)),
+                        String.valueOf(TimingsContract.getRangeTo(uri)));
+            case TASK_TIMINGS_RANGE:
+                return prependArgs(selectionArgs, uri.getPathSegments().get(1),
+                        String.valueOf(TimingsContract.getRangeFrom(uri)), String.valueOf(TimingsContract.getRangeTo(uri)));
+            default:
+                return selectionArgs;
+        }
+    }
+
+    private static String[] prependId(long id, String[] selectionArgs) {
+        return prependArgs(selectionArgs, String.valueOf(id));
+    }
+
+    private static String[] prependArgs(String[] selectionArgs, String... first) {
+        int count = selectionArgs == null ? 0 : selectionArgs.length;
+        String[] args = new String[count + first.length];
+        System.arraycopy(first, 0, args, 0, first.length);
+        if(count > 0) {
+            System.arraycopy(selectionArgs, 0, args, first.length, count);
+        }
+        return args;
     }
 
     /**
@@ -182,29 +678,109 @@ public class AppProvider extends ContentProvider {
             case TASKS_ID:
                 return TasksContract.CONTENT_ITEM_TYPE;
 
-//            case TIMINGS:
-//               return TimingsContract.Timings.CONTENT_TYPE;
-//
-//            case TIMINGS_ID:
-//               return TimingsContract.Timings.CONTENT_ITEM_TYPE;
-//
-//            case TASK_DURATIONS:
-//               return DurationsContract.TaskDurations.CONTENT_TYPE;
-//
-//            case TASK_DURATIONS_ID:
-//               return DurationsContract.TaskDurations.CONTENT_ITEM_TYPE;
+            case TASKS_SEARCH:
+                return TasksContract.CONTENT_TYPE;
+
+            case TIMINGS:
+                return TimingsContract.CONTENT_TYPE;
+
+            case TIMINGS_ID:
+                return TimingsContract.CONTENT_ITEM_TYPE;
+
+            case TIMINGS_RANGE:
+            case TASK_TIMINGS_RANGE:
+                return TimingsContract.CONTENT_TYPE;
+
+            case TASK_DURATIONS:
+                return DurationsContract.CONTENT_TYPE;
+
+            case TASK_DURATIONS_ID:
+                return DurationsContract.CONTENT_ITEM_TYPE;
+
+            case EXPORT_TASKS:
+            case EXPORT_TIMINGS:
+                return DataExport.mimeTypeOf(DataExport.checkFormat(uri.getQueryParameter(QUERY_PARAMETER_FORMAT)));
 
             default:
                 throw new IllegalArgumentException("Unknown URI: " + uri);
         }
     }
 
+    /**
+     * @param table {@link TasksContract#TABLE_NAME} or {@link TimingsContract#TABLE_NAME}
+     * @param format {@link DataExport#FORMAT_CSV} or {@link DataExport#FORMAT_JSON}
+     * @return the uri to read the table's export from
+     */
+    static Uri buildExportUri(String table, String format) {
+        return CONTENT_AUTHORITY_URI.buildUpon()
+                .appendPath(EXPORT_PATH)
+                .appendPath(table)
+                .appendQueryParameter(QUERY_PARAMETER_FORMAT, format)
+                .build();
+    }
+
+    /**
+     * Streams an export through a pipe: the export is written on a background thread while the caller reads it,
+     * so neither side ever holds more than a page of rows (see {@link DataExport}).
+     */
+    @Nullable
+    @Override
+    public ParcelFileDescriptor openFile(@NonNull Uri uri, @NonNull String mode) throws FileNotFoundException {
+        final DataExport export;
+        switch (mUriMatcher.match(uri)) {
+            case EXPORT_TASKS:
+                export = new DataExport(TasksContract.TABLE_NAME, TaskListSnapshot.PROJECTION,
+                        DataExport.checkFormat(uri.getQueryParameter(QUERY_PARAMETER_FORMAT)));
+                break;
+            case EXPORT_TIMINGS:
+                export = new DataExport(TimingsContract.TABLE_NAME, EXPORT_TIMING_COLUMNS,
+                        DataExport.checkFormat(uri.getQueryParameter(QUERY_PARAMETER_FORMAT)));
+                break;
+            default:
+                throw new FileNotFoundException("No file at " + uri);
+        }
+        if(!"r".equals(mode)) {
+            throw new FileNotFoundException("Exports are read only, can't open " + uri + " with mode " + mode);
+        }
+        return openPipeHelper(uri, getType(uri), null, export, mExportWriter);
+    }
+
+    private static final String[] EXPORT_TIMING_COLUMNS = {TimingsContract.Columns._ID,
+            TimingsContract.Columns.TIMINGS_TASK_ID,
+            TimingsContract.Columns.TIMINGS_START_TIME,
+            TimingsContract.Columns.TIMINGS_DURATION};
+
+    private final PipeDataWriter<DataExport> mExportWriter = new PipeDataWriter<DataExport>() {
+        @Override
+        public void writeDataToPipe(@NonNull ParcelFileDescriptor output, @NonNull Uri uri, @NonNull String mimeType,
+                                    @Nullable Bundle opts, @Nullable DataExport export) {
+            // the pipe's descriptor is closed by openPipeHelper once this returns, the stream mustn't close it as well
+            FileOutputStream out = new FileOutputStream(output.getFileDescriptor());
+            try {
+                long rows = export.writeTo(getReadableDatabase(), out);
+                if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "writeDataToPipe: exported " + rows + " rows to " + uri);
+            } catch (IOException e) {
+                // the reader closed its end of the pipe before the end of the export
+                Log.w(TAG, "writeDataToPipe: export to " + uri + " stopped", e);
+            }
+        }
+    };
+
     @Nullable
     @Override
     public Uri insert(@NonNull Uri uri, @Nullable ContentValues contentValues) {
-        Log.d(TAG, "Enter insert, called with uri: " + uri);
+        long start = System.nanoTime();
+        try {
+            return insertUri(uri, contentValues);
+        } finally {
+            mMetrics.record(mUriMatcher.match(uri), ProviderMetrics.INSERT, start);
+        }
+    }
+
+    private Uri insertUri(Uri uri, ContentValues contentValues) {
+        if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "Enter insert, called with uri: " + uri);
         final int match = mUriMatcher.match(uri);
-        Log.d(TAG, "match is " + match);
+        if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "match is " + match);
 
         final SQLiteDatabase database;
 
@@ -213,8 +789,12 @@ public class AppProvider extends ContentProvider {
 
         switch (match) {
             case TASKS:
-                database = mOpenHelper.getWritableDatabase();
-                recordId = database.insert(TasksContract.TABLE_NAME, null, contentValues);
+                database = getWritableDatabase();
+                if(isUpsert(uri)) {
+                    recordId = upsertTask(database, contentValues);
+                } else {
+                    recordId = statements(database).insert(TasksContract.TABLE_NAME, contentValues);
+                }
                 if(recordId >= 0) {
                     returnUri = TasksContract.buildTaskUri(recordId);
                 } else {
@@ -222,20 +802,20 @@ public class AppProvider extends ContentProvider {
                 }
                 break;
             case TIMINGS:
-//                database = mOpenHelper.getWritableDatabase();
-//                recordId = database.insert(TimingsContract.TABLE_NAME, null, contentValues);
-//                if(recordId >= 0) {
-//                    returnUri = TimingsContract.Timings.buildTimingUri(recordId);
-//                } else {
-//                    throw new android.database.SQLException("Failed to insert into " + uri.toString());
-//                }
-//                break;
+                database = getWritableDatabase();
+                recordId = isUpsert(uri) ? upsertTiming(database, contentValues) : insertTiming(database, contentValues);
+                if(recordId >= 0) {
+                    returnUri = TimingsContract.buildTimingUri(recordId);
+                } else {
+                    throw new android.database.SQLException("Failed to insert into " + uri.toString());
+                }
+                break;
 
             default:
                 throw new IllegalArgumentException("Unknown uri: " + uri);
         }
         if(recordId >= 0) {
-            Log.d(TAG, "insert: setting notifyChanged with: " + uri);
+            if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "insert: setting notifyChanged with: " + uri);
             // something was inserted
             // trigger notification, notifies all registered observers that a row was updated
             // Uri: The uri of the content that was changed. This value cannot be null.
@@ -243,123 +823,591 @@ public class AppProvider extends ContentProvider {
             // The observer that originated the change will only receive the notification if it has requested to receive self-change notifications
             // by implementing ContentObserver#deliverSelfNotifications() to return true.This value may be null.
             // app provider just performs change, should not receive any notification
-            getContext().getContentResolver().notifyChange(uri, null);
+            if(match == TASKS) {
+                notifyChange(TasksContract.CONTENT_URI, new long[]{recordId});
+            } else {
+                notifyChange(TimingsContract.CONTENT_URI, new long[]{recordId});
+                // the summary triggers have updated the durations report as well
+                notifyChange(DurationsContract.CONTENT_URI, null);
+            }
         } else {
-            Log.d(TAG, "insert: nothing inserted");
+            if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "insert: nothing inserted");
         }
-        Log.d(TAG, "Existing insert, returning " + returnUri);
+        if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "Existing insert, returning " + returnUri);
         return returnUri;
     }
 
     @Override
     public int delete(@NonNull Uri uri, @Nullable String selection, @Nullable String[] selectionArgs) {
-        Log.d(TAG, "delete called with uri: " + uri);
+        long start = System.nanoTime();
+        try {
+            return deleteUri(uri, selection, selectionArgs);
+        } finally {
+            mMetrics.record(mUriMatcher.match(uri), ProviderMetrics.DELETE, start);
+        }
+    }
+
+    private int deleteUri(Uri uri, String selection, String[] selectionArgs) {
+        if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "delete called with uri: " + uri);
         final int match = mUriMatcher.match(uri);
-        Log.d(TAG, "match is " + match);
+        if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "match is " + match);
 
         final SQLiteDatabase database;
         int count;
 
-        String selectionCriteria;
+        // ids of the deleted rows, null if there were too many to tell the observers about each one
+        long[] rowIds;
 
         switch (match) {
             case TASKS:
-                database = mOpenHelper.getWritableDatabase();
-                count = database.delete(TasksContract.TABLE_NAME, selection, selectionArgs);
+                database = getWritableDatabase();
+                database.beginTransaction();
+                try {
+                    rowIds = findIds(database, TasksContract.TABLE_NAME, selection, selectionArgs);
+                    count = database.delete(TasksContract.TABLE_NAME, selection, selectionArgs);
+                    database.setTransactionSuccessful();
+                } finally {
+                    database.endTransaction();
+                }
                 break;
 
             case TASKS_ID:
-                database = mOpenHelper.getWritableDatabase();
+                database = getWritableDatabase();
                 long taskId = TasksContract.getTaskId(uri);
-                selectionCriteria = TasksContract.Columns._ID + " = " + taskId;
-                if(selection != null && selection.length() > 0) {
-                    selectionCriteria += " AND (" + selection + ")";
+                count = deleteById(database, TasksContract.TABLE_NAME, taskId, selection, selectionArgs);
+                rowIds = new long[]{taskId};
+                break;
+
+            case TIMINGS:
+                database = getWritableDatabase();
+                database.beginTransaction();
+                try {
+                    rowIds = findIds(database, TimingsContract.TABLE_NAME, selection, selectionArgs);
+                    count = database.delete(TimingsContract.TABLE_NAME, selection, selectionArgs);
+                    database.setTransactionSuccessful();
+                } finally {
+                    database.endTransaction();
                 }
-                count = database.delete(TasksContract.TABLE_NAME, selectionCriteria, selectionArgs);
                 break;
 
-//            case TIMINGS:
-//                database = mOpenHelper.getWritableDatabase();
-//                count = database.delete(TimingsContract.TABLE_NAME, selection, selectionArgs);
-//                break;
-//
-//            case TIMINGS_ID:
-//                database = mOpenHelper.getWritableDatabase();
-//                long taskId = TimingsContract.getTaskId(uri);
-//                selectionCriteria = TimingsContract.Columns._ID + " = " + taskId;
-//                if(selection != null && selection.length() > 0) {
-//                    selectionCriteria += " AND (" + selection + ")";
-//                }
-//                count = database.delete(TimingsContract.TABLE_NAME, selectionCriteria, selectionArgs);
-//                break;
+            case TIMINGS_ID:
+                database = getWritableDatabase();
+                long timingId = TimingsContract.getTimingId(uri);
+                count = deleteById(database, TimingsContract.TABLE_NAME, timingId, selection, selectionArgs);
+                rowIds = new long[]{timingId};
+                break;
 
             default:
                 throw new IllegalArgumentException("Unknown uri: " + uri);
         }
         
         if(count > 0) {
-            Log.d(TAG, "delete: setting notifyChange with " + uri);
-            getContext().getContentResolver().notifyChange(uri, null);
+            if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "delete: setting notifyChange with " + uri);
+            if(match == TASKS || match == TASKS_ID) {
+                notifyChange(TasksContract.CONTENT_URI, rowIds);
+                // the Remove_Task trigger deleted the task's timings
+                notifyChange(TimingsContract.CONTENT_URI, null);
+            } else {
+                notifyChange(TimingsContract.CONTENT_URI, rowIds);
+            }
+            // deleting tasks or timings also removes them from the durations report
+            notifyChange(DurationsContract.CONTENT_URI, null);
         } else {
-            Log.d(TAG, "delete: nothing deleted");
+            if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "delete: nothing deleted");
         }
-        Log.d(TAG, "Existing update, returning " + count);
+        if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "Existing update, returning " + count);
         return count;
     }
 
     @Override
     public int update(@NonNull Uri uri, @Nullable ContentValues contentValues, @Nullable String selection, @Nullable String[] selectionArgs) {
-        Log.d(TAG, "update called with uri: " + uri);
+        long start = System.nanoTime();
+        try {
+            return updateUri(uri, contentValues, selection, selectionArgs);
+        } finally {
+            mMetrics.record(mUriMatcher.match(uri), ProviderMetrics.UPDATE, start);
+        }
+    }
+
+    private int updateUri(Uri uri, ContentValues contentValues, String selection, String[] selectionArgs) {
+        if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "update called with uri: " + uri);
         final int match = mUriMatcher.match(uri);
-        Log.d(TAG, "match is " + match);
+        if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "match is " + match);
 
         final SQLiteDatabase database;
         int count;
 
-        String selectionCriteria;
+        // ids of the updated rows, null if there were too many to tell the observers about each one
+        long[] rowIds;
 
         switch (match) {
             case TASKS:
-                database = mOpenHelper.getWritableDatabase();
-                count = database.update(TasksContract.TABLE_NAME, contentValues, selection, selectionArgs);
+                database = getWritableDatabase();
+                database.beginTransaction();
+                try {
+                    rowIds = findIds(database, TasksContract.TABLE_NAME, selection, selectionArgs);
+                    count = database.update(TasksContract.TABLE_NAME, contentValues, selection, selectionArgs);
+                    database.setTransactionSuccessful();
+                } finally {
+                    database.endTransaction();
+                }
                 break;
 
             case TASKS_ID:
-                database = mOpenHelper.getWritableDatabase();
+                database = getWritableDatabase();
                 long taskId = TasksContract.getTaskId(uri);
-                selectionCriteria = TasksContract.Columns._ID + " = " + taskId;
-                if(selection != null && selection.length() > 0) {
-                    selectionCriteria += " AND (" + selection + ")";
+                count = updateById(database, TasksContract.TABLE_NAME, taskId, contentValues, selection, selectionArgs);
+                rowIds = new long[]{taskId};
+                break;
+
+            case TIMINGS:
+                database = getWritableDatabase();
+                database.beginTransaction();
+                try {
+                    rowIds = findIds(database, TimingsContract.TABLE_NAME, selection, selectionArgs);
+                    count = database.update(TimingsContract.TABLE_NAME, contentValues, selection, selectionArgs);
+                    database.setTransactionSuccessful();
+                } finally {
+                    database.endTransaction();
                 }
-                count = database.update(TasksContract.TABLE_NAME, contentValues, selectionCriteria, selectionArgs);
                 break;
 
-//            case TIMINGS:
-//                database = mOpenHelper.getWritableDatabase();
-//                count = database.update(TimingsContract.TABLE_NAME, contentValues, selection, selectionArgs);
-//                break;
-//
-//            case TIMINGS_ID:
-//                database = mOpenHelper.getWritableDatabase();
-//                long taskId = TimingsContract.getTaskId(uri);
-//                selectionCriteria = TimingsContract.Columns._ID + " = " + taskId;
-//                if(selection != null && selection.length() > 0) {
-//                    selectionCriteria += " AND (" + selection + ")";
-//                }
-//                count = database.update(TimingsContract.TABLE_NAME, contentValues, selectionCriteria, selectionArgs);
-//                break;
+            case TIMINGS_ID:
+                database = getWritableDatabase();
+                long timingId = TimingsContract.getTimingId(uri);
+                count = updateById(database, TimingsContract.TABLE_NAME, timingId, contentValues, selection, selectionArgs);
+                rowIds = new long[]{timingId};
+                break;
 
             default:
                 throw new IllegalArgumentException("Unknown uri: " + uri);
         }
 
         if(count > 0) {
-            Log.d(TAG, "update: setting notifyChange with " + uri);
-            getContext().getContentResolver().notifyChange(uri, null);
+            if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "update: setting notifyChange with " + uri);
+            if(match == TASKS || match == TASKS_ID) {
+                notifyChange(TasksContract.CONTENT_URI, rowIds);
+            } else {
+                notifyChange(TimingsContract.CONTENT_URI, rowIds);
+            }
+            // the report shows task names and the summed timings, both may have changed
+            notifyChange(DurationsContract.CONTENT_URI, null);
         } else {
-            Log.d(TAG, "update: nothing deleted");
+            if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "update: nothing deleted");
+        }
+        if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "Existing update, returning " + count);
+        return count;
+    }
+
+    /**
+     * Batched mode: all rows are inserted inside one transaction, so importing or seeding N rows
+     * costs a single commit and a single change notification instead of one of each per row.
+     */
+    @Override
+    public int bulkInsert(@NonNull Uri uri, @NonNull ContentValues[] values) {
+        long start = System.nanoTime();
+        try {
+            return bulkInsertUri(uri, values);
+        } finally {
+            mMetrics.record(mUriMatcher.match(uri), ProviderMetrics.BULK_INSERT, start);
+        }
+    }
+
+    private int bulkInsertUri(Uri uri, ContentValues[] values) {
+        if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "bulkInsert called with uri: " + uri + ", rows: " + values.length);
+        final SQLiteDatabase database = getWritableDatabase();
+        final boolean outermost = beginBatch(database, isDeferNotify(uri));
+        boolean successful = false;
+        int count = 0;
+        try {
+            for(ContentValues contentValues : values) {
+                // not insert(), the rows are recorded once, as this bulk insert
+                if(insertUri(uri, contentValues) != null) {
+                    count++;
+                }
+            }
+            database.setTransactionSuccessful();
+            successful = true;
+        } finally {
+            endBatch(database, outermost, successful);
         }
-        Log.d(TAG, "Existing update, returning " + count);
+        if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "Exiting bulkInsert, returning " + count);
         return count;
     }
+
+    /**
+     * Applies all operations inside one transaction, if any operation fails nothing is committed.
+     * Observers get a single notification per changed uri once the batch has been committed.
+     */
+    @NonNull
+    @Override
+    public ContentProviderResult[] applyBatch(@NonNull ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "applyBatch called with " + operations.size() + " operations");
+        boolean defer = !operations.isEmpty();
+        for(ContentProviderOperation operation : operations) {
+            defer &= isDeferNotify(operation.getUri());
+        }
+        final SQLiteDatabase database = getWritableDatabase();
+        final boolean outermost = beginBatch(database, defer);
+        boolean successful = false;
+        try {
+            ContentProviderResult[] results = super.applyBatch(operations);
+            database.setTransactionSuccessful();
+            successful = true;
+            return results;
+        } finally {
+            endBatch(database, outermost, successful);
+        }
+    }
+
+    /**
+     * Starts a transaction and, unless a batch is already running on this thread,
+     * starts collecting change notifications.
+     * @param defer keep the notifications for {@link #METHOD_SEND_DEFERRED_NOTIFICATIONS} rather than sending them
+     * @return true if this call started the outermost batch
+     */
+    private boolean beginBatch(SQLiteDatabase database, boolean defer) {
+        database.beginTransaction();
+        if(mPendingNotifications.get() != null) {
+            return false;
+        }
+        PendingNotifications pending = new PendingNotifications();
+        pending.mDeferred = defer;
+        mPendingNotifications.set(pending);
+        return true;
+    }
+
+    /**
+     * Ends the transaction started by {@link #beginBatch(SQLiteDatabase, boolean)}. The outermost batch sends
+     * (or defers) the collected notifications, but only if its transaction was committed.
+     */
+    private void endBatch(SQLiteDatabase database, boolean outermost, boolean successful) {
+        boolean committed = false;
+        try {
+            database.endTransaction();
+            committed = successful;
+        } finally {
+            if(outermost) {
+                PendingNotifications pending = mPendingNotifications.get();
+                mPendingNotifications.remove();
+                if(committed && pending.mTasksChanged) {
+                    refreshTaskCache(pending.taskIds());
+                }
+                if(committed && pending.mDeferred) {
+                    if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "endBatch: deferring " + pending.mRows.size() + " rows and " + pending.mTables);
+                    synchronized(mDeferredNotifications) {
+                        mDeferredNotifications.addAll(pending);
+                    }
+                } else if(committed) {
+                    if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "endBatch: notifying " + pending.mRows.size() + " rows and " + pending.mTables);
+                    send(pending.mRows, pending.mTables);
+                }
+            }
+        }
+    }
+
+    /**
+     * Notifies observers that rows of the table changed, or defers the notification to the end of the running batch.
+     *
+     * Every changed row gets a notification on its own uri, then the table uri gets a single one.
+     * An observer registered on the table uri without notifyForDescendants only sees the table notification,
+     * one per change (or per batch) however many rows it touched. An observer that wants to know which rows changed
+     * registers with notifyForDescendants and gets the row uris, the table uri then marks the end of the change.
+     * @param tableUri the table that changed
+     * @param rowIds the rows that changed, null if they aren't known and the observers only get the table notification
+     */
+    private void notifyChange(Uri tableUri, long[] rowIds) {
+        PendingNotifications pending = mPendingNotifications.get();
+        if(pending == null) {
+            if(tableUri.equals(TasksContract.CONTENT_URI)) {
+                refreshTaskCache(rowIds);
+            }
+            Set<Uri> rows = new LinkedHashSet<>();
+            if(rowIds != null) {
+                for(long rowId : rowIds) {
+                    rows.add(ContentUris.withAppendedId(tableUri, rowId));
+                }
+            }
+            send(rows, Collections.singleton(tableUri));
+            return;
+        }
+        if(rowIds != null) {
+            for(long rowId : rowIds) {
+                pending.addRow(ContentUris.withAppendedId(tableUri, rowId));
+            }
+        }
+        pending.mTables.add(tableUri);
+        if(tableUri.equals(TasksContract.CONTENT_URI)) {
+            pending.addTasks(rowIds);
+        }
+    }
+
+    /**
+     * Brings the task cache up to date with a committed change, before the change is notified
+     * @param taskIds the changed tasks, null if they aren't known
+     */
+    private void refreshTaskCache(long[] taskIds) {
+        TaskCache cache;
+        synchronized(this) {
+            cache = mTaskCache;
+        }
+        if(cache != null) {
+            cache.refresh(taskIds);
+        }
+    }
+
+    private void sendDeferredNotifications() {
+        Set<Uri> rows;
+        Set<Uri> tables;
+        synchronized(mDeferredNotifications) {
+            rows = new LinkedHashSet<>(mDeferredNotifications.mRows);
+            tables = new LinkedHashSet<>(mDeferredNotifications.mTables);
+            mDeferredNotifications.clear();
+        }
+        if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "sendDeferredNotifications: notifying " + rows.size() + " rows and " + tables);
+        send(rows, tables);
+    }
+
+    private static boolean isUpsert(Uri uri) {
+        return uri.getBooleanQueryParameter(QUERY_PARAMETER_UPSERT, false);
+    }
+
+    private static boolean isDeferNotify(Uri uri) {
+        return uri.getBooleanQueryParameter(QUERY_PARAMETER_DEFER_NOTIFY, false);
+    }
+
+    private void send(Set<Uri> rows, Set<Uri> tables) {
+        ContentResolver contentResolver = getContext().getContentResolver();
+        for(Uri uri : rows) {
+            contentResolver.notifyChange(uri, null);
+        }
+        for(Uri uri : tables) {
+            contentResolver.notifyChange(uri, null);
+        }
+    }
+
+    /**
+     * Change notifications collected while a batch runs, sent in the same order as outside a batch:
+     * the rows first, then one notification per table
+     */
+    private static final class PendingNotifications {
+        final Set<Uri> mRows = new LinkedHashSet<>();
+        final Set<Uri> mTables = new LinkedHashSet<>();
+        boolean mRowsOverflowed;
+        // kept by endBatch for METHOD_SEND_DEFERRED_NOTIFICATIONS rather than sent
+        boolean mDeferred;
+        // the changed tasks endBatch refreshes the task cache with, only for the running batch
+        final Set<Long> mTaskIds = new HashSet<>();
+        boolean mTasksChanged;
+        boolean mTaskIdsUnknown;
+
+        void addRow(Uri row) {
+            if(mRowsOverflowed) {
+                return;
+            }
+            mRows.add(row);
+            if(mRows.size() > MAX_ROW_NOTIFICATIONS) {
+                // a big import, the table notifications are enough
+                mRows.clear();
+                mRowsOverflowed = true;
+            }
+        }
+
+        void addTasks(long[] ids) {
+            mTasksChanged = true;
+            if(mTaskIdsUnknown) {
+                return;
+            }
+            if(ids != null) {
+                for(long id : ids) {
+                    mTaskIds.add(id);
+                }
+            }
+            if(ids == null || mTaskIds.size() > MAX_ROW_NOTIFICATIONS) {
+                // reading them one by one would cost more than reading the whole table again when it's next queried
+                mTaskIds.clear();
+                mTaskIdsUnknown = true;
+            }
+        }
+
+        /**
+         * @return the changed tasks, null if they aren't known
+         */
+        long[] taskIds() {
+            if(mTaskIdsUnknown) {
+                return null;
+            }
+            long[] ids = new long[mTaskIds.size()];
+            int i = 0;
+            for(long id : mTaskIds) {
+                ids[i++] = id;
+            }
+            return ids;
+        }
+
+        void addAll(PendingNotifications other) {
+            if(other.mRowsOverflowed) {
+                mRows.clear();
+                mRowsOverflowed = true;
+            }
+            for(Uri row : other.mRows) {
+                addRow(row);
+            }
+            mTables.addAll(other.mTables);
+        }
+
+        void clear() {
+            mRows.clear();
+            mTables.clear();
+            mRowsOverflowed = false;
+        }
+    }
+
+    /**
+     * @return the ids of the rows matching the selection, or null if there are more than {@link #MAX_ROW_NOTIFICATIONS}
+     */
+    private static long[] findIds(SQLiteDatabase database, String table, String selection, String[] selectionArgs) {
+        Cursor cursor = database.query(table, new String[]{BaseColumns._ID}, selection, selectionArgs,
+                null, null, null, String.valueOf(MAX_ROW_NOTIFICATIONS + 1));
+        try {
+            if(cursor.getCount() > MAX_ROW_NOTIFICATIONS) {
+                return null;
+            }
+            long[] ids = new long[cursor.getCount()];
+            for(int i = 0; cursor.moveToNext(); i++) {
+                ids[i] = cursor.getLong(0);
+            }
+            return ids;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Updates the task with the _id and the name in contentValues, or else the first task with the same name,
+     * or inserts it. An _id that another task already has isn't the same task, the new row gets an _id of its own
+     * and the caller follows the returned id. Each lookup is one index search.
+     * @return the id of the task written
+     */
+    private long upsertTask(SQLiteDatabase database, ContentValues contentValues) {
+        StatementCache statements = statements(database);
+        database.beginTransaction();
+        try {
+            long taskId = -1;
+            Long importedId = contentValues.getAsLong(TasksContract.Columns._ID);
+            String name = contentValues.getAsString(TasksContract.Columns.TASKS_NAME);
+            if(importedId != null && name != null) {
+                taskId = statements.queryForId(FIND_SAME_TASK_SQL, importedId.toString(), name);
+            }
+            if(taskId < 0 && name != null) {
+                taskId = statements.queryForId(FIND_TASK_BY_NAME_SQL, name);
+            }
+            if(taskId < 0) {
+                ContentValues values = contentValues;
+                if(importedId != null && statements.queryForId(FIND_TASK_SQL, importedId.toString()) >= 0) {
+                    values = new ContentValues(contentValues);
+                    values.remove(TasksContract.Columns._ID);
+                }
+                taskId = statements.insert(TasksContract.TABLE_NAME, values);
+            } else {
+                ContentValues values = new ContentValues(contentValues);
+                values.remove(TasksContract.Columns._ID);
+                statements.updateById(TasksContract.TABLE_NAME, TasksContract.Columns._ID, taskId, values);
+            }
+            database.setTransactionSuccessful();
+            return taskId;
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    /**
+     * A timing of the same task with the same start time is the same timing, imported twice, its duration is updated.
+     * Anything else is inserted as by {@link #insertTiming(SQLiteDatabase, ContentValues)}.
+     * @return the id of the timing written
+     */
+    private long upsertTiming(SQLiteDatabase database, ContentValues contentValues) {
+        StatementCache statements = statements(database);
+        String taskId = contentValues.getAsString(TimingsContract.Columns.TIMINGS_TASK_ID);
+        String startTime = contentValues.getAsString(TimingsContract.Columns.TIMINGS_START_TIME);
+        if(taskId == null || startTime == null) {
+            // the insert fails on the not null constraint
+            return insertTiming(database, contentValues);
+        }
+        database.beginTransaction();
+        try {
+            long timingId = statements.queryForId(FIND_TIMING_SQL, taskId, startTime);
+            if(timingId < 0) {
+                timingId = insertTiming(database, contentValues);
+            } else if(contentValues.containsKey(TimingsContract.Columns.TIMINGS_DURATION)) {
+                ContentValues values = new ContentValues(1);
+                values.put(TimingsContract.Columns.TIMINGS_DURATION, contentValues.getAsLong(TimingsContract.Columns.TIMINGS_DURATION));
+                statements.updateById(TimingsContract.TABLE_NAME, TimingsContract.Columns._ID, timingId, values);
+            }
+            database.setTransactionSuccessful();
+            return timingId;
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    /**
+     * Timings are append-only, a caller supplied _id is dropped so an insert can never
+     * collide with, or overwrite, a timing that is already stored.
+     */
+    private long insertTiming(SQLiteDatabase database, ContentValues contentValues) {
+        if(contentValues != null && contentValues.containsKey(TimingsContract.Columns._ID)) {
+            contentValues = new ContentValues(contentValues);
+            contentValues.remove(TimingsContract.Columns._ID);
+        }
+        return statements(database).insert(TimingsContract.TABLE_NAME, contentValues);
+    }
+
+    /**
+     * A plain delete by id runs a cached statement, an extra selection falls back to SQLiteDatabase.
+     * Either way the id is bound as an argument rather than appended to the SQL.
+     */
+    private int deleteById(SQLiteDatabase database, String table, long id, String selection, String[] selectionArgs) {
+        if(selection == null || selection.length() == 0) {
+            return statements(database).deleteById(table, BaseColumns._ID, id);
+        }
+        String selectionCriteria = BaseColumns._ID + " = ? AND (" + selection + ")";
+        return database.delete(table, selectionCriteria, prependId(id, selectionArgs));
+    }
+
+    /**
+     * Same as {@link #deleteById(SQLiteDatabase, String, long, String, String[])} for updates
+     */
+    private int updateById(SQLiteDatabase database, String table, long id, ContentValues contentValues,
+                           String selection, String[] selectionArgs) {
+        if(selection == null || selection.length() == 0) {
+            return statements(database).updateById(table, BaseColumns._ID, id, contentValues);
+        }
+        String selectionCriteria = BaseColumns._ID + " = ? AND (" + selection + ")";
+        return database.update(table, contentValues, selectionCriteria, prependId(id, selectionArgs));
+    }
+
+    /**
+     * @return the task cache for the open database, a new one if the database has been reopened
+     */
+    private synchronized TaskCache taskCache(SQLiteDatabase database) {
+        if(mTaskCache == null || !mTaskCache.isFor(database)) {
+            mTaskCache = new TaskCache(database, mMetrics);
+        }
+        return mTaskCache;
+    }
+
+    /**
+     * @return the statement cache for the open database, a new one if the database has been reopened
+     */
+    private synchronized StatementCache statements(SQLiteDatabase database) {
+        if(mStatementCache == null || !mStatementCache.isFor(database)) {
+            if(mStatementCache != null) {
+                mStatementCache.close();
+            }
+            mStatementCache = new StatementCache(database);
+        }
+        return mStatementCache;
+    }
 }
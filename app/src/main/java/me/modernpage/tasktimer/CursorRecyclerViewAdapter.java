@@ -1,6 +1,8 @@
 package me.modernpage.tasktimer;
 
+import android.database.CharArrayBuffer;
 import android.database.Cursor;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -11,19 +13,52 @@ import android.widget.TextView;
 import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 
-public class CursorRecyclerViewAdapter extends RecyclerView.Adapter<CursorRecyclerViewAdapter.TaskViewHolder> {
+import java.util.List;
+
+public class CursorRecyclerViewAdapter extends RecyclerView.Adapter<CursorRecyclerViewAdapter.TaskViewHolder>
+        implements TaskPageCursor.OnRowsLoadedListener {
     private static final String TAG = "CursorRecyclerViewAdapt";
     private Cursor mCursor;
+    // mCursor when it is a paged cursor, whose rows can be placeholders until their page is loaded
+    private TaskPageCursor mPageCursor;
     private OnTaskClickListener mCallback;
 
+    // column indices of the current cursor, resolved once in swapCursor rather than on every bind
+    private int mIdColumn = -1;
+    private int mNameColumn = -1;
+    private int mDescriptionColumn = -1;
+    private int mSortOrderColumn = -1;
+
+    // ids of the rows being shown, when the loader took a snapshot of them
+    private TaskListSnapshot mSnapshot;
+
+    // the task being timed, its row shows the elapsed time
+    private long mRunningTaskId = TimerEngine.NO_TASK;
+    private long mRunningStartElapsed;
+
+    // a row dragged to a new place, shown there until the list with the move saved in it arrives.
+    // mDragFrom is its position in the cursor, mDragTo where it is shown, NO_POSITION when nothing has moved
+    private int mDragFrom = RecyclerView.NO_POSITION;
+    private int mDragTo = RecyclerView.NO_POSITION;
+    // the drag has ended and its move is being saved
+    private boolean mMovePending;
+
+    // payload of a rebind that only updates the timer of a row
+    private static final Object PAYLOAD_TIMER = new Object();
+
     public interface OnTaskClickListener {
         void onEditClick(Task task);
         void onDeleteClick(Task task);
+        void onTaskClick(Task task);
     }
 
     public CursorRecyclerViewAdapter(Cursor cursor, OnTaskClickListener callback) {
         mCursor = cursor;
         mCallback = callback;
+        resolveColumns(cursor);
+        attachPages(cursor);
+        // item ids are the task ids, so RecyclerView can keep track of rows when the list changes
+        setHasStableIds(true);
     }
 
     // viewType is used when populating different kind of views on the recycler view list
@@ -32,9 +67,21 @@ public class CursorRecyclerViewAdapter extends RecyclerView.Adapter<CursorRecycl
     @NonNull
     @Override
     public TaskViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
-        return new TaskViewHolder(LayoutInflater.from(parent.getContext()).inflate(R.layout.task_list_items, parent, false));
+        TaskViewHolder holder = new TaskViewHolder(LayoutInflater.from(parent.getContext()).inflate(R.layout.task_list_items, parent, false));
+        // one listener per view holder, it finds out which task was clicked when the click happens
+        ClickListener clickListener = new ClickListener(holder);
+        holder.mDeleteButton.setOnClickListener(clickListener);
+        holder.mEditButton.setOnClickListener(clickListener);
+        holder.itemView.setOnClickListener(clickListener);
+        return holder;
     }
 
+    /**
+     * Binding runs for every row that scrolls into view, so it doesn't allocate:
+     * the text is copied from the cursor window into buffers owned by the view holder,
+     * and a Task is only built when one of the row's buttons is clicked.
+     * A row whose page is still being read is bound empty, and again once the page is there (see {@link #onRowsLoaded}).
+     */
     @Override
     public void onBindViewHolder(@NonNull TaskViewHolder holder, int position) {
         if(mCursor == null || mCursor.getCount() == 0) {
@@ -43,41 +90,126 @@ public class CursorRecyclerViewAdapter extends RecyclerView.Adapter<CursorRecycl
             holder.mDescription.setText(R.string.instructions);
             holder.mDeleteButton.setVisibility(View.GONE);
             holder.mEditButton.setVisibility(View.GONE);
+            holder.mElapsed.setVisibility(View.GONE);
         } else {
-            if(!mCursor.moveToPosition(position)) {
-                throw new IllegalStateException("Couldn't move to the position : " + position);
+            if(!mCursor.moveToPosition(cursorPosition(position))) {
+                // a paged cursor can't find rows deleted after it was counted,
+                // the loader is already reloading the list, so just leave the row as it is
+                Log.d(TAG, "onBindViewHolder: couldn't move to the position : " + position);
+                return;
             }
-            
-            final Task task = new Task(mCursor.getLong(mCursor.getColumnIndex(TasksContract.Columns._ID)),
-                    mCursor.getString(mCursor.getColumnIndex(TasksContract.Columns.TASKS_NAME)),
-                    mCursor.getString(mCursor.getColumnIndex(TasksContract.Columns.TASKS_DESCRIPTION)),
-                    mCursor.getInt(mCursor.getColumnIndex(TasksContract.Columns.TASKS_SORTORDER)));
-            
-            holder.mName.setText(task.getName());
-            holder.mDescription.setText(task.getDescription());
+            if(mPageCursor != null && !mPageCursor.isRowLoaded()) {
+                // invisible rather than gone, so the row keeps its height when the page arrives
+                holder.mName.setText(null);
+                holder.mDescription.setText(null);
+                holder.mDeleteButton.setVisibility(View.INVISIBLE);
+                holder.mEditButton.setVisibility(View.INVISIBLE);
+                holder.mElapsed.setVisibility(View.GONE);
+                return;
+            }
+
+            setText(holder.mName, mCursor, mNameColumn, holder.mNameBuffer);
+            setText(holder.mDescription, mCursor, mDescriptionColumn, holder.mDescriptionBuffer);
             holder.mDeleteButton.setVisibility(View.VISIBLE);
             holder.mEditButton.setVisibility(View.VISIBLE);
+            bindTimer(holder, mCursor.getLong(mIdColumn));
+        }
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull TaskViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if(payloads.isEmpty() || payloads.contains(null) || mCursor == null || mCursor.getCount() == 0) {
+            onBindViewHolder(holder, position);
+            return;
+        }
+        // PAYLOAD_TIMER, a timer started or stopped, the rest of the row is unchanged
+        bindTimer(holder, getItemId(position));
+    }
+
+    /**
+     * Rebinds the rows of a page that has been read, they were bound as placeholders
+     * @param position the cursor position of the first row of the page
+     */
+    @Override
+    public void onRowsLoaded(int position, int count) {
+        if(mDragFrom == RecyclerView.NO_POSITION) {
+            notifyItemRangeChanged(position, count);
+            return;
+        }
+        // while a row is dragged the rows between its old and new place are shown one off, and the row itself elsewhere
+        int start = Math.max(0, position - 1);
+        int end = Math.min(getItemCount(), position + count + 1);
+        notifyItemRangeChanged(start, end - start);
+        if(mDragFrom >= position && mDragFrom < position + count && (mDragTo < start || mDragTo >= end)) {
+            notifyItemChanged(mDragTo);
+        }
+    }
+
+    /**
+     * Tells the adapter which task is being timed, its row shows the elapsed time
+     * @param taskId the running task, or TimerEngine.NO_TASK
+     * @param startElapsed SystemClock.elapsedRealtime when its timer started
+     */
+    public void setRunningTask(long taskId, long startElapsed) {
+        if(taskId == mRunningTaskId && startElapsed == mRunningStartElapsed) {
+            return;
+        }
+        mRunningTaskId = taskId;
+        mRunningStartElapsed = startElapsed;
+        // only bound rows are updated, and only their timer
+        notifyItemRangeChanged(0, getItemCount(), PAYLOAD_TIMER);
+    }
+
+    /**
+     * Shows the elapsed time in the row of the running task, without rebinding the rest of the row
+     */
+    void bindElapsed(TaskViewHolder holder, long elapsedSeconds) {
+        int length = formatElapsed(elapsedSeconds, holder.mElapsedChars);
+        holder.mElapsed.setText(holder.mElapsedChars, 0, length);
+    }
 
-            View.OnClickListener buttonListener = new View.OnClickListener() {
-                @Override
-                public void onClick(View view) {
-                    switch (view.getId()) {
-                        case R.id.tli_delete:
-                            if(mCallback != null)
-                                mCallback.onDeleteClick(task);
-                            break;
-                        case R.id.tli_edit:
-                            if(mCallback != null) 
-                                mCallback.onEditClick(task);
-                            break;
-                        default:
-                            Log.d(TAG, "onClick: found unexpected button id");
-                    }
-                }
-            };
-
-            holder.mDeleteButton.setOnClickListener(buttonListener);
-            holder.mEditButton.setOnClickListener(buttonListener);
+    private void bindTimer(TaskViewHolder holder, long taskId) {
+        if(taskId != mRunningTaskId || taskId == TimerEngine.NO_TASK) {
+            holder.mElapsed.setVisibility(View.GONE);
+            return;
+        }
+        bindElapsed(holder, (SystemClock.elapsedRealtime() - mRunningStartElapsed) / 1000);
+        holder.mElapsed.setVisibility(View.VISIBLE);
+    }
+
+    /**
+     * Writes seconds as hh:mm:ss, the same format as the durations report, into out
+     * @return the number of characters written
+     */
+    static int formatElapsed(long seconds, char[] out) {
+        long hours = seconds / 3600;
+        int minutes = (int) (seconds % 3600 / 60);
+        int secs = (int) (seconds % 60);
+
+        int hourDigits = 2;
+        for(long h = hours / 100; h > 0; h /= 10) {
+            hourDigits++;
+        }
+        for(int i = hourDigits - 1; i >= 0; i--) {
+            out[i] = (char) ('0' + hours % 10);
+            hours /= 10;
+        }
+        int length = hourDigits;
+        out[length++] = ':';
+        out[length++] = (char) ('0' + minutes / 10);
+        out[length++] = (char) ('0' + minutes % 10);
+        out[length++] = ':';
+        out[length++] = (char) ('0' + secs / 10);
+        out[length++] = (char) ('0' + secs % 10);
+        return length;
+    }
+
+    private static void setText(TextView textView, Cursor cursor, int column, CharArrayBuffer buffer) {
+        cursor.copyStringToBuffer(column, buffer);
+        if(buffer.sizeCopied > 0) {
+            textView.setText(buffer.data, 0, buffer.sizeCopied);
+        } else {
+            textView.setText(null);
         }
     }
 
@@ -86,6 +218,94 @@ public class CursorRecyclerViewAdapter extends RecyclerView.Adapter<CursorRecycl
         return (mCursor == null) || (mCursor.getCount() == 0) ? 1 : mCursor.getCount();
     }
 
+    @Override
+    public long getItemId(int position) {
+        if(mCursor == null || mCursor.getCount() == 0) {
+            // the instructions
+            return RecyclerView.NO_ID;
+        }
+        int cursorPosition = cursorPosition(position);
+        TaskListSnapshot snapshot = shownSnapshot();
+        if(snapshot != null && cursorPosition < snapshot.size()) {
+            return snapshot.getId(cursorPosition);
+        }
+        return mCursor.moveToPosition(cursorPosition) && isRowLoaded() ? mCursor.getLong(mIdColumn) : RecyclerView.NO_ID;
+    }
+
+    /**
+     * @return false if the cursor is on a row whose page hasn't been read yet
+     */
+    private boolean isRowLoaded() {
+        return mPageCursor == null || mPageCursor.isRowLoaded();
+    }
+
+    /**
+     * @return the cursor position of the row shown at the adapter position, they differ between a dragged row's
+     * old and new place while it is dragged and until the move is saved
+     */
+    private int cursorPosition(int position) {
+        if(mDragFrom == RecyclerView.NO_POSITION) {
+            return position;
+        }
+        if(position == mDragTo) {
+            return mDragFrom;
+        }
+        if(mDragFrom < mDragTo && position >= mDragFrom && position < mDragTo) {
+            return position + 1;
+        }
+        if(mDragTo < mDragFrom && position > mDragTo && position <= mDragFrom) {
+            return position - 1;
+        }
+        return position;
+    }
+
+    /**
+     * @return true if a row can be dragged now: there are tasks, and the last move has been saved
+     */
+    boolean canMove() {
+        return !mMovePending && mCursor != null && mCursor.getCount() > 1;
+    }
+
+    /**
+     * Shows the row at adapter position from at position to, while it is being dragged.
+     * Nothing is read or written, the move is only remembered, so every step of a drag is O(1).
+     */
+    void moveItem(int from, int to) {
+        if(mDragFrom == RecyclerView.NO_POSITION) {
+            mDragFrom = from;
+        }
+        mDragTo = to;
+        notifyItemMoved(from, to);
+    }
+
+    /**
+     * Ends the drag
+     * @return the moved task's id and the ids of the tasks now before and after it
+     * (TaskSortOrder.NO_TASK at the top or the bottom), or null if the row is back where it was.
+     * The row stays where it was dropped until the next {@link #swapCursor(Cursor, TaskListSnapshot.Change)}.
+     */
+    long[] finishMove() {
+        if(mDragFrom == RecyclerView.NO_POSITION || mDragFrom == mDragTo) {
+            mDragFrom = mDragTo = RecyclerView.NO_POSITION;
+            return null;
+        }
+        int count = mCursor.getCount();
+        long taskId = getItemId(mDragTo);
+        long previousId = mDragTo > 0 ? getItemId(mDragTo - 1) : TaskSortOrder.NO_TASK;
+        long nextId = mDragTo < count - 1 ? getItemId(mDragTo + 1) : TaskSortOrder.NO_TASK;
+        if(taskId == RecyclerView.NO_ID || (mDragTo > 0 && previousId == RecyclerView.NO_ID)
+                || (mDragTo < count - 1 && nextId == RecyclerView.NO_ID)) {
+            // a paged cursor lost the row or hasn't read a neighbour yet, put the row back rather than guess
+            int from = mDragFrom;
+            int to = mDragTo;
+            mDragFrom = mDragTo = RecyclerView.NO_POSITION;
+            notifyItemMoved(to, from);
+            return null;
+        }
+        mMovePending = true;
+        return new long[]{taskId, previousId, nextId};
+    }
+
     /**
      * Swap in a new Cursor, returning the old Cursor,
      * The returned old Cursor is <em>not</em> closed
@@ -96,12 +316,41 @@ public class CursorRecyclerViewAdapter extends RecyclerView.Adapter<CursorRecycl
      */
 
     public Cursor swapCursor(Cursor newCursor) {
+        return swapCursor(newCursor, null);
+    }
+
+    /**
+     * Swap in a new Cursor and notify only the rows that changed, as worked out by the loader.
+     * Falls back to notifyDataSetChanged when the change wasn't computed from the rows
+     * this adapter is showing, or when the list becomes or stops being empty.
+     * @param newCursor The new Cursor to be used
+     * @param change how newCursor differs from the previous list, may be null
+     * @return Returns the previously set Cursor, see {@link #swapCursor(Cursor)}
+     */
+    public Cursor swapCursor(Cursor newCursor, TaskListSnapshot.Change change) {
         if(newCursor == mCursor)
             return null;
 
         final Cursor oldCursor = mCursor;
+        // a dragged row is already shown where the new list has it, the diff would move it again
+        final boolean moved = mDragFrom != RecyclerView.NO_POSITION;
+        mDragFrom = mDragTo = RecyclerView.NO_POSITION;
+        mMovePending = false;
+        final boolean incremental = !moved && change != null && change.mDiff != null
+                && change.mFrom == shownSnapshot()
+                && oldCursor != null && oldCursor.getCount() > 0
+                && newCursor != null && newCursor.getCount() > 0;
+
         mCursor = newCursor;
-        if(newCursor != null) {
+        mSnapshot = change != null ? change.mTo : null;
+        resolveColumns(newCursor);
+        if(mPageCursor != null) {
+            mPageCursor.setOnRowsLoadedListener(null);
+        }
+        attachPages(newCursor);
+        if(incremental) {
+            change.mDiff.dispatchUpdatesTo(this);
+        } else if(newCursor != null) {
             // notify the observers about the new cursor
             notifyDataSetChanged();
         } else {
@@ -111,11 +360,96 @@ public class CursorRecyclerViewAdapter extends RecyclerView.Adapter<CursorRecycl
         return oldCursor;
     }
 
+    /**
+     * @return the snapshot of the rows being shown, the loader attaches it to a list it handed over without one
+     */
+    private TaskListSnapshot shownSnapshot() {
+        if(mSnapshot == null && mCursor instanceof TaskPageCursor) {
+            mSnapshot = ((TaskPageCursor) mCursor).getSnapshot();
+        }
+        return mSnapshot;
+    }
+
+    private void attachPages(Cursor cursor) {
+        mPageCursor = cursor instanceof TaskPageCursor ? (TaskPageCursor) cursor : null;
+        if(mPageCursor != null) {
+            mPageCursor.setOnRowsLoadedListener(this);
+        }
+    }
+
+    private void resolveColumns(Cursor cursor) {
+        if(cursor == null) {
+            mIdColumn = mNameColumn = mDescriptionColumn = mSortOrderColumn = -1;
+            return;
+        }
+        mIdColumn = cursor.getColumnIndexOrThrow(TasksContract.Columns._ID);
+        mNameColumn = cursor.getColumnIndexOrThrow(TasksContract.Columns.TASKS_NAME);
+        mDescriptionColumn = cursor.getColumnIndexOrThrow(TasksContract.Columns.TASKS_DESCRIPTION);
+        mSortOrderColumn = cursor.getColumnIndexOrThrow(TasksContract.Columns.TASKS_SORTORDER);
+    }
+
+    /**
+     * @return the task at the adapter position, or null if there is no task there
+     */
+    private Task taskAt(int position) {
+        if(position == RecyclerView.NO_POSITION || mCursor == null || !mCursor.moveToPosition(cursorPosition(position))
+                || !isRowLoaded()) {
+            return null;
+        }
+        return new Task(mCursor.getLong(mIdColumn),
+                mCursor.getString(mNameColumn),
+                mCursor.getString(mDescriptionColumn),
+                mCursor.isNull(mSortOrderColumn) ? null : mCursor.getLong(mSortOrderColumn));
+    }
+
+    /**
+     * Click listener for a row and its buttons, created once with the view holder
+     */
+    private class ClickListener implements View.OnClickListener {
+        private final TaskViewHolder mHolder;
+
+        ClickListener(TaskViewHolder holder) {
+            mHolder = holder;
+        }
+
+        @Override
+        public void onClick(View view) {
+            if(mCallback == null) {
+                return;
+            }
+            Task task = taskAt(mHolder.getAdapterPosition());
+            if(task == null) {
+                Log.d(TAG, "onClick: no task at the clicked position");
+                return;
+            }
+            if(view == mHolder.itemView) {
+                mCallback.onTaskClick(task);
+                return;
+            }
+            switch (view.getId()) {
+                case R.id.tli_delete:
+                    mCallback.onDeleteClick(task);
+                    break;
+                case R.id.tli_edit:
+                    mCallback.onEditClick(task);
+                    break;
+                default:
+                    Log.d(TAG, "onClick: found unexpected button id");
+            }
+        }
+    }
+
     static class TaskViewHolder extends RecyclerView.ViewHolder {
         TextView mName;
         TextView mDescription;
         ImageButton mEditButton;
         ImageButton mDeleteButton;
+        TextView mElapsed;
+
+        // reused for every row this holder shows
+        final CharArrayBuffer mNameBuffer = new CharArrayBuffer(64);
+        final CharArrayBuffer mDescriptionBuffer = new CharArrayBuffer(128);
+        final char[] mElapsedChars = new char[32];
 
         public TaskViewHolder(@NonNull View itemView) {
             super(itemView);
@@ -123,6 +457,7 @@ public class CursorRecyclerViewAdapter extends RecyclerView.Adapter<CursorRecycl
             mDescription = itemView.findViewById(R.id.tli_description);
             mEditButton = itemView.findViewById(R.id.tli_edit);
             mDeleteButton = itemView.findViewById(R.id.tli_delete);
+            mElapsed = itemView.findViewById(R.id.tli_elapsed);
         }
     }
 }
@@ -0,0 +1,214 @@
+package me.modernpage.tasktimer;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.provider.BaseColumns;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * Writes a whole table as CSV or JSON, for {@link AppProvider#openFile}.
+ *
+ * The rows are read in _id order a page at a time, each page a primary key search starting after the last _id written
+ * (keyset pagination, like {@link TaskPageCursor}). A page fits in one CursorWindow and is written out before the next
+ * is read, so memory stays the same however many rows the table has, and a page never costs more than the first.
+ * Rows inserted while the export runs are included if they come after the rows written so far.
+ */
+final class DataExport {
+    static final String FORMAT_CSV = "csv";
+    static final String FORMAT_JSON = "json";
+    static final String MIME_TYPE_CSV = "text/csv";
+    static final String MIME_TYPE_JSON = "application/json";
+
+    static final int PAGE_SIZE = 500;
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final String mTable;
+    private final String[] mColumns;
+    private final boolean mJson;
+
+    /**
+     * @param columns the columns to export, the first must be the table's _id
+     */
+    DataExport(String table, String[] columns, String format) {
+        if(!BaseColumns._ID.equals(columns[0])) {
+            throw new IllegalArgumentException("the first column must be " + BaseColumns._ID);
+        }
+        mTable = table;
+        mColumns = columns;
+        mJson = FORMAT_JSON.equals(format);
+    }
+
+    /**
+     * @return {@link #FORMAT_CSV} or {@link #FORMAT_JSON}, csv when the format isn't given
+     * @throws IllegalArgumentException for any other format
+     */
+    static String checkFormat(String format) {
+        if(format == null || FORMAT_CSV.equals(format)) {
+            return FORMAT_CSV;
+        }
+        if(FORMAT_JSON.equals(format)) {
+            return FORMAT_JSON;
+        }
+        throw new IllegalArgumentException("Unknown export format: " + format);
+    }
+
+    static String mimeTypeOf(String format) {
+        return FORMAT_JSON.equals(format) ? MIME_TYPE_JSON : MIME_TYPE_CSV;
+    }
+
+    /**
+     * Writes the table to out and flushes it, out is left open
+     * @return the number of rows written
+     */
+    long writeTo(SQLiteDatabase database, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, UTF_8), BUFFER_SIZE);
+        String limit = String.valueOf(PAGE_SIZE);
+        String[] afterId = new String[1];
+        long lastId = Long.MIN_VALUE;
+        long rows = 0;
+
+        writeStart(writer);
+        while(true) {
+            afterId[0] = String.valueOf(lastId);
+            Cursor cursor = database.query(mTable, mColumns, BaseColumns._ID + " > ?", afterId,
+                    null, null, BaseColumns._ID, limit);
+            int count;
+            try {
+                count = cursor.getCount();
+                while(cursor.moveToNext()) {
+                    writeRow(writer, cursor, rows++);
+                    lastId = cursor.getLong(0);
+                }
+            } finally {
+                cursor.close();
+            }
+            if(count < PAGE_SIZE) {
+                break;
+            }
+        }
+        writeEnd(writer);
+        writer.flush();
+        return rows;
+    }
+
+    private void writeStart(Writer writer) throws IOException {
+        if(mJson) {
+            writer.write('[');
+            return;
+        }
+        for(int i = 0; i < mColumns.length; i++) {
+            if(i > 0) {
+                writer.write(',');
+            }
+            writeCsvValue(writer, mColumns[i]);
+        }
+        writer.write("\r\n");
+    }
+
+    private void writeEnd(Writer writer) throws IOException {
+        if(mJson) {
+            writer.write("]\n");
+        }
+    }
+
+    private void writeRow(Writer writer, Cursor cursor, long row) throws IOException {
+        if(mJson) {
+            writer.write(row == 0 ? "\n{" : ",\n{");
+        }
+        for(int i = 0; i < mColumns.length; i++) {
+            if(i > 0) {
+                writer.write(',');
+            }
+            if(mJson) {
+                writeJsonString(writer, mColumns[i]);
+                writer.write(':');
+            }
+            switch (cursor.getType(i)) {
+                case Cursor.FIELD_TYPE_NULL:
+                    // an empty field in CSV
+                    if(mJson) {
+                        writer.write("null");
+                    }
+                    break;
+                case Cursor.FIELD_TYPE_INTEGER:
+                    writer.write(Long.toString(cursor.getLong(i)));
+                    break;
+                case Cursor.FIELD_TYPE_FLOAT:
+                    writer.write(Double.toString(cursor.getDouble(i)));
+                    break;
+                default:
+                    if(mJson) {
+                        writeJsonString(writer, cursor.getString(i));
+                    } else {
+                        writeCsvValue(writer, cursor.getString(i));
+                    }
+                    break;
+            }
+        }
+        writer.write(mJson ? "}" : "\r\n");
+    }
+
+    /**
+     * RFC 4180: a value with a comma, quote or line break is quoted, and its quotes doubled.
+     * An empty string is quoted too, an empty field stands for null.
+     */
+    static void writeCsvValue(Writer writer, String value) throws IOException {
+        boolean quote = value.isEmpty();
+        for(int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if(!quote) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        for(int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if(c == '"') {
+                writer.write('"');
+            }
+            writer.write(c);
+        }
+        writer.write('"');
+    }
+
+    static void writeJsonString(Writer writer, String value) throws IOException {
+        writer.write('"');
+        for(int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    writer.write("\\\"");
+                    break;
+                case '\\':
+                    writer.write("\\\\");
+                    break;
+                case '\n':
+                    writer.write("\\n");
+                    break;
+                case '\r':
+                    writer.write("\\r");
+                    break;
+                case '\t':
+                    writer.write("\\t");
+                    break;
+                default:
+                    if(c < 0x20) {
+                        writer.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        writer.write(c);
+                    }
+                    break;
+            }
+        }
+        writer.write('"');
+    }
+}
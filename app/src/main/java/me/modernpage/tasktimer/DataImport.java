@@ -0,0 +1,416 @@
+package me.modernpage.tasktimer;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.OperationApplicationException;
+import android.net.Uri;
+import android.os.RemoteException;
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.LongSparseArray;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads back what {@link DataExport} writes, the tasks or the timings as CSV or JSON, into AppProvider.
+ *
+ * The input is parsed a row at a time and written a chunk of {@link #CHUNK_SIZE} rows at a time, each chunk one
+ * applyBatch (tasks) or bulkInsert (timings), so one transaction, however big the input is.
+ * The rows are upserts ({@link AppProvider#QUERY_PARAMETER_UPSERT}): importing a backup twice, or over the data it
+ * was taken from, updates the rows instead of duplicating them. A task can end up under another _id than in the
+ * export, when a task of the same name already had one or a task of another name has its _id, the timings
+ * imported afterwards follow it.
+ *
+ * The chunks defer their change notifications ({@link AppProvider#QUERY_PARAMETER_DEFER_NOTIFY}), the observers
+ * hear about the whole import once, from {@link #finish()}, instead of requerying after every chunk.
+ * A row that can't be read stops the import with an IOException, the chunks before it stay imported.
+ * So does interrupting the importing thread, with an InterruptedIOException before the next chunk is written.
+ */
+final class DataImport {
+    static final int CHUNK_SIZE = 5000;
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final ContentResolver mContentResolver;
+    private final Uri mTasksUri;
+    private final Uri mTimingsUri;
+
+    // the _id of an imported task in the export, to the _id it was written to
+    private final LongSparseArray<Long> mTaskIds = new LongSparseArray<>();
+    private long mTaskCount;
+    private long mTimingCount;
+
+    DataImport(ContentResolver contentResolver) {
+        mContentResolver = contentResolver;
+        mTasksUri = importUri(TasksContract.CONTENT_URI);
+        mTimingsUri = importUri(TimingsContract.CONTENT_URI);
+    }
+
+    private static Uri importUri(Uri tableUri) {
+        return tableUri.buildUpon()
+                .appendQueryParameter(AppProvider.QUERY_PARAMETER_UPSERT, "true")
+                .appendQueryParameter(AppProvider.QUERY_PARAMETER_DEFER_NOTIFY, "true")
+                .build();
+    }
+
+    /**
+     * @return the table an export is of, from the columns of its first row, null if it has no rows
+     */
+    static String tableOf(InputStream in) throws IOException {
+        Map<String, String> row = new HashMap<>();
+        return open(in).next(row) ? tableOf(row) : null;
+    }
+
+    private static String tableOf(Map<String, String> row) {
+        return row.containsKey(TimingsContract.Columns.TIMINGS_TASK_ID) ? TimingsContract.TABLE_NAME : TasksContract.TABLE_NAME;
+    }
+
+    /**
+     * Imports one export, of the tasks or of the timings. Import the tasks before their timings,
+     * timings of tasks that weren't imported keep their TaskId.
+     * @return the table imported into, null if the export has no rows
+     */
+    String importFrom(InputStream in) throws IOException {
+        Rows rows = open(in);
+        Map<String, String> row = new HashMap<>();
+        if(!rows.next(row)) {
+            return null;
+        }
+        String table = tableOf(row);
+        if(TimingsContract.TABLE_NAME.equals(table)) {
+            importTimings(rows, row);
+        } else {
+            importTasks(rows, row);
+        }
+        return table;
+    }
+
+    /**
+     * Sends the change notifications of the import, call it once the import is over, also when it failed
+     */
+    void finish() {
+        mContentResolver.call(AppProvider.CONTENT_AUTHORITY_URI, AppProvider.METHOD_SEND_DEFERRED_NOTIFICATIONS, null, null);
+    }
+
+    long getTaskCount() {
+        return mTaskCount;
+    }
+
+    long getTimingCount() {
+        return mTimingCount;
+    }
+
+    private void importTasks(Rows rows, Map<String, String> row) throws IOException {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        // the _id in the export of each operation, -1 if there was none
+        long[] importedIds = new long[CHUNK_SIZE];
+        do {
+            ContentValues values = new ContentValues(4);
+            Long importedId = optLong(row, TasksContract.Columns._ID);
+            if(importedId != null) {
+                values.put(TasksContract.Columns._ID, importedId);
+            }
+            String name = row.get(TasksContract.Columns.TASKS_NAME);
+            if(name == null) {
+                throw new IOException("Task " + (mTaskCount + operations.size() + 1) + " has no name");
+            }
+            values.put(TasksContract.Columns.TASKS_NAME, name);
+            // a column that isn't in the export leaves the stored value alone
+            if(row.containsKey(TasksContract.Columns.TASKS_DESCRIPTION)) {
+                values.put(TasksContract.Columns.TASKS_DESCRIPTION, row.get(TasksContract.Columns.TASKS_DESCRIPTION));
+            }
+            if(row.containsKey(TasksContract.Columns.TASKS_SORTORDER)) {
+                values.put(TasksContract.Columns.TASKS_SORTORDER, optLong(row, TasksContract.Columns.TASKS_SORTORDER));
+            }
+            importedIds[operations.size()] = importedId != null ? importedId : -1;
+            operations.add(ContentProviderOperation.newInsert(mTasksUri).withValues(values).build());
+            if(operations.size() == CHUNK_SIZE) {
+                applyTasks(operations, importedIds);
+            }
+        } while(rows.next(row));
+        if(!operations.isEmpty()) {
+            applyTasks(operations, importedIds);
+        }
+    }
+
+    private void applyTasks(ArrayList<ContentProviderOperation> operations, long[] importedIds) throws IOException {
+        checkInterrupted();
+        ContentProviderResult[] results;
+        try {
+            results = mContentResolver.applyBatch(AppProvider.CONTENT_AUTHORITY, operations);
+        } catch (RemoteException e) {
+            throw new IOException("Importing tasks failed", e);
+        } catch (OperationApplicationException e) {
+            throw new IOException("Importing tasks failed", e);
+        }
+        for(int i = 0; i < results.length; i++) {
+            if(importedIds[i] >= 0) {
+                mTaskIds.put(importedIds[i], ContentUris.parseId(results[i].uri));
+            }
+        }
+        mTaskCount += results.length;
+        operations.clear();
+    }
+
+    private void importTimings(Rows rows, Map<String, String> row) throws IOException {
+        // the provider is done with the values once bulkInsert returns, the chunk is refilled in place
+        ContentValues[] chunk = new ContentValues[CHUNK_SIZE];
+        int size = 0;
+        do {
+            ContentValues values = chunk[size];
+            if(values == null) {
+                values = chunk[size] = new ContentValues(3);
+            }
+            long taskId = requireLong(row, TimingsContract.Columns.TIMINGS_TASK_ID);
+            Long importedTaskId = mTaskIds.get(taskId);
+            values.put(TimingsContract.Columns.TIMINGS_TASK_ID, importedTaskId != null ? importedTaskId : taskId);
+            values.put(TimingsContract.Columns.TIMINGS_START_TIME, requireLong(row, TimingsContract.Columns.TIMINGS_START_TIME));
+            Long duration = optLong(row, TimingsContract.Columns.TIMINGS_DURATION);
+            if(duration != null) {
+                values.put(TimingsContract.Columns.TIMINGS_DURATION, duration);
+            } else {
+                values.remove(TimingsContract.Columns.TIMINGS_DURATION);
+            }
+            if(++size == CHUNK_SIZE) {
+                insertTimings(chunk, size);
+                size = 0;
+            }
+        } while(rows.next(row));
+        if(size > 0) {
+            insertTimings(chunk, size);
+        }
+    }
+
+    private void insertTimings(ContentValues[] chunk, int size) throws IOException {
+        checkInterrupted();
+        mContentResolver.bulkInsert(mTimingsUri, size == chunk.length ? chunk : Arrays.copyOf(chunk, size));
+        mTimingCount += size;
+    }
+
+    private static void checkInterrupted() throws InterruptedIOException {
+        if(Thread.interrupted()) {
+            throw new InterruptedIOException("Import cancelled");
+        }
+    }
+
+    private long requireLong(Map<String, String> row, String column) throws IOException {
+        Long value = optLong(row, column);
+        if(value == null) {
+            throw new IOException("Timing " + (mTimingCount + 1) + " has no " + column);
+        }
+        return value;
+    }
+
+    private static Long optLong(Map<String, String> row, String column) throws IOException {
+        String value = row.get(column);
+        // a quoted empty field is no number either
+        if(value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return Long.valueOf(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IOException(column + " isn't a number: " + value, e);
+        }
+    }
+
+    /**
+     * JSON starts with the array of rows, anything else is read as CSV. A byte order mark, which spreadsheets
+     * put in front of the CSV they save, isn't part of the first column's name.
+     */
+    private static Rows open(InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"), BUFFER_SIZE);
+        reader.mark(1);
+        if(reader.read() != '\uFEFF') {
+            reader.reset();
+        }
+        reader.mark(BUFFER_SIZE);
+        int c;
+        do {
+            c = reader.read();
+        } while(c != -1 && Character.isWhitespace(c));
+        reader.reset();
+        return c == '[' ? new JsonRows(reader) : new CsvRows(reader);
+    }
+
+    /**
+     * The rows of an export, by column name, all values as strings. Null stands for SQL null,
+     * in CSV that is an empty field, a quoted empty field is an empty string.
+     */
+    private interface Rows {
+        /**
+         * Reads the next row into row
+         * @return false at the end of the input
+         */
+        boolean next(Map<String, String> row) throws IOException;
+    }
+
+    /**
+     * RFC 4180, the first record names the columns
+     */
+    private static final class CsvRows implements Rows {
+        private final Reader mReader;
+        private final char[] mBuffer = new char[BUFFER_SIZE];
+        private int mPosition;
+        private int mLimit;
+        private final StringBuilder mField = new StringBuilder();
+        // null for an empty field that wasn't quoted
+        private final ArrayList<String> mFields = new ArrayList<>();
+        private String[] mHeader;
+
+        CsvRows(Reader reader) {
+            mReader = reader;
+        }
+
+        @Override
+        public boolean next(Map<String, String> row) throws IOException {
+            if(mHeader == null) {
+                if(!readRecord()) {
+                    return false;
+                }
+                mHeader = mFields.toArray(new String[0]);
+            }
+            do {
+                if(!readRecord()) {
+                    return false;
+                }
+                // skip blank lines
+            } while(mFields.size() == 1 && mFields.get(0) == null);
+            row.clear();
+            for(int i = 0; i < mHeader.length && i < mFields.size(); i++) {
+                row.put(mHeader[i], mFields.get(i));
+            }
+            return true;
+        }
+
+        /**
+         * Reads one record into mFields
+         * @return false at the end of the input
+         */
+        private boolean readRecord() throws IOException {
+            mFields.clear();
+            mField.setLength(0);
+            int c = read();
+            if(c == -1) {
+                return false;
+            }
+            boolean quoted = false;
+            // whether the field being read started with a quote
+            boolean wasQuoted = false;
+            while(true) {
+                if(quoted) {
+                    if(c == -1) {
+                        throw new IOException("Quoted CSV field isn't closed");
+                    }
+                    if(c == '"') {
+                        c = read();
+                        if(c != '"') {
+                            // the closing quote, c is the character after it
+                            quoted = false;
+                            continue;
+                        }
+                    }
+                    mField.append((char) c);
+                } else if(c == '"' && mField.length() == 0) {
+                    quoted = true;
+                    wasQuoted = true;
+                } else if(c == ',') {
+                    addField(wasQuoted);
+                    wasQuoted = false;
+                } else if(c == '\r' || c == '\n' || c == -1) {
+                    addField(wasQuoted);
+                    if(c == '\r' && read() != '\n') {
+                        unread();
+                    }
+                    return true;
+                } else {
+                    mField.append((char) c);
+                }
+                c = read();
+            }
+        }
+
+        private void addField(boolean quoted) {
+            mFields.add(mField.length() == 0 && !quoted ? null : mField.toString());
+            mField.setLength(0);
+        }
+
+        private int read() throws IOException {
+            if(mPosition == mLimit) {
+                mLimit = mReader.read(mBuffer, 0, mBuffer.length);
+                mPosition = 0;
+                if(mLimit <= 0) {
+                    mLimit = 0;
+                    return -1;
+                }
+            }
+            return mBuffer[mPosition++];
+        }
+
+        /**
+         * Puts back the character just read, at the end of the input there is nothing to put back
+         */
+        private void unread() {
+            if(mPosition > 0) {
+                mPosition--;
+            }
+        }
+    }
+
+    /**
+     * An array of objects, one per row
+     */
+    private static final class JsonRows implements Rows {
+        private final JsonReader mReader;
+        private boolean mStarted;
+        private boolean mEnded;
+
+        JsonRows(Reader reader) {
+            mReader = new JsonReader(reader);
+        }
+
+        @Override
+        public boolean next(Map<String, String> row) throws IOException {
+            if(!mStarted) {
+                mReader.beginArray();
+                mStarted = true;
+            }
+            if(mEnded) {
+                return false;
+            }
+            if(!mReader.hasNext()) {
+                mReader.endArray();
+                mEnded = true;
+                return false;
+            }
+            row.clear();
+            mReader.beginObject();
+            while(mReader.hasNext()) {
+                String name = mReader.nextName();
+                JsonToken token = mReader.peek();
+                if(token == JsonToken.NULL) {
+                    mReader.nextNull();
+                    row.put(name, null);
+                } else if(token == JsonToken.STRING || token == JsonToken.NUMBER) {
+                    row.put(name, mReader.nextString());
+                } else {
+                    // no column of ours is an object, an array or a boolean
+                    mReader.skipValue();
+                }
+            }
+            mReader.endObject();
+            return true;
+        }
+    }
+}
@@ -0,0 +1,405 @@
+package me.modernpage.tasktimer;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.zip.CRC32;
+
+/**
+ * A compact binary copy of the tasks and their timings, what {@link SnapshotBackupAgent} backs up
+ * instead of the database file.
+ *
+ * Layout, version 1 (varint: 7 bits a byte, low bits first; zigzag: a signed varint):
+ * <pre>
+ *   "TTS1"
+ *   per task, in _id order:
+ *     varint  _id - previous _id          (&gt; 0, a 0 ends the tasks)
+ *     string  name                        (varint byte length, UTF-8)
+ *     varint  flags                       (1: has a description, 2: has a sortOrder)
+ *     string  description                 (if flag 1)
+ *     zigzag  sortOrder                   (if flag 2)
+ *     per timing of the task, in StartTime order:
+ *       varint  StartTime - previous StartTime + 1   (previous is 0 for the first, a 0 ends the timings)
+ *       varint  Duration
+ *   int     CRC32 of everything before it
+ * </pre>
+ * A timing mostly takes 4 or 5 bytes, against the Timings row, its index entry and its share of TaskDurations
+ * in the database. Timings get new _ids on restore, nothing refers to them, and TaskDurations is rebuilt by the triggers.
+ *
+ * Both directions stream through a small buffer: writing pages through the tables like {@link DataExport},
+ * restoring inserts each row as it is read, in one transaction that only commits if the CRC matches.
+ */
+final class DataSnapshot {
+    private static final int MAGIC = 0x54545331;     // "TTS1", the version is the last byte
+
+    private static final int FLAG_DESCRIPTION = 1;
+    private static final int FLAG_SORT_ORDER = 2;
+
+    static final int PAGE_SIZE = 500;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // a varint of a long never takes more
+    private static final int MAX_VARINT_BYTES = 10;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String[] TASK_COLUMNS = {TasksContract.Columns._ID,
+            TasksContract.Columns.TASKS_NAME,
+            TasksContract.Columns.TASKS_DESCRIPTION,
+            TasksContract.Columns.TASKS_SORTORDER};
+
+    private static final String[] TIMING_COLUMNS = {TimingsContract.Columns._ID,
+            TimingsContract.Columns.TIMINGS_START_TIME,
+            TimingsContract.Columns.TIMINGS_DURATION};
+
+    // the next page of a task's timings, a range of the Timings_TaskId_StartTime_Duration index, in order and covered
+    private static final String TIMINGS_PAGE_SELECTION = TimingsContract.Columns.TIMINGS_TASK_ID + " = ?"
+            + " and " + TimingsContract.Columns.TIMINGS_START_TIME + " >= ?"
+            + " and (" + TimingsContract.Columns.TIMINGS_START_TIME + " > ? or " + TimingsContract.Columns._ID + " > ?)";
+    private static final String TIMINGS_PAGE_ORDER = TimingsContract.Columns.TIMINGS_START_TIME + ", " + TimingsContract.Columns._ID;
+
+    private static final String INSERT_TASK_SQL = "insert into " + TasksContract.TABLE_NAME + " ("
+            + TasksContract.Columns._ID + ", " + TasksContract.Columns.TASKS_NAME + ", "
+            + TasksContract.Columns.TASKS_DESCRIPTION + ", " + TasksContract.Columns.TASKS_SORTORDER + ") values (?, ?, ?, ?)";
+
+    private static final String INSERT_TIMING_SQL = "insert into " + TimingsContract.TABLE_NAME + " ("
+            + TimingsContract.Columns.TIMINGS_TASK_ID + ", " + TimingsContract.Columns.TIMINGS_START_TIME + ", "
+            + TimingsContract.Columns.TIMINGS_DURATION + ") values (?, ?, ?)";
+
+    private DataSnapshot() {
+        // static methods only
+    }
+
+    /**
+     * Writes a snapshot of the database to out. It is read in one transaction, so it is consistent,
+     * writers wait for it to finish.
+     * @return the number of timings written
+     */
+    static long write(SQLiteDatabase database, WritableByteChannel out) throws IOException {
+        Output output = new Output(out);
+        output.putInt(MAGIC);
+        long timings = 0;
+        database.beginTransactionNonExclusive();
+        try {
+            String limit = String.valueOf(PAGE_SIZE);
+            String[] afterId = new String[1];
+            long lastId = 0;
+            while(true) {
+                afterId[0] = String.valueOf(lastId);
+                Cursor cursor = database.query(TasksContract.TABLE_NAME, TASK_COLUMNS, TasksContract.Columns._ID + " > ?", afterId,
+                        null, null, TasksContract.Columns._ID, limit);
+                int count;
+                try {
+                    count = cursor.getCount();
+                    while(cursor.moveToNext()) {
+                        long taskId = cursor.getLong(0);
+                        output.putVarint(taskId - lastId);
+                        output.putString(cursor.getString(1));
+                        int flags = (cursor.isNull(2) ? 0 : FLAG_DESCRIPTION) | (cursor.isNull(3) ? 0 : FLAG_SORT_ORDER);
+                        output.putVarint(flags);
+                        if((flags & FLAG_DESCRIPTION) != 0) {
+                            output.putString(cursor.getString(2));
+                        }
+                        if((flags & FLAG_SORT_ORDER) != 0) {
+                            output.putZigzag(cursor.getLong(3));
+                        }
+                        timings += writeTimings(database, taskId, output);
+                        lastId = taskId;
+                    }
+                } finally {
+                    cursor.close();
+                }
+                if(count < PAGE_SIZE) {
+                    break;
+                }
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+        output.putVarint(0);
+        output.finish();
+        return timings;
+    }
+
+    private static long writeTimings(SQLiteDatabase database, long taskId, Output output) throws IOException {
+        String limit = String.valueOf(PAGE_SIZE);
+        String[] selectionArgs = {String.valueOf(taskId), null, null, null};
+        long lastStartTime = 0;
+        long lastId = Long.MIN_VALUE;
+        long written = 0;
+        while(true) {
+            // the first page starts before any StartTime
+            selectionArgs[1] = selectionArgs[2] = String.valueOf(written == 0 ? Long.MIN_VALUE : lastStartTime);
+            selectionArgs[3] = String.valueOf(lastId);
+            Cursor cursor = database.query(TimingsContract.TABLE_NAME, TIMING_COLUMNS, TIMINGS_PAGE_SELECTION, selectionArgs,
+                    null, null, TIMINGS_PAGE_ORDER, limit);
+            int count;
+            try {
+                count = cursor.getCount();
+                while(cursor.moveToNext()) {
+                    long startTime = cursor.getLong(1);
+                    if(startTime < lastStartTime) {
+                        // only the first timing of a task can, and a delta of 0 would end the timings
+                        throw new IOException("Timing " + cursor.getLong(0) + " starts before the epoch");
+                    }
+                    output.putVarint(startTime - lastStartTime + 1);
+                    output.putVarint(cursor.getLong(2));
+                    lastStartTime = startTime;
+                    lastId = cursor.getLong(0);
+                    written++;
+                }
+            } finally {
+                cursor.close();
+            }
+            if(count < PAGE_SIZE) {
+                break;
+            }
+        }
+        output.putVarint(0);
+        return written;
+    }
+
+    /**
+     * Replaces the tasks and timings in the database with the snapshot, in one transaction.
+     * A snapshot that is damaged, cut short or of an unknown version leaves the database as it was.
+     * @return the number of timings restored
+     */
+    static long restore(SQLiteDatabase database, ReadableByteChannel in) throws IOException {
+        Input input = new Input(in);
+        int magic = input.getInt();
+        if(magic != MAGIC) {
+            throw new IOException(String.format("Not a snapshot this version can read, header %08x", magic));
+        }
+        SQLiteStatement insertTask = database.compileStatement(INSERT_TASK_SQL);
+        SQLiteStatement insertTiming = database.compileStatement(INSERT_TIMING_SQL);
+        long timings = 0;
+        database.beginTransaction();
+        try {
+            // the triggers take the timings and the durations with the tasks
+            database.delete(TasksContract.TABLE_NAME, null, null);
+            database.delete(TimingsContract.TABLE_NAME, null, null);
+            database.delete(DurationsContract.SUMMARY_TABLE_NAME, null, null);
+
+            long taskId = 0;
+            long idDelta;
+            while((idDelta = input.getVarint()) != 0) {
+                taskId += idDelta;
+                insertTask.bindLong(1, taskId);
+                insertTask.bindString(2, input.getString());
+                int flags = (int) input.getVarint();
+                if((flags & FLAG_DESCRIPTION) != 0) {
+                    insertTask.bindString(3, input.getString());
+                } else {
+                    insertTask.bindNull(3);
+                }
+                if((flags & FLAG_SORT_ORDER) != 0) {
+                    insertTask.bindLong(4, input.getZigzag());
+                } else {
+                    insertTask.bindNull(4);
+                }
+                insertTask.executeInsert();
+
+                long startTime = 0;
+                long startDelta;
+                insertTiming.bindLong(1, taskId);
+                while((startDelta = input.getVarint()) != 0) {
+                    startTime += startDelta - 1;
+                    insertTiming.bindLong(2, startTime);
+                    insertTiming.bindLong(3, input.getVarint());
+                    insertTiming.executeInsert();
+                    timings++;
+                }
+            }
+            input.checkCrc();
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+            insertTask.close();
+            insertTiming.close();
+        }
+        return timings;
+    }
+
+    /**
+     * Encodes into a buffer that is written to the channel whenever it fills up, keeping the CRC of what was written
+     */
+    private static final class Output {
+        private final WritableByteChannel mChannel;
+        private final ByteBuffer mBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private final CRC32 mCrc = new CRC32();
+
+        Output(WritableByteChannel channel) {
+            mChannel = channel;
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(4);
+            mBuffer.putInt(value);
+        }
+
+        void putVarint(long value) throws IOException {
+            ensure(MAX_VARINT_BYTES);
+            while((value & ~0x7FL) != 0) {
+                mBuffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            mBuffer.put((byte) value);
+        }
+
+        void putZigzag(long value) throws IOException {
+            putVarint((value << 1) ^ (value >> 63));
+        }
+
+        void putString(String value) throws IOException {
+            byte[] bytes = value.getBytes(UTF_8);
+            putVarint(bytes.length);
+            for(int offset = 0; offset < bytes.length; ) {
+                ensure(1);
+                int length = Math.min(mBuffer.remaining(), bytes.length - offset);
+                mBuffer.put(bytes, offset, length);
+                offset += length;
+            }
+        }
+
+        /**
+         * Writes the CRC and whatever is still buffered, the channel is left open
+         */
+        void finish() throws IOException {
+            flush();
+            mBuffer.putInt((int) mCrc.getValue());
+            drain();
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if(mBuffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            mCrc.update(mBuffer.array(), 0, mBuffer.position());
+            drain();
+        }
+
+        private void drain() throws IOException {
+            mBuffer.flip();
+            while(mBuffer.hasRemaining()) {
+                mChannel.write(mBuffer);
+            }
+            mBuffer.clear();
+        }
+    }
+
+    /**
+     * Decodes from a buffer that is refilled from the channel as it runs low, keeping the CRC of what was read
+     */
+    private static final class Input {
+        private final ReadableByteChannel mChannel;
+        private final ByteBuffer mBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private final CRC32 mCrc = new CRC32();
+        private boolean mEndOfInput;
+
+        Input(ReadableByteChannel channel) {
+            mChannel = channel;
+            mBuffer.limit(0);
+        }
+
+        int getInt() throws IOException {
+            require(4);
+            return mBuffer.getInt();
+        }
+
+        long getVarint() throws IOException {
+            fill(MAX_VARINT_BYTES);
+            long value = 0;
+            for(int shift = 0; shift < 64; shift += 7) {
+                if(!mBuffer.hasRemaining()) {
+                    throw new EOFException("Snapshot is cut short");
+                }
+                byte b = mBuffer.get();
+                value |= (long) (b & 0x7F) << shift;
+                if((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Snapshot is damaged, varint is too long");
+        }
+
+        long getZigzag() throws IOException {
+            long value = getVarint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        String getString() throws IOException {
+            long length = getVarint();
+            if(length < 0 || length > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot is damaged, string length " + length);
+            }
+            if(length <= BUFFER_SIZE) {
+                require((int) length);
+                String value = new String(mBuffer.array(), mBuffer.position(), (int) length, UTF_8);
+                mBuffer.position(mBuffer.position() + (int) length);
+                return value;
+            }
+            byte[] bytes = new byte[(int) length];
+            for(int offset = 0; offset < bytes.length; ) {
+                require(1);
+                int count = Math.min(mBuffer.remaining(), bytes.length - offset);
+                mBuffer.get(bytes, offset, count);
+                offset += count;
+            }
+            return new String(bytes, UTF_8);
+        }
+
+        /**
+         * Reads the CRC that follows what has been read so far and compares it
+         */
+        void checkCrc() throws IOException {
+            mCrc.update(mBuffer.array(), 0, mBuffer.position());
+            int expected = (int) mCrc.getValue();
+            mBuffer.compact().flip();
+            // the CRC isn't part of what it covers
+            int crc = getIntUnchecked();
+            if(crc != expected) {
+                throw new IOException("Snapshot is damaged, CRC doesn't match");
+            }
+        }
+
+        private int getIntUnchecked() throws IOException {
+            fill(4);
+            if(mBuffer.remaining() < 4) {
+                throw new EOFException("Snapshot is cut short");
+            }
+            return mBuffer.getInt();
+        }
+
+        private void require(int bytes) throws IOException {
+            fill(bytes);
+            if(mBuffer.remaining() < bytes) {
+                throw new EOFException("Snapshot is cut short");
+            }
+        }
+
+        /**
+         * Reads until at least bytes are buffered, or the channel has no more
+         */
+        private void fill(int bytes) throws IOException {
+            if(mBuffer.remaining() >= bytes || mEndOfInput) {
+                return;
+            }
+            // the bytes consumed are done with, they go into the CRC before the buffer moves
+            mCrc.update(mBuffer.array(), 0, mBuffer.position());
+            mBuffer.compact();
+            while(mBuffer.position() < bytes && !mEndOfInput) {
+                mEndOfInput = mChannel.read(mBuffer) < 0;
+            }
+            mBuffer.flip();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package me.modernpage.tasktimer;
+
+import android.content.ContentUris;
+import android.net.Uri;
+import android.provider.BaseColumns;
+
+import static me.modernpage.tasktimer.AppProvider.CONTENT_AUTHORITY;
+import static me.modernpage.tasktimer.AppProvider.CONTENT_AUTHORITY_URI;
+
+/**
+ * Contract for the durations report, the total time spent on each task per day.
+ *
+ * The report reads from a view over the {@link #SUMMARY_TABLE_NAME} table, which holds one row per task and day.
+ * Triggers on the Timings table keep the summary up to date as timings are written, so opening the
+ * report never has to group the raw timings. The report is read-only.
+ */
+public class DurationsContract {
+    static final String TABLE_NAME = "vwTaskDurations";
+    static final String SUMMARY_TABLE_NAME = "TaskDurations";
+
+    public static class Columns {
+        public static final String _ID = BaseColumns._ID;
+        public static final String DURATIONS_TASK_ID = "TaskId";
+        public static final String DURATIONS_NAME = "Name";
+        public static final String DURATIONS_DESCRIPTION = "Description";
+        public static final String DURATIONS_START_DATE = "StartDate";   // yyyy-MM-dd, local time
+        public static final String DURATIONS_DURATION = "Duration";      // seconds
+
+        private Columns() {
+            // prevent instantiation
+        }
+    }
+
+    /**
+     * The URI to access the durations view
+     */
+    public static final Uri CONTENT_URI = Uri.withAppendedPath(CONTENT_AUTHORITY_URI, TABLE_NAME);
+
+    static final String CONTENT_TYPE = "vnd.android.cursor.dir/vnd." + CONTENT_AUTHORITY + "." + TABLE_NAME;
+    static final String CONTENT_ITEM_TYPE = "vnd.android.cursor.item/vnd." + CONTENT_AUTHORITY + "." + TABLE_NAME;
+
+    static Uri buildDurationUri(long durationId) {
+        return ContentUris.withAppendedId(CONTENT_URI, durationId);
+    }
+
+    static long getDurationId(Uri uri) {
+        return ContentUris.parseId(uri);
+    }
+}
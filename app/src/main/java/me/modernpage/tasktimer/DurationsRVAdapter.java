@@ -0,0 +1,94 @@
+package me.modernpage.tasktimer;
+
+import android.database.Cursor;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.Locale;
+
+public class DurationsRVAdapter extends RecyclerView.Adapter<DurationsRVAdapter.DurationsViewHolder> {
+    private static final String TAG = "DurationsRVAdapter";
+    private Cursor mCursor;
+
+    public DurationsRVAdapter(Cursor cursor) {
+        mCursor = cursor;
+    }
+
+    @NonNull
+    @Override
+    public DurationsViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        return new DurationsViewHolder(LayoutInflater.from(parent.getContext()).inflate(R.layout.task_durations_items, parent, false));
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull DurationsViewHolder holder, int position) {
+        if(mCursor != null && mCursor.getCount() != 0) {
+            if(!mCursor.moveToPosition(position)) {
+                throw new IllegalStateException("Couldn't move to the position : " + position);
+            }
+            String name = mCursor.getString(mCursor.getColumnIndex(DurationsContract.Columns.DURATIONS_NAME));
+            String startDate = mCursor.getString(mCursor.getColumnIndex(DurationsContract.Columns.DURATIONS_START_DATE));
+            long totalDuration = mCursor.getLong(mCursor.getColumnIndex(DurationsContract.Columns.DURATIONS_DURATION));
+
+            holder.mName.setText(name);
+            holder.mStartDate.setText(startDate);
+            holder.mDuration.setText(formatDuration(totalDuration));
+        }
+    }
+
+    @Override
+    public int getItemCount() {
+        return mCursor != null ? mCursor.getCount() : 0;
+    }
+
+    /**
+     * Swap in a new Cursor, returning the old Cursor,
+     * The returned old Cursor is <em>not</em> closed
+     * @param newCursor The new Cursor to be used
+     * @return Returns the previously set Cursor, or null if there wasn't one.
+     * if the given new Cursor is the same instance as the previously set
+     * Cursor, null is also returned
+     */
+    Cursor swapCursor(Cursor newCursor) {
+        if(newCursor == mCursor)
+            return null;
+
+        int numItems = getItemCount();
+        final Cursor oldCursor = mCursor;
+        mCursor = newCursor;
+        if(newCursor != null) {
+            // notify the observers about the new cursor
+            notifyDataSetChanged();
+        } else {
+            // notify the observers about the lack of a data set
+            notifyItemRangeRemoved(0, numItems);
+        }
+        return oldCursor;
+    }
+
+    /**
+     * @param seconds duration in seconds
+     * @return duration formatted as hh:mm:ss
+     */
+    static String formatDuration(long seconds) {
+        return String.format(Locale.US, "%02d:%02d:%02d", seconds / 3600, (seconds % 3600) / 60, seconds % 60);
+    }
+
+    static class DurationsViewHolder extends RecyclerView.ViewHolder {
+        TextView mName;
+        TextView mStartDate;
+        TextView mDuration;
+
+        public DurationsViewHolder(@NonNull View itemView) {
+            super(itemView);
+            mName = itemView.findViewById(R.id.td_name);
+            mStartDate = itemView.findViewById(R.id.td_start);
+            mDuration = itemView.findViewById(R.id.td_duration);
+        }
+    }
+}
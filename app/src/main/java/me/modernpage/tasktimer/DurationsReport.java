@@ -0,0 +1,81 @@
+package me.modernpage.tasktimer;
+
+import android.database.Cursor;
+import android.os.Bundle;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.appcompat.widget.Toolbar;
+import androidx.loader.app.LoaderManager;
+import androidx.loader.content.CursorLoader;
+import androidx.loader.content.Loader;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.security.InvalidParameterException;
+
+/**
+ * Report of the time spent on each task per day.
+ *
+ * The rows come from the precomputed durations summary, so opening the report reads one row
+ * per task and day no matter how many timings have been recorded.
+ */
+public class DurationsReport extends AppCompatActivity implements LoaderManager.LoaderCallbacks<Cursor> {
+    private static final String TAG = "DurationsReport";
+
+    public static final int LOADER_ID = 1;
+
+    private DurationsRVAdapter mAdapter;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        Log.d(TAG, "onCreate: called");
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_durations);
+        Toolbar toolbar = findViewById(R.id.toolbar);
+        setSupportActionBar(toolbar);
+
+        getSupportActionBar().setDisplayHomeAsUpEnabled(true);
+
+        RecyclerView recyclerView = findViewById(R.id.td_list);
+        recyclerView.setLayoutManager(new LinearLayoutManager(this));
+        mAdapter = new DurationsRVAdapter(null);
+        recyclerView.setAdapter(mAdapter);
+
+        LoaderManager.getInstance(this).initLoader(LOADER_ID, null, this);
+    }
+
+    @NonNull
+    @Override
+    public Loader<Cursor> onCreateLoader(int id, @Nullable Bundle args) {
+        Log.d(TAG, "onCreateLoader: starts with the id: " + id);
+        String[] projection = {DurationsContract.Columns._ID,
+                DurationsContract.Columns.DURATIONS_NAME,
+                DurationsContract.Columns.DURATIONS_START_DATE,
+                DurationsContract.Columns.DURATIONS_DURATION};
+
+        String sortOrder = DurationsContract.Columns.DURATIONS_START_DATE + " DESC, "
+                + DurationsContract.Columns.DURATIONS_NAME + " COLLATE NOCASE";
+
+        switch (id) {
+            case LOADER_ID:
+                return new CursorLoader(this, DurationsContract.CONTENT_URI, projection, null, null, sortOrder);
+            default:
+                throw new InvalidParameterException(TAG + ".onCreateLoader called with invalid loader id " + id);
+        }
+    }
+
+    @Override
+    public void onLoadFinished(@NonNull Loader<Cursor> loader, Cursor data) {
+        Log.d(TAG, "onLoadFinished: called");
+        mAdapter.swapCursor(data);
+    }
+
+    @Override
+    public void onLoaderReset(@NonNull Loader<Cursor> loader) {
+        Log.d(TAG, "onLoaderReset: called");
+        mAdapter.swapCursor(null);
+    }
+}
@@ -1,10 +1,17 @@
 package me.modernpage.tasktimer;
 
 import android.annotation.SuppressLint;
+import android.content.ClipData;
+import android.content.ContentResolver;
+import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
+import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 
+import androidx.annotation.NonNull;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.Toolbar;
@@ -17,6 +24,17 @@ import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
 import android.widget.TextView;
+import android.widget.Toast;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 public class MainActivity extends AppCompatActivity implements CursorRecyclerViewAdapter.OnTaskClickListener,
                                                                 AddEditActivityFragment.OnSaveClicked,
@@ -26,6 +44,19 @@ public class MainActivity extends AppCompatActivity implements CursorRecyclerVie
     private static final int DIALOG_ID_DELETE = 1;
     private static final int DIALOG_ID_CANCEL_EDIT = 2;
 
+    private static final int REQUEST_IMPORT = 1;
+
+    // seeds the debug data and runs imports off the main thread, one job at a time, in the order they were asked for
+    private static final ExecutorService sDataExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(@NonNull Runnable runnable) {
+            return new Thread(runnable, "MainActivity-data");
+        }
+    });
+
+    // the import running on sDataExecutor, outlives the activity across configuration changes
+    private static Future<?> sImport;
+
     // Whether or not the activity is in 2-pane mode
     // i.e. running in landscape on a tablet
     private boolean mTwoPane = false;
@@ -51,6 +82,11 @@ public class MainActivity extends AppCompatActivity implements CursorRecyclerVie
     public boolean onCreateOptionsMenu(Menu menu) {
         // Inflate the menu; this adds items to the action bar if it is present.
         getMenuInflater().inflate(R.menu.menu_main, menu);
+
+        if(BuildConfig.DEBUG) {
+            MenuItem generate = menu.findItem(R.id.menumain_generate);
+            generate.setVisible(true);
+        }
         return true;
     }
 
@@ -72,14 +108,147 @@ public class MainActivity extends AppCompatActivity implements CursorRecyclerVie
                 showAboutDialog();
                 break;
             case R.id.menumain_showDurations:
+                startActivity(new Intent(this, DurationsReport.class));
+                break;
+            case R.id.menumain_export:
+                shareExport();
+                break;
+            case R.id.menumain_import:
+                pickImport();
                 break;
             case R.id.menumain_generate:
+                // seeding writes a few thousand rows, keep it off the main thread
+                final ContentResolver contentResolver = getContentResolver();
+                sDataExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        TestData.generateTestData(contentResolver);
+                    }
+                });
                 break;
         }
 
         return super.onOptionsItemSelected(item);
     }
 
+    /**
+     * Offers the tasks and timings as CSV files to any app that takes them, the receiving app reads them
+     * straight from AppProvider's export pipe with a temporary read grant
+     */
+    private void shareExport() {
+        ArrayList<Uri> exports = new ArrayList<>();
+        exports.add(AppProvider.buildExportUri(TasksContract.TABLE_NAME, DataExport.FORMAT_CSV));
+        exports.add(AppProvider.buildExportUri(TimingsContract.TABLE_NAME, DataExport.FORMAT_CSV));
+        Intent intent = new Intent(Intent.ACTION_SEND_MULTIPLE);
+        intent.setType(DataExport.MIME_TYPE_CSV);
+        intent.putParcelableArrayListExtra(Intent.EXTRA_STREAM, exports);
+        intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        startActivity(Intent.createChooser(intent, getString(R.string.export_chooser_title)));
+    }
+
+    /**
+     * Lets the user pick the exported files to import, tasks and timings, CSV or JSON
+     */
+    private void pickImport() {
+        Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        intent.setType("*/*");
+        intent.putExtra(Intent.EXTRA_MIME_TYPES, new String[]{DataExport.MIME_TYPE_CSV, DataExport.MIME_TYPE_JSON,
+                "text/comma-separated-values", "text/plain"});
+        intent.putExtra(Intent.EXTRA_ALLOW_MULTIPLE, true);
+        startActivityForResult(intent, REQUEST_IMPORT);
+    }
+
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if(requestCode != REQUEST_IMPORT || resultCode != RESULT_OK || data == null) {
+            return;
+        }
+        final List<Uri> documents = new ArrayList<>();
+        ClipData clipData = data.getClipData();
+        if(clipData != null) {
+            for(int i = 0; i < clipData.getItemCount(); i++) {
+                documents.add(clipData.getItemAt(i).getUri());
+            }
+        } else if(data.getData() != null) {
+            documents.add(data.getData());
+        }
+        // a backup can be a million timings, keep it off the main thread
+        final ContentResolver contentResolver = getContentResolver();
+        final Context context = getApplicationContext();
+        final Handler handler = new Handler(Looper.getMainLooper());
+        sImport = sDataExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                final String message = importDocuments(context, contentResolver, documents);
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        Toast.makeText(context, message, Toast.LENGTH_LONG).show();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Imports the tasks before the timings, whatever order the documents were picked in, so the timings follow
+     * tasks that are stored under another _id
+     * @return the message for the user
+     */
+    private static String importDocuments(Context context, ContentResolver contentResolver, List<Uri> documents) {
+        DataImport dataImport = new DataImport(contentResolver);
+        try {
+            List<Uri> timings = new ArrayList<>();
+            for(Uri document : documents) {
+                if(TimingsContract.TABLE_NAME.equals(tableOf(contentResolver, document))) {
+                    timings.add(document);
+                } else {
+                    importDocument(dataImport, contentResolver, document);
+                }
+            }
+            for(Uri document : timings) {
+                importDocument(dataImport, contentResolver, document);
+            }
+            return context.getString(R.string.import_done, dataImport.getTaskCount(), dataImport.getTimingCount());
+        } catch (InterruptedIOException e) {
+            Log.d(TAG, "importDocuments: cancelled");
+            return context.getString(R.string.import_cancelled, dataImport.getTaskCount(), dataImport.getTimingCount());
+        } catch (IOException e) {
+            Log.w(TAG, "importDocuments: import failed", e);
+            return context.getString(R.string.import_failed, e.getMessage());
+        } finally {
+            dataImport.finish();
+        }
+    }
+
+    private static String tableOf(ContentResolver contentResolver, Uri document) throws IOException {
+        InputStream in = openDocument(contentResolver, document);
+        try {
+            return DataImport.tableOf(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void importDocument(DataImport dataImport, ContentResolver contentResolver, Uri document) throws IOException {
+        InputStream in = openDocument(contentResolver, document);
+        try {
+            dataImport.importFrom(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static InputStream openDocument(ContentResolver contentResolver, Uri document) throws IOException {
+        InputStream in = contentResolver.openInputStream(document);
+        if(in == null) {
+            throw new IOException("Can't open " + document);
+        }
+        return in;
+    }
+
     @SuppressLint("SetTextI18n")
     private void showAboutDialog() {
         View messageView = LayoutInflater.from(this).inflate(R.layout.layout_aboud_dialog, null, false);
@@ -119,6 +288,11 @@ public class MainActivity extends AppCompatActivity implements CursorRecyclerVie
         taskEditRequest(task);
     }
 
+    @Override
+    public void onTaskClick(Task task) {
+        TimerEngine.getInstance(this).toggle(task);
+    }
+
     @Override
     public void onDeleteClick(Task task) {
         Log.d(TAG, "onDeleteClick: called");
@@ -141,7 +315,7 @@ public class MainActivity extends AppCompatActivity implements CursorRecyclerVie
             AddEditActivityFragment fragment = new AddEditActivityFragment();
 
             Bundle arguments = new Bundle();
-            arguments.putSerializable(Task.class.getSimpleName(), task);
+            arguments.putParcelable(Task.class.getSimpleName(), task);
             fragment.setArguments(arguments);
 
             FragmentManager fragmentManager = getSupportFragmentManager();
@@ -180,7 +354,9 @@ public class MainActivity extends AppCompatActivity implements CursorRecyclerVie
             case DIALOG_ID_DELETE:
                 Long taskId = args.getLong("TaskId");
                 if(BuildConfig.DEBUG && taskId == 0) throw new AssertionError("task id is zero");
-                getContentResolver().delete(TasksContract.CONTENT_URI, TasksContract.Columns._ID + " = ?", new String[]{String.valueOf(taskId)});
+                // its timings are deleted with it, so the running timing isn't worth recording
+                TimerEngine.getInstance(this).cancel(taskId);
+                getContentResolver().delete(TasksContract.buildTaskUri(taskId), null, null);
                 break;
             case DIALOG_ID_CANCEL_EDIT:
                 // no action required, just continue editing
@@ -228,6 +404,17 @@ public class MainActivity extends AppCompatActivity implements CursorRecyclerVie
         }
     }
 
+    @Override
+    protected void onDestroy() {
+        Log.d(TAG, "onDestroy: called");
+        super.onDestroy();
+        // leaving the app stops the import after the chunk being written, a rotation doesn't
+        if(isFinishing() && sImport != null) {
+            sImport.cancel(true);
+            sImport = null;
+        }
+    }
+
     @Override
     protected void onStop() {
         Log.d(TAG, "onStop: called");
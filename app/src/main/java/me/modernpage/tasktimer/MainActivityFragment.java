@@ -1,24 +1,40 @@
 package me.modernpage.tasktimer;
 
 
+import android.content.ContentResolver;
 import android.database.Cursor;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Trace;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.appcompat.widget.SearchView;
 import androidx.fragment.app.Fragment;
+import androidx.fragment.app.FragmentActivity;
 import androidx.loader.app.LoaderManager;
 import androidx.loader.content.CursorLoader;
 import androidx.loader.content.Loader;
+import androidx.recyclerview.widget.ItemTouchHelper;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
+import androidx.recyclerview.widget.SimpleItemAnimator;
 
 import android.util.Log;
 import android.view.LayoutInflater;
+import android.view.Menu;
+import android.view.MenuInflater;
+import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
+import android.widget.TextView;
 
 import java.security.InvalidParameterException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 
 /**
@@ -42,12 +58,51 @@ import java.security.InvalidParameterException;
 
 //    This interface is typically implemented by your activity or fragment and is registered when you call initLoader() or restartLoader().
 
-public class MainActivityFragment extends Fragment implements LoaderManager.LoaderCallbacks<Cursor> {
+public class MainActivityFragment extends Fragment implements LoaderManager.LoaderCallbacks<Cursor>,
+                                                              TimerEngine.Listener,
+                                                              TimerTicker.Callback,
+                                                              SearchView.OnQueryTextListener {
     private static final String TAG = "MainActivityFragment";
     private CursorRecyclerViewAdapter mCursorRecyclerViewAdapter;
     private RecyclerView mRecyclerView;
+    private TextView mCurrentTask;
+
+    private TimerEngine mTimerEngine;
+    private TimerTicker mTimerTicker;
+
+    // the first list has been handed to the adapter, startup is over once it's drawn
+    private boolean mFirstListShown;
 
     public static final int LOADER_ID = 0;
+    public static final int SEARCH_LOADER_ID = 1;
+
+    // how long typing has to pause before the search runs, so a quickly typed word is one query
+    static final long SEARCH_DEBOUNCE_MILLIS = 250;
+    private static final String STATE_SEARCH_QUERY = "searchQuery";
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    // the search the list is showing the results of, null while it shows every task
+    private String mSearchQuery;
+    // the last query typed, searched for once typing pauses
+    private String mPendingQuery;
+    // the latest task list, kept while the list is showing search results
+    private Cursor mTaskListCursor;
+
+    // saves dragged tasks' new places off the main thread, one move at a time and in the order they were made
+    private static final ExecutorService sMoveExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(@NonNull Runnable runnable) {
+            return new Thread(runnable, "TaskSortOrder-move");
+        }
+    });
+
+    private final Runnable mRunSearch = new Runnable() {
+        @Override
+        public void run() {
+            search(mPendingQuery);
+        }
+    };
+
     public MainActivityFragment() {
         Log.d(TAG, "MainActivityFragment: called");
         // Required empty public constructor
@@ -55,19 +110,222 @@ public class MainActivityFragment extends Fragment implements LoaderManager.Load
 
 
 
+    @Override
+    public void onCreate(@Nullable Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setHasOptionsMenu(true);
+        if(savedInstanceState != null) {
+            mSearchQuery = savedInstanceState.getString(STATE_SEARCH_QUERY);
+        }
+    }
+
+    @Override
+    public void onSaveInstanceState(@NonNull Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putString(STATE_SEARCH_QUERY, mSearchQuery);
+    }
+
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container,
                              Bundle savedInstanceState) {
         Log.d(TAG, "onCreateView: called");
         // Inflate the layout for this fragment
         View view = inflater.inflate(R.layout.fragment_main, container, false);
+        mCurrentTask = view.findViewById(R.id.current_task);
         mRecyclerView = view.findViewById(R.id.task_list);
         mRecyclerView.setLayoutManager(new LinearLayoutManager(getContext()));
         mCursorRecyclerViewAdapter = new CursorRecyclerViewAdapter(null, (CursorRecyclerViewAdapter.OnTaskClickListener)getActivity());
         mRecyclerView.setAdapter(mCursorRecyclerViewAdapter);
+        // rows of a running task change every second, rebind them in place instead of cross-fading
+        // inserts, removals and moves are still animated
+        ((SimpleItemAnimator) mRecyclerView.getItemAnimator()).setSupportsChangeAnimations(false);
+        new ItemTouchHelper(new DragCallback()).attachToRecyclerView(mRecyclerView);
+
+        mTimerEngine = TimerEngine.getInstance(getContext());
+        mTimerTicker = new TimerTicker(mTimerEngine, this);
         return view;
     }
 
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        mHandler.removeCallbacks(mRunSearch);
+    }
+
+    /**
+     * The search field is in the activity's toolbar, the fragment only wires it up.
+     */
+    @Override
+    public void onCreateOptionsMenu(@NonNull Menu menu, @NonNull MenuInflater inflater) {
+        super.onCreateOptionsMenu(menu, inflater);
+        MenuItem searchItem = menu.findItem(R.id.menumain_search);
+        if(searchItem == null) {
+            return;
+        }
+        SearchView searchView = (SearchView) searchItem.getActionView();
+        if(mSearchQuery != null) {
+            // expanding clears the query, so the listener goes on after the query is back
+            searchItem.expandActionView();
+            searchView.setQuery(mSearchQuery, false);
+        }
+        searchView.setOnQueryTextListener(this);
+    }
+
+    @Override
+    public boolean onQueryTextChange(String newText) {
+        mHandler.removeCallbacks(mRunSearch);
+        String query = newText.trim();
+        if(query.isEmpty()) {
+            stopSearch();
+        } else {
+            mPendingQuery = query;
+            mHandler.postDelayed(mRunSearch, SEARCH_DEBOUNCE_MILLIS);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean onQueryTextSubmit(String text) {
+        String query = text.trim();
+        if(query.isEmpty()) {
+            stopSearch();
+        } else {
+            search(query);
+        }
+        // hides the keyboard
+        return false;
+    }
+
+    /**
+     * Shows the tasks matching the query instead of the task list. The search loader stays around while searching,
+     * a new query cancels the search still running for the previous one (its query is interrupted in SQLite),
+     * and the results of a cancelled search are closed without being shown. Must be called from the UI thread.
+     */
+    private void search(String query) {
+        mHandler.removeCallbacks(mRunSearch);
+        if(query.equals(mSearchQuery)) {
+            return;
+        }
+        if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "search: " + query);
+        mSearchQuery = query;
+        LoaderManager loaderManager = LoaderManager.getInstance(this);
+        Loader<Cursor> loader = loaderManager.getLoader(SEARCH_LOADER_ID);
+        if(loader == null) {
+            loaderManager.initLoader(SEARCH_LOADER_ID, null, this);
+        } else {
+            ((CursorLoader) loader).setUri(TasksContract.buildSearchUri(query));
+            loader.onContentChanged();
+        }
+    }
+
+    /**
+     * Back to the whole task list
+     */
+    private void stopSearch() {
+        mHandler.removeCallbacks(mRunSearch);
+        if(mSearchQuery == null) {
+            return;
+        }
+        if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "stopSearch: called");
+        mSearchQuery = null;
+        // the list has to let go of the results before the loader closes them
+        mCursorRecyclerViewAdapter.swapCursor(mTaskListCursor);
+        LoaderManager.getInstance(this).destroyLoader(SEARCH_LOADER_ID);
+    }
+
+    @Override
+    public void onStart() {
+        super.onStart();
+        mTimerEngine.addListener(this);
+        onTimerChanged(mTimerEngine.getRunningTaskId());
+    }
+
+    @Override
+    public void onStop() {
+        super.onStop();
+        // nothing on screen to update, so no ticks while stopped
+        mTimerTicker.stop();
+        mTimerEngine.removeListener(this);
+    }
+
+    @Override
+    public void onTimerChanged(long taskId) {
+        Log.d(TAG, "onTimerChanged: running task is " + taskId);
+        mCursorRecyclerViewAdapter.setRunningTask(taskId, mTimerEngine.getStartElapsed());
+        if(mTimerEngine.isRunning()) {
+            mCurrentTask.setText(getString(R.string.timing_message, mTimerEngine.getRunningTaskName()));
+        } else {
+            mCurrentTask.setText(R.string.no_task_message);
+        }
+        mTimerTicker.start();
+    }
+
+    @Override
+    public void onTick(long taskId, long elapsedSeconds) {
+        // the row is only updated when it's on screen, there is nothing to update when it isn't
+        RecyclerView.ViewHolder holder = mRecyclerView.findViewHolderForItemId(taskId);
+        if(holder != null) {
+            mCursorRecyclerViewAdapter.bindElapsed((CursorRecyclerViewAdapter.TaskViewHolder) holder, elapsedSeconds);
+        }
+    }
+
+    /**
+     * Long pressing a row and dragging it moves the task. While dragging only the adapter changes,
+     * the move is saved when the row is dropped: the task gets a sortOrder between its new neighbours' (see TaskSortOrder),
+     * and the list reloads with it in its new place. Search results are ranked, they can't be reordered.
+     */
+    private class DragCallback extends ItemTouchHelper.Callback {
+        @Override
+        public int getMovementFlags(@NonNull RecyclerView recyclerView, @NonNull RecyclerView.ViewHolder viewHolder) {
+            if(mSearchQuery != null || !mCursorRecyclerViewAdapter.canMove()) {
+                return 0;
+            }
+            return makeMovementFlags(ItemTouchHelper.UP | ItemTouchHelper.DOWN, 0);
+        }
+
+        @Override
+        public boolean onMove(@NonNull RecyclerView recyclerView, @NonNull RecyclerView.ViewHolder viewHolder,
+                              @NonNull RecyclerView.ViewHolder target) {
+            mCursorRecyclerViewAdapter.moveItem(viewHolder.getAdapterPosition(), target.getAdapterPosition());
+            return true;
+        }
+
+        @Override
+        public void onSwiped(@NonNull RecyclerView.ViewHolder viewHolder, int direction) {
+            // rows can't be swiped
+        }
+
+        @Override
+        public void clearView(@NonNull RecyclerView recyclerView, @NonNull RecyclerView.ViewHolder viewHolder) {
+            super.clearView(recyclerView, viewHolder);
+            long[] move = mCursorRecyclerViewAdapter.finishMove();
+            if(move != null) {
+                saveMove(move[0], move[1], move[2]);
+            }
+        }
+    }
+
+    private void saveMove(final long taskId, final long previousId, final long nextId) {
+        if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "saveMove: task " + taskId + " between " + previousId + " and " + nextId);
+        final ContentResolver contentResolver = requireContext().getApplicationContext().getContentResolver();
+        sMoveExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Bundle extras = new Bundle();
+                extras.putLong(AppProvider.EXTRA_TASK_ID, taskId);
+                extras.putLong(AppProvider.EXTRA_PREVIOUS_TASK_ID, previousId);
+                extras.putLong(AppProvider.EXTRA_NEXT_TASK_ID, nextId);
+                try {
+                    contentResolver.call(AppProvider.CONTENT_AUTHORITY_URI, AppProvider.METHOD_MOVE_TASK, null, extras);
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "saveMove: couldn't move task " + taskId, e);
+                    // the reload puts the row back where it is saved
+                    contentResolver.notifyChange(TasksContract.CONTENT_URI, null);
+                }
+            }
+        });
+    }
+
 //    on fragment it is best to call getting the loader on ActivityCreated
     @Override
     public void onActivityCreated(@Nullable Bundle savedInstanceState) {
@@ -78,6 +336,9 @@ public class MainActivityFragment extends Fragment implements LoaderManager.Load
         // because it does not expect any other arguments
         // the third argument tells which object will be handling loader manager callback
         LoaderManager.getInstance(this).initLoader(LOADER_ID,null, this);
+        if(mSearchQuery != null) {
+            LoaderManager.getInstance(this).initLoader(SEARCH_LOADER_ID, null, this);
+        }
     }
 
 //    Instantiate and return a new Loader for the given ID.
@@ -95,11 +356,14 @@ public class MainActivityFragment extends Fragment implements LoaderManager.Load
                             TasksContract.Columns.TASKS_DESCRIPTION,
                             TasksContract.Columns.TASKS_SORTORDER};
 
-        String sortOrder = TasksContract.Columns.TASKS_SORTORDER + ", " + TasksContract.Columns.TASKS_NAME + " COLLATE NOCASE";
-
+        // the task list is always in TasksContract.DEFAULT_SORT_ORDER, the loader reads it in pages
+        // so only the first page has to be loaded before the list can be shown
         switch (id) {
             case LOADER_ID:
-                return new CursorLoader(getActivity(),TasksContract.CONTENT_URI,projection,null,null,sortOrder);
+                return new TaskListLoader(getActivity(), projection);
+            case SEARCH_LOADER_ID:
+                // CursorLoader passes a CancellationSignal to the query, cancelling the load interrupts it
+                return new CursorLoader(getActivity(), TasksContract.buildSearchUri(mSearchQuery), projection, null, null, null);
             default:
                 throw new InvalidParameterException(TAG + ".onCreateLoader called with invalid loader id " + id);
         }
@@ -110,7 +374,33 @@ public class MainActivityFragment extends Fragment implements LoaderManager.Load
     public void onLoadFinished(@NonNull Loader<Cursor> loader, Cursor data) {
 //    we use cursor returned in an adapter that recycler view can use to display adapter
         Log.d(TAG, "onLoadFinished: called");
-        mCursorRecyclerViewAdapter.swapCursor(data);
+        if(loader.getId() == SEARCH_LOADER_ID) {
+            // ranked rather than in list order, there is nothing to diff the results against
+            mCursorRecyclerViewAdapter.swapCursor(data);
+            return;
+        }
+        mTaskListCursor = data;
+        if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "onLoadFinished: " + ((TaskListLoader) loader).getStats());
+        if(mSearchQuery != null) {
+            // shown when the search ends
+            return;
+        }
+        boolean firstLoad = !mFirstListShown;
+        if(firstLoad) {
+            Trace.beginSection("MainActivityFragment.firstListLoad");
+        }
+        try {
+            // the loader has already diffed the new list against the previous one on its background thread
+            TaskListSnapshot.Change change = data instanceof TaskPageCursor ? ((TaskPageCursor) data).getChange() : null;
+            mCursorRecyclerViewAdapter.swapCursor(data, change);
+        } finally {
+            if(firstLoad) {
+                Trace.endSection();
+            }
+        }
+        if(firstLoad) {
+            reportFirstListFrame();
+        }
         int count = mCursorRecyclerViewAdapter.getItemCount();
 
         Log.d(TAG, "onLoadFinished: count is " + count);
@@ -118,13 +408,43 @@ public class MainActivityFragment extends Fragment implements LoaderManager.Load
         // the cursor loader won't get notification if the cursor is being closed
     }
 
-    
+    /**
+     * Tells the system the activity is fully drawn when the first frame showing the task list is drawn.
+     * That is what the startup benchmark measures, it's in logcat as "Fully drawn" and in traces as reportFullyDrawn.
+     */
+    private void reportFirstListFrame() {
+        mFirstListShown = true;
+        final ViewTreeObserver observer = mRecyclerView.getViewTreeObserver();
+        observer.addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                if(observer.isAlive()) {
+                    observer.removeOnPreDrawListener(this);
+                } else {
+                    mRecyclerView.getViewTreeObserver().removeOnPreDrawListener(this);
+                }
+                FragmentActivity activity = getActivity();
+                if(activity != null) {
+                    activity.reportFullyDrawn();
+                }
+                return true;
+            }
+        });
+    }
+
     // called when activity or fragment is stopped
     // called when a previously created loader is being reset (when you call destroyLoader(int) or when the activity or fragment is destroyed , 
     // and thus making its data unavailable. Your code should remove any references it has to the loader's data.
     @Override
     public void onLoaderReset(@NonNull Loader<Cursor> loader) {
         Log.d(TAG, "onLoaderReset: called");
+        if(loader.getId() == SEARCH_LOADER_ID && mSearchQuery == null) {
+            // stopSearch() has put the task list back already
+            return;
+        }
+        if(loader.getId() == LOADER_ID) {
+            mTaskListCursor = null;
+        }
         mCursorRecyclerViewAdapter.swapCursor(null);
     }
 }
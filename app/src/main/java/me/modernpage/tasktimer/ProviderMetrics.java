@@ -0,0 +1,116 @@
+package me.modernpage.tasktimer;
+
+import android.os.SystemClock;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Counts and latencies of {@link AppProvider} operations, per operation and per uri the operation matched,
+ * and how often {@link TaskCache} answered a query.
+ *
+ * A histogram is only created the first time its operation runs on its uri, after that recording is
+ * lock-free and allocation-free (see {@link LatencyHistogram}), cheap enough to stay on in release builds.
+ * Query latency is the time to run the query; the rows are read when the caller first moves the cursor.
+ * The numbers are printed by {@link AppProvider#dump}:
+ * adb shell dumpsys activity provider me.modernpage.tasktimer/.AppProvider
+ */
+final class ProviderMetrics {
+    static final int QUERY = 0;
+    static final int INSERT = 1;
+    static final int UPDATE = 2;
+    static final int DELETE = 3;
+    static final int BULK_INSERT = 4;
+    private static final String[] OPERATION_NAMES = {"query", "insert", "update", "delete", "bulkInsert"};
+
+    // a query the task cache answered
+    static final int TASK_CACHE_HIT = 0;
+    // a query it would answer that found the table not loaded, so the table was read, or the query left to the database
+    static final int TASK_CACHE_MISS = 1;
+    // the loaded table dropped by a change whose rows aren't known
+    static final int TASK_CACHE_EVICTION = 2;
+
+    private final int[] mMatches;
+    private final String[] mMatchNames;
+    private final AtomicReferenceArray<LatencyHistogram> mHistograms;
+    private final AtomicLongArray mTaskCacheCounts = new AtomicLongArray(3);
+    private final long mStartedElapsed = SystemClock.elapsedRealtime();
+
+    /**
+     * @param matches the uri matcher codes the provider serves
+     * @param matchNames what to call them in the dump, one per code
+     */
+    ProviderMetrics(int[] matches, String[] matchNames) {
+        mMatches = matches.clone();
+        mMatchNames = matchNames.clone();
+        // one more row for uris that didn't match, they are still counted
+        mHistograms = new AtomicReferenceArray<>((matches.length + 1) * OPERATION_NAMES.length);
+    }
+
+    /**
+     * @param match the uri matcher code of the operation's uri
+     * @param operation {@link #QUERY}, {@link #INSERT}, ...
+     * @param startNanos System.nanoTime when the operation started
+     */
+    void record(int match, int operation, long startNanos) {
+        long nanos = System.nanoTime() - startNanos;
+        int slot = slotOf(match) * OPERATION_NAMES.length + operation;
+        LatencyHistogram histogram = mHistograms.get(slot);
+        if(histogram == null) {
+            mHistograms.compareAndSet(slot, null, new LatencyHistogram());
+            histogram = mHistograms.get(slot);
+        }
+        histogram.recordNanos(nanos);
+    }
+
+    LatencyHistogram getHistogram(int match, int operation) {
+        return mHistograms.get(slotOf(match) * OPERATION_NAMES.length + operation);
+    }
+
+    /**
+     * @param event {@link #TASK_CACHE_HIT}, {@link #TASK_CACHE_MISS} or {@link #TASK_CACHE_EVICTION}
+     */
+    void recordTaskCache(int event) {
+        mTaskCacheCounts.incrementAndGet(event);
+    }
+
+    long getTaskCacheCount(int event) {
+        return mTaskCacheCounts.get(event);
+    }
+
+    private int slotOf(int match) {
+        for(int i = 0; i < mMatches.length; i++) {
+            if(mMatches[i] == match) {
+                return i;
+            }
+        }
+        return mMatches.length;
+    }
+
+    void dump(PrintWriter writer) {
+        writer.println("Operations in the last " + (SystemClock.elapsedRealtime() - mStartedElapsed) / 1000 + "s, latency in us:");
+        writer.println(String.format(Locale.US, "  %-16s %-10s %8s %8s %8s %8s %10s %12s",
+                "uri", "operation", "count", "p50", "p90", "p99", "max", "total"));
+        for(int slot = 0; slot < mHistograms.length(); slot++) {
+            LatencyHistogram histogram = mHistograms.get(slot);
+            if(histogram == null) {
+                continue;
+            }
+            int match = slot / OPERATION_NAMES.length;
+            writer.println(String.format(Locale.US, "  %-16s %-10s %8d %8d %8d %8d %10d %12d",
+                    match < mMatchNames.length ? mMatchNames[match] : "unknown",
+                    OPERATION_NAMES[slot % OPERATION_NAMES.length],
+                    histogram.getCount(),
+                    histogram.getValueAtPercentile(50),
+                    histogram.getValueAtPercentile(90),
+                    histogram.getValueAtPercentile(99),
+                    histogram.getMaxMicros(),
+                    histogram.getTotalMicros()));
+        }
+        writer.println(String.format(Locale.US, "Task cache: %d hits, %d misses, %d evictions",
+                mTaskCacheCounts.get(TASK_CACHE_HIT), mTaskCacheCounts.get(TASK_CACHE_MISS),
+                mTaskCacheCounts.get(TASK_CACHE_EVICTION)));
+    }
+}
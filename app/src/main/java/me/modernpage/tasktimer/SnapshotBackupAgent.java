@@ -0,0 +1,138 @@
+package me.modernpage.tasktimer;
+
+import android.app.backup.BackupAgent;
+import android.app.backup.BackupDataInput;
+import android.app.backup.BackupDataOutput;
+import android.app.backup.FullBackupDataOutput;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * Backs up the tasks and timings as a {@link DataSnapshot} rather than a copy of TaskTimer.db.
+ *
+ * Auto Backup (Android 6 and later) calls {@link #onFullBackup}, which writes the snapshot into the files directory
+ * for the rest of the full backup to pick up, backup_rules.xml keeps the database file itself out.
+ * Restoring puts the snapshot file back first, {@link #onRestoreFinished()} then has AppProvider rebuild the database from it.
+ * Older versions use key/value backup, the snapshot is the one entity.
+ * Either way the snapshot goes through a file, so neither side holds more than a buffer of it.
+ */
+public class SnapshotBackupAgent extends BackupAgent {
+    private static final String TAG = "SnapshotBackupAgent";
+
+    static final String SNAPSHOT_FILE_NAME = "tasktimer.snapshot";
+    private static final String SNAPSHOT_KEY = "snapshot";
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    @Override
+    public void onFullBackup(FullBackupDataOutput data) throws IOException {
+        File snapshot = new File(getFilesDir(), SNAPSHOT_FILE_NAME);
+        try {
+            writeSnapshot(snapshot);
+            super.onFullBackup(data);
+        } finally {
+            snapshot.delete();
+        }
+    }
+
+    @Override
+    public void onRestoreFinished() {
+        File snapshot = new File(getFilesDir(), SNAPSHOT_FILE_NAME);
+        if(!snapshot.exists()) {
+            return;
+        }
+        try {
+            restoreSnapshot(snapshot);
+        } catch (IOException e) {
+            Log.e(TAG, "onRestoreFinished: snapshot not restored", e);
+        } finally {
+            snapshot.delete();
+        }
+    }
+
+    @Override
+    public void onBackup(ParcelFileDescriptor oldState, BackupDataOutput data, ParcelFileDescriptor newState) throws IOException {
+        File snapshot = new File(getCacheDir(), SNAPSHOT_FILE_NAME);
+        try {
+            writeSnapshot(snapshot);
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            FileInputStream in = new FileInputStream(snapshot);
+            try {
+                data.writeEntityHeader(SNAPSHOT_KEY, (int) snapshot.length());
+                int read;
+                while((read = in.read(buffer)) > 0) {
+                    data.writeEntityData(buffer, read);
+                }
+            } finally {
+                in.close();
+            }
+        } finally {
+            snapshot.delete();
+        }
+    }
+
+    @Override
+    public void onRestore(BackupDataInput data, int appVersionCode, ParcelFileDescriptor newState) throws IOException {
+        File snapshot = new File(getCacheDir(), SNAPSHOT_FILE_NAME);
+        try {
+            while(data.readNextHeader()) {
+                if(!SNAPSHOT_KEY.equals(data.getKey())) {
+                    data.skipEntityData();
+                    continue;
+                }
+                byte[] buffer = new byte[COPY_BUFFER_SIZE];
+                FileOutputStream out = new FileOutputStream(snapshot);
+                try {
+                    for(int remaining = data.getDataSize(); remaining > 0; ) {
+                        int read = data.readEntityData(buffer, 0, Math.min(buffer.length, remaining));
+                        if(read <= 0) {
+                            throw new IOException("Snapshot entity is cut short");
+                        }
+                        out.write(buffer, 0, read);
+                        remaining -= read;
+                    }
+                } finally {
+                    out.close();
+                }
+                restoreSnapshot(snapshot);
+            }
+        } finally {
+            snapshot.delete();
+        }
+    }
+
+    private void writeSnapshot(File snapshot) throws IOException {
+        FileOutputStream out = new FileOutputStream(snapshot);
+        try {
+            FileChannel channel = out.getChannel();
+            long timings = DataSnapshot.write(AppDatabase.getInstance(this).getReadableDatabase(), channel);
+            channel.force(false);
+            Log.i(TAG, "writeSnapshot: " + timings + " timings in " + channel.size() + " bytes");
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * The provider restores the snapshot, so one that is already running waits for it and doesn't keep state from before
+     */
+    private void restoreSnapshot(File snapshot) throws IOException {
+        ParcelFileDescriptor descriptor = ParcelFileDescriptor.open(snapshot, ParcelFileDescriptor.MODE_READ_ONLY);
+        try {
+            Bundle extras = new Bundle();
+            extras.putParcelable(AppProvider.EXTRA_SNAPSHOT, descriptor);
+            Bundle result = getContentResolver().call(AppProvider.CONTENT_AUTHORITY_URI, AppProvider.METHOD_RESTORE_SNAPSHOT, null, extras);
+            Log.i(TAG, "restoreSnapshot: " + result.getLong(AppProvider.EXTRA_TIMING_COUNT) + " timings restored");
+        } catch (IllegalStateException e) {
+            throw new IOException(e.getMessage(), e.getCause());
+        } finally {
+            descriptor.close();
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package me.modernpage.tasktimer;
+
+import android.content.ContentValues;
+import android.database.DatabaseUtils;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Precompiled statements for the fixed-shape writes {@link AppProvider} does most often:
+ * insert a row, update a row by id and delete a row by id, and for the id lookups of an import.
+ *
+ * SQLiteDatabase.insert/update/delete build a new SQL string and prepare a new statement on every call.
+ * Here the SQL only depends on the table and the set of columns written, and the row id is always bound
+ * as a parameter, so a statement is compiled once and then just re-bound. The cache is keyed by that shape,
+ * the table and the column set of the values, so a call that finds its statement builds no SQL at all,
+ * the SQL is only built to compile a statement the cache doesn't have.
+ *
+ * A statement is checked out of the cache while it is being executed and put back afterwards,
+ * so a thread never waits for another thread's statement. If two threads need the same statement
+ * at the same time, the second one compiles its own copy.
+ */
+class StatementCache {
+    private static final String TAG = "StatementCache";
+
+    private static final int MAX_STATEMENTS = 32;
+
+    private static final int INSERT = 1;
+    private static final int UPDATE = 2;
+    private static final int DELETE = 3;
+
+    private static final Set<String> NO_COLUMNS = Collections.emptySet();
+
+    private final SQLiteDatabase mDatabase;
+    // set by close(), statements checked in after that are closed rather than cached
+    private boolean mClosed;
+
+    // access ordered, the least recently used statement is closed when the cache is full
+    private final LinkedHashMap<Object, Compiled> mStatements =
+            new LinkedHashMap<Object, Compiled>(MAX_STATEMENTS, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Object, Compiled> eldest) {
+                    if(size() > MAX_STATEMENTS) {
+                        eldest.getValue().mStatement.close();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+
+    StatementCache(SQLiteDatabase database) {
+        mDatabase = database;
+    }
+
+    boolean isFor(SQLiteDatabase database) {
+        return mDatabase == database;
+    }
+
+    /**
+     * Same contract as {@link SQLiteDatabase#insert(String, String, ContentValues)}
+     * @return the row id of the new row, or -1 if an error occurred
+     */
+    long insert(String table, ContentValues values) {
+        if(values == null || values.size() == 0) {
+            // nothing to bind, SQLiteDatabase handles the empty row with its null column hack
+            return mDatabase.insert(table, null, values);
+        }
+        Shape shape = new Shape(INSERT, table, null, values.keySet());
+        Compiled compiled = checkOut(shape);
+        if(compiled == null) {
+            String[] columns = shape.columns();
+            StringBuilder sql = new StringBuilder(64 + columns.length * 16);
+            sql.append("INSERT INTO ").append(table).append(" (");
+            for(int i = 0; i < columns.length; i++) {
+                sql.append(i > 0 ? ", " : "").append(columns[i]);
+            }
+            sql.append(") VALUES (");
+            for(int i = 0; i < columns.length; i++) {
+                sql.append(i > 0 ? ", ?" : "?");
+            }
+            sql.append(')');
+            compiled = compile(shape.detach(), sql.toString(), columns);
+        }
+        try {
+            bindValues(compiled, values);
+            return compiled.mStatement.executeInsert();
+        } catch (SQLException e) {
+            Log.e(TAG, "insert: error inserting into " + table, e);
+            return -1;
+        } finally {
+            checkIn(compiled);
+        }
+    }
+
+    /**
+     * Updates the row with the given id, the id is bound rather than appended to the SQL
+     * @return the number of rows updated
+     */
+    int updateById(String table, String idColumn, long id, ContentValues values) {
+        if(values == null || values.size() == 0) {
+            throw new IllegalArgumentException("Empty values");
+        }
+        Shape shape = new Shape(UPDATE, table, idColumn, values.keySet());
+        Compiled compiled = checkOut(shape);
+        if(compiled == null) {
+            String[] columns = shape.columns();
+            StringBuilder sql = new StringBuilder(64 + columns.length * 16);
+            sql.append("UPDATE ").append(table).append(" SET ");
+            for(int i = 0; i < columns.length; i++) {
+                sql.append(i > 0 ? ", " : "").append(columns[i]).append(" = ?");
+            }
+            sql.append(" WHERE ").append(idColumn).append(" = ?");
+            compiled = compile(shape.detach(), sql.toString(), columns);
+        }
+        try {
+            bindValues(compiled, values);
+            compiled.mStatement.bindLong(compiled.mColumns.length + 1, id);
+            return compiled.mStatement.executeUpdateDelete();
+        } finally {
+            checkIn(compiled);
+        }
+    }
+
+    /**
+     * Deletes the row with the given id, the id is bound rather than appended to the SQL
+     * @return the number of rows deleted
+     */
+    int deleteById(String table, String idColumn, long id) {
+        Shape shape = new Shape(DELETE, table, idColumn, NO_COLUMNS);
+        Compiled compiled = checkOut(shape);
+        if(compiled == null) {
+            compiled = compile(shape, "DELETE FROM " + table + " WHERE " + idColumn + " = ?", new String[0]);
+        }
+        try {
+            compiled.mStatement.bindLong(1, id);
+            return compiled.mStatement.executeUpdateDelete();
+        } finally {
+            checkIn(compiled);
+        }
+    }
+
+    /**
+     * Runs a query for a single row id, such as "select _id from Tasks where name = ?".
+     * The SQL is a constant of the caller's, it is its own key.
+     * @return the id in the first row, or -1 if there are no rows
+     */
+    long queryForId(String sql, String... args) {
+        Compiled compiled = checkOut(sql);
+        if(compiled == null) {
+            compiled = compile(sql, sql, null);
+        }
+        try {
+            compiled.mStatement.bindAllArgsAsStrings(args);
+            return compiled.mStatement.simpleQueryForLong();
+        } catch (SQLiteDoneException e) {
+            return -1;
+        } finally {
+            checkIn(compiled);
+        }
+    }
+
+    /**
+     * Closes all cached statements, statements that are checked out are closed when they are checked in.
+     */
+    synchronized void close() {
+        mClosed = true;
+        Iterator<Compiled> iterator = mStatements.values().iterator();
+        while(iterator.hasNext()) {
+            iterator.next().mStatement.close();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * @return the number of statements in the cache, not counting the ones that are checked out
+     */
+    synchronized int size() {
+        return mStatements.size();
+    }
+
+    private synchronized Compiled checkOut(Object key) {
+        return mStatements.remove(key);
+    }
+
+    private Compiled compile(Object key, String sql, String[] columns) {
+        if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "compile: " + sql);
+        return new Compiled(key, mDatabase.compileStatement(sql), columns);
+    }
+
+    private void checkIn(Compiled compiled) {
+        compiled.mStatement.clearBindings();
+        synchronized (this) {
+            if(!mClosed && !mStatements.containsKey(compiled.mKey)) {
+                mStatements.put(compiled.mKey, compiled);
+                return;
+            }
+        }
+        // the cache was closed while the statement was out, or another thread compiled and returned the same statement first
+        compiled.mStatement.close();
+    }
+
+    private static void bindValues(Compiled compiled, ContentValues values) {
+        String[] columns = compiled.mColumns;
+        for(int i = 0; i < columns.length; i++) {
+            DatabaseUtils.bindObjectToProgram(compiled.mStatement, i + 1, values.get(columns[i]));
+        }
+    }
+
+    /**
+     * A compiled statement, and the order its SQL has the columns in, which is the order they are bound in
+     */
+    private static final class Compiled {
+        final Object mKey;
+        final SQLiteStatement mStatement;
+        final String[] mColumns;
+
+        Compiled(Object key, SQLiteStatement statement, String[] columns) {
+            mKey = key;
+            mStatement = statement;
+            mColumns = columns;
+        }
+    }
+
+    /**
+     * What the SQL of an insert, update or delete is built from. The columns are compared as a set,
+     * the order the values were put in doesn't matter, so looking a statement up needs neither sorting nor SQL.
+     */
+    private static final class Shape {
+        private final int mKind;
+        private final String mTable;
+        private final String mIdColumn;
+        private final Set<String> mColumns;
+        private final int mHash;
+
+        /**
+         * @param columns the keys of the values, looked at only while the shape is used to look a statement up
+         */
+        Shape(int kind, String table, String idColumn, Set<String> columns) {
+            mKind = kind;
+            mTable = table;
+            mIdColumn = idColumn;
+            mColumns = columns;
+            int hash = kind * 31 + table.hashCode();
+            hash = hash * 31 + (idColumn != null ? idColumn.hashCode() : 0);
+            mHash = hash * 31 + columns.hashCode();
+        }
+
+        /**
+         * @return the same shape with its own copy of the columns, to be kept in the cache
+         */
+        Shape detach() {
+            return new Shape(mKind, mTable, mIdColumn, new HashSet<>(mColumns));
+        }
+
+        /**
+         * @return the columns in the order the SQL is built with
+         */
+        String[] columns() {
+            String[] columns = mColumns.toArray(new String[mColumns.size()]);
+            Arrays.sort(columns);
+            return columns;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(this == o) {
+                return true;
+            }
+            if(!(o instanceof Shape)) {
+                return false;
+            }
+            Shape other = (Shape) o;
+            return mHash == other.mHash
+                    && mKind == other.mKind
+                    && mTable.equals(other.mTable)
+                    && (mIdColumn == null ? other.mIdColumn == null : mIdColumn.equals(other.mIdColumn))
+                    && mColumns.equals(other.mColumns);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHash;
+        }
+    }
+}
@@ -1,21 +1,62 @@
 package me.modernpage.tasktimer;
 
-import java.io.Serializable;
+import android.os.Parcel;
+import android.os.Parcelable;
 
-class Task implements Serializable {
-    public static final long serialVersionUID = 2021113L;
+/**
+ * A task as the edit screen gets it, through Intent extras and fragment arguments.
+ * Parcelable rather than Serializable: the fields are written and read in order, without reflection
+ * or class descriptors, which matters because the arguments are parcelled again on every configuration change
+ * (TaskTransferMicrobenchmark compares the two).
+ */
+class Task implements Parcelable {
     private long m_Id;
     private final String mName;
     private final String mDescription;
-    private final int mSortOrder;
+    private final Long mSortOrder;      // null if the task has none
 
-    public Task(long id, String name, String description, int sortOrder) {
+    public Task(long id, String name, String description, Long sortOrder) {
         this.m_Id = id;
         mName = name;
         mDescription = description;
         mSortOrder = sortOrder;
     }
 
+    private Task(Parcel in) {
+        m_Id = in.readLong();
+        mName = in.readString();
+        mDescription = in.readString();
+        mSortOrder = in.readInt() != 0 ? in.readLong() : null;
+    }
+
+    public static final Creator<Task> CREATOR = new Creator<Task>() {
+        @Override
+        public Task createFromParcel(Parcel in) {
+            return new Task(in);
+        }
+
+        @Override
+        public Task[] newArray(int size) {
+            return new Task[size];
+        }
+    };
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeLong(m_Id);
+        dest.writeString(mName);
+        dest.writeString(mDescription);
+        dest.writeInt(mSortOrder != null ? 1 : 0);
+        if(mSortOrder != null) {
+            dest.writeLong(mSortOrder);
+        }
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
     public long getId() {
         return m_Id;
     }
@@ -32,7 +73,7 @@ class Task implements Serializable {
         return mDescription;
     }
 
-    public int getSortOrder() {
+    public Long getSortOrder() {
         return mSortOrder;
     }
 
@@ -0,0 +1,376 @@
+package me.modernpage.tasktimer;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.CancellationSignal;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The whole Tasks table in memory, in list order, for the reads of the task list that {@link AppProvider} serves most:
+ * counting the tasks and reading the pages of {@link TaskPageCursor}, a task by its id, and the full list
+ * {@link TaskListLoader} takes its snapshot from. Any other query goes to the database.
+ *
+ * The cache is write-through: after every committed change to Tasks the provider hands it the ids of the changed rows,
+ * and it reads those rows again before the change notification is sent, so a reader that requeries on the
+ * notification always sees the change. A change whose rows aren't known (a restore, a rebalance of the sort order,
+ * a big import) drops the table, the next query reads it again.
+ *
+ * Only tables of up to {@link #MAX_TASKS} tasks whose sortOrders are all integers or null are cached,
+ * the order of any other value would have to follow SQLite's rules for mixed types.
+ */
+class TaskCache {
+    private static final String TAG = "TaskCache";
+
+    static final int MAX_TASKS = 2000;
+
+    private static final String[] COLUMNS = {TasksContract.Columns._ID,
+            TasksContract.Columns.TASKS_NAME,
+            TasksContract.Columns.TASKS_DESCRIPTION,
+            TasksContract.Columns.TASKS_SORTORDER};
+
+    private static final String COLUMNS_SQL = TasksContract.Columns._ID + ", " + TasksContract.Columns.TASKS_NAME + ", "
+            + TasksContract.Columns.TASKS_DESCRIPTION + ", " + TasksContract.Columns.TASKS_SORTORDER;
+
+    // one more than fits, to tell a full table from one that is too big
+    private static final String LOAD_SQL = "select " + COLUMNS_SQL + " from " + TasksContract.TABLE_NAME
+            + " limit " + (MAX_TASKS + 1);
+
+    private static final String TASK_SQL = "select " + COLUMNS_SQL + " from " + TasksContract.TABLE_NAME
+            + " where " + TasksContract.Columns._ID + " = ?";
+
+    /**
+     * {@link TasksContract#DEFAULT_SORT_ORDER} the way SQLite applies it: a null sortOrder first,
+     * names compared with NOCASE, which only folds ASCII letters, then by _id
+     */
+    private static final Comparator<Row> ORDER = new Comparator<Row>() {
+        @Override
+        public int compare(Row row, Row other) {
+            if(row.mSortOrder == null || other.mSortOrder == null) {
+                if(row.mSortOrder != other.mSortOrder) {
+                    return row.mSortOrder == null ? -1 : 1;
+                }
+            } else if(row.mSortOrder.longValue() != other.mSortOrder.longValue()) {
+                return row.mSortOrder < other.mSortOrder ? -1 : 1;
+            }
+            int names = compareNoCase(row.mName, other.mName);
+            if(names != 0) {
+                return names;
+            }
+            return row.mId < other.mId ? -1 : (row.mId == other.mId ? 0 : 1);
+        }
+    };
+
+    private final SQLiteDatabase mDatabase;
+    private final ProviderMetrics mMetrics;
+
+    // guarded by this, both null when the table isn't loaded
+    private List<Row> mRows;
+    private Map<Long, Row> mRowsById;
+    // the table was too big or had a sortOrder that isn't an integer, set until the next change
+    private boolean mUncacheable;
+
+    TaskCache(SQLiteDatabase database, ProviderMetrics metrics) {
+        mDatabase = database;
+        mMetrics = metrics;
+    }
+
+    boolean isFor(SQLiteDatabase database) {
+        return mDatabase == database;
+    }
+
+    /**
+     * Answers a query of the Tasks uri if it is one of the shapes the cache knows
+     * @param limit as in the uri's limit parameter, "count" or "offset,count", null for every row
+     * @return the rows, or null if the query has to go to the database
+     */
+    synchronized Cursor query(String[] projection, String selection, String[] selectionArgs, String sortOrder, String limit,
+                              CancellationSignal cancellationSignal) {
+        if(isCount(projection)) {
+            if(selection != null || limit != null || !load()) {
+                return null;
+            }
+            MatrixCursor cursor = new MatrixCursor(projection, 1);
+            cursor.addRow(new Object[]{mRows.size()});
+            return hit(cursor);
+        }
+        int[] columns = columnsOf(projection);
+        if(columns == null || !TasksContract.DEFAULT_SORT_ORDER.equals(sortOrder)) {
+            return null;
+        }
+        int[] offsetAndCount;
+        try {
+            offsetAndCount = limit != null ? TaskSearch.parseLimit(limit) : new int[]{0, Integer.MAX_VALUE};
+        } catch (IllegalArgumentException e) {
+            // the database reports it
+            return null;
+        }
+        Row after = null;
+        if(selection != null) {
+            after = keyOf(selection, selectionArgs);
+            if(after == null) {
+                return null;
+            }
+        }
+        if(!load()) {
+            return null;
+        }
+        if(cancellationSignal != null) {
+            cancellationSignal.throwIfCanceled();
+        }
+        int start = (after != null ? firstAfter(after) : 0) + offsetAndCount[0];
+        int end = (int) Math.min(mRows.size(), (long) start + offsetAndCount[1]);
+        MatrixCursor cursor = new MatrixCursor(projection != null ? projection : COLUMNS, Math.max(0, end - start));
+        for(int i = start; i < end; i++) {
+            cursor.addRow(mRows.get(i).values(columns));
+        }
+        return hit(cursor);
+    }
+
+    /**
+     * Answers a query of a task's uri
+     * @return the task, no rows if there is none, or null if the query has to go to the database
+     */
+    synchronized Cursor queryTask(long id, String[] projection, String selection) {
+        int[] columns = columnsOf(projection);
+        if(columns == null || selection != null || !load()) {
+            return null;
+        }
+        MatrixCursor cursor = new MatrixCursor(projection != null ? projection : COLUMNS, 1);
+        Row row = mRowsById.get(id);
+        if(row != null) {
+            cursor.addRow(row.values(columns));
+        }
+        return hit(cursor);
+    }
+
+    /**
+     * Reads changed tasks again, call it after their change was committed and before it is notified
+     * @param ids the tasks that were inserted, updated or deleted, null if they aren't known
+     */
+    synchronized void refresh(long[] ids) {
+        mUncacheable = false;
+        if(mRows == null) {
+            return;
+        }
+        if(ids == null || !mDatabase.isOpen()) {
+            evict();
+            return;
+        }
+        for(long id : ids) {
+            Row old = mRowsById.remove(id);
+            if(old != null) {
+                mRows.remove(Collections.binarySearch(mRows, old, ORDER));
+            }
+            Cursor cursor = mDatabase.rawQuery(TASK_SQL, new String[]{String.valueOf(id)});
+            try {
+                if(cursor.moveToFirst()) {
+                    if(!isCacheable(cursor)) {
+                        mUncacheable = true;
+                        evict();
+                        return;
+                    }
+                    Row row = new Row(cursor);
+                    // not found, the insertion point is encoded as -(point + 1)
+                    mRows.add(-(Collections.binarySearch(mRows, row, ORDER) + 1), row);
+                    mRowsById.put(row.mId, row);
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        if(mRows.size() > MAX_TASKS) {
+            mUncacheable = true;
+            evict();
+        }
+    }
+
+    private void evict() {
+        if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "evict: dropping " + mRows.size() + " tasks");
+        mRows = null;
+        mRowsById = null;
+        mMetrics.recordTaskCache(ProviderMetrics.TASK_CACHE_EVICTION);
+    }
+
+    /**
+     * Reads the table unless it is loaded, a query that has to read it is a miss
+     * @return false if the table can't be cached, the query goes to the database
+     */
+    private boolean load() {
+        if(mRows != null) {
+            return true;
+        }
+        mMetrics.recordTaskCache(ProviderMetrics.TASK_CACHE_MISS);
+        if(mUncacheable) {
+            return false;
+        }
+        List<Row> rows = new ArrayList<>();
+        Cursor cursor = mDatabase.rawQuery(LOAD_SQL, null);
+        try {
+            while(cursor.moveToNext()) {
+                if(cursor.getPosition() == MAX_TASKS || !isCacheable(cursor)) {
+                    mUncacheable = true;
+                    return false;
+                }
+                rows.add(new Row(cursor));
+            }
+        } finally {
+            cursor.close();
+        }
+        Collections.sort(rows, ORDER);
+        mRowsById = new HashMap<>(rows.size() * 2);
+        for(Row row : rows) {
+            mRowsById.put(row.mId, row);
+        }
+        mRows = rows;
+        if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "load: " + rows.size() + " tasks");
+        return true;
+    }
+
+    private Cursor hit(Cursor cursor) {
+        mMetrics.recordTaskCache(ProviderMetrics.TASK_CACHE_HIT);
+        return cursor;
+    }
+
+    /**
+     * @return the index of the first row after key, the size if there is none
+     */
+    private int firstAfter(Row key) {
+        int low = 0;
+        int high = mRows.size();
+        while(low < high) {
+            int middle = (low + high) >>> 1;
+            if(ORDER.compare(mRows.get(middle), key) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the key the selection of a {@link TaskPageCursor} page starts after, null if it isn't one of those
+     */
+    private static Row keyOf(String selection, String[] args) {
+        try {
+            if(TaskPageCursor.AFTER_NULL_KEY_SELECTION.equals(selection) && args != null && args.length == 3
+                    && args[0] != null && args[0].equals(args[1])) {
+                return new Row(Long.parseLong(args[2]), args[0], null);
+            }
+            if(TaskPageCursor.AFTER_KEY_SELECTION.equals(selection) && args != null && args.length == 5
+                    && args[0] != null && args[0].equals(args[1]) && args[2] != null && args[2].equals(args[3])) {
+                return new Row(Long.parseLong(args[4]), args[2], Long.parseLong(args[0]));
+            }
+        } catch (NumberFormatException e) {
+            // SQLite converts more forms of a number, it can have that one
+        }
+        return null;
+    }
+
+    private static boolean isCount(String[] projection) {
+        return projection != null && projection.length == 1 && TasksContract.COUNT.equalsIgnoreCase(projection[0]);
+    }
+
+    private static boolean isCacheable(Cursor cursor) {
+        int type = cursor.getType(3);
+        return type == Cursor.FIELD_TYPE_INTEGER || type == Cursor.FIELD_TYPE_NULL;
+    }
+
+    /**
+     * @return the index in {@link #COLUMNS} of every column of the projection, or null if one isn't a task column
+     */
+    private static int[] columnsOf(String[] projection) {
+        if(projection == null) {
+            return new int[]{0, 1, 2, 3};
+        }
+        int[] columns = new int[projection.length];
+        for(int i = 0; i < projection.length; i++) {
+            columns[i] = -1;
+            for(int j = 0; j < COLUMNS.length; j++) {
+                if(COLUMNS[j].equals(projection[i])) {
+                    columns[i] = j;
+                }
+            }
+            if(columns[i] < 0) {
+                return null;
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * SQLite's NOCASE: ASCII letters folded to lower case, everything else compared as it is,
+     * UTF-8 bytes compare in the order of the code points
+     */
+    static int compareNoCase(String name, String other) {
+        int i = 0;
+        int j = 0;
+        while(i < name.length() && j < other.length()) {
+            int c = name.codePointAt(i);
+            int d = other.codePointAt(j);
+            i += Character.charCount(c);
+            j += Character.charCount(d);
+            c = c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
+            d = d >= 'A' && d <= 'Z' ? d + ('a' - 'A') : d;
+            if(c != d) {
+                return c < d ? -1 : 1;
+            }
+        }
+        // the shorter one first when one starts the other
+        if(i < name.length()) {
+            return 1;
+        }
+        return j < other.length() ? -1 : 0;
+    }
+
+    private static final class Row {
+        final long mId;
+        final String mName;
+        final String mDescription;
+        final Long mSortOrder;
+
+        Row(Cursor cursor) {
+            mId = cursor.getLong(0);
+            mName = cursor.getString(1);
+            mDescription = cursor.getString(2);
+            mSortOrder = cursor.isNull(3) ? null : cursor.getLong(3);
+        }
+
+        // a key, only the columns of the order
+        Row(long id, String name, Long sortOrder) {
+            mId = id;
+            mName = name;
+            mDescription = null;
+            mSortOrder = sortOrder;
+        }
+
+        Object[] values(int[] columns) {
+            Object[] values = new Object[columns.length];
+            for(int i = 0; i < columns.length; i++) {
+                switch(columns[i]) {
+                    case 0:
+                        values[i] = mId;
+                        break;
+                    case 1:
+                        values[i] = mName;
+                        break;
+                    case 2:
+                        values[i] = mDescription;
+                        break;
+                    default:
+                        values[i] = mSortOrder;
+                        break;
+                }
+            }
+            return values;
+        }
+    }
+}
@@ -0,0 +1,429 @@
+package me.modernpage.tasktimer;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.OperationCanceledException;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.Choreographer;
+
+import androidx.annotation.NonNull;
+import androidx.loader.content.AsyncTaskLoader;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Loads the task list as a {@link TaskPageCursor}.
+ *
+ * Works like the stock CursorLoader: the query runs on a background thread, the loader watches the
+ * Tasks uri (the table notification only, not the row ones) and reloads when it changes, and it closes
+ * the cursors it replaces. The difference is that loadInBackground only counts the tasks and reads the first
+ * page, so the first screen shows up without waiting for the whole table, and the rest of the list is read
+ * in pages on a background thread while the user scrolls.
+ *
+ * Every reload also takes a {@link TaskListSnapshot} and diffs it against the previous load's snapshot,
+ * still on the background thread, so the adapter can apply only the rows that changed. A load with nothing to diff
+ * against, the first one above all, doesn't wait for the snapshot: its list is handed over as soon as the first page
+ * is read, and the snapshot the next reload diffs against is taken afterwards, off the main thread
+ * (see {@link #takeSnapshotLater(TaskPageCursor)}).
+ *
+ * A burst of writes (an import, a bulk delete) sends a burst of notifications, and reloading for each of them
+ * would mostly produce lists nobody sees. So the first notification only schedules a reload, one coalescing window
+ * later, and the notifications that come in meanwhile are folded into that same reload. A reload that starts while
+ * the previous one is still running cancels it (its queries are interrupted in SQLite), as its list is already stale.
+ * Finished loads are handed over on the next frame, and one that is superseded before then is closed unseen,
+ * so the list is given at most one new result per frame. {@link #getStats()} counts all of this.
+ */
+class TaskListLoader extends AsyncTaskLoader<Cursor> {
+    private static final String TAG = "TaskListLoader";
+
+    // above this many tasks the list isn't diffed, a full refresh is cheaper than reading every row
+    static final int MAX_DIFF_ROWS = 2000;
+
+    /**
+     * Notifications within this long after the first one are folded into one reload
+     */
+    static final long DEFAULT_COALESCE_WINDOW_MILLIS = 100;
+
+    // takes the snapshot of a list that was handed over without one, one at a time for all loaders
+    private static final ExecutorService sSnapshotExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(@NonNull Runnable runnable) {
+            return new Thread(runnable, "TaskListLoader-snapshot");
+        }
+    });
+
+    private final CoalescingObserver mObserver;
+    private final String[] mProjection;
+    private final long mCoalesceWindowMillis;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Stats mStats = new Stats();
+
+    private Cursor mCursor;
+    private boolean mObserverRegistered;
+
+    // notifications since the last reload started, only touched on the UI thread
+    private int mPendingNotifications;
+    private boolean mReloadScheduled;
+
+    // the latest finished load, waiting for the next frame
+    private Cursor mPendingResult;
+    private boolean mFrameCallbackPosted;
+
+    // the load running in the background, cancelled when a newer one is wanted
+    private CancellationSignal mCancellationSignal;
+
+    // notifications the load that is running was started for, written on the UI thread
+    private volatile int mLoadingNotifications;
+
+    // snapshot of the most recent load, written and read on the loader's background thread
+    private volatile TaskListSnapshot mLastSnapshot;
+
+    TaskListLoader(@NonNull Context context, String[] projection) {
+        this(context, projection, DEFAULT_COALESCE_WINDOW_MILLIS);
+    }
+
+    /**
+     * @param coalesceWindowMillis how long after a change notification the list is reloaded,
+     *                             0 reloads on the next message after every notification
+     */
+    TaskListLoader(@NonNull Context context, String[] projection, long coalesceWindowMillis) {
+        super(context);
+        mObserver = new CoalescingObserver(mHandler);
+        mProjection = projection;
+        mCoalesceWindowMillis = coalesceWindowMillis;
+    }
+
+    /**
+     * Counters of the notifications, reloads and results, only read and updated on the UI thread
+     */
+    static final class Stats {
+        int mNotifications;
+        int mReloads;
+        int mCancelledLoads;
+        int mSupersededResults;
+        int mDeliveredResults;
+        // notifications folded into the most recent reload, and the most folded into any reload
+        int mLastFolded;
+        int mMaxFolded;
+
+        @Override
+        public String toString() {
+            return "TaskListLoader.Stats{" +
+                    "notifications=" + mNotifications +
+                    ", reloads=" + mReloads +
+                    ", lastFolded=" + mLastFolded +
+                    ", maxFolded=" + mMaxFolded +
+                    ", cancelledLoads=" + mCancelledLoads +
+                    ", supersededResults=" + mSupersededResults +
+                    ", deliveredResults=" + mDeliveredResults +
+                    '}';
+        }
+    }
+
+    Stats getStats() {
+        return mStats;
+    }
+
+    /**
+     * Counts the notifications and schedules one reload for all those in a window.
+     * Registered with the main thread's handler, so onChange runs on the UI thread.
+     */
+    private final class CoalescingObserver extends ContentObserver {
+        CoalescingObserver(Handler handler) {
+            super(handler);
+        }
+
+        @Override
+        public boolean deliverSelfNotifications() {
+            return true;
+        }
+
+        @Override
+        public void onChange(boolean selfChange) {
+            mStats.mNotifications++;
+            mPendingNotifications++;
+            if(!mReloadScheduled) {
+                mReloadScheduled = true;
+                mHandler.postAtTime(mReload, SystemClock.uptimeMillis() + mCoalesceWindowMillis);
+            }
+        }
+    }
+
+    private final Runnable mReload = new Runnable() {
+        @Override
+        public void run() {
+            mReloadScheduled = false;
+            int folded = mPendingNotifications;
+            mPendingNotifications = 0;
+            mStats.mReloads++;
+            mStats.mLastFolded = folded;
+            mStats.mMaxFolded = Math.max(mStats.mMaxFolded, folded);
+            mLoadingNotifications = folded;
+            if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "reload: " + folded + " notifications folded into one reload");
+            // forceLoad cancels the load still running, or the reload waits until the loader is started again
+            onContentChanged();
+        }
+    };
+
+    /* Runs on a worker thread */
+    @Override
+    public Cursor loadInBackground() {
+        if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "loadInBackground: starts for " + mLoadingNotifications + " notifications");
+        CancellationSignal cancellationSignal;
+        synchronized (this) {
+            if(isLoadInBackgroundCanceled()) {
+                throw new OperationCanceledException();
+            }
+            cancellationSignal = mCancellationSignal = new CancellationSignal();
+        }
+        try {
+            TaskPageCursor cursor = new TaskPageCursor(getContext().getContentResolver(), mProjection, cancellationSignal);
+            try {
+                cursor.setChange(loadChange(cursor.getCount(), cancellationSignal));
+            } catch (RuntimeException e) {
+                cursor.close();
+                throw e;
+            }
+            if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "loadInBackground: ends with " + cursor.getCount() + " tasks");
+            return cursor;
+        } finally {
+            synchronized (this) {
+                mCancellationSignal = null;
+            }
+        }
+    }
+
+    /* Runs on the UI thread, while the load it cancels may still be running */
+    @Override
+    public void cancelLoadInBackground() {
+        super.cancelLoadInBackground();
+        synchronized (this) {
+            if(mCancellationSignal != null) {
+                mCancellationSignal.cancel();
+            }
+        }
+    }
+
+    /**
+     * Snapshots the list and diffs it against the previous snapshot.
+     * Returns null, and the adapter refreshes everything, if there is no previous snapshot (the list is then
+     * handed over without reading it all, its snapshot is taken afterwards), if the list is too long to diff,
+     * or if it changed again between counting the tasks and taking the snapshot.
+     */
+    private TaskListSnapshot.Change loadChange(int count, CancellationSignal cancellationSignal) {
+        TaskListSnapshot previous = mLastSnapshot;
+        mLastSnapshot = null;
+        if(previous == null || count > MAX_DIFF_ROWS) {
+            return null;
+        }
+        TaskListSnapshot snapshot = takeSnapshot(count, cancellationSignal);
+        if(snapshot == null) {
+            return null;
+        }
+        mLastSnapshot = snapshot;
+        return new TaskListSnapshot.Change(previous, snapshot);
+    }
+
+    /**
+     * @return the snapshot of the whole list, or null if it no longer has count tasks
+     */
+    private TaskListSnapshot takeSnapshot(int count, CancellationSignal cancellationSignal) {
+        Cursor cursor = getContext().getContentResolver().query(TasksContract.CONTENT_URI,
+                TaskListSnapshot.PROJECTION, null, null, TasksContract.DEFAULT_SORT_ORDER, cancellationSignal);
+        if(cursor == null) {
+            return null;
+        }
+        TaskListSnapshot snapshot;
+        try {
+            snapshot = TaskListSnapshot.of(cursor);
+        } finally {
+            cursor.close();
+        }
+        if(snapshot.size() != count) {
+            if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "takeSnapshot: the list changed while loading, not diffing");
+            return null;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Takes the snapshot of a list that has been handed over without one, on {@link #sSnapshotExecutor},
+     * so the next reload has something to diff against. The snapshot is only kept if the list is still the one shown
+     * and nothing has changed in the meantime, no notification and no load; otherwise the next reload
+     * refreshes everything, as the first one did, and the snapshot is taken after it instead.
+     * Runs on the UI thread.
+     */
+    private void takeSnapshotLater(final TaskPageCursor cursor) {
+        final int notifications = mStats.mNotifications;
+        final int count = cursor.getCount();
+        sSnapshotExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final TaskListSnapshot snapshot = takeSnapshot(count, null);
+                if(snapshot == null) {
+                    return;
+                }
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        boolean loading;
+                        synchronized (TaskListLoader.this) {
+                            loading = mCancellationSignal != null;
+                        }
+                        if(isReset() || mCursor != cursor || cursor.isClosed() || loading
+                                || mReloadScheduled || mStats.mNotifications != notifications) {
+                            if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "takeSnapshotLater: the list changed, dropping the snapshot");
+                            return;
+                        }
+                        mLastSnapshot = snapshot;
+                        cursor.setSnapshot(snapshot);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Runs on the UI thread when a load finishes. The result is handed over on the next frame,
+     * a result that is still waiting for its frame when the next one comes is closed without being shown.
+     */
+    @Override
+    public void deliverResult(Cursor cursor) {
+        if(isReset()) {
+            // An async query came in while the loader is stopped
+            if(cursor != null) {
+                cursor.close();
+            }
+            return;
+        }
+        if(mPendingResult != null && mPendingResult != cursor) {
+            mStats.mSupersededResults++;
+            if(!mPendingResult.isClosed()) {
+                mPendingResult.close();
+            }
+        }
+        mPendingResult = cursor;
+        if(!mFrameCallbackPosted) {
+            mFrameCallbackPosted = true;
+            Choreographer.getInstance().postFrameCallback(mDeliverOnFrame);
+        }
+    }
+
+    private final Choreographer.FrameCallback mDeliverOnFrame = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mFrameCallbackPosted = false;
+            Cursor cursor = mPendingResult;
+            mPendingResult = null;
+            if(cursor != null) {
+                mStats.mDeliveredResults++;
+                deliverNow(cursor);
+            }
+        }
+    };
+
+    /* Runs on the UI thread */
+    private void deliverNow(Cursor cursor) {
+        if(isReset()) {
+            if(cursor != null) {
+                cursor.close();
+            }
+            return;
+        }
+        Cursor oldCursor = mCursor;
+        mCursor = cursor;
+
+        if(isStarted()) {
+            super.deliverResult(cursor);
+        }
+        if(cursor != oldCursor && cursor instanceof TaskPageCursor) {
+            TaskPageCursor pageCursor = (TaskPageCursor) cursor;
+            if(pageCursor.getSnapshot() == null && pageCursor.getCount() <= MAX_DIFF_ROWS) {
+                takeSnapshotLater(pageCursor);
+            }
+        }
+
+        if(oldCursor != null && oldCursor != cursor && !oldCursor.isClosed()) {
+            oldCursor.close();
+        }
+    }
+
+    /**
+     * Starts an asynchronous load of the task list. When the result is ready the callbacks
+     * will be called on the UI thread. If a previous load has been completed and is still valid
+     * the result may be passed to the callbacks immediately.
+     *
+     * Must be called from the UI thread
+     */
+    @Override
+    protected void onStartLoading() {
+        if(!mObserverRegistered) {
+            // only the table notification, the provider also notifies every changed row
+            // but the whole list is reloaded anyway, so one reload per coalescing window is enough
+            getContext().getContentResolver().registerContentObserver(TasksContract.CONTENT_URI, false, mObserver);
+            mObserverRegistered = true;
+        }
+        if(mCursor != null && mPendingResult == null) {
+            deliverNow(mCursor);
+        }
+        if(takeContentChanged() || (mCursor == null && mPendingResult == null)) {
+            forceLoad();
+        }
+    }
+
+    /**
+     * Must be called from the UI thread
+     */
+    @Override
+    protected void onStopLoading() {
+        // Attempt to cancel the current load task if possible.
+        cancelLoad();
+    }
+
+    /**
+     * Runs on the UI thread for a load that was cancelled, cursor is null if it was cancelled before it finished
+     */
+    @Override
+    public void onCanceled(Cursor cursor) {
+        mStats.mCancelledLoads++;
+        if(cursor != null && !cursor.isClosed()) {
+            cursor.close();
+        }
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+
+        // Ensure the loader is stopped
+        onStopLoading();
+
+        if(mObserverRegistered) {
+            getContext().getContentResolver().unregisterContentObserver(mObserver);
+            mObserverRegistered = false;
+        }
+        mHandler.removeCallbacks(mReload);
+        mReloadScheduled = false;
+        mPendingNotifications = 0;
+        if(mFrameCallbackPosted) {
+            Choreographer.getInstance().removeFrameCallback(mDeliverOnFrame);
+            mFrameCallbackPosted = false;
+        }
+        if(mPendingResult != null && !mPendingResult.isClosed()) {
+            mPendingResult.close();
+        }
+        mPendingResult = null;
+
+        if(mCursor != null && !mCursor.isClosed()) {
+            mCursor.close();
+        }
+        mCursor = null;
+    }
+}
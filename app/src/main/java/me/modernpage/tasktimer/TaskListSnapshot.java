@@ -0,0 +1,120 @@
+package me.modernpage.tasktimer;
+
+import android.database.Cursor;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.DiffUtil;
+
+/**
+ * The ids of the task list in display order, with a hash of every row's content.
+ *
+ * Two snapshots are enough for DiffUtil to work out which rows were inserted, removed, moved or changed
+ * between two loads of the list, so the adapter can notify just those rows instead of rebinding everything.
+ * A snapshot is small (a long and an int per task) and is taken on the loader's background thread.
+ */
+final class TaskListSnapshot {
+    // columns a snapshot is built from, the rest of a row isn't shown in the list
+    static final String[] PROJECTION = {TasksContract.Columns._ID,
+            TasksContract.Columns.TASKS_NAME,
+            TasksContract.Columns.TASKS_DESCRIPTION,
+            TasksContract.Columns.TASKS_SORTORDER};
+
+    private final long[] mIds;
+    private final int[] mContentHashes;
+
+    private TaskListSnapshot(long[] ids, int[] contentHashes) {
+        mIds = ids;
+        mContentHashes = contentHashes;
+    }
+
+    /**
+     * Reads every row of the cursor, which has to contain the {@link #PROJECTION} columns
+     */
+    static TaskListSnapshot of(@NonNull Cursor cursor) {
+        int idColumn = cursor.getColumnIndexOrThrow(TasksContract.Columns._ID);
+        int nameColumn = cursor.getColumnIndexOrThrow(TasksContract.Columns.TASKS_NAME);
+        int descriptionColumn = cursor.getColumnIndexOrThrow(TasksContract.Columns.TASKS_DESCRIPTION);
+        int sortOrderColumn = cursor.getColumnIndexOrThrow(TasksContract.Columns.TASKS_SORTORDER);
+
+        int count = cursor.getCount();
+        long[] ids = new long[count];
+        int[] hashes = new int[count];
+        cursor.moveToPosition(-1);
+        for(int i = 0; i < count && cursor.moveToNext(); i++) {
+            ids[i] = cursor.getLong(idColumn);
+            int hash = hashOf(cursor.getString(nameColumn));
+            hash = 31 * hash + hashOf(cursor.getString(descriptionColumn));
+            // whether there is a sortOrder at all is hashed on its own, so null doesn't equal any sortOrder
+            boolean noSortOrder = cursor.isNull(sortOrderColumn);
+            hash = 31 * hash + (noSortOrder ? 1 : 0);
+            hash = 31 * hash + (noSortOrder ? 0 : hashOf(cursor.getLong(sortOrderColumn)));
+            hashes[i] = hash;
+        }
+        return new TaskListSnapshot(ids, hashes);
+    }
+
+    int size() {
+        return mIds.length;
+    }
+
+    long getId(int position) {
+        return mIds[position];
+    }
+
+    /**
+     * @return the updates that turn the previous snapshot into this one,
+     * or null if there is no previous snapshot to compare with
+     */
+    @Nullable
+    DiffUtil.DiffResult diffFrom(@Nullable final TaskListSnapshot previous) {
+        if(previous == null) {
+            return null;
+        }
+        return DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return previous.mIds.length;
+            }
+
+            @Override
+            public int getNewListSize() {
+                return mIds.length;
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+                return previous.mIds[oldItemPosition] == mIds[newItemPosition];
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+                return previous.mContentHashes[oldItemPosition] == mContentHashes[newItemPosition];
+            }
+        }, true);
+    }
+
+    private static int hashOf(String value) {
+        return value == null ? 0 : value.hashCode();
+    }
+
+    private static int hashOf(long value) {
+        return (int) (value ^ (value >>> 32));
+    }
+
+    /**
+     * A snapshot of a newly loaded list and how it differs from the one loaded before it.
+     * The updates only apply to an adapter that is still showing the {@link #mFrom} snapshot.
+     */
+    static final class Change {
+        final TaskListSnapshot mFrom;
+        final TaskListSnapshot mTo;
+        final DiffUtil.DiffResult mDiff;
+
+        Change(@Nullable TaskListSnapshot from, @NonNull TaskListSnapshot to) {
+            mFrom = from;
+            mTo = to;
+            mDiff = to.diffFrom(from);
+        }
+    }
+}
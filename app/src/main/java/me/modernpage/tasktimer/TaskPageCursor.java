@@ -0,0 +1,486 @@
+package me.modernpage.tasktimer;
+
+import android.content.ContentResolver;
+import android.database.AbstractCursor;
+import android.database.CharArrayBuffer;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.SparseArray;
+import android.util.SparseBooleanArray;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A read-only cursor over the task list that loads its rows in pages, as they are needed.
+ *
+ * Instead of pulling the whole Tasks table into one CursorWindow, every page is a small query
+ * that continues after the last row of the previous page (keyset pagination on sortOrder, name and _id),
+ * so it is answered from the sort index no matter how far down the list it is.
+ * Only the most recently used pages are kept, older ones are closed.
+ *
+ * The constructor reads the first page. After that the cursor belongs to the main thread, and no page is read on it:
+ * moving to a row of a page that isn't loaded yet starts loading it on {@link #sPageExecutor} and leaves the cursor
+ * on a placeholder row, which reads as all nulls and {@link #isRowLoaded()} false. Moving to a row near either edge
+ * of a page loads the page past that edge ahead of time, so while the list scrolls the rows are usually there
+ * before they are bound. When a page arrives the {@link OnRowsLoadedListener} is told which rows it holds.
+ *
+ * The row count is taken when the cursor is created. If the table changes afterwards, a page may come back
+ * shorter than expected and moving to the missing rows fails; the owner of the cursor is expected to be
+ * observing the table and to swap in a fresh cursor.
+ */
+class TaskPageCursor extends AbstractCursor {
+    private static final String TAG = "TaskPageCursor";
+
+    static final int DEFAULT_PAGE_SIZE = 50;
+    static final int DEFAULT_MAX_PAGES = 8;
+
+    // reads the pages after the first one, one at a time for all task lists
+    private static final ExecutorService sPageExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(@NonNull Runnable runnable) {
+            return new Thread(runnable, "TaskPageCursor-pages");
+        }
+    });
+
+    /**
+     * Told on the main thread when rows that were placeholders have been loaded
+     */
+    interface OnRowsLoadedListener {
+        void onRowsLoaded(int position, int count);
+    }
+
+    private final ContentResolver mContentResolver;
+    private final String[] mProjection;
+    private final int mPageSize;
+    private final int mMaxPages;
+    private final int mCount;
+    // rows this close to the edge of their page load the page past that edge
+    private final int mPrefetchDistance;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    // indices of the keyset columns in mProjection
+    private final int mSortOrderIndex;
+    private final int mNameIndex;
+    private final int mIdIndex;
+
+    // access ordered, the least recently used page is closed when there are too many
+    private final LinkedHashMap<Integer, Cursor> mPages;
+
+    // the key of the last row of every page loaded so far, kept after the page itself is evicted
+    private final SparseArray<PageKey> mPageEndKeys = new SparseArray<>();
+
+    // pages being read on sPageExecutor
+    private final SparseBooleanArray mLoadingPages = new SparseBooleanArray();
+
+    // the page the cursor is on, null on a placeholder row
+    private Cursor mCurrentPage;
+
+    private OnRowsLoadedListener mListener;
+
+    // cancels the count and the first page while the constructor runs them, null afterwards
+    private CancellationSignal mCancellationSignal;
+
+    // set by the loader, how this list differs from the one it loaded before
+    private TaskListSnapshot.Change mChange;
+    // set by the loader, the ids and content hashes of this list, from its change or taken after it was handed over
+    private volatile TaskListSnapshot mSnapshot;
+
+    /**
+     * Sort key of a row, the next page starts right after it
+     */
+    private static final class PageKey {
+        final Long mSortOrder;
+        final String mName;
+        final long mId;
+
+        PageKey(Long sortOrder, String name, long id) {
+            mSortOrder = sortOrder;
+            mName = name;
+            mId = id;
+        }
+    }
+
+    /**
+     * Counts the tasks and loads the first page, so call this off the main thread
+     * @param projection columns to return, _id, name and sortOrder are added if missing
+     */
+    TaskPageCursor(ContentResolver contentResolver, String[] projection) {
+        this(contentResolver, projection, null);
+    }
+
+    /**
+     * @param cancellationSignal cancels counting the tasks and loading the first page, the constructor then throws
+     *                           OperationCanceledException. Pages read later, in the background, aren't cancelled.
+     */
+    TaskPageCursor(ContentResolver contentResolver, String[] projection, CancellationSignal cancellationSignal) {
+        this(contentResolver, projection, DEFAULT_PAGE_SIZE, DEFAULT_MAX_PAGES, cancellationSignal);
+    }
+
+    TaskPageCursor(ContentResolver contentResolver, String[] projection, int pageSize, int maxPages,
+                   CancellationSignal cancellationSignal) {
+        mContentResolver = contentResolver;
+        mProjection = withKeyColumns(projection);
+        mPageSize = pageSize;
+        mMaxPages = maxPages;
+        mPrefetchDistance = Math.max(1, pageSize / 4);
+        mSortOrderIndex = indexOf(mProjection, TasksContract.Columns.TASKS_SORTORDER);
+        mNameIndex = indexOf(mProjection, TasksContract.Columns.TASKS_NAME);
+        mIdIndex = indexOf(mProjection, TasksContract.Columns._ID);
+        mPages = new LinkedHashMap<Integer, Cursor>(maxPages, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Cursor> eldest) {
+                if(size() > mMaxPages) {
+                    if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "removeEldestEntry: evicting page " + eldest.getKey());
+                    eldest.getValue().close();
+                    return true;
+                }
+                return false;
+            }
+        };
+
+        mCancellationSignal = cancellationSignal;
+        try {
+            mCount = countTasks();
+            if(mCount > 0) {
+                Cursor cursor = queryPage(0, null, 0, mCancellationSignal);
+                putPage(0, cursor, endKeyOf(cursor));
+            }
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        } finally {
+            mCancellationSignal = null;
+        }
+    }
+
+    @Override
+    public int getCount() {
+        return mCount;
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return mProjection;
+    }
+
+    /**
+     * Never queries, a page that isn't loaded is requested and the cursor is left on a placeholder row
+     */
+    @Override
+    public boolean onMove(int oldPosition, int newPosition) {
+        int page = newPosition / mPageSize;
+        int offset = newPosition % mPageSize;
+        if(offset >= mPageSize - mPrefetchDistance) {
+            requestPage(page + 1);
+        } else if(offset < mPrefetchDistance) {
+            requestPage(page - 1);
+        }
+        Cursor pageCursor = mPages.get(page);
+        if(pageCursor == null) {
+            requestPage(page);
+            mCurrentPage = null;
+            return true;
+        }
+        mCurrentPage = pageCursor;
+        return pageCursor.moveToPosition(offset);
+    }
+
+    /**
+     * @return false if the cursor is on a placeholder row, whose page is still being read
+     */
+    boolean isRowLoaded() {
+        return mCurrentPage != null;
+    }
+
+    /**
+     * @param listener told when placeholder rows have been loaded, on the main thread, or null
+     */
+    void setOnRowsLoadedListener(OnRowsLoadedListener listener) {
+        mListener = listener;
+    }
+
+    @Override
+    public String getString(int column) {
+        return mCurrentPage != null ? mCurrentPage.getString(column) : null;
+    }
+
+    @Override
+    public void copyStringToBuffer(int columnIndex, CharArrayBuffer buffer) {
+        if(mCurrentPage == null) {
+            buffer.sizeCopied = 0;
+            return;
+        }
+        // straight from the page's window into the caller's buffer, without creating a String
+        mCurrentPage.copyStringToBuffer(columnIndex, buffer);
+    }
+
+    @Override
+    public short getShort(int column) {
+        return mCurrentPage != null ? mCurrentPage.getShort(column) : 0;
+    }
+
+    @Override
+    public int getInt(int column) {
+        return mCurrentPage != null ? mCurrentPage.getInt(column) : 0;
+    }
+
+    @Override
+    public long getLong(int column) {
+        return mCurrentPage != null ? mCurrentPage.getLong(column) : 0;
+    }
+
+    @Override
+    public float getFloat(int column) {
+        return mCurrentPage != null ? mCurrentPage.getFloat(column) : 0;
+    }
+
+    @Override
+    public double getDouble(int column) {
+        return mCurrentPage != null ? mCurrentPage.getDouble(column) : 0;
+    }
+
+    @Override
+    public byte[] getBlob(int column) {
+        return mCurrentPage != null ? mCurrentPage.getBlob(column) : null;
+    }
+
+    @Override
+    public int getType(int column) {
+        return mCurrentPage != null ? mCurrentPage.getType(column) : FIELD_TYPE_NULL;
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        return mCurrentPage == null || mCurrentPage.isNull(column);
+    }
+
+    /**
+     * Closes the loaded pages, pages still being read are closed when they arrive
+     */
+    @Override
+    public void close() {
+        super.close();
+        Iterator<Cursor> iterator = mPages.values().iterator();
+        while(iterator.hasNext()) {
+            iterator.next().close();
+            iterator.remove();
+        }
+        mCurrentPage = null;
+        mListener = null;
+    }
+
+    TaskListSnapshot.Change getChange() {
+        return mChange;
+    }
+
+    void setChange(TaskListSnapshot.Change change) {
+        mChange = change;
+        mSnapshot = change != null ? change.mTo : null;
+    }
+
+    TaskListSnapshot getSnapshot() {
+        return mSnapshot;
+    }
+
+    /**
+     * For a list loaded without a change, once its snapshot has been taken
+     */
+    void setSnapshot(TaskListSnapshot snapshot) {
+        mSnapshot = snapshot;
+    }
+
+    private int countTasks() {
+        Cursor cursor = mContentResolver.query(TasksContract.CONTENT_URI, new String[]{TasksContract.COUNT}, null, null, null,
+                mCancellationSignal);
+        if(cursor == null) {
+            return 0;
+        }
+        try {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Starts reading a page in the background, unless it is loaded, already being read, or past either end of the list.
+     * The query continues from the end of the closest page before it whose last row is known.
+     * Scrolling loads pages in order, so usually that is the page right before and nothing is skipped.
+     */
+    private void requestPage(final int page) {
+        if(page < 0 || page * mPageSize >= mCount || isClosed() || mLoadingPages.get(page) || mPages.containsKey(page)) {
+            return;
+        }
+        int knownPage = page - 1;
+        while(knownPage >= 0 && mPageEndKeys.get(knownPage) == null) {
+            knownPage--;
+        }
+        final PageKey after = knownPage >= 0 ? mPageEndKeys.get(knownPage) : null;
+        final int skip = (page - knownPage - 1) * mPageSize;
+        mLoadingPages.put(page, true);
+        if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "requestPage: page " + page + " after page " + knownPage + ", skipping " + skip);
+
+        sPageExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Cursor cursor = null;
+                PageKey endKey = null;
+                try {
+                    cursor = queryPage(page, after, skip, null);
+                    endKey = endKeyOf(cursor);
+                } catch (RuntimeException e) {
+                    // binding one of its rows again asks for the page again
+                    Log.e(TAG, "requestPage: couldn't load page " + page, e);
+                }
+                final Cursor loaded = cursor;
+                final PageKey loadedEndKey = endKey;
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onPageLoaded(page, loaded, loadedEndKey);
+                    }
+                });
+            }
+        });
+    }
+
+    /* Runs on the main thread */
+    private void onPageLoaded(int page, Cursor cursor, PageKey endKey) {
+        mLoadingPages.delete(page);
+        if(cursor == null) {
+            return;
+        }
+        if(isClosed()) {
+            cursor.close();
+            return;
+        }
+        putPage(page, cursor, endKey);
+        // the cursor may be on a placeholder row of this page, or on a page that was just evicted,
+        // forget the position so the next move reads the row again rather than being skipped as a no-op
+        mPos = -1;
+        mCurrentPage = null;
+        if(mListener != null) {
+            int position = page * mPageSize;
+            mListener.onRowsLoaded(position, Math.min(mPageSize, mCount - position));
+        }
+    }
+
+    private void putPage(int page, Cursor cursor, PageKey endKey) {
+        if(endKey != null) {
+            mPageEndKeys.put(page, endKey);
+        }
+        mPages.put(page, cursor);
+    }
+
+    /**
+     * Reads a page, only uses the cursor's final fields, so it runs on any thread
+     * @param after the key of the last row before the page, or of the last row of an earlier page, null to start from the top
+     * @param skip rows to skip between after and the page
+     */
+    private Cursor queryPage(int page, PageKey after, int skip, CancellationSignal cancellationSignal) {
+        String selection = null;
+        String[] selectionArgs = null;
+        if(after != null) {
+            List<String> args = new ArrayList<>(5);
+            selection = keysetSelection(after, args);
+            selectionArgs = args.toArray(new String[args.size()]);
+        }
+        String limit = skip > 0 ? skip + "," + mPageSize : String.valueOf(mPageSize);
+        Uri uri = TasksContract.CONTENT_URI.buildUpon()
+                .appendQueryParameter(TasksContract.QUERY_PARAMETER_LIMIT, limit)
+                .build();
+
+        Cursor cursor = mContentResolver.query(uri, mProjection, selection, selectionArgs, TasksContract.DEFAULT_SORT_ORDER,
+                cancellationSignal);
+        if(cursor == null) {
+            throw new IllegalStateException("Couldn't load page " + page);
+        }
+        return cursor;
+    }
+
+    /**
+     * @return the key of the last row of a page, reading it fills the page's window, or null if the page is empty
+     */
+    private PageKey endKeyOf(Cursor cursor) {
+        if(!cursor.moveToLast()) {
+            return null;
+        }
+        Long sortOrder = cursor.isNull(mSortOrderIndex) ? null : cursor.getLong(mSortOrderIndex);
+        return new PageKey(sortOrder, cursor.getString(mNameIndex), cursor.getLong(mIdIndex));
+    }
+
+    private static final String AFTER_NAME_AND_ID = "(" + TasksContract.Columns.TASKS_NAME + " > ? COLLATE NOCASE OR ("
+            + TasksContract.Columns.TASKS_NAME + " = ? COLLATE NOCASE AND " + TasksContract.Columns._ID + " > ?))";
+
+    /**
+     * Rows after a key with a null sortOrder, the arguments are the key's name twice and its _id.
+     * {@link TaskCache} recognises the page queries by this selection and the one below.
+     */
+    static final String AFTER_NULL_KEY_SELECTION = TasksContract.Columns.TASKS_SORTORDER + " IS NOT NULL OR ("
+            + TasksContract.Columns.TASKS_SORTORDER + " IS NULL AND " + AFTER_NAME_AND_ID + ")";
+
+    /**
+     * Rows after a key, the arguments are its sortOrder twice, its name twice and its _id
+     */
+    static final String AFTER_KEY_SELECTION = TasksContract.Columns.TASKS_SORTORDER + " >= ? AND ("
+            + TasksContract.Columns.TASKS_SORTORDER + " > ? OR " + AFTER_NAME_AND_ID + ")";
+
+    /**
+     * Rows strictly after key in the order sortOrder, name COLLATE NOCASE, _id.
+     * The leading range on sortOrder lets SQLite seek in the sort index instead of filtering from the start.
+     * A null sortOrder sorts first, so after a null key come the remaining null rows and then every other row.
+     */
+    private static String keysetSelection(PageKey key, List<String> args) {
+        if(key.mSortOrder == null) {
+            args.add(key.mName);
+            args.add(key.mName);
+            args.add(String.valueOf(key.mId));
+            return AFTER_NULL_KEY_SELECTION;
+        }
+        String value = String.valueOf(key.mSortOrder);
+        args.add(value);
+        args.add(value);
+        args.add(key.mName);
+        args.add(key.mName);
+        args.add(String.valueOf(key.mId));
+        return AFTER_KEY_SELECTION;
+    }
+
+    private static String[] withKeyColumns(String[] projection) {
+        List<String> columns = new ArrayList<>();
+        if(projection != null) {
+            for(String column : projection) {
+                columns.add(column);
+            }
+        }
+        String[] keyColumns = {TasksContract.Columns._ID, TasksContract.Columns.TASKS_NAME, TasksContract.Columns.TASKS_SORTORDER};
+        for(String column : keyColumns) {
+            if(!columns.contains(column)) {
+                columns.add(column);
+            }
+        }
+        return columns.toArray(new String[columns.size()]);
+    }
+
+    private static int indexOf(String[] columns, String column) {
+        for(int i = 0; i < columns.length; i++) {
+            if(columns[i].equals(column)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Column " + column + " is not in the projection");
+    }
+}
@@ -0,0 +1,227 @@
+package me.modernpage.tasktimer;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.CancellationSignal;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Full-text search of the tasks, answered from the TasksSearch FTS4 index (see AppDatabase.addTasksSearch).
+ *
+ * Every word of the query is matched as a prefix, so "wri rep" finds "Write report" while it is being typed.
+ * FTS4 has no ranking of its own, the matches come back with their matchinfo and are ranked here:
+ * a word counts for more the rarer it is in the whole index, and three times as much in the name as in the description.
+ * Equal ranks keep the task list order.
+ */
+final class TaskSearch {
+    /**
+     * Most matches a search returns when the uri has no limit, the list only ever shows the first few
+     */
+    static final int MAX_RESULTS = 200;
+
+    // weight of a hit in the name and in the description, in the order of the index's columns
+    private static final double[] COLUMN_WEIGHTS = {3.0, 1.0};
+
+    private static final String[] COLUMNS = {TasksContract.Columns._ID,
+            TasksContract.Columns.TASKS_NAME,
+            TasksContract.Columns.TASKS_DESCRIPTION,
+            TasksContract.Columns.TASKS_SORTORDER};
+
+    /**
+     * Every task matching the query, in the task list order, with the matchinfo blob after the task's columns.
+     * 'pcx' is the number of words, the number of columns, and the hit counts of every word in every column.
+     * The cross join keeps the index as the outer loop: with Tasks outside, SQLite would look every task up
+     * in the index by docid, and MATCH can't be used on a docid lookup.
+     */
+    static final String SEARCH_SQL = "select "
+            + TasksContract.TABLE_NAME + "." + TasksContract.Columns._ID + ", "
+            + TasksContract.TABLE_NAME + "." + TasksContract.Columns.TASKS_NAME + ", "
+            + TasksContract.TABLE_NAME + "." + TasksContract.Columns.TASKS_DESCRIPTION + ", "
+            + TasksContract.TABLE_NAME + "." + TasksContract.Columns.TASKS_SORTORDER + ", "
+            + "matchinfo(" + TasksContract.SEARCH_TABLE_NAME + ", 'pcx')"
+            + " from " + TasksContract.SEARCH_TABLE_NAME
+            + " cross join " + TasksContract.TABLE_NAME
+            + " on " + TasksContract.TABLE_NAME + "." + TasksContract.Columns._ID + " = " + TasksContract.SEARCH_TABLE_NAME + ".docid"
+            + " where " + TasksContract.SEARCH_TABLE_NAME + " match ?"
+            + " order by " + TasksContract.TABLE_NAME + "." + TasksContract.Columns.TASKS_SORTORDER + ", "
+            + TasksContract.TABLE_NAME + "." + TasksContract.Columns.TASKS_NAME + " COLLATE NOCASE, "
+            + TasksContract.TABLE_NAME + "." + TasksContract.Columns._ID;
+
+    // rows of the search are read every this many before checking whether it has been cancelled
+    private static final int CANCEL_CHECK_ROWS = 64;
+
+    private TaskSearch() {
+    }
+
+    /**
+     * Turns what the user typed into an FTS query: every word becomes a quoted prefix term, all of them must match.
+     * Quoting keeps FTS operators (OR, NEAR, -, *, parentheses) the user typed from being interpreted.
+     * @return the MATCH expression, or null if the text has nothing to search for
+     */
+    static String toMatchQuery(String text) {
+        if(text == null) {
+            return null;
+        }
+        StringBuilder query = new StringBuilder();
+        for(String word : text.trim().split("\\s+")) {
+            if(!hasLetterOrDigit(word)) {
+                continue;
+            }
+            if(query.length() > 0) {
+                query.append(' ');
+            }
+            query.append('"').append(word.replace("\"", "")).append("*\"");
+        }
+        return query.length() > 0 ? query.toString() : null;
+    }
+
+    private static boolean hasLetterOrDigit(String word) {
+        for(int i = 0; i < word.length(); ) {
+            int codePoint = word.codePointAt(i);
+            if(Character.isLetterOrDigit(codePoint)) {
+                return true;
+            }
+            i += Character.charCount(codePoint);
+        }
+        return false;
+    }
+
+    /**
+     * @param projection task columns to return, all of them if null
+     * @param limit most tasks to return, {@link #MAX_RESULTS} if null, or "offset,count" as in the SQL of the task list
+     * @return the tasks matching the text, best match first
+     * @throws IllegalArgumentException if the limit is neither form
+     */
+    static Cursor query(SQLiteDatabase db, String text, String[] projection, String limit, CancellationSignal cancellationSignal) {
+        String[] columns = projection != null ? projection : COLUMNS;
+        int[] sourceColumns = new int[columns.length];
+        for(int i = 0; i < columns.length; i++) {
+            sourceColumns[i] = indexOf(columns[i]);
+        }
+        int offset = 0;
+        int count = MAX_RESULTS;
+        if(limit != null) {
+            int[] offsetAndCount = parseLimit(limit);
+            offset = offsetAndCount[0];
+            count = offsetAndCount[1];
+        }
+        MatrixCursor result = new MatrixCursor(columns);
+        String matchQuery = toMatchQuery(text);
+        if(matchQuery == null) {
+            return result;
+        }
+
+        List<Match> matches = new ArrayList<>();
+        Cursor cursor = db.rawQuery(SEARCH_SQL, new String[]{matchQuery}, cancellationSignal);
+        try {
+            while(cursor.moveToNext()) {
+                if(cancellationSignal != null && matches.size() % CANCEL_CHECK_ROWS == 0) {
+                    cancellationSignal.throwIfCanceled();
+                }
+                Object[] row = new Object[COLUMNS.length];
+                row[0] = cursor.getLong(0);
+                row[1] = cursor.getString(1);
+                row[2] = cursor.getString(2);
+                row[3] = cursor.isNull(3) ? null : cursor.getLong(3);
+                matches.add(new Match(row, rank(cursor.getBlob(4))));
+            }
+        } finally {
+            cursor.close();
+        }
+        // a stable sort, equal ranks stay in the list order the query returned them in
+        Collections.sort(matches, BEST_FIRST);
+
+        int end = (int) Math.min(matches.size(), (long) offset + count);
+        for(int i = offset; i < end; i++) {
+            Object[] row = matches.get(i).mRow;
+            Object[] values = new Object[columns.length];
+            for(int j = 0; j < columns.length; j++) {
+                values[j] = row[sourceColumns[j]];
+            }
+            result.addRow(values);
+        }
+        return result;
+    }
+
+    /**
+     * Reads a limit the way SQLite's LIMIT clause does: "count", or "offset,count"
+     * @return the offset and the count
+     */
+    static int[] parseLimit(String limit) {
+        int comma = limit.indexOf(',');
+        try {
+            if(comma < 0) {
+                return new int[]{0, parseCount(limit)};
+            }
+            return new int[]{parseCount(limit.substring(0, comma)), parseCount(limit.substring(comma + 1))};
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid limit " + limit + " in a task search");
+        }
+    }
+
+    private static int parseCount(String count) {
+        int value = Integer.parseInt(count.trim());
+        if(value < 0) {
+            throw new NumberFormatException(count);
+        }
+        return value;
+    }
+
+    private static int indexOf(String column) {
+        for(int i = 0; i < COLUMNS.length; i++) {
+            if(COLUMNS[i].equals(column)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown column " + column + " in a task search");
+    }
+
+    /**
+     * Scores one match from its matchinfo('pcx'): for every word and column, the share of the word's hits
+     * in that column across every row of the index that are in this task, weighted by the column.
+     * A word that is in few tasks scores close to 1 in each of them, one that is in every task adds next to nothing.
+     */
+    static double rank(byte[] matchinfo) {
+        // 32 bit unsigned integers in the machine's byte order
+        IntBuffer info = ByteBuffer.wrap(matchinfo).order(ByteOrder.nativeOrder()).asIntBuffer();
+        int phrases = info.get(0);
+        int columns = info.get(1);
+        double score = 0;
+        for(int phrase = 0; phrase < phrases; phrase++) {
+            for(int column = 0; column < columns && column < COLUMN_WEIGHTS.length; column++) {
+                int hits = 2 + 3 * (phrase * columns + column);
+                long hitsThisRow = info.get(hits) & 0xFFFFFFFFL;
+                long hitsAllRows = info.get(hits + 1) & 0xFFFFFFFFL;
+                if(hitsThisRow > 0) {
+                    score += COLUMN_WEIGHTS[column] * hitsThisRow / hitsAllRows;
+                }
+            }
+        }
+        return score;
+    }
+
+    private static final class Match {
+        final Object[] mRow;
+        final double mRank;
+
+        Match(Object[] row, double rank) {
+            mRow = row;
+            mRank = rank;
+        }
+    }
+
+    private static final Comparator<Match> BEST_FIRST = new Comparator<Match>() {
+        @Override
+        public int compare(Match a, Match b) {
+            return Double.compare(b.mRank, a.mRank);
+        }
+    };
+}
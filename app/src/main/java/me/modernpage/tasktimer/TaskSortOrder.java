@@ -0,0 +1,203 @@
+package me.modernpage.tasktimer;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import java.util.Arrays;
+
+/**
+ * Moves a task to a new place in the task list by giving it a sortOrder between those of its new neighbours,
+ * so a move writes the one row that moved, however long the list is.
+ *
+ * That needs room between the neighbours' sortOrders. Typed in sortOrders (0, 1, 2...) leave none, and repeated moves
+ * into the same place halve the room every time, so when there is none the list is rebalanced first:
+ * every task gets {@link #GAP} times its place in the list, in the same transaction as the move. After that
+ * about ten moves into the same place fit before the next rebalance, and moves elsewhere don't use up that room.
+ * A list too long for that within {@link #MAX_KEY} gets a smaller gap, see {@link #gapFor(int)}.
+ * Rebalancing only writes the rows whose sortOrder changes.
+ *
+ * The sortOrder stays an integer. Task and the list read it as a long, but the keys handed out here stay within an int:
+ * then neither adding GAP to a key nor the difference of two keys can overflow a long, and a neighbour whose sortOrder
+ * was typed in or imported outside that range just gets the list rebalanced first.
+ */
+final class TaskSortOrder {
+    private static final String TAG = "TaskSortOrder";
+
+    static final long NO_TASK = -1;
+
+    static final long GAP = 1024;
+    // keys are kept this far inside the int range, a rebalance brings them back
+    static final long MAX_KEY = Integer.MAX_VALUE - GAP;
+    static final long MIN_KEY = Integer.MIN_VALUE + GAP;
+
+    // what sortOrderOf reads for a neighbour that isn't there, and for one without a sortOrder, both outside any key
+    private static final long NO_KEY = Long.MIN_VALUE;
+    private static final long NULL_KEY = Long.MAX_VALUE;
+
+    private static final String SORT_ORDER_SQL = "select " + TasksContract.Columns.TASKS_SORTORDER
+            + " from " + TasksContract.TABLE_NAME + " where " + TasksContract.Columns._ID + " = ?";
+
+    private static final String LIST_ORDER_SQL = "select " + TasksContract.Columns._ID + ", " + TasksContract.Columns.TASKS_SORTORDER
+            + " from " + TasksContract.TABLE_NAME + " order by " + TasksContract.DEFAULT_SORT_ORDER;
+
+    private static final String UPDATE_SORT_ORDER_SQL = "update " + TasksContract.TABLE_NAME
+            + " set " + TasksContract.Columns.TASKS_SORTORDER + " = ? where " + TasksContract.Columns._ID + " = ?";
+
+    private TaskSortOrder() {
+    }
+
+    /**
+     * Puts a task between two others, in one transaction
+     * @param previousId the task that is to come right before it, {@link #NO_TASK} to move it to the top
+     * @param nextId the task that is to come right after it, {@link #NO_TASK} to move it to the bottom
+     * @return the ids of the tasks whose sortOrder changed, just taskId, or null if the list was rebalanced
+     */
+    static long[] move(SQLiteDatabase db, long taskId, long previousId, long nextId) {
+        db.beginTransaction();
+        try {
+            long[] changed = new long[]{taskId};
+            Long key = keyBetween(db, previousId, nextId);
+            if(key == null) {
+                rebalance(db);
+                changed = null;
+                key = keyBetween(db, previousId, nextId);
+                if(key == null) {
+                    throw new IllegalStateException("No room for task " + taskId + " between " + previousId + " and " + nextId);
+                }
+            }
+            ContentValues values = new ContentValues();
+            values.put(TasksContract.Columns.TASKS_SORTORDER, key);
+            db.update(TasksContract.TABLE_NAME, values, TasksContract.Columns._ID + " = ?", new String[]{String.valueOf(taskId)});
+            db.setTransactionSuccessful();
+            if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "move: task " + taskId + " gets " + key + (changed == null ? " after a rebalance" : ""));
+            return changed;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * @return a sortOrder strictly between the two tasks', or null if there is no room for one,
+     * or if one of them has no sortOrder or one outside the key range
+     */
+    private static Long keyBetween(SQLiteDatabase db, long previousId, long nextId) {
+        long previous = sortOrderOf(db, previousId);
+        long next = sortOrderOf(db, nextId);
+        if(!isKeyOrNone(previous) || !isKeyOrNone(next)) {
+            return null;
+        }
+        if(previous == NO_KEY && next == NO_KEY) {
+            // the only task in the list
+            return 0L;
+        }
+        // at either end of the list GAP away, or halfway to the end of the key range once it's closer than that
+        if(previous == NO_KEY) {
+            return next - GAP >= MIN_KEY ? next - GAP : between(MIN_KEY - 1, next);
+        }
+        if(next == NO_KEY) {
+            return previous + GAP <= MAX_KEY ? previous + GAP : between(previous, MAX_KEY + 1);
+        }
+        return between(previous, next);
+    }
+
+    /**
+     * @return true if the sortOrder is within the key range, or there is no such task; false for {@link #NULL_KEY}
+     */
+    private static boolean isKeyOrNone(long sortOrder) {
+        return sortOrder == NO_KEY || (sortOrder >= MIN_KEY && sortOrder <= MAX_KEY);
+    }
+
+    /**
+     * @return the key halfway between two keys, or null if there is none strictly between them
+     */
+    private static Long between(long previous, long next) {
+        if(next - previous < 2) {
+            return null;
+        }
+        return previous + (next - previous) / 2;
+    }
+
+    /**
+     * @return the gap a rebalance leaves between count tasks, {@link #GAP} unless the last key would pass {@link #MAX_KEY}
+     * @throws IllegalStateException if there are so many tasks that not even a gap of 2 fits
+     */
+    static long gapFor(int count) {
+        long gap = Math.min(GAP, MAX_KEY / Math.max(count, 1));
+        if(gap < 2) {
+            throw new IllegalStateException("Too many tasks to rebalance: " + count);
+        }
+        return gap;
+    }
+
+    /**
+     * @return the task's sortOrder, {@link #NO_KEY} if there is no such task, {@link #NULL_KEY} if it has none
+     */
+    private static long sortOrderOf(SQLiteDatabase db, long taskId) {
+        if(taskId == NO_TASK) {
+            return NO_KEY;
+        }
+        Cursor cursor = db.rawQuery(SORT_ORDER_SQL, new String[]{String.valueOf(taskId)});
+        try {
+            if(!cursor.moveToFirst()) {
+                return NO_KEY;
+            }
+            return cursor.isNull(0) ? NULL_KEY : cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Gives every task {@link #gapFor(int)} times its place in the list (counting from 1), keeping the order.
+     * The ids are read first and updated afterwards, updating the rows while reading them in sort index order
+     * could visit a row again. Runs in the caller's transaction, if there is one.
+     * @return the number of tasks whose sortOrder changed
+     */
+    static int rebalance(SQLiteDatabase db) {
+        long[] ids = new long[64];
+        long[] keys = new long[64];
+        boolean[] nulls = new boolean[64];
+        int count = 0;
+        Cursor cursor = db.rawQuery(LIST_ORDER_SQL, null);
+        try {
+            while(cursor.moveToNext()) {
+                if(count == ids.length) {
+                    ids = Arrays.copyOf(ids, count * 2);
+                    keys = Arrays.copyOf(keys, count * 2);
+                    nulls = Arrays.copyOf(nulls, count * 2);
+                }
+                ids[count] = cursor.getLong(0);
+                nulls[count] = cursor.isNull(1);
+                keys[count] = nulls[count] ? 0 : cursor.getLong(1);
+                count++;
+            }
+        } finally {
+            cursor.close();
+        }
+
+        long gap = gapFor(count);
+        int changed = 0;
+        db.beginTransaction();
+        SQLiteStatement update = db.compileStatement(UPDATE_SORT_ORDER_SQL);
+        try {
+            for(int i = 0; i < count; i++) {
+                long key = (i + 1) * gap;
+                if(nulls[i] || keys[i] != key) {
+                    update.bindLong(1, key);
+                    update.bindLong(2, ids[i]);
+                    update.executeUpdateDelete();
+                    changed++;
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            update.close();
+            db.endTransaction();
+        }
+        if(BuildConfig.VERBOSE_LOGGING) Log.d(TAG, "rebalance: " + changed + " of " + count + " tasks renumbered, " + gap + " apart");
+        return changed;
+    }
+}
@@ -16,6 +16,7 @@ import static me.modernpage.tasktimer.AppProvider.CONTENT_AUTHORITY_URI;
 
 public class TasksContract {
     static final String TABLE_NAME = "Tasks";
+    static final String SEARCH_TABLE_NAME = "TasksSearch";
 
     public static class Columns {
         public static final String _ID = BaseColumns._ID;
@@ -28,6 +29,30 @@ public class TasksContract {
         }
     }
 
+    /**
+     * Order of the task list, AppDatabase keeps an index with exactly this ordering.
+     * The _id at the end makes the order total, which the paged task list relies on,
+     * and costs nothing because every index ends with the row id.
+     */
+    static final String DEFAULT_SORT_ORDER = Columns.TASKS_SORTORDER + ", " + Columns.TASKS_NAME + " COLLATE NOCASE, " + Columns._ID;
+
+    /**
+     * Projection of a query counting the rows, e.g. of the Tasks uri
+     */
+    static final String COUNT = "count(*)";
+
+    /**
+     * Query parameter limiting the number of rows a query returns, e.g. content://.../Tasks?limit=50
+     */
+    static final String QUERY_PARAMETER_LIMIT = "limit";
+
+    /**
+     * Full-text search of the task names and descriptions, e.g. content://.../Tasks/search?q=write%20rep
+     * (see {@link #buildSearchUri(String)})
+     */
+    static final String SEARCH_PATH = "search";
+    static final String QUERY_PARAMETER_SEARCH = "q";
+
     /**
      * The URI to access the Tasks table
      */
@@ -44,6 +69,17 @@ public class TasksContract {
         return ContentUris.withAppendedId(CONTENT_URI,taskId);
     }
 
+    /**
+     * @param query words as typed, every one of them has to start a word of the task's name or description
+     * @return uri of the tasks matching the query, the best match first
+     */
+    static Uri buildSearchUri(String query) {
+        return CONTENT_URI.buildUpon()
+                .appendPath(SEARCH_PATH)
+                .appendQueryParameter(QUERY_PARAMETER_SEARCH, query)
+                .build();
+    }
+
     static long getTaskId(Uri uri) {
         return ContentUris.parseId(uri);
     }
@@ -0,0 +1,73 @@
+package me.modernpage.tasktimer;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.OperationApplicationException;
+import android.os.RemoteException;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Seeds the database with tasks and random timings, only available in debug builds.
+ *
+ * The tasks go in with one {@link ContentResolver#applyBatch(String, ArrayList)}, which returns their ids,
+ * and all the timings with one {@link ContentResolver#bulkInsert(android.net.Uri, ContentValues[])},
+ * so each table is filled in a single transaction with a single change notification.
+ * Only the timings of the tasks just added are written, however often it runs.
+ */
+class TestData {
+    private static final String TAG = "TestData";
+
+    private static final int TASK_COUNT = 10;
+    private static final int TIMINGS_PER_TASK = 100;
+    private static final int DAYS_BACK = 30;
+    private static final int MAX_DURATION = 60 * 60 * 4;     // 4 hours, in seconds
+
+    private TestData() {
+        // prevent instantiation
+    }
+
+    static void generateTestData(ContentResolver contentResolver) {
+        Log.d(TAG, "generateTestData: starts");
+
+        ArrayList<ContentProviderOperation> tasks = new ArrayList<>(TASK_COUNT);
+        for(int i = 0; i < TASK_COUNT; i++) {
+            tasks.add(ContentProviderOperation.newInsert(TasksContract.CONTENT_URI)
+                    .withValue(TasksContract.Columns.TASKS_NAME, "Test task " + (i + 1))
+                    .withValue(TasksContract.Columns.TASKS_DESCRIPTION, "Description for test task " + (i + 1))
+                    .withValue(TasksContract.Columns.TASKS_SORTORDER, i + 1)
+                    .build());
+        }
+        ContentProviderResult[] results;
+        try {
+            results = contentResolver.applyBatch(AppProvider.CONTENT_AUTHORITY, tasks);
+        } catch (RemoteException e) {
+            Log.e(TAG, "generateTestData: tasks not added", e);
+            return;
+        } catch (OperationApplicationException e) {
+            Log.e(TAG, "generateTestData: tasks not added", e);
+            return;
+        }
+
+        Random random = new Random();
+        long now = System.currentTimeMillis() / 1000;
+        ContentValues[] timings = new ContentValues[results.length * TIMINGS_PER_TASK];
+        for(int t = 0; t < results.length; t++) {
+            long taskId = ContentUris.parseId(results[t].uri);
+            for(int i = 0; i < TIMINGS_PER_TASK; i++) {
+                ContentValues values = new ContentValues(3);
+                values.put(TimingsContract.Columns.TIMINGS_TASK_ID, taskId);
+                values.put(TimingsContract.Columns.TIMINGS_START_TIME, now - random.nextInt(DAYS_BACK * 24 * 60 * 60));
+                values.put(TimingsContract.Columns.TIMINGS_DURATION, random.nextInt(MAX_DURATION));
+                timings[t * TIMINGS_PER_TASK + i] = values;
+            }
+        }
+        contentResolver.bulkInsert(TimingsContract.CONTENT_URI, timings);
+        Log.d(TAG, "generateTestData: ends");
+    }
+}
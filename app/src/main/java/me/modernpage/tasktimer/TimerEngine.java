@@ -0,0 +1,236 @@
+package me.modernpage.tasktimer;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Keeps track of the task being timed, at most one at a time.
+ *
+ * The elapsed time is measured with SystemClock.elapsedRealtime, which keeps counting while the device sleeps
+ * and isn't changed when the user or the network sets the wall clock. The wall clock is only read once,
+ * to record when the timing started.
+ *
+ * Nothing is written to the database while a task is timed and nothing runs in the background: a timing is
+ * a single Timings row, inserted when the timer stops (or is switched to another task). Starting a timer only
+ * records it in the {@link TimerJournal}, so a timer that was running when the process died carries on when
+ * the app starts again. Showing the time as it runs is up to the screen, see {@link TimerTicker}.
+ *
+ * All methods must be called on the main thread.
+ */
+final class TimerEngine {
+    private static final String TAG = "TimerEngine";
+
+    static final long NO_TASK = -1;
+
+    private static TimerEngine instance = null;
+
+    private final ContentResolver mContentResolver;
+    private final TimerJournal mJournal;
+    // timings are written in the order the timers stopped, off the main thread
+    private final Executor mWriter;
+    private final List<Listener> mListeners = new ArrayList<>();
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    // the journal hasn't been read yet, cleared as soon as the user starts or stops a timer
+    private boolean mRestorePending;
+
+    private long mTaskId = NO_TASK;
+    private String mTaskName;
+    private long mStartTime;            // wall clock, seconds since the epoch, goes to Timings.StartTime
+    private long mStartElapsed;         // SystemClock.elapsedRealtime when the timer started
+
+    interface Listener {
+        /**
+         * Called when a timer starts or stops
+         * @param taskId the task now being timed, or {@link #NO_TASK}
+         */
+        void onTimerChanged(long taskId);
+    }
+
+    static synchronized TimerEngine getInstance(Context context) {
+        if(instance == null) {
+            Context appContext = context.getApplicationContext();
+            Executor writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull Runnable runnable) {
+                    return new Thread(runnable, "TimerEngine-writer");
+                }
+            });
+            // the journal's file is mapped by restore(), on the writer
+            instance = new TimerEngine(appContext.getContentResolver(), writer, TimerJournal.getInstance(appContext));
+        }
+        return instance;
+    }
+
+    /**
+     * Picks up the timer the journal says was running, see {@link #restore()}
+     */
+    TimerEngine(ContentResolver contentResolver, Executor writer, TimerJournal journal) {
+        mContentResolver = contentResolver;
+        mWriter = writer;
+        mJournal = journal;
+        restore();
+    }
+
+    /**
+     * Opens the journal on the writer thread, so the main thread never maps its file.
+     * AppProvider drops the journal entry while it opens the database if the timing was recorded
+     * or the task deleted, so the journal is read on the writer thread once the provider is ready.
+     * The timer is resumed on the main thread, unless the user has started or stopped one in the meantime.
+     */
+    private void restore() {
+        mRestorePending = true;
+        mWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                mJournal.open();
+                mContentResolver.call(AppProvider.CONTENT_AUTHORITY_URI, AppProvider.METHOD_AWAIT_READY, null, null);
+                final TimerJournal.Entry entry = mJournal.read();
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if(!mRestorePending) {
+                            return;
+                        }
+                        mRestorePending = false;
+                        if(entry != null) {
+                            Log.d(TAG, "restore: resuming the timer of task " + entry.mTaskId);
+                            mTaskId = entry.mTaskId;
+                            mTaskName = entry.mTaskName;
+                            mStartTime = entry.mStartTime;
+                            mStartElapsed = entry.mStartElapsed;
+                            notifyListeners();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    long getRunningTaskId() {
+        return mTaskId;
+    }
+
+    String getRunningTaskName() {
+        return mTaskName;
+    }
+
+    boolean isRunning() {
+        return mTaskId != NO_TASK;
+    }
+
+    /**
+     * @return the SystemClock.elapsedRealtime when the running timer started
+     */
+    long getStartElapsed() {
+        return mStartElapsed;
+    }
+
+    /**
+     * @return whole seconds the running timer has been going, 0 if no timer is running
+     */
+    long getElapsedSeconds() {
+        return isRunning() ? (SystemClock.elapsedRealtime() - mStartElapsed) / 1000 : 0;
+    }
+
+    /**
+     * Starts timing the task, or stops if it's the task already being timed.
+     * Starting a task stops the timer of the task that was being timed.
+     */
+    void toggle(Task task) {
+        if(task.getId() == mTaskId) {
+            stop();
+        } else {
+            start(task);
+        }
+    }
+
+    void start(Task task) {
+        mRestorePending = false;
+        if(isRunning()) {
+            writeTiming();
+        }
+        mTaskId = task.getId();
+        mTaskName = task.getName();
+        mStartTime = System.currentTimeMillis() / 1000;
+        mStartElapsed = SystemClock.elapsedRealtime();
+        mJournal.recordStart(mTaskId, mTaskName, mStartTime, mStartElapsed);
+        Log.d(TAG, "start: timing task " + mTaskId);
+        notifyListeners();
+    }
+
+    void stop() {
+        mRestorePending = false;
+        if(!isRunning()) {
+            return;
+        }
+        writeTiming();
+        clear();
+        notifyListeners();
+    }
+
+    /**
+     * Stops the timer without recording it, when the task it times has been deleted
+     */
+    void cancel(long taskId) {
+        if(taskId != mTaskId) {
+            return;
+        }
+        Log.d(TAG, "cancel: discarding the timing of task " + taskId);
+        mJournal.clear(mTaskId, mStartTime);
+        clear();
+        notifyListeners();
+    }
+
+    void addListener(Listener listener) {
+        mListeners.add(listener);
+    }
+
+    void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    private void writeTiming() {
+        final ContentValues values = new ContentValues();
+        values.put(TimingsContract.Columns.TIMINGS_TASK_ID, mTaskId);
+        values.put(TimingsContract.Columns.TIMINGS_START_TIME, mStartTime);
+        values.put(TimingsContract.Columns.TIMINGS_DURATION, getElapsedSeconds());
+        Log.d(TAG, "writeTiming: task " + mTaskId + " ran for " + getElapsedSeconds() + "s");
+        final long taskId = mTaskId;
+        final long startTime = mStartTime;
+        mWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                mContentResolver.insert(TimingsContract.CONTENT_URI, values);
+                // recorded, if the process dies now AppProvider finds the row and drops the journal entry
+                mJournal.clear(taskId, startTime);
+            }
+        });
+    }
+
+    private void clear() {
+        mTaskId = NO_TASK;
+        mTaskName = null;
+        mStartTime = 0;
+        mStartElapsed = 0;
+    }
+
+    private void notifyListeners() {
+        for(Listener listener : new ArrayList<>(mListeners)) {
+            listener.onTimerChanged(mTaskId);
+        }
+    }
+}
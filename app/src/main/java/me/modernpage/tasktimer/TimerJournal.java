@@ -0,0 +1,198 @@
+package me.modernpage.tasktimer;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.zip.CRC32;
+
+/**
+ * A fixed-size, memory-mapped record of the timer that is running, so a timing survives the process being killed.
+ *
+ * Starting a timer writes the task and the start instant into the mapped page, which is a plain memory write:
+ * no system call, no fsync and no database transaction. The kernel owns the page, so the record outlives
+ * the process (not a power cut, but then the running timer would have been lost with the unsynced WAL anyway).
+ * The record is cleared once the timer's Timings row has been inserted.
+ *
+ * On the next start {@link AppProvider} reconciles the record with one index search on Timings,
+ * and {@link TimerEngine} carries on timing the task if it is still open. Neither depends on how many timings are stored.
+ */
+final class TimerJournal {
+    private static final String TAG = "TimerJournal";
+
+    static final String FILE_NAME = "timer.journal";
+
+    private static final int MAGIC = 0x54544A31;     // "TTJ1"
+    private static final int STATE_IDLE = 0;
+    private static final int STATE_RUNNING = 1;
+
+    // record layout, all offsets in bytes
+    private static final int OFFSET_MAGIC = 0;
+    private static final int OFFSET_STATE = 4;
+    private static final int OFFSET_TASK_ID = 8;
+    private static final int OFFSET_START_TIME = 16;
+    private static final int OFFSET_START_ELAPSED = 24;
+    private static final int OFFSET_BOOT_TIME = 32;
+    private static final int OFFSET_NAME_LENGTH = 40;
+    private static final int OFFSET_NAME = 44;
+    private static final int MAX_NAME_BYTES = 200;
+    private static final int OFFSET_CRC = OFFSET_NAME + MAX_NAME_BYTES;
+    static final int RECORD_SIZE = OFFSET_CRC + 8;
+
+    // the estimated boot instant moves when the wall clock is set, within this the device hasn't restarted
+    private static final long SAME_BOOT_TOLERANCE_MILLIS = 10 * 1000;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static TimerJournal instance = null;
+
+    private final File mFile;
+    private boolean mOpened;
+    private MappedByteBuffer mBuffer;           // null until opened, and if the journal couldn't be opened
+
+    /**
+     * The timer a journal records as running
+     */
+    static final class Entry {
+        final long mTaskId;
+        final String mTaskName;
+        final long mStartTime;          // seconds since the epoch, as Timings.StartTime
+        final long mStartElapsed;       // SystemClock.elapsedRealtime at the start, in this boot
+
+        Entry(long taskId, String taskName, long startTime, long startElapsed) {
+            mTaskId = taskId;
+            mTaskName = taskName;
+            mStartTime = startTime;
+            mStartElapsed = startElapsed;
+        }
+    }
+
+    static synchronized TimerJournal getInstance(Context context) {
+        File file = new File(context.getNoBackupFilesDir(), FILE_NAME);
+        if(instance == null || !instance.mFile.equals(file)) {
+            instance = new TimerJournal(file);
+        }
+        return instance;
+    }
+
+    /**
+     * The file isn't touched until the journal is first used, see {@link #open()}
+     */
+    TimerJournal(File file) {
+        mFile = file;
+    }
+
+    /**
+     * Maps the file, if it isn't mapped yet. That is disk I/O, so {@link TimerEngine} opens the journal
+     * on its writer thread before the main thread records anything.
+     * @return false if the journal couldn't be opened
+     */
+    synchronized boolean open() {
+        if(mOpened) {
+            return mBuffer != null;
+        }
+        mOpened = true;
+        try {
+            RandomAccessFile randomAccessFile = new RandomAccessFile(mFile, "rw");
+            try {
+                // the mapping stays valid after the file is closed
+                mBuffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, RECORD_SIZE);
+            } finally {
+                randomAccessFile.close();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "open: couldn't open " + mFile + ", running timers won't survive the process", e);
+        }
+        return mBuffer != null;
+    }
+
+    /**
+     * Records the timer as running. The fields are written before the state, so a record
+     * torn by the process dying half way is never read back as running.
+     */
+    synchronized void recordStart(long taskId, String taskName, long startTime, long startElapsed) {
+        if(!open()) {
+            return;
+        }
+        byte[] name = taskName != null ? taskName.getBytes(UTF_8) : new byte[0];
+        int nameLength = Math.min(name.length, MAX_NAME_BYTES);
+
+        mBuffer.putInt(OFFSET_STATE, STATE_IDLE);
+        mBuffer.putInt(OFFSET_MAGIC, MAGIC);
+        mBuffer.putLong(OFFSET_TASK_ID, taskId);
+        mBuffer.putLong(OFFSET_START_TIME, startTime);
+        mBuffer.putLong(OFFSET_START_ELAPSED, startElapsed);
+        mBuffer.putLong(OFFSET_BOOT_TIME, System.currentTimeMillis() - SystemClock.elapsedRealtime());
+        mBuffer.putInt(OFFSET_NAME_LENGTH, nameLength);
+        for(int i = 0; i < nameLength; i++) {
+            mBuffer.put(OFFSET_NAME + i, name[i]);
+        }
+        mBuffer.putLong(OFFSET_CRC, checksum());
+        mBuffer.putInt(OFFSET_STATE, STATE_RUNNING);
+    }
+
+    /**
+     * Clears the record if it is still the one for this timer, a newer timer may already have replaced it
+     */
+    synchronized void clear(long taskId, long startTime) {
+        if(!open() || mBuffer.getInt(OFFSET_STATE) != STATE_RUNNING) {
+            return;
+        }
+        if(mBuffer.getLong(OFFSET_TASK_ID) == taskId && mBuffer.getLong(OFFSET_START_TIME) == startTime) {
+            mBuffer.putInt(OFFSET_STATE, STATE_IDLE);
+        }
+    }
+
+    /**
+     * @return the running timer, or null if none was running or the record is damaged.
+     * If the device has restarted since the timer started, the start is moved to the same wall clock instant in this boot.
+     */
+    synchronized Entry read() {
+        if(!open() || mBuffer.getInt(OFFSET_STATE) != STATE_RUNNING || mBuffer.getInt(OFFSET_MAGIC) != MAGIC) {
+            return null;
+        }
+        int nameLength = mBuffer.getInt(OFFSET_NAME_LENGTH);
+        if(nameLength < 0 || nameLength > MAX_NAME_BYTES || mBuffer.getLong(OFFSET_CRC) != checksum()) {
+            Log.w(TAG, "read: damaged record, ignoring it");
+            return null;
+        }
+        byte[] name = new byte[nameLength];
+        for(int i = 0; i < nameLength; i++) {
+            name[i] = mBuffer.get(OFFSET_NAME + i);
+        }
+
+        long taskId = mBuffer.getLong(OFFSET_TASK_ID);
+        long startTime = mBuffer.getLong(OFFSET_START_TIME);
+        long startElapsed = mBuffer.getLong(OFFSET_START_ELAPSED);
+        long nowElapsed = SystemClock.elapsedRealtime();
+        long bootTime = System.currentTimeMillis() - nowElapsed;
+        if(Math.abs(bootTime - mBuffer.getLong(OFFSET_BOOT_TIME)) > SAME_BOOT_TOLERANCE_MILLIS || startElapsed > nowElapsed) {
+            // restarted, elapsedRealtime started again from zero, all that's left is the wall clock
+            long runningMillis = Math.max(0, System.currentTimeMillis() - startTime * 1000);
+            startElapsed = nowElapsed - runningMillis;
+            Log.d(TAG, "read: the device restarted since task " + taskId + " started");
+        }
+        return new Entry(taskId, new String(name, UTF_8), startTime, startElapsed);
+    }
+
+    private long checksum() {
+        byte[] bytes = new byte[OFFSET_CRC];
+        ByteBuffer record = mBuffer.duplicate();
+        record.position(0);
+        record.get(bytes);
+        // the state isn't covered, it is flipped after the checksum is written
+        for(int i = OFFSET_STATE; i < OFFSET_STATE + 4; i++) {
+            bytes[i] = 0;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        return crc.getValue();
+    }
+}
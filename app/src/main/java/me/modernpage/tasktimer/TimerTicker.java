@@ -0,0 +1,58 @@
+package me.modernpage.tasktimer;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+/**
+ * The one clock tick that updates the running timer on screen.
+ *
+ * It ticks on the main thread right after every whole second of the running timer, and only while
+ * the screen showing it is started and a timer is running; otherwise nothing is posted, so an idle app
+ * never wakes up for it. Each tick just hands the elapsed seconds to the callback, which updates
+ * the one row that shows them, if that row is visible.
+ */
+final class TimerTicker implements Runnable {
+
+    interface Callback {
+        void onTick(long taskId, long elapsedSeconds);
+    }
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final TimerEngine mEngine;
+    private final Callback mCallback;
+    private boolean mTicking;
+
+    TimerTicker(TimerEngine engine, Callback callback) {
+        mEngine = engine;
+        mCallback = callback;
+    }
+
+    /**
+     * Starts ticking if a timer is running, or restarts in step with a timer that has just been started
+     */
+    void start() {
+        stop();
+        if(mEngine.isRunning()) {
+            mTicking = true;
+            run();
+        }
+    }
+
+    void stop() {
+        mTicking = false;
+        mHandler.removeCallbacks(this);
+    }
+
+    @Override
+    public void run() {
+        if(!mTicking || !mEngine.isRunning()) {
+            mTicking = false;
+            return;
+        }
+        long elapsedMillis = SystemClock.elapsedRealtime() - mEngine.getStartElapsed();
+        mCallback.onTick(mEngine.getRunningTaskId(), elapsedMillis / 1000);
+        // next tick when the displayed second changes
+        mHandler.postDelayed(this, 1000 - elapsedMillis % 1000);
+    }
+}
@@ -0,0 +1,85 @@
+package me.modernpage.tasktimer;
+
+import android.content.ContentUris;
+import android.net.Uri;
+import android.provider.BaseColumns;
+
+import java.util.List;
+
+import static me.modernpage.tasktimer.AppProvider.CONTENT_AUTHORITY;
+import static me.modernpage.tasktimer.AppProvider.CONTENT_AUTHORITY_URI;
+
+/**
+ * Contract for the Timings table, every row is one finished timing of a task.
+ *
+ * Timings are append-only, a row is written once when the timer for a task is stopped,
+ * so the common write is a single insert and never a read-modify-write of an existing row.
+ */
+public class TimingsContract {
+    static final String TABLE_NAME = "Timings";
+
+    public static class Columns {
+        public static final String _ID = BaseColumns._ID;
+        public static final String TIMINGS_TASK_ID = "TaskId";
+        public static final String TIMINGS_START_TIME = "StartTime";     // seconds since the epoch
+        public static final String TIMINGS_DURATION = "Duration";        // seconds
+
+        private Columns() {
+            // prevent instantiation
+        }
+    }
+
+    /**
+     * The URI to access the Timings table
+     */
+    public static final Uri CONTENT_URI = Uri.withAppendedPath(CONTENT_AUTHORITY_URI, TABLE_NAME);
+
+    static final String CONTENT_TYPE = "vnd.android.cursor.dir/vnd." + CONTENT_AUTHORITY + "." + TABLE_NAME;
+    static final String CONTENT_ITEM_TYPE = "vnd.android.cursor.item/vnd." + CONTENT_AUTHORITY + "." + TABLE_NAME;
+
+    static Uri buildTimingUri(long timingId) {
+        return ContentUris.withAppendedId(CONTENT_URI, timingId);
+    }
+
+    static long getTimingId(Uri uri) {
+        return ContentUris.parseId(uri);
+    }
+
+    static final String RANGE_PATH = "range";
+
+    /**
+     * The timings that started from from (inclusive) to to (exclusive), in StartTime order,
+     * e.g. content://.../Timings/range/1600000000/1600604800 for a week
+     * @param from seconds since the epoch
+     * @param to seconds since the epoch
+     */
+    static Uri buildRangeUri(long from, long to) {
+        return CONTENT_URI.buildUpon()
+                .appendPath(RANGE_PATH)
+                .appendPath(String.valueOf(from))
+                .appendPath(String.valueOf(to))
+                .build();
+    }
+
+    /**
+     * Same as {@link #buildRangeUri(long, long)} for the timings of one task, e.g. content://.../Tasks/3/Timings/range/...
+     */
+    static Uri buildTaskRangeUri(long taskId, long from, long to) {
+        return TasksContract.buildTaskUri(taskId).buildUpon()
+                .appendPath(TABLE_NAME)
+                .appendPath(RANGE_PATH)
+                .appendPath(String.valueOf(from))
+                .appendPath(String.valueOf(to))
+                .build();
+    }
+
+    static long getRangeFrom(Uri uri) {
+        List<String> segments = uri.getPathSegments();
+        return Long.parseLong(segments.get(segments.size() - 2));
+    }
+
+    static long getRangeTo(Uri uri) {
+        List<String> segments = uri.getPathSegments();
+        return Long.parseLong(segments.get(segments.size() - 1));
+    }
+}
@@ -0,0 +1,273 @@
+package me.modernpage.tasktimer;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Parcel;
+import android.view.View;
+
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.io.Serializable;
+
+/**
+ * The operations the microbenchmarks measure, shared by the device suite in androidTest (androidx.benchmark)
+ * and the JVM suite in test (Robolectric), so both time exactly the same code.
+ * Each scenario does its setup in the constructor, one call of a scenario method is one measured operation.
+ */
+final class BenchmarkScenarios {
+    private static final int WIDTH = 480;
+    private static final int HEIGHT = 800;
+
+    private BenchmarkScenarios() {
+    }
+
+    /**
+     * Binding rows and swapping lists in {@link CursorRecyclerViewAdapter}, in a RecyclerView that is laid out by hand
+     */
+    static final class Adapter {
+        private final RecyclerView mRecyclerView;
+        private final CursorRecyclerViewAdapter mAdapter;
+        private final CursorRecyclerViewAdapter.TaskViewHolder mHolder;
+        private final int mRows;
+
+        // two lists that differ in one row, and the diffs between them as the loader would have computed them
+        private final Cursor mFirst;
+        private final Cursor mSecond;
+        private final TaskListSnapshot.Change mToSecond;
+        private final TaskListSnapshot.Change mToFirst;
+        private boolean mShowingFirst = true;
+        private int mPosition;
+
+        Adapter(Context context, int rows) {
+            mRows = rows;
+            mFirst = tasks(rows, -1);
+            mSecond = tasks(rows, rows / 2);
+            TaskListSnapshot first = TaskListSnapshot.of(mFirst);
+            TaskListSnapshot second = TaskListSnapshot.of(mSecond);
+            mToSecond = new TaskListSnapshot.Change(first, second);
+            mToFirst = new TaskListSnapshot.Change(second, first);
+
+            mAdapter = new CursorRecyclerViewAdapter(null, null);
+            mAdapter.swapCursor(mFirst, new TaskListSnapshot.Change(null, first));
+            mRecyclerView = new RecyclerView(context);
+            mRecyclerView.setLayoutManager(new LinearLayoutManager(context));
+            mRecyclerView.setAdapter(mAdapter);
+            layout();
+            mHolder = mAdapter.onCreateViewHolder(mRecyclerView, 0);
+        }
+
+        /**
+         * Binds the next row into the same holder, as scrolling does
+         */
+        void bindNext() {
+            mAdapter.onBindViewHolder(mHolder, mPosition);
+            mPosition = (mPosition + 1) % mRows;
+        }
+
+        /**
+         * Swaps in the other list and lays out the rows that changed
+         */
+        void swapNext() {
+            if(mShowingFirst) {
+                mAdapter.swapCursor(mSecond, mToSecond);
+            } else {
+                mAdapter.swapCursor(mFirst, mToFirst);
+            }
+            mShowingFirst = !mShowingFirst;
+            layout();
+        }
+
+        private void layout() {
+            mRecyclerView.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                    View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+            mRecyclerView.layout(0, 0, WIDTH, HEIGHT);
+        }
+
+        /**
+         * @param renamed the row whose name differs, -1 for none
+         */
+        private static Cursor tasks(int rows, int renamed) {
+            MatrixCursor cursor = new MatrixCursor(TaskListSnapshot.PROJECTION);
+            for(int i = 0; i < rows; i++) {
+                String name = i == renamed ? "Renamed task " + i : "Task " + i;
+                cursor.addRow(new Object[]{i + 1, name, "Description of task " + i, i});
+            }
+            return cursor;
+        }
+    }
+
+    /**
+     * Round trips through {@link AppProvider} via a ContentResolver, on rows of its own it deletes in {@link #close()}
+     */
+    static final class Provider {
+        private static final String NAME_PREFIX = "Benchmark task ";
+
+        private final ContentResolver mContentResolver;
+        private final long mTaskId;
+        private final Uri mTaskUri;
+        private final ContentValues mTaskValues = new ContentValues();
+        private final ContentValues mTimingValues = new ContentValues();
+        private int mSortOrder;
+
+        Provider(ContentResolver contentResolver, int tasks) {
+            mContentResolver = contentResolver;
+            ContentValues[] rows = new ContentValues[tasks];
+            for(int i = 0; i < tasks; i++) {
+                rows[i] = new ContentValues();
+                rows[i].put(TasksContract.Columns.TASKS_NAME, NAME_PREFIX + i);
+                rows[i].put(TasksContract.Columns.TASKS_SORTORDER, i % 5);
+            }
+            contentResolver.bulkInsert(TasksContract.CONTENT_URI, rows);
+
+            ContentValues values = new ContentValues();
+            values.put(TasksContract.Columns.TASKS_NAME, NAME_PREFIX + "updated");
+            mTaskUri = contentResolver.insert(TasksContract.CONTENT_URI, values);
+            mTaskId = ContentUris.parseId(mTaskUri);
+            mTimingValues.put(TimingsContract.Columns.TIMINGS_TASK_ID, mTaskId);
+            mTimingValues.put(TimingsContract.Columns.TIMINGS_DURATION, 60);
+        }
+
+        /**
+         * The task list query, as TaskListLoader runs it for a page, with every row read
+         */
+        int queryTaskList() {
+            Cursor cursor = mContentResolver.query(TasksContract.CONTENT_URI, TaskListSnapshot.PROJECTION,
+                    null, null, TasksContract.DEFAULT_SORT_ORDER);
+            try {
+                int rows = 0;
+                while(cursor.moveToNext()) {
+                    cursor.getString(1);
+                    rows++;
+                }
+                return rows;
+            } finally {
+                cursor.close();
+            }
+        }
+
+        /**
+         * One task by id, as the edit screen reads it
+         */
+        int queryTask() {
+            Cursor cursor = mContentResolver.query(mTaskUri, TaskListSnapshot.PROJECTION, null, null, null);
+            try {
+                return cursor.getCount();
+            } finally {
+                cursor.close();
+            }
+        }
+
+        Uri insertTiming() {
+            mTimingValues.put(TimingsContract.Columns.TIMINGS_START_TIME, System.currentTimeMillis() / 1000);
+            return mContentResolver.insert(TimingsContract.CONTENT_URI, mTimingValues);
+        }
+
+        int updateTask() {
+            mTaskValues.put(TasksContract.Columns.TASKS_SORTORDER, mSortOrder++ % 10);
+            return mContentResolver.update(mTaskUri, mTaskValues, null, null);
+        }
+
+        /**
+         * Deletes the benchmark's tasks, the Remove_Task trigger takes their timings with them
+         */
+        void close() {
+            mContentResolver.delete(TasksContract.CONTENT_URI, TasksContract.Columns.TASKS_NAME + " LIKE ?",
+                    new String[]{NAME_PREFIX + "%"});
+        }
+    }
+
+    /**
+     * Handing a task to the edit screen: the task is put in a Bundle (Intent extras, fragment arguments),
+     * the Bundle is flattened into a Parcel and read back, as it is when it crosses to another activity or is saved
+     * on a configuration change, and the task is taken out again.
+     * {@link #parcelable()} is how a Task goes, {@link #serializable()} how it went while it was Serializable.
+     */
+    static final class Transfer {
+        private static final String KEY = Task.class.getSimpleName();
+
+        private final Task mTask = new Task(42, "Write the quarterly report",
+                "Numbers from finance, charts from marketing", 3L);
+        private final SerializableTask mSerializableTask = new SerializableTask(42, "Write the quarterly report",
+                "Numbers from finance, charts from marketing", 3);
+
+        Task parcelable() {
+            Bundle arguments = new Bundle();
+            arguments.putParcelable(KEY, mTask);
+            return roundTrip(arguments).getParcelable(KEY);
+        }
+
+        Serializable serializable() {
+            Bundle arguments = new Bundle();
+            arguments.putSerializable(KEY, mSerializableTask);
+            return roundTrip(arguments).getSerializable(KEY);
+        }
+
+        /**
+         * @return bytes of the flattened Bundle holding the Task
+         */
+        int parcelableSize() {
+            Bundle arguments = new Bundle();
+            arguments.putParcelable(KEY, mTask);
+            return marshall(arguments).length;
+        }
+
+        /**
+         * @return bytes of the flattened Bundle holding the serialized task
+         */
+        int serializableSize() {
+            Bundle arguments = new Bundle();
+            arguments.putSerializable(KEY, mSerializableTask);
+            return marshall(arguments).length;
+        }
+
+        private static byte[] marshall(Bundle bundle) {
+            Parcel parcel = Parcel.obtain();
+            try {
+                parcel.writeBundle(bundle);
+                return parcel.marshall();
+            } finally {
+                parcel.recycle();
+            }
+        }
+
+        /**
+         * @return a copy of the bundle read back from its bytes, its values are read on the first get
+         */
+        private static Bundle roundTrip(Bundle bundle) {
+            byte[] bytes = marshall(bundle);
+            Parcel parcel = Parcel.obtain();
+            try {
+                parcel.unmarshall(bytes, 0, bytes.length);
+                parcel.setDataPosition(0);
+                return parcel.readBundle(Transfer.class.getClassLoader());
+            } finally {
+                parcel.recycle();
+            }
+        }
+    }
+
+    /**
+     * Task as it was while it was Serializable, to compare against
+     */
+    private static final class SerializableTask implements Serializable {
+        private static final long serialVersionUID = 2021113L;
+        private final long m_Id;
+        private final String mName;
+        private final String mDescription;
+        private final int mSortOrder;
+
+        SerializableTask(long id, String name, String description, int sortOrder) {
+            m_Id = id;
+            mName = name;
+            mDescription = description;
+            mSortOrder = sortOrder;
+        }
+    }
+}
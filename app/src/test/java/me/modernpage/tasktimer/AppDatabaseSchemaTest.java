@@ -0,0 +1,100 @@
+package me.modernpage.tasktimer;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.fail;
+
+/**
+ * Keeps app/schemas/&lt;version&gt;.sql, the schema the JMH benchmarks in :persistence-benchmark run against,
+ * the same as the schema AppDatabase creates. When the schema changes the test writes the new file and fails once,
+ * review the file and commit it with the change.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class AppDatabaseSchemaTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Test
+    public void exportedSchema_isTheSchemaAppDatabaseCreates() throws IOException {
+        String schema = createdSchema();
+        // unit tests run in the module directory
+        File file = new File("schemas", AppDatabase.DATABASE_VERSION + ".sql");
+        String exported = file.exists() ? read(file) : null;
+        if(!schema.equals(exported)) {
+            write(file, schema);
+            fail(file + " was out of date and has been rewritten, review and commit it");
+        }
+    }
+
+    /**
+     * @return the statements in sqlite_master in the order they were run, one per line
+     */
+    private static String createdSchema() {
+        Context context = ApplicationProvider.getApplicationContext();
+        context.deleteDatabase("schema_test.db");
+        AppDatabase appDatabase = new AppDatabase(context, "schema_test.db", AppDatabase.DEFAULT_PROFILE);
+        try {
+            SQLiteDatabase database = appDatabase.getReadableDatabase();
+            // automatic indexes have no sql, android_metadata is created by the framework rather than AppDatabase,
+            // and the shadow tables of a virtual table (TasksSearch_segments...) are created by the virtual table itself
+            Cursor cursor = database.rawQuery("select sql from sqlite_master m"
+                    + " where sql is not null and name != 'android_metadata'"
+                    + " and not exists (select 1 from sqlite_master v where v.sql like 'create virtual table %'"
+                    + " and m.name like v.name || '\\_%' escape '\\')"
+                    + " order by rowid", null);
+            StringBuilder schema = new StringBuilder();
+            try {
+                while(cursor.moveToNext()) {
+                    schema.append(cursor.getString(0)).append(";\n");
+                }
+            } finally {
+                cursor.close();
+            }
+            return schema.toString();
+        } finally {
+            appDatabase.close();
+        }
+    }
+
+    private static String read(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] bytes = new byte[(int) file.length()];
+            int offset = 0;
+            int read;
+            while(offset < bytes.length && (read = in.read(bytes, offset, bytes.length - offset)) > 0) {
+                offset += read;
+            }
+            return new String(bytes, 0, offset, UTF_8);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void write(File file, String schema) throws IOException {
+        file.getParentFile().mkdirs();
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(schema.getBytes(UTF_8));
+        } finally {
+            out.close();
+        }
+    }
+}
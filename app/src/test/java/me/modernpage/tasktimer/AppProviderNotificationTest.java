@@ -0,0 +1,134 @@
+package me.modernpage.tasktimer;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.net.Uri;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Counts the notifications, and so the requeries, that each kind of change to the Tasks table causes.
+ *
+ * The task list observes the table uri without descendants and has to requery exactly once per change,
+ * however many rows the change touched. An observer that opts into row notifications is told which rows changed.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class AppProviderNotificationTest {
+    private ContentResolver mContentResolver;
+    private RecordingObserver mListObserver;
+    private RecordingObserver mRowObserver;
+    private long[] mTaskIds;
+
+    @Before
+    public void setUp() {
+        Robolectric.setupContentProvider(AppProvider.class, AppProvider.CONTENT_AUTHORITY);
+        Context context = ApplicationProvider.getApplicationContext();
+        mContentResolver = context.getContentResolver();
+
+        mTaskIds = new long[5];
+        for(int i = 0; i < mTaskIds.length; i++) {
+            mTaskIds[i] = TasksContract.getTaskId(mContentResolver.insert(TasksContract.CONTENT_URI, task("Task " + i)));
+        }
+
+        mListObserver = new RecordingObserver();
+        mRowObserver = new RecordingObserver();
+        mContentResolver.registerContentObserver(TasksContract.CONTENT_URI, false, mListObserver);
+        mContentResolver.registerContentObserver(TasksContract.CONTENT_URI, true, mRowObserver);
+    }
+
+    @After
+    public void tearDown() {
+        mContentResolver.unregisterContentObserver(mListObserver);
+        mContentResolver.unregisterContentObserver(mRowObserver);
+        AppDatabase.getInstance(ApplicationProvider.getApplicationContext()).close();
+    }
+
+    @Test
+    public void insert_requeriesOnce() {
+        Uri uri = mContentResolver.insert(TasksContract.CONTENT_URI, task("New task"));
+
+        assertEquals(1, mListObserver.mChanges.size());
+        assertEquals(Arrays.asList(uri, TasksContract.CONTENT_URI), mRowObserver.mChanges);
+    }
+
+    @Test
+    public void updateById_requeriesOnce() {
+        ContentValues values = new ContentValues();
+        values.put(TasksContract.Columns.TASKS_SORTORDER, 3);
+        mContentResolver.update(TasksContract.buildTaskUri(mTaskIds[2]), values, null, null);
+
+        assertEquals(1, mListObserver.mChanges.size());
+        assertEquals(Arrays.asList(TasksContract.buildTaskUri(mTaskIds[2]), TasksContract.CONTENT_URI), mRowObserver.mChanges);
+    }
+
+    @Test
+    public void deleteBySelection_requeriesOnceAndNamesTheDeletedRows() {
+        int count = mContentResolver.delete(TasksContract.CONTENT_URI, TasksContract.Columns._ID + " <= ?",
+                new String[]{String.valueOf(mTaskIds[2])});
+
+        assertEquals(3, count);
+        assertEquals(1, mListObserver.mChanges.size());
+        assertEquals(Arrays.asList(TasksContract.buildTaskUri(mTaskIds[0]),
+                TasksContract.buildTaskUri(mTaskIds[1]),
+                TasksContract.buildTaskUri(mTaskIds[2]),
+                TasksContract.CONTENT_URI), mRowObserver.mChanges);
+    }
+
+    @Test
+    public void noChange_noRequery() {
+        mContentResolver.delete(TasksContract.buildTaskUri(mTaskIds[4] + 100), null, null);
+
+        assertEquals(0, mListObserver.mChanges.size());
+        assertEquals(0, mRowObserver.mChanges.size());
+    }
+
+    @Test
+    public void bulkInsert_requeriesOnce() {
+        ContentValues[] values = new ContentValues[AppProvider.MAX_ROW_NOTIFICATIONS + 1];
+        for(int i = 0; i < values.length; i++) {
+            values[i] = task("Bulk task " + i);
+        }
+        mContentResolver.bulkInsert(TasksContract.CONTENT_URI, values);
+
+        assertEquals(1, mListObserver.mChanges.size());
+        // too many rows to name them all, only the table notification is sent
+        assertEquals(Arrays.asList(TasksContract.CONTENT_URI), mRowObserver.mChanges);
+    }
+
+    private static ContentValues task(String name) {
+        ContentValues values = new ContentValues();
+        values.put(TasksContract.Columns.TASKS_NAME, name);
+        values.put(TasksContract.Columns.TASKS_SORTORDER, 1);
+        return values;
+    }
+
+    private static class RecordingObserver extends ContentObserver {
+        final List<Uri> mChanges = new ArrayList<>();
+
+        RecordingObserver() {
+            super(null);
+        }
+
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            mChanges.add(uri);
+        }
+    }
+}
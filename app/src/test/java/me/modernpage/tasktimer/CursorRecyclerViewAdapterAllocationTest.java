@@ -0,0 +1,134 @@
+package me.modernpage.tasktimer;
+
+import android.content.Context;
+import android.database.MatrixCursor;
+import android.view.View;
+import android.widget.FrameLayout;
+
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that binding rows in {@link CursorRecyclerViewAdapter} doesn't allocate once it has warmed up.
+ *
+ * TextView.setText allocates on its own, so the test runs the same setText calls on the same views
+ * without the adapter as a baseline, and only what the adapter allocates on top of that counts.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class CursorRecyclerViewAdapterAllocationTest {
+    private static final String[] COLUMNS = {TasksContract.Columns._ID,
+            TasksContract.Columns.TASKS_NAME,
+            TasksContract.Columns.TASKS_DESCRIPTION,
+            TasksContract.Columns.TASKS_SORTORDER};
+    private static final int ROWS = 20;
+    private static final int WARMUP_BINDS = 5000;
+    private static final int MEASURED_BINDS = 20000;
+
+    // a few bytes per bind would still be a leak, this only leaves room for measurement noise
+    private static final long ALLOWED_BYTES_PER_BIND = 1;
+
+    private Context mContext;
+    private MatrixCursor mCursor;
+
+    @Before
+    public void setUp() {
+        mContext = ApplicationProvider.getApplicationContext();
+        mCursor = new MatrixCursor(COLUMNS);
+        for(int i = 0; i < ROWS; i++) {
+            mCursor.addRow(new Object[]{i + 1, "Task " + i, "Description of task " + i, i});
+        }
+    }
+
+    @Test
+    public void onBindViewHolder_doesNotAllocateInSteadyState() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        CursorRecyclerViewAdapter adapter = new CursorRecyclerViewAdapter(mCursor, null);
+        CursorRecyclerViewAdapter.TaskViewHolder holder = adapter.onCreateViewHolder(new FrameLayout(mContext), 0);
+
+        char[][] names = new char[ROWS][];
+        char[][] descriptions = new char[ROWS][];
+        for(int i = 0; i < ROWS; i++) {
+            mCursor.moveToPosition(i);
+            names[i] = mCursor.getString(1).toCharArray();
+            descriptions[i] = mCursor.getString(2).toCharArray();
+        }
+
+        for(int i = 0; i < WARMUP_BINDS; i++) {
+            adapter.onBindViewHolder(holder, i % ROWS);
+            setTexts(holder, names[i % ROWS], descriptions[i % ROWS]);
+        }
+
+        long start = threads.getThreadAllocatedBytes(thread);
+        for(int i = 0; i < MEASURED_BINDS; i++) {
+            setTexts(holder, names[i % ROWS], descriptions[i % ROWS]);
+        }
+        long baseline = threads.getThreadAllocatedBytes(thread) - start;
+
+        start = threads.getThreadAllocatedBytes(thread);
+        for(int i = 0; i < MEASURED_BINDS; i++) {
+            adapter.onBindViewHolder(holder, i % ROWS);
+        }
+        long binding = threads.getThreadAllocatedBytes(thread) - start;
+
+        long perBind = (binding - baseline) / MEASURED_BINDS;
+        assertTrue("onBindViewHolder allocates " + perBind + " bytes per bind on top of TextView.setText ("
+                + binding + " vs " + baseline + " bytes)", perBind <= ALLOWED_BYTES_PER_BIND);
+    }
+
+    @Test
+    public void click_buildsTheTaskOfTheClickedRow() {
+        final Task[] clicked = new Task[1];
+        CursorRecyclerViewAdapter adapter = new CursorRecyclerViewAdapter(mCursor, new CursorRecyclerViewAdapter.OnTaskClickListener() {
+            @Override
+            public void onEditClick(Task task) {
+                clicked[0] = task;
+            }
+
+            @Override
+            public void onDeleteClick(Task task) {
+            }
+
+            @Override
+            public void onTaskClick(Task task) {
+            }
+        });
+        RecyclerView recyclerView = new RecyclerView(mContext);
+        recyclerView.setLayoutManager(new LinearLayoutManager(mContext));
+        recyclerView.setAdapter(adapter);
+        recyclerView.measure(View.MeasureSpec.makeMeasureSpec(480, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(800, View.MeasureSpec.EXACTLY));
+        recyclerView.layout(0, 0, 480, 800);
+
+        CursorRecyclerViewAdapter.TaskViewHolder holder =
+                (CursorRecyclerViewAdapter.TaskViewHolder) recyclerView.findViewHolderForAdapterPosition(2);
+        assertNotNull(holder);
+        holder.mEditButton.performClick();
+
+        assertNotNull(clicked[0]);
+        assertEquals(3, clicked[0].getId());
+        assertEquals("Task 2", clicked[0].getName());
+    }
+
+    private static void setTexts(CursorRecyclerViewAdapter.TaskViewHolder holder, char[] name, char[] description) {
+        holder.mName.setText(name, 0, name.length);
+        holder.mDescription.setText(description, 0, description.length);
+        holder.mDeleteButton.setVisibility(View.VISIBLE);
+        holder.mEditButton.setVisibility(View.VISIBLE);
+    }
+}
@@ -0,0 +1,99 @@
+package me.modernpage.tasktimer;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that exports page through the whole table and escape what CSV and JSON need escaped.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class DataExportTest {
+    private SQLiteDatabase mDatabase;
+    private DataFixture mFixture;
+
+    @Before
+    public void setUp() {
+        Context context = ApplicationProvider.getApplicationContext();
+        mDatabase = AppDatabase.getInstance(context).getWritableDatabase();
+        mFixture = new DataFixture(mDatabase);
+        mFixture.insertEdgeCases();
+    }
+
+    @After
+    public void tearDown() {
+        AppDatabase.getInstance(ApplicationProvider.getApplicationContext()).close();
+    }
+
+    @Test
+    public void csv_escapesValuesAndLeavesNullsEmpty() throws Exception {
+        String csv = export(TasksContract.TABLE_NAME, TaskListSnapshot.PROJECTION, DataExport.FORMAT_CSV);
+        assertEquals("_id,name,description,sortOrder\r\n"
+                + "1,Plain,,\r\n"
+                + "2,\"Ünïcode, \"\"quoted\"\"\",\"two\nlines\",2\r\n"
+                // an empty string is quoted, it isn't a null
+                + "3,Empty,\"\",-4\r\n", csv);
+    }
+
+    @Test
+    public void json_isAnArrayOfRows() throws Exception {
+        JSONArray tasks = new JSONArray(export(TasksContract.TABLE_NAME, TaskListSnapshot.PROJECTION, DataExport.FORMAT_JSON));
+        assertEquals(3, tasks.length());
+        JSONObject second = tasks.getJSONObject(1);
+        assertEquals(2, second.getLong(TasksContract.Columns._ID));
+        assertEquals("Ünïcode, \"quoted\"", second.getString(TasksContract.Columns.TASKS_NAME));
+        assertEquals("two\nlines", second.getString(TasksContract.Columns.TASKS_DESCRIPTION));
+        assertTrue(tasks.getJSONObject(0).isNull(TasksContract.Columns.TASKS_DESCRIPTION));
+        assertEquals("", tasks.getJSONObject(2).getString(TasksContract.Columns.TASKS_DESCRIPTION));
+    }
+
+    @Test
+    public void export_readsEveryPage() throws Exception {
+        int timings = DataExport.PAGE_SIZE * 2 + 1;
+        mDatabase.beginTransaction();
+        try {
+            ContentValues values = new ContentValues();
+            for(int i = 0; i < timings; i++) {
+                values.put(TimingsContract.Columns.TIMINGS_TASK_ID, 1 + i % 2);
+                values.put(TimingsContract.Columns.TIMINGS_START_TIME, 1600000000 + i * 60);
+                values.put(TimingsContract.Columns.TIMINGS_DURATION, 60);
+                mDatabase.insert(TimingsContract.TABLE_NAME, null, values);
+            }
+            mDatabase.setTransactionSuccessful();
+        } finally {
+            mDatabase.endTransaction();
+        }
+
+        JSONArray exported = new JSONArray(export(TimingsContract.TABLE_NAME, DataFixture.TIMING_COLUMNS, DataExport.FORMAT_JSON));
+        assertEquals(timings, exported.length());
+        for(int i = 0; i < timings; i++) {
+            assertEquals(i + 1, exported.getJSONObject(i).getLong(TimingsContract.Columns._ID));
+        }
+    }
+
+    @Test
+    public void exportUri_hasTheFormatsMimeType() {
+        AppProvider provider = new AppProvider();
+        assertEquals("text/csv", provider.getType(AppProvider.buildExportUri(TasksContract.TABLE_NAME, DataExport.FORMAT_CSV)));
+        assertEquals("application/json", provider.getType(AppProvider.buildExportUri(TimingsContract.TABLE_NAME, DataExport.FORMAT_JSON)));
+    }
+
+    private String export(String table, String[] columns, String format) throws Exception {
+        return new String(mFixture.export(table, columns, format), "UTF-8");
+    }
+}
@@ -0,0 +1,101 @@
+package me.modernpage.tasktimer;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Tasks and timings for the export, import and snapshot tests, written straight to the database,
+ * and the helpers to export them and read them back.
+ */
+final class DataFixture {
+    static final String[] TIMING_COLUMNS = {TimingsContract.Columns._ID,
+            TimingsContract.Columns.TIMINGS_TASK_ID,
+            TimingsContract.Columns.TIMINGS_START_TIME,
+            TimingsContract.Columns.TIMINGS_DURATION};
+
+    private final SQLiteDatabase mDatabase;
+
+    DataFixture(SQLiteDatabase database) {
+        mDatabase = database;
+    }
+
+    /**
+     * The tasks every format has to carry over as they are: nulls, a value CSV has to quote, with non-ASCII characters,
+     * a line break in the middle, an empty string that isn't a null, and a negative sortOrder
+     */
+    void insertEdgeCases() {
+        insertTask(1, "Plain", null, null);
+        insertTask(2, "Ünïcode, \"quoted\"", "two\nlines", 2L);
+        insertTask(3, "Empty", "", -4L);
+    }
+
+    void insertTask(long id, String name, String description, Long sortOrder) {
+        ContentValues values = new ContentValues();
+        values.put(TasksContract.Columns._ID, id);
+        values.put(TasksContract.Columns.TASKS_NAME, name);
+        values.put(TasksContract.Columns.TASKS_DESCRIPTION, description);
+        values.put(TasksContract.Columns.TASKS_SORTORDER, sortOrder);
+        mDatabase.insert(TasksContract.TABLE_NAME, null, values);
+    }
+
+    /**
+     * count timings an hour apart, inserted newest first so _id order isn't StartTime order
+     */
+    void insertTimings(long taskId, int count) {
+        mDatabase.beginTransaction();
+        try {
+            for(int i = count - 1; i >= 0; i--) {
+                insertTiming(taskId, 1600000000 + i * 3600, 60 + i % 600);
+            }
+            mDatabase.setTransactionSuccessful();
+        } finally {
+            mDatabase.endTransaction();
+        }
+    }
+
+    void insertTiming(long taskId, long startTime, long duration) {
+        ContentValues values = new ContentValues();
+        values.put(TimingsContract.Columns.TIMINGS_TASK_ID, taskId);
+        values.put(TimingsContract.Columns.TIMINGS_START_TIME, startTime);
+        values.put(TimingsContract.Columns.TIMINGS_DURATION, duration);
+        mDatabase.insert(TimingsContract.TABLE_NAME, null, values);
+    }
+
+    byte[] export(String table, String[] columns, String format) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new DataExport(table, columns, format).writeTo(mDatabase, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * @return the rows, "|" between values, "null" for a null, and a line per row
+     */
+    String query(String sql) {
+        Cursor cursor = mDatabase.rawQuery(sql, null);
+        StringBuilder rows = new StringBuilder();
+        try {
+            while(cursor.moveToNext()) {
+                for(int i = 0; i < cursor.getColumnCount(); i++) {
+                    rows.append(i > 0 ? "|" : "").append(cursor.isNull(i) ? "null" : cursor.getString(i));
+                }
+                rows.append('\n');
+            }
+        } finally {
+            cursor.close();
+        }
+        return rows.toString();
+    }
+
+    /**
+     * @return the tasks, the timings without their _ids and the durations, each in a fixed order
+     */
+    String dump() {
+        return query("select _id, name, description, sortOrder from Tasks order by _id")
+                + query("select TaskId, StartTime, Duration from Timings order by TaskId, StartTime, Duration")
+                + query("select TaskId, StartDate, Duration from TaskDurations order by TaskId, StartDate");
+    }
+}
@@ -0,0 +1,221 @@
+package me.modernpage.tasktimer;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowContentResolver;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Checks that an export imports back as it was, that importing again updates rather than duplicates,
+ * that imported tasks don't take over local ones, and that observers only hear about an import once it has finished.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class DataImportTest {
+    private ContentResolver mContentResolver;
+    private SQLiteDatabase mDatabase;
+    private DataFixture mFixture;
+
+    @Before
+    public void setUp() {
+        Robolectric.setupContentProvider(AppProvider.class, AppProvider.CONTENT_AUTHORITY);
+        Context context = ApplicationProvider.getApplicationContext();
+        mContentResolver = context.getContentResolver();
+        mDatabase = AppDatabase.getInstance(context).getWritableDatabase();
+        mFixture = new DataFixture(mDatabase);
+    }
+
+    @After
+    public void tearDown() {
+        AppDatabase.getInstance(ApplicationProvider.getApplicationContext()).close();
+    }
+
+    @Test
+    public void csvExport_importsBackIntoAnEmptyDatabase() throws Exception {
+        assertImportsBack(DataExport.FORMAT_CSV);
+    }
+
+    @Test
+    public void jsonExport_importsBackIntoAnEmptyDatabase() throws Exception {
+        assertImportsBack(DataExport.FORMAT_JSON);
+    }
+
+    @Test
+    public void byteOrderMark_isNotPartOfTheFirstColumn() throws Exception {
+        DataImport dataImport = new DataImport(mContentResolver);
+        dataImport.importFrom(csv("\uFEFF_id,name,description,sortOrder\r\n4,Task,,1\r\n"));
+        dataImport.finish();
+
+        assertEquals("4|Task|null|1\n", tasks());
+    }
+
+    @Test
+    public void emptyCsvField_isNull_quotedEmptyField_isAnEmptyString() throws Exception {
+        DataImport dataImport = new DataImport(mContentResolver);
+        dataImport.importFrom(csv("_id,name,description,sortOrder\r\n1,One,,\r\n2,Two,\"\",\"\"\r\n"));
+        dataImport.finish();
+
+        assertEquals("1|One|null|null\n2|Two||null\n", tasks());
+    }
+
+    @Test
+    public void taskMatchedByName_takesItsTimingsAlong() throws Exception {
+        mFixture.insertTask(5, "Existing", null, null);
+
+        DataImport dataImport = new DataImport(mContentResolver);
+        dataImport.importFrom(json("[{\"_id\":1,\"name\":\"Existing\",\"description\":\"imported\",\"sortOrder\":3}]"));
+        dataImport.importFrom(json("[{\"_id\":1,\"TaskId\":1,\"StartTime\":1600000000,\"Duration\":60}]"));
+        dataImport.finish();
+
+        assertEquals("5|Existing|imported|3\n", tasks());
+        assertEquals("5|1600000000|60\n", timings());
+    }
+
+    @Test
+    public void idOfAnotherTask_isLeftAlone() throws Exception {
+        mFixture.insertTask(1, "Local", "mine", 1L);
+        mFixture.insertTiming(1, 1600000000, 60);
+        String tasks = "[{\"_id\":1,\"name\":\"Imported\",\"description\":\"theirs\",\"sortOrder\":2}]";
+
+        DataImport dataImport = new DataImport(mContentResolver);
+        dataImport.importFrom(json(tasks));
+        dataImport.importFrom(json("[{\"_id\":1,\"TaskId\":1,\"StartTime\":1600000600,\"Duration\":90}]"));
+        // found by its name the second time
+        dataImport.importFrom(json(tasks));
+        dataImport.finish();
+
+        assertEquals("1|Local|mine|1\n2|Imported|theirs|2\n", tasks());
+        assertEquals("1|1600000000|60\n2|1600000600|90\n", timings());
+    }
+
+    @Test
+    public void importingTwice_updatesInsteadOfDuplicating() throws Exception {
+        String tasks = "_id,name,description,sortOrder\r\n7,Task,,1\r\n";
+        DataImport dataImport = new DataImport(mContentResolver);
+        dataImport.importFrom(csv(tasks));
+        dataImport.importFrom(csv("_id,TaskId,StartTime,Duration\r\n1,7,1600000000,60\r\n"));
+        dataImport.importFrom(csv(tasks));
+        dataImport.importFrom(csv("_id,TaskId,StartTime,Duration\r\n1,7,1600000000,75\r\n2,7,1600000600,30\r\n"));
+        dataImport.finish();
+
+        assertEquals("7|Task|null|1\n", tasks());
+        assertEquals("7|1600000000|75\n7|1600000600|30\n", timings());
+        // the durations report followed the update
+        assertEquals("105\n", mFixture.query("select sum(" + DurationsContract.Columns.DURATIONS_DURATION + ") from " + DurationsContract.TABLE_NAME));
+    }
+
+    @Test
+    public void observers_hearAboutTheImportOnceItHasFinished() throws Exception {
+        StringBuilder timings = new StringBuilder("_id,TaskId,StartTime,Duration\r\n");
+        int count = DataImport.CHUNK_SIZE + 1;
+        for(int i = 0; i < count; i++) {
+            timings.append(i + 1).append(",1,").append(1600000000 + i * 60).append(",60\r\n");
+        }
+        ShadowContentResolver shadowResolver = shadowOf(mContentResolver);
+        shadowResolver.getNotifiedUris().clear();
+
+        DataImport dataImport = new DataImport(mContentResolver);
+        dataImport.importFrom(csv("_id,name,description,sortOrder\r\n1,Task,,1\r\n"));
+        dataImport.importFrom(csv(timings.toString()));
+        assertEquals(count, dataImport.getTimingCount());
+        assertTrue(shadowResolver.getNotifiedUris().isEmpty());
+
+        dataImport.finish();
+        List<String> notified = new ArrayList<>();
+        for(ShadowContentResolver.NotifiedUri notifiedUri : shadowResolver.getNotifiedUris()) {
+            notified.add(notifiedUri.uri.toString());
+        }
+        // one notification per table, the import changed too many rows to notify each
+        assertEquals(3, notified.size());
+        assertTrue(notified.contains(TasksContract.CONTENT_URI.toString()));
+        assertTrue(notified.contains(TimingsContract.CONTENT_URI.toString()));
+        assertTrue(notified.contains(DurationsContract.CONTENT_URI.toString()));
+    }
+
+    @Test
+    public void interruptedImport_stopsBeforeTheNextChunk() throws Exception {
+        DataImport dataImport = new DataImport(mContentResolver);
+        Thread.currentThread().interrupt();
+        try {
+            dataImport.importFrom(csv("_id,name,description,sortOrder\r\n1,Task,,1\r\n"));
+            fail("the import wasn't cancelled");
+        } catch (InterruptedIOException expected) {
+            assertFalse(Thread.currentThread().isInterrupted());
+        } finally {
+            dataImport.finish();
+        }
+        assertEquals(0, dataImport.getTaskCount());
+        assertEquals("", tasks());
+    }
+
+    @Test(expected = IOException.class)
+    public void timingWithoutATask_stopsTheImport() throws Exception {
+        DataImport dataImport = new DataImport(mContentResolver);
+        try {
+            dataImport.importFrom(csv("_id,TaskId,StartTime,Duration\r\n1,,1600000000,60\r\n"));
+        } finally {
+            dataImport.finish();
+        }
+    }
+
+    private static ByteArrayInputStream csv(String csv) throws IOException {
+        return new ByteArrayInputStream(csv.getBytes("UTF-8"));
+    }
+
+    private static ByteArrayInputStream json(String json) throws IOException {
+        return new ByteArrayInputStream(json.getBytes("UTF-8"));
+    }
+
+    /**
+     * Exports the edge case tasks and their timings, empties the database and imports the export back
+     */
+    private void assertImportsBack(String format) throws IOException {
+        mFixture.insertEdgeCases();
+        mFixture.insertTiming(1, 1600000000, 60);
+        mFixture.insertTiming(2, 1600000600, 90);
+        mFixture.insertTiming(3, 1600001200, 30);
+        byte[] tasks = mFixture.export(TasksContract.TABLE_NAME, TaskListSnapshot.PROJECTION, format);
+        byte[] timings = mFixture.export(TimingsContract.TABLE_NAME, DataFixture.TIMING_COLUMNS, format);
+        String before = mFixture.dump();
+        mDatabase.delete(TasksContract.TABLE_NAME, null, null);
+
+        DataImport dataImport = new DataImport(mContentResolver);
+        assertEquals(TasksContract.TABLE_NAME, dataImport.importFrom(new ByteArrayInputStream(tasks)));
+        assertEquals(TimingsContract.TABLE_NAME, dataImport.importFrom(new ByteArrayInputStream(timings)));
+        dataImport.finish();
+
+        assertEquals(3, dataImport.getTaskCount());
+        assertEquals(3, dataImport.getTimingCount());
+        assertEquals(before, mFixture.dump());
+    }
+
+    private String tasks() {
+        return mFixture.query("select _id, name, description, sortOrder from Tasks order by _id");
+    }
+
+    private String timings() {
+        return mFixture.query("select TaskId, StartTime, Duration from Timings order by _id");
+    }
+}
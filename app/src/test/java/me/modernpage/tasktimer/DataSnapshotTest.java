@@ -0,0 +1,164 @@
+package me.modernpage.tasktimer;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowContentResolver;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Checks that a snapshot restores the tasks and timings it was taken from, that it is much smaller than
+ * the database, that a damaged one leaves the database alone, and that AppProvider restores one for the backup agent.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class DataSnapshotTest {
+    private Context mContext;
+    private SQLiteDatabase mDatabase;
+    private DataFixture mFixture;
+
+    @Before
+    public void setUp() {
+        mContext = ApplicationProvider.getApplicationContext();
+        mDatabase = AppDatabase.getInstance(mContext).getWritableDatabase();
+        mFixture = new DataFixture(mDatabase);
+        mFixture.insertEdgeCases();
+        // on the next page
+        mFixture.insertTask(DataSnapshot.PAGE_SIZE + 10, "Far away", null, 7L);
+    }
+
+    @After
+    public void tearDown() {
+        AppDatabase.getInstance(mContext).close();
+    }
+
+    @Test
+    public void snapshot_restoresWhatItWasTakenFrom() throws IOException {
+        mFixture.insertTimings(1, DataSnapshot.PAGE_SIZE * 2 + 3);
+        mFixture.insertTimings(3, 5);
+        // same start time twice
+        mFixture.insertTiming(3, 1600000000, 10);
+        String before = mFixture.dump();
+
+        byte[] snapshot = write();
+        mFixture.insertTask(99, "Added after the snapshot", null, null);
+        mFixture.insertTiming(99, 1600000000, 60);
+        assertEquals(DataSnapshot.PAGE_SIZE * 2 + 3 + 6, restore(snapshot));
+
+        assertEquals(before, mFixture.dump());
+    }
+
+    @Test
+    public void snapshot_isAFractionOfTheDatabase() throws IOException {
+        mFixture.insertTimings(1, 20000);
+        mFixture.insertTimings(3, 20000);
+        // everything in the database file rather than partly in the WAL
+        mDatabase.rawQuery("PRAGMA wal_checkpoint(TRUNCATE)", null).close();
+
+        long snapshot = write().length;
+        long database = new File(mDatabase.getPath()).length();
+        System.out.println("DataSnapshotTest: 40000 timings, snapshot " + snapshot + " bytes, database " + database + " bytes");
+        assertTrue("snapshot " + snapshot + " bytes, database " + database, snapshot * 4 < database);
+        // a timing an hour after the last one, lasting minutes, takes 4 bytes
+        assertTrue(snapshot < 40000 * 5);
+    }
+
+    @Test
+    public void damagedSnapshot_leavesTheDatabaseAlone() throws IOException {
+        mFixture.insertTimings(1, 100);
+        byte[] snapshot = write();
+        String before = mFixture.dump();
+
+        byte[] damaged = snapshot.clone();
+        damaged[damaged.length / 2] ^= 0x10;
+        assertRestoreFails(damaged);
+        assertRestoreFails(Arrays.copyOf(snapshot, snapshot.length - 1));
+        byte[] otherVersion = snapshot.clone();
+        otherVersion[3] = '9';
+        assertRestoreFails(otherVersion);
+
+        assertEquals(before, mFixture.dump());
+    }
+
+    @Test
+    public void restoreThroughTheProvider_notifiesItsObservers() throws IOException {
+        Robolectric.setupContentProvider(AppProvider.class, AppProvider.CONTENT_AUTHORITY);
+        ContentResolver contentResolver = mContext.getContentResolver();
+        mFixture.insertTimings(1, 10);
+        String before = mFixture.dump();
+        File file = new File(mContext.getCacheDir(), "provider.snapshot");
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(write());
+        } finally {
+            out.close();
+        }
+        mFixture.insertTask(99, "Added after the snapshot", null, null);
+        shadowOf(contentResolver).getNotifiedUris().clear();
+
+        ParcelFileDescriptor descriptor = ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
+        try {
+            Bundle extras = new Bundle();
+            extras.putParcelable(AppProvider.EXTRA_SNAPSHOT, descriptor);
+            Bundle result = contentResolver.call(AppProvider.CONTENT_AUTHORITY_URI, AppProvider.METHOD_RESTORE_SNAPSHOT, null, extras);
+            assertEquals(10, result.getLong(AppProvider.EXTRA_TIMING_COUNT));
+        } finally {
+            descriptor.close();
+            file.delete();
+        }
+
+        assertEquals(before, mFixture.dump());
+        List<String> notified = new ArrayList<>();
+        for(ShadowContentResolver.NotifiedUri notifiedUri : shadowOf(contentResolver).getNotifiedUris()) {
+            notified.add(notifiedUri.uri.toString());
+        }
+        assertTrue(notified.contains(TasksContract.CONTENT_URI.toString()));
+        assertTrue(notified.contains(TimingsContract.CONTENT_URI.toString()));
+        assertTrue(notified.contains(DurationsContract.CONTENT_URI.toString()));
+    }
+
+    private void assertRestoreFails(byte[] snapshot) {
+        try {
+            restore(snapshot);
+            fail("restored a damaged snapshot");
+        } catch (IOException expected) {
+            // the transaction has been rolled back
+        }
+    }
+
+    private byte[] write() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DataSnapshot.write(mDatabase, Channels.newChannel(out));
+        return out.toByteArray();
+    }
+
+    private long restore(byte[] snapshot) throws IOException {
+        return DataSnapshot.restore(mDatabase, Channels.newChannel(new ByteArrayInputStream(snapshot)));
+    }
+}
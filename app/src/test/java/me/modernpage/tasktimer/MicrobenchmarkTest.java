@@ -0,0 +1,163 @@
+package me.modernpage.tasktimer;
+
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The device microbenchmarks (AdapterMicrobenchmark, ProviderMicrobenchmark, TaskTransferMicrobenchmark) on the JVM, for CI.
+ *
+ * Runs the same {@link BenchmarkScenarios} under Robolectric and reports time and allocated bytes per operation.
+ * Robolectric's views and its SQLite aren't the device's, so the numbers are only comparable with earlier runs
+ * of this test on the same machine, that is what they are for: a change that makes binding or a provider call
+ * slower, or allocate, shows up here before anyone profiles a device.
+ * Results go to stdout and to build/reports/microbenchmark/results.json.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class MicrobenchmarkTest {
+    private static final int WARMUP_OPS = 2000;
+    private static final int MEASURED_OPS = 5000;
+    private static final int ROWS = 200;
+
+    // all results of the run, by benchmark name, written once the class has run
+    private static final Map<String, long[]> sResults = new TreeMap<>();
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = ApplicationProvider.getApplicationContext();
+    }
+
+    @After
+    public void tearDown() {
+        AppDatabase.getInstance(mContext).close();
+    }
+
+    @AfterClass
+    public static void writeResults() throws IOException {
+        File file = new File("build/reports/microbenchmark/results.json");
+        file.getParentFile().mkdirs();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write("{\n");
+            int written = 0;
+            for(Map.Entry<String, long[]> result : sResults.entrySet()) {
+                writer.write("  \"" + result.getKey() + "\": {\"ns_per_op\": " + result.getValue()[0]
+                        + ", \"bytes_per_op\": " + result.getValue()[1] + "}");
+                writer.write(++written < sResults.size() ? ",\n" : "\n");
+            }
+            writer.write("}\n");
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Test
+    public void adapter() {
+        final BenchmarkScenarios.Adapter scenario = new BenchmarkScenarios.Adapter(mContext, ROWS);
+        measure("adapter_onBindViewHolder", new Runnable() {
+            @Override
+            public void run() {
+                scenario.bindNext();
+            }
+        });
+        measure("adapter_swapCursor", new Runnable() {
+            @Override
+            public void run() {
+                scenario.swapNext();
+            }
+        });
+    }
+
+    @Test
+    public void provider() {
+        Robolectric.setupContentProvider(AppProvider.class, AppProvider.CONTENT_AUTHORITY);
+        final BenchmarkScenarios.Provider scenario = new BenchmarkScenarios.Provider(mContext.getContentResolver(), ROWS);
+        try {
+            measure("provider_queryTaskList", new Runnable() {
+                @Override
+                public void run() {
+                    scenario.queryTaskList();
+                }
+            });
+            measure("provider_queryTask", new Runnable() {
+                @Override
+                public void run() {
+                    scenario.queryTask();
+                }
+            });
+            measure("provider_insertTiming", new Runnable() {
+                @Override
+                public void run() {
+                    scenario.insertTiming();
+                }
+            });
+            measure("provider_updateTask", new Runnable() {
+                @Override
+                public void run() {
+                    scenario.updateTask();
+                }
+            });
+        } finally {
+            scenario.close();
+        }
+    }
+
+    @Test
+    public void taskTransfer() {
+        final BenchmarkScenarios.Transfer scenario = new BenchmarkScenarios.Transfer();
+        measure("transfer_parcelable", new Runnable() {
+            @Override
+            public void run() {
+                scenario.parcelable();
+            }
+        });
+        measure("transfer_serializable", new Runnable() {
+            @Override
+            public void run() {
+                scenario.serializable();
+            }
+        });
+        System.out.println("MicrobenchmarkTest transfer: bundle of " + scenario.parcelableSize() + " bytes parcelable, "
+                + scenario.serializableSize() + " bytes serializable");
+    }
+
+    private static void measure(String name, Runnable operation) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        for(int i = 0; i < WARMUP_OPS; i++) {
+            operation.run();
+        }
+        long startBytes = threads.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        for(int i = 0; i < MEASURED_OPS; i++) {
+            operation.run();
+        }
+        long nanosPerOp = (System.nanoTime() - start) / MEASURED_OPS;
+        long bytesPerOp = (threads.getThreadAllocatedBytes(thread) - startBytes) / MEASURED_OPS;
+
+        System.out.println("MicrobenchmarkTest " + name + ": " + nanosPerOp + " ns/op, " + bytesPerOp + " bytes/op");
+        sResults.put(name, new long[]{nanosPerOp, bytesPerOp});
+    }
+}
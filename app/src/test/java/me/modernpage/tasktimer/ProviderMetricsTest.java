@@ -0,0 +1,87 @@
+package me.modernpage.tasktimer;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the latency histogram's buckets and that AppProvider records each operation under the uri it matched.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ProviderMetricsTest {
+
+    @After
+    public void tearDown() {
+        AppDatabase.getInstance(ApplicationProvider.getApplicationContext()).close();
+    }
+
+    @Test
+    public void buckets_coverEveryValueWithinOneSixteenth() {
+        int previous = -1;
+        for(long micros = 0; micros < 1 << 20; micros++) {
+            int bucket = LatencyHistogram.bucketOf(micros);
+            assertTrue(bucket == previous || bucket == previous + 1);
+            long highest = LatencyHistogram.highestValueIn(bucket);
+            assertTrue(micros + " in bucket up to " + highest, micros <= highest && highest - micros <= micros / 16);
+            previous = bucket;
+        }
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void percentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for(int micros = 1; micros <= 100; micros++) {
+            histogram.recordNanos(micros * 1000L);
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(5050, histogram.getTotalMicros());
+        assertEquals(100, histogram.getMaxMicros());
+        assertEquals(50, histogram.getValueAtPercentile(50), 50 / 16);
+        assertEquals(99, histogram.getValueAtPercentile(99), 99 / 16);
+        assertEquals(100, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void provider_recordsOperationsPerUri() {
+        AppProvider provider = Robolectric.setupContentProvider(AppProvider.class, AppProvider.CONTENT_AUTHORITY);
+        ContentResolver contentResolver = ApplicationProvider.getApplicationContext().getContentResolver();
+
+        ContentValues values = new ContentValues();
+        values.put(TasksContract.Columns.TASKS_NAME, "Task");
+        contentResolver.insert(TasksContract.CONTENT_URI, values);
+        contentResolver.insert(TasksContract.CONTENT_URI, values);
+        contentResolver.bulkInsert(TasksContract.CONTENT_URI, new ContentValues[]{values, values, values});
+        Cursor cursor = contentResolver.query(TasksContract.buildTaskUri(1), null, null, null, null);
+        cursor.close();
+
+        // the uri matcher codes of Tasks and Tasks/#
+        ProviderMetrics metrics = provider.getMetrics();
+        assertEquals(2, metrics.getHistogram(100, ProviderMetrics.INSERT).getCount());
+        // a bulk insert is one operation, not one insert per row
+        assertEquals(1, metrics.getHistogram(100, ProviderMetrics.BULK_INSERT).getCount());
+        assertEquals(1, metrics.getHistogram(101, ProviderMetrics.QUERY).getCount());
+        assertNull(metrics.getHistogram(100, ProviderMetrics.QUERY));
+
+        StringWriter dump = new StringWriter();
+        provider.dump(null, new PrintWriter(dump), new String[0]);
+        assertTrue(dump.toString(), dump.toString().contains("Tasks/#"));
+    }
+}
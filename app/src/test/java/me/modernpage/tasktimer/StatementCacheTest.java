@@ -0,0 +1,71 @@
+package me.modernpage.tasktimer;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that statements are cached by shape, and that a closed cache keeps none of the statements checked in after it closed.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class StatementCacheTest {
+    private SQLiteDatabase mDatabase;
+    private StatementCache mCache;
+
+    @Before
+    public void setUp() {
+        mDatabase = AppDatabase.getInstance(ApplicationProvider.getApplicationContext()).getWritableDatabase();
+        mCache = new StatementCache(mDatabase);
+    }
+
+    @After
+    public void tearDown() {
+        mCache.close();
+        AppDatabase.getInstance(ApplicationProvider.getApplicationContext()).close();
+    }
+
+    @Test
+    public void sameShape_reusesTheStatement() {
+        mCache.insert(TasksContract.TABLE_NAME, task("One", 1));
+        mCache.insert(TasksContract.TABLE_NAME, task("Two", 2));
+        assertEquals(1, mCache.size());
+
+        ContentValues name = new ContentValues();
+        name.put(TasksContract.Columns.TASKS_NAME, "Three");
+        mCache.insert(TasksContract.TABLE_NAME, name);
+        assertEquals(2, mCache.size());
+    }
+
+    @Test
+    public void statementCheckedInAfterClose_isClosedNotCached() {
+        long id = mCache.insert(TasksContract.TABLE_NAME, task("One", 1));
+        assertEquals(1, mCache.size());
+
+        // as if close() ran while another thread had the statements out, they come back afterwards
+        mCache.close();
+        assertEquals(0, mCache.size());
+        assertTrue(mCache.insert(TasksContract.TABLE_NAME, task("Two", 2)) > id);
+        assertEquals(1, mCache.updateById(TasksContract.TABLE_NAME, TasksContract.Columns._ID, id, task("Renamed", 3)));
+        assertEquals(1, mCache.deleteById(TasksContract.TABLE_NAME, TasksContract.Columns._ID, id));
+        assertEquals(0, mCache.size());
+    }
+
+    private static ContentValues task(String name, long sortOrder) {
+        ContentValues values = new ContentValues();
+        values.put(TasksContract.Columns.TASKS_NAME, name);
+        values.put(TasksContract.Columns.TASKS_SORTORDER, sortOrder);
+        return values;
+    }
+}
@@ -0,0 +1,194 @@
+package me.modernpage.tasktimer;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the task list's reads are answered by the task cache in the same order SQLite sorts them,
+ * and that a committed change is in the cache before it is notified.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class TaskCacheTest {
+    // mixed case, an underscore that sorts between the upper and lower case letters, a letter NOCASE doesn't fold
+    private static final String[] NAMES = {"b", "B", "_a", "a", "Ab", "é", "Z", "ab", "É", "a"};
+
+    private ContentResolver mContentResolver;
+    private SQLiteDatabase mDatabase;
+    private ProviderMetrics mMetrics;
+
+    @Before
+    public void setUp() {
+        AppProvider provider = Robolectric.setupContentProvider(AppProvider.class, AppProvider.CONTENT_AUTHORITY);
+        mMetrics = provider.getMetrics();
+        mContentResolver = ApplicationProvider.getApplicationContext().getContentResolver();
+        mDatabase = AppDatabase.getInstance(ApplicationProvider.getApplicationContext()).getWritableDatabase();
+
+        ContentValues[] tasks = new ContentValues[NAMES.length * 3];
+        for(int i = 0; i < tasks.length; i++) {
+            // every third task has no sortOrder, the others share a few
+            tasks[i] = task(NAMES[i % NAMES.length], i % 3 == 0 ? null : (long) (i % 4));
+        }
+        mContentResolver.bulkInsert(TasksContract.CONTENT_URI, tasks);
+    }
+
+    @After
+    public void tearDown() {
+        AppDatabase.getInstance(ApplicationProvider.getApplicationContext()).close();
+    }
+
+    @Test
+    public void listReads_areAnsweredFromTheCache_inTheDatabaseOrder() {
+        assertEquals(databaseOrder(), providerOrder(null, null, null));
+        assertEquals(1, count(ProviderMetrics.TASK_CACHE_MISS));
+        assertEquals(1, count(ProviderMetrics.TASK_CACHE_HIT));
+
+        Cursor cursor = mContentResolver.query(TasksContract.CONTENT_URI, new String[]{TasksContract.COUNT}, null, null, null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals(NAMES.length * 3, cursor.getInt(0));
+        cursor.close();
+
+        // the pages of TaskPageCursor after a key with a sortOrder and after one without, and with rows skipped
+        List<String> rows = databaseOrder();
+        assertEquals(rows.subList(13, 18), providerOrder(TaskPageCursor.AFTER_KEY_SELECTION, keyArgs(rows.get(12)), "5"));
+        assertEquals(rows.subList(16, 21), providerOrder(TaskPageCursor.AFTER_KEY_SELECTION, keyArgs(rows.get(12)), "3,5"));
+        assertEquals(rows.subList(3, 8), providerOrder(TaskPageCursor.AFTER_NULL_KEY_SELECTION, keyArgs(rows.get(2)), "5"));
+
+        cursor = mContentResolver.query(TasksContract.buildTaskUri(idOf(rows.get(20))), null, null, null, null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals(rows.get(20).split("\\|", -1)[1], cursor.getString(cursor.getColumnIndexOrThrow(TasksContract.Columns.TASKS_NAME)));
+        cursor.close();
+
+        assertEquals(1, count(ProviderMetrics.TASK_CACHE_MISS));
+        assertEquals(6, count(ProviderMetrics.TASK_CACHE_HIT));
+        StringWriter dump = new StringWriter();
+        mMetrics.dump(new PrintWriter(dump));
+        assertTrue(dump.toString(), dump.toString().contains("Task cache: 6 hits, 1 misses, 0 evictions"));
+    }
+
+    @Test
+    public void changes_areInTheCacheBeforeTheyAreNotified() {
+        List<String> rows = providerOrder(null, null, null);
+
+        mContentResolver.update(TasksContract.buildTaskUri(idOf(rows.get(0))), task("zz", 2L), null, null);
+        assertEquals(databaseOrder(), providerOrder(null, null, null));
+        mContentResolver.delete(TasksContract.buildTaskUri(idOf(rows.get(1))), null, null);
+        assertEquals(databaseOrder(), providerOrder(null, null, null));
+        mContentResolver.insert(TasksContract.CONTENT_URI, task("A", null));
+        assertEquals(databaseOrder(), providerOrder(null, null, null));
+        // a batch refreshes the cache once it has committed
+        mContentResolver.bulkInsert(TasksContract.CONTENT_URI, new ContentValues[]{task("c", 1L), task("C", 1L)});
+        assertEquals(databaseOrder(), providerOrder(null, null, null));
+        ContentValues name = new ContentValues();
+        name.put(TasksContract.Columns.TASKS_NAME, "Renamed");
+        mContentResolver.update(TasksContract.CONTENT_URI, name, TasksContract.Columns.TASKS_SORTORDER + " = ?", new String[]{"1"});
+        assertEquals(databaseOrder(), providerOrder(null, null, null));
+
+        assertEquals(1, count(ProviderMetrics.TASK_CACHE_MISS));
+        assertEquals(0, count(ProviderMetrics.TASK_CACHE_EVICTION));
+    }
+
+    @Test
+    public void changeOfMoreRowsThanAreRead_evictsTheTable() {
+        providerOrder(null, null, null);
+
+        ContentValues[] tasks = new ContentValues[AppProvider.MAX_ROW_NOTIFICATIONS + 1];
+        for(int i = 0; i < tasks.length; i++) {
+            tasks[i] = task("Imported " + i, (long) i);
+        }
+        mContentResolver.bulkInsert(TasksContract.CONTENT_URI, tasks);
+        assertEquals(1, count(ProviderMetrics.TASK_CACHE_EVICTION));
+
+        assertEquals(databaseOrder(), providerOrder(null, null, null));
+        assertEquals(2, count(ProviderMetrics.TASK_CACHE_MISS));
+    }
+
+    @Test
+    public void sortOrderThatIsntAnInteger_leavesTheQueriesToTheDatabase() {
+        mContentResolver.insert(TasksContract.CONTENT_URI, task("Typed in", null));
+        mDatabase.execSQL("update " + TasksContract.TABLE_NAME + " set " + TasksContract.Columns.TASKS_SORTORDER
+                + " = 'first' where " + TasksContract.Columns.TASKS_NAME + " = 'Typed in'");
+
+        assertEquals(databaseOrder(), providerOrder(null, null, null));
+        assertEquals(0, count(ProviderMetrics.TASK_CACHE_HIT));
+    }
+
+    private long count(int event) {
+        return mMetrics.getTaskCacheCount(event);
+    }
+
+    private static long idOf(String row) {
+        return Long.parseLong(row.split("\\|", -1)[0]);
+    }
+
+    /**
+     * @return the selection arguments of a page starting after the row, one of the rows of {@link #databaseOrder()}
+     */
+    private static String[] keyArgs(String row) {
+        String[] columns = row.split("\\|", -1);
+        if(columns[2].isEmpty()) {
+            return new String[]{columns[1], columns[1], columns[0]};
+        }
+        return new String[]{columns[2], columns[2], columns[1], columns[1], columns[0]};
+    }
+
+    private List<String> providerOrder(String selection, String[] selectionArgs, String limit) {
+        Uri uri = TasksContract.CONTENT_URI;
+        if(limit != null) {
+            uri = uri.buildUpon().appendQueryParameter(TasksContract.QUERY_PARAMETER_LIMIT, limit).build();
+        }
+        return rows(mContentResolver.query(uri, TaskListSnapshot.PROJECTION, selection, selectionArgs,
+                TasksContract.DEFAULT_SORT_ORDER));
+    }
+
+    private List<String> databaseOrder() {
+        return rows(mDatabase.query(TasksContract.TABLE_NAME, TaskListSnapshot.PROJECTION, null, null, null, null,
+                TasksContract.DEFAULT_SORT_ORDER));
+    }
+
+    /**
+     * @return "_id|name|sortOrder" of every row, an empty sortOrder for null
+     */
+    private static List<String> rows(Cursor cursor) {
+        List<String> rows = new ArrayList<>();
+        try {
+            while(cursor.moveToNext()) {
+                int sortOrder = cursor.getColumnIndexOrThrow(TasksContract.Columns.TASKS_SORTORDER);
+                rows.add(cursor.getLong(cursor.getColumnIndexOrThrow(TasksContract.Columns._ID)) + "|"
+                        + cursor.getString(cursor.getColumnIndexOrThrow(TasksContract.Columns.TASKS_NAME)) + "|"
+                        + (cursor.isNull(sortOrder) ? "" : cursor.getString(sortOrder)));
+            }
+        } finally {
+            cursor.close();
+        }
+        return rows;
+    }
+
+    private static ContentValues task(String name, Long sortOrder) {
+        ContentValues values = new ContentValues();
+        values.put(TasksContract.Columns.TASKS_NAME, name);
+        values.put(TasksContract.Columns.TASKS_SORTORDER, sortOrder);
+        return values;
+    }
+}
@@ -0,0 +1,156 @@
+package me.modernpage.tasktimer;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.loader.content.Loader;
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static android.os.Looper.getMainLooper;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Checks that TaskListLoader folds a burst of change notifications into one reload,
+ * and hands the list at most one result per frame.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class TaskListLoaderTest {
+    private static final long WINDOW_MILLIS = 100;
+
+    private Context mContext;
+    private TaskListLoader mLoader;
+    private final List<Cursor> mResults = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        mContext = ApplicationProvider.getApplicationContext();
+        Robolectric.setupContentProvider(AppProvider.class, AppProvider.CONTENT_AUTHORITY);
+        for(int i = 0; i < 3; i++) {
+            ContentValues values = new ContentValues();
+            values.put(TasksContract.Columns.TASKS_NAME, "Task " + i);
+            values.put(TasksContract.Columns.TASKS_SORTORDER, i);
+            mContext.getContentResolver().insert(TasksContract.CONTENT_URI, values);
+        }
+        mLoader = new TaskListLoader(mContext, TaskListSnapshot.PROJECTION, WINDOW_MILLIS);
+        mLoader.registerListener(0, new Loader.OnLoadCompleteListener<Cursor>() {
+            @Override
+            public void onLoadComplete(@NonNull Loader<Cursor> loader, @Nullable Cursor data) {
+                mResults.add(data);
+            }
+        });
+        mLoader.startLoading();
+        awaitResults(1);
+    }
+
+    @After
+    public void tearDown() {
+        mLoader.reset();
+        AppDatabase.getInstance(mContext).close();
+    }
+
+    @Test
+    public void burstOfNotifications_isOneReload() {
+        for(int i = 0; i < 50; i++) {
+            mContext.getContentResolver().notifyChange(TasksContract.CONTENT_URI, null);
+        }
+        // nothing reloads inside the window
+        shadowOf(getMainLooper()).idleFor(WINDOW_MILLIS - 1, TimeUnit.MILLISECONDS);
+        assertEquals(0, mLoader.getStats().mReloads);
+
+        awaitResults(2);
+        TaskListLoader.Stats stats = mLoader.getStats();
+        assertEquals(50, stats.mNotifications);
+        assertEquals(1, stats.mReloads);
+        assertEquals(50, stats.mLastFolded);
+        assertEquals(2, stats.mDeliveredResults);
+        assertEquals(3, mResults.get(1).getCount());
+        // the list the first result held has been replaced and closed
+        assertTrue(mResults.get(0).isClosed());
+    }
+
+    @Test
+    public void resultsWaitForTheFrame_andOnlyTheLatestIsDelivered() {
+        Cursor stale = new MatrixCursor(TaskListSnapshot.PROJECTION);
+        Cursor latest = new MatrixCursor(TaskListSnapshot.PROJECTION);
+        mLoader.deliverResult(stale);
+        mLoader.deliverResult(latest);
+        assertEquals(1, mResults.size());
+        assertTrue(stale.isClosed());
+
+        awaitResults(2);
+        assertSame(latest, mResults.get(1));
+        assertFalse(latest.isClosed());
+        assertEquals(1, mLoader.getStats().mSupersededResults);
+    }
+
+    @Test
+    public void firstLoad_isHandedOverBeforeTheSnapshot_andTheNextReloadIsDiffed() {
+        TaskPageCursor first = (TaskPageCursor) mResults.get(0);
+        // nothing to diff the first list against, it didn't wait for the whole table
+        assertNull(first.getChange());
+
+        // its snapshot is taken once it has been handed over
+        long deadline = System.currentTimeMillis() + 10000;
+        while(first.getSnapshot() == null && System.currentTimeMillis() < deadline) {
+            shadowOf(getMainLooper()).idleFor(16, TimeUnit.MILLISECONDS);
+            sleep();
+        }
+        assertNotNull(first.getSnapshot());
+        assertEquals(3, first.getSnapshot().size());
+
+        ContentValues values = new ContentValues();
+        values.put(TasksContract.Columns.TASKS_NAME, "Task 3");
+        values.put(TasksContract.Columns.TASKS_SORTORDER, 3);
+        mContext.getContentResolver().insert(TasksContract.CONTENT_URI, values);
+        awaitResults(2);
+
+        TaskListSnapshot.Change change = ((TaskPageCursor) mResults.get(1)).getChange();
+        assertNotNull(change);
+        assertSame(first.getSnapshot(), change.mFrom);
+        assertNotNull(change.mDiff);
+    }
+
+    /**
+     * Runs the main looper, a frame at a time, until the listener has count results.
+     * Loads run on the loader's own threads and post their results to the main looper.
+     */
+    private void awaitResults(int count) {
+        long deadline = System.currentTimeMillis() + 10000;
+        while(mResults.size() < count && System.currentTimeMillis() < deadline) {
+            shadowOf(getMainLooper()).idleFor(16, TimeUnit.MILLISECONDS);
+            sleep();
+        }
+        assertEquals(count, mResults.size());
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package me.modernpage.tasktimer;
+
+import android.database.MatrixCursor;
+
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.ListUpdateCallback;
+import androidx.recyclerview.widget.RecyclerView;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks that a change to the task list turns into just the matching RecyclerView notifications.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class TaskListSnapshotTest {
+
+    @Test
+    public void editedRow_isTheOnlyChange() {
+        TaskListSnapshot before = TaskListSnapshot.of(tasks(task(1, "A", 1), task(2, "B", 2), task(3, "C", 3)));
+        TaskListSnapshot after = TaskListSnapshot.of(tasks(task(1, "A", 1), task(2, "B edited", 2), task(3, "C", 3)));
+
+        assertEquals(Arrays.asList("changed 1,1"), updates(before, after));
+    }
+
+    @Test
+    public void sortOrderChanges_includingToAndFromNull() {
+        TaskListSnapshot before = TaskListSnapshot.of(tasks(task(1, "A", -1L), task(2, "B", 0L), task(3, "C", 1L << 32)));
+        TaskListSnapshot after = TaskListSnapshot.of(tasks(task(1, "A", null), task(2, "B", null), task(3, "C", 0L)));
+
+        assertEquals(Arrays.asList("changed 0,3"), updates(before, after));
+        assertEquals(new ArrayList<String>(), updates(after, TaskListSnapshot.of(tasks(task(1, "A", null), task(2, "B", null), task(3, "C", 0L)))));
+    }
+
+    @Test
+    public void insertedRemovedAndMovedRows() {
+        TaskListSnapshot before = TaskListSnapshot.of(tasks(task(1, "A", 1), task(2, "B", 2), task(3, "C", 3)));
+
+        assertEquals(Arrays.asList("inserted 1,1"),
+                updates(before, TaskListSnapshot.of(tasks(task(1, "A", 1), task(4, "D", 1), task(2, "B", 2), task(3, "C", 3)))));
+        assertEquals(Arrays.asList("removed 0,1"),
+                updates(before, TaskListSnapshot.of(tasks(task(2, "B", 2), task(3, "C", 3)))));
+        assertEquals(Arrays.asList("moved 2,0"),
+                updates(before, TaskListSnapshot.of(tasks(task(3, "C", 3), task(1, "A", 1), task(2, "B", 2)))));
+    }
+
+    @Test
+    public void firstSnapshot_hasNoDiff() {
+        TaskListSnapshot snapshot = TaskListSnapshot.of(tasks(task(1, "A", 1)));
+        assertNull(snapshot.diffFrom(null));
+        assertNull(new TaskListSnapshot.Change(null, snapshot).mDiff);
+    }
+
+    @Test
+    public void adapter_appliesOnlyAChangeComputedFromWhatItShows() {
+        MatrixCursor first = tasks(task(1, "A", 1), task(2, "B", 2));
+        TaskListSnapshot firstSnapshot = TaskListSnapshot.of(first);
+        MatrixCursor second = tasks(task(1, "A", 1), task(2, "B edited", 2));
+        TaskListSnapshot secondSnapshot = TaskListSnapshot.of(second);
+
+        CursorRecyclerViewAdapter adapter = new CursorRecyclerViewAdapter(null, null);
+        RecordingObserver observer = new RecordingObserver();
+        adapter.registerAdapterDataObserver(observer);
+
+        adapter.swapCursor(first, new TaskListSnapshot.Change(null, firstSnapshot));
+        adapter.swapCursor(second, new TaskListSnapshot.Change(firstSnapshot, secondSnapshot));
+        assertEquals(Arrays.asList("dataSetChanged", "changed 1,1"), observer.mEvents);
+        assertEquals(2, adapter.getItemId(1));
+
+        // computed from a list this adapter never showed, so it can't be applied
+        observer.mEvents.clear();
+        MatrixCursor third = tasks(task(2, "B edited", 2));
+        adapter.swapCursor(third, new TaskListSnapshot.Change(firstSnapshot, TaskListSnapshot.of(third)));
+        assertEquals(Arrays.asList("dataSetChanged"), observer.mEvents);
+    }
+
+    private static List<String> updates(TaskListSnapshot before, TaskListSnapshot after) {
+        final List<String> events = new ArrayList<>();
+        after.diffFrom(before).dispatchUpdatesTo(new ListUpdateCallback() {
+            @Override
+            public void onInserted(int position, int count) {
+                events.add("inserted " + position + "," + count);
+            }
+
+            @Override
+            public void onRemoved(int position, int count) {
+                events.add("removed " + position + "," + count);
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                events.add("moved " + fromPosition + "," + toPosition);
+            }
+
+            @Override
+            public void onChanged(int position, int count, @Nullable Object payload) {
+                events.add("changed " + position + "," + count);
+            }
+        });
+        return events;
+    }
+
+    private static Object[] task(long id, String name, int sortOrder) {
+        return new Object[]{id, name, "Description of " + id, sortOrder};
+    }
+
+    private static Object[] task(long id, String name, Long sortOrder) {
+        return new Object[]{id, name, "Description of " + id, sortOrder};
+    }
+
+    private static MatrixCursor tasks(Object[]... rows) {
+        MatrixCursor cursor = new MatrixCursor(TaskListSnapshot.PROJECTION);
+        for(Object[] row : rows) {
+            cursor.addRow(row);
+        }
+        return cursor;
+    }
+
+    private static class RecordingObserver extends RecyclerView.AdapterDataObserver {
+        final List<String> mEvents = new ArrayList<>();
+
+        @Override
+        public void onChanged() {
+            mEvents.add("dataSetChanged");
+        }
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount, @Nullable Object payload) {
+            mEvents.add("changed " + positionStart + "," + itemCount);
+        }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            mEvents.add("inserted " + positionStart + "," + itemCount);
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            mEvents.add("removed " + positionStart + "," + itemCount);
+        }
+
+        @Override
+        public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+            mEvents.add("moved " + fromPosition + "," + toPosition);
+        }
+    }
+}
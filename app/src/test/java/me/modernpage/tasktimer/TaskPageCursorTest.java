@@ -0,0 +1,148 @@
+package me.modernpage.tasktimer;
+
+import android.content.ContentValues;
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static android.os.Looper.getMainLooper;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Checks that TaskPageCursor reads the pages after the first one in the background, shows placeholder rows
+ * until they arrive, and reads the next page ahead when a row near the end of a page is reached.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class TaskPageCursorTest {
+    private static final int PAGE_SIZE = 10;
+
+    private Context mContext;
+    private TaskPageCursor mCursor;
+    private final List<String> mLoaded = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        mContext = ApplicationProvider.getApplicationContext();
+        Robolectric.setupContentProvider(AppProvider.class, AppProvider.CONTENT_AUTHORITY);
+        ContentValues[] tasks = new ContentValues[45];
+        for(int i = 0; i < tasks.length; i++) {
+            tasks[i] = new ContentValues();
+            tasks[i].put(TasksContract.Columns.TASKS_NAME, "Task " + i);
+            tasks[i].put(TasksContract.Columns.TASKS_SORTORDER, i);
+        }
+        mContext.getContentResolver().bulkInsert(TasksContract.CONTENT_URI, tasks);
+
+        mCursor = new TaskPageCursor(mContext.getContentResolver(), TaskListSnapshot.PROJECTION, PAGE_SIZE, 2, null);
+        mCursor.setOnRowsLoadedListener(new TaskPageCursor.OnRowsLoadedListener() {
+            @Override
+            public void onRowsLoaded(int position, int count) {
+                mLoaded.add(position + "," + count);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        mCursor.close();
+        AppDatabase.getInstance(mContext).close();
+    }
+
+    @Test
+    public void firstPage_isThereFromTheStart() {
+        assertEquals(45, mCursor.getCount());
+        assertTrue(mCursor.moveToPosition(3));
+        assertTrue(mCursor.isRowLoaded());
+        assertEquals("Task 3", name());
+        assertTrue(mLoaded.isEmpty());
+    }
+
+    @Test
+    public void rowOfAPageNotRead_isAPlaceholderUntilThePageArrives() {
+        assertTrue(mCursor.moveToPosition(25));
+        assertFalse(mCursor.isRowLoaded());
+        assertNull(name());
+        assertTrue(mCursor.isNull(mCursor.getColumnIndexOrThrow(TasksContract.Columns._ID)));
+
+        awaitLoaded(1);
+        assertEquals(Arrays.asList("20,10"), mLoaded);
+        // moving to the same row again reads it, the arrival made the cursor forget its position
+        assertTrue(mCursor.moveToPosition(25));
+        assertTrue(mCursor.isRowLoaded());
+        assertEquals("Task 25", name());
+    }
+
+    @Test
+    public void rowNearTheEndOfAPage_readsTheNextPageAhead() {
+        assertTrue(mCursor.moveToPosition(PAGE_SIZE - 1));
+        assertTrue(mCursor.isRowLoaded());
+
+        awaitLoaded(1);
+        assertEquals(Arrays.asList("10,10"), mLoaded);
+        assertTrue(mCursor.moveToPosition(PAGE_SIZE));
+        assertTrue(mCursor.isRowLoaded());
+        assertEquals("Task 10", name());
+    }
+
+    @Test
+    public void lastPage_holdsTheRowsLeft() {
+        assertTrue(mCursor.moveToPosition(44));
+        awaitLoaded(1);
+        assertEquals(Arrays.asList("40,5"), mLoaded);
+        assertTrue(mCursor.moveToPosition(44));
+        assertEquals("Task 44", name());
+    }
+
+    @Test
+    public void pageArrivingAfterClose_isDropped() {
+        assertTrue(mCursor.moveToPosition(25));
+        mCursor.close();
+        long deadline = System.currentTimeMillis() + 1000;
+        while(System.currentTimeMillis() < deadline) {
+            shadowOf(getMainLooper()).idleFor(16, TimeUnit.MILLISECONDS);
+            sleep();
+        }
+        assertTrue(mLoaded.isEmpty());
+    }
+
+    private String name() {
+        return mCursor.getString(mCursor.getColumnIndexOrThrow(TasksContract.Columns.TASKS_NAME));
+    }
+
+    /**
+     * Runs the main looper until the listener has heard about count pages, they are read on the cursor's own thread
+     */
+    private void awaitLoaded(int count) {
+        long deadline = System.currentTimeMillis() + 10000;
+        while(mLoaded.size() < count && System.currentTimeMillis() < deadline) {
+            shadowOf(getMainLooper()).idleFor(16, TimeUnit.MILLISECONDS);
+            sleep();
+        }
+        assertEquals(count, mLoaded.size());
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
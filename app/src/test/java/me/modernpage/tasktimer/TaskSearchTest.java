@@ -0,0 +1,164 @@
+package me.modernpage.tasktimer;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that the search index follows the Tasks table through the triggers, that every word is matched
+ * as a prefix, and that name matches rank above description matches.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class TaskSearchTest {
+    private ContentResolver mContentResolver;
+
+    @Before
+    public void setUp() {
+        Context context = ApplicationProvider.getApplicationContext();
+        Robolectric.setupContentProvider(AppProvider.class, AppProvider.CONTENT_AUTHORITY);
+        mContentResolver = context.getContentResolver();
+    }
+
+    @After
+    public void tearDown() {
+        AppDatabase.getInstance(ApplicationProvider.getApplicationContext()).close();
+    }
+
+    @Test
+    public void toMatchQuery_quotesEveryWordAsAPrefix() {
+        assertEquals("\"wri*\" \"rep*\"", TaskSearch.toMatchQuery("  wri   rep "));
+        // operators are searched for as words, or dropped when there is nothing to search for in them
+        assertEquals("\"a*\" \"OR*\" \"b*\"", TaskSearch.toMatchQuery("a OR b"));
+        assertEquals("\"say*\" \"(hi)*\"", TaskSearch.toMatchQuery("\"say\" - * (hi)"));
+        assertNull(TaskSearch.toMatchQuery(" - * "));
+        assertNull(TaskSearch.toMatchQuery(""));
+    }
+
+    @Test
+    public void search_matchesWordPrefixes() {
+        insertTask("Write report", "quarterly numbers", 1);
+        insertTask("Read mail", null, 2);
+        insertTask("Rewrite tests", "", 3);
+
+        assertEquals(Arrays.asList("Write report"), search("wri"));
+        assertEquals(Arrays.asList("Write report"), search("WRI REP"));
+        assertEquals(Arrays.asList("Write report"), search("quart"));
+        // every task has a word starting with re, all rank the same and stay in list order
+        assertEquals(Arrays.asList("Write report", "Read mail", "Rewrite tests"), search("re"));
+        assertEquals(new ArrayList<String>(), search("port"));
+        assertEquals(new ArrayList<String>(), search("- *"));
+    }
+
+    @Test
+    public void search_ranksNameMatchesFirst() {
+        insertTask("Groceries", "buy milk on the way to the gym", 1);
+        insertTask("Gym", null, 2);
+        insertTask("Email", "the gym about the membership", 3);
+
+        assertEquals(Arrays.asList("Gym", "Groceries", "Email"), search("gym"));
+    }
+
+    @Test
+    public void searchIndex_followsTheTasksTable() {
+        long id = insertTask("Write report", null, 1);
+        assertEquals(1, search("report").size());
+
+        ContentValues values = new ContentValues();
+        values.put(TasksContract.Columns.TASKS_NAME, "Write summary");
+        mContentResolver.update(TasksContract.buildTaskUri(id), values, null, null);
+        assertEquals(0, search("report").size());
+        assertEquals(1, search("summary").size());
+
+        // only the sort order, the index isn't touched
+        values.clear();
+        values.put(TasksContract.Columns.TASKS_SORTORDER, 5);
+        mContentResolver.update(TasksContract.buildTaskUri(id), values, null, null);
+        assertEquals(1, search("summary").size());
+
+        mContentResolver.delete(TasksContract.buildTaskUri(id), null, null);
+        assertEquals(0, search("summary").size());
+    }
+
+    @Test
+    public void limit_takesAnOffset_likeTheTaskList() {
+        for(int i = 1; i <= 5; i++) {
+            insertTask("Task " + i, null, i);
+        }
+        assertEquals(Arrays.asList("Task 1", "Task 2"), search("task", "2"));
+        assertEquals(Arrays.asList("Task 3", "Task 4"), search("task", "2,2"));
+        assertEquals(Arrays.asList("Task 5"), search("task", " 4 , 10 "));
+        assertEquals(new ArrayList<String>(), search("task", "10,2"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidLimit_isRejected() {
+        insertTask("Task", null, 1);
+        search("task", "2 offset 1");
+    }
+
+    @Test
+    public void cancelledSearch_throws() {
+        insertTask("Write report", null, 1);
+        CancellationSignal signal = new CancellationSignal();
+        signal.cancel();
+        try {
+            mContentResolver.query(TasksContract.buildSearchUri("wri"), null, null, null, null, signal);
+            fail("a cancelled search returned");
+        } catch (OperationCanceledException expected) {
+            // nothing was read
+        }
+    }
+
+    private List<String> search(String query) {
+        return search(query, null);
+    }
+
+    private List<String> search(String query, String limit) {
+        Uri uri = TasksContract.buildSearchUri(query);
+        if(limit != null) {
+            uri = uri.buildUpon().appendQueryParameter(TasksContract.QUERY_PARAMETER_LIMIT, limit).build();
+        }
+        Cursor cursor = mContentResolver.query(uri,
+                new String[]{TasksContract.Columns.TASKS_NAME}, null, null, null);
+        List<String> names = new ArrayList<>();
+        try {
+            while(cursor.moveToNext()) {
+                names.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return names;
+    }
+
+    private long insertTask(String name, String description, int sortOrder) {
+        ContentValues values = new ContentValues();
+        values.put(TasksContract.Columns.TASKS_NAME, name);
+        values.put(TasksContract.Columns.TASKS_DESCRIPTION, description);
+        values.put(TasksContract.Columns.TASKS_SORTORDER, sortOrder);
+        return TasksContract.getTaskId(mContentResolver.insert(TasksContract.CONTENT_URI, values));
+    }
+}
@@ -0,0 +1,253 @@
+package me.modernpage.tasktimer;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Bundle;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that moving a task writes only its own row while there is room between its new neighbours,
+ * and that the list is rebalanced, keeping its order, when there isn't.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class TaskSortOrderTest {
+    private ContentResolver mContentResolver;
+    private SQLiteDatabase mDatabase;
+
+    @Before
+    public void setUp() {
+        Context context = ApplicationProvider.getApplicationContext();
+        Robolectric.setupContentProvider(AppProvider.class, AppProvider.CONTENT_AUTHORITY);
+        mContentResolver = context.getContentResolver();
+        mDatabase = AppDatabase.getInstance(context).getWritableDatabase();
+    }
+
+    @After
+    public void tearDown() {
+        AppDatabase.getInstance(ApplicationProvider.getApplicationContext()).close();
+    }
+
+    @Test
+    public void move_writesOnlyTheMovedRow() {
+        long[] ids = insertTasks(5, TaskSortOrder.GAP);
+        assertEquals(asList(ids[0], ids[1], ids[2], ids[3], ids[4]), providerOrder());
+        long[] before = sortOrders(ids);
+
+        moveTask(ids[4], ids[0], ids[1]);
+        assertEquals(asList(ids[0], ids[4], ids[1], ids[2], ids[3]), providerOrder());
+        assertEquals(1, countChanged(before, sortOrders(ids)));
+
+        // to the top and to the bottom
+        before = sortOrders(ids);
+        moveTask(ids[3], TaskSortOrder.NO_TASK, ids[0]);
+        assertEquals(1, countChanged(before, sortOrders(ids)));
+        before = sortOrders(ids);
+        moveTask(ids[0], ids[2], TaskSortOrder.NO_TASK);
+        assertEquals(1, countChanged(before, sortOrders(ids)));
+        assertEquals(asList(ids[3], ids[4], ids[1], ids[2], ids[0]), providerOrder());
+        assertEquals(listOrder(), providerOrder());
+    }
+
+    @Test
+    public void noRoom_rebalancesKeepingTheOrder() {
+        // sortOrders typed in on the edit screen, one apart
+        long[] ids = insertTasks(4, 1);
+        assertNull(TaskSortOrder.move(mDatabase, ids[3], ids[0], ids[1]));
+        assertEquals(asList(ids[0], ids[3], ids[1], ids[2]), listOrder());
+
+        // halving the gap, the tenth move into the same place is the last one that fits
+        long next = ids[3];
+        for(int i = 0; i < 10; i++) {
+            long taskId = ids[i % 2 == 0 ? 2 : 1];
+            assertArrayEquals(new long[]{taskId}, TaskSortOrder.move(mDatabase, taskId, ids[0], next));
+            next = taskId;
+        }
+        long last = ids[2];
+        assertNull(TaskSortOrder.move(mDatabase, last, ids[0], next));
+        assertEquals(ids[0], listOrder().get(0).longValue());
+        assertEquals(last, listOrder().get(1).longValue());
+    }
+
+    @Test
+    public void tasksWithoutASortOrder_areRebalancedIntoPlace() {
+        long[] ids = insertTasks(3, TaskSortOrder.GAP);
+        mDatabase.execSQL("update " + TasksContract.TABLE_NAME + " set " + TasksContract.Columns.TASKS_SORTORDER
+                + " = null where " + TasksContract.Columns._ID + " = " + ids[1]);
+        List<Long> order = listOrder();
+
+        assertNull(TaskSortOrder.move(mDatabase, ids[2], ids[1], ids[0]));
+        order.remove(ids[2]);
+        order.add(order.indexOf(ids[0]), ids[2]);
+        assertEquals(order, listOrder());
+    }
+
+    @Test
+    public void neighbourOutsideTheKeyRange_isRebalancedIntoIt() {
+        long[] ids = insertTasks(3, TaskSortOrder.GAP);
+        // typed in on the edit screen, adding GAP to it would overflow
+        mDatabase.execSQL("update " + TasksContract.TABLE_NAME + " set " + TasksContract.Columns.TASKS_SORTORDER
+                + " = " + (Long.MAX_VALUE - 1) + " where " + TasksContract.Columns._ID + " = " + ids[2]);
+
+        assertNull(TaskSortOrder.move(mDatabase, ids[0], ids[2], TaskSortOrder.NO_TASK));
+        assertEquals(asList(ids[1], ids[2], ids[0]), listOrder());
+        long[] sortOrders = sortOrders(new long[]{ids[1], ids[2], ids[0]});
+        for(long sortOrder : sortOrders) {
+            assertTrue(sortOrder >= TaskSortOrder.MIN_KEY && sortOrder <= TaskSortOrder.MAX_KEY);
+        }
+    }
+
+    @Test
+    public void bigList_movesAfterTheRebalanceWriteOneRow() {
+        long[] ids = insertTasks(20000, 1);
+        assertEquals(20000, TaskSortOrder.rebalance(mDatabase));
+        // only the rows whose sortOrder changes are written
+        assertEquals(0, TaskSortOrder.rebalance(mDatabase));
+
+        for(int i = 0; i < 100; i++) {
+            long taskId = ids[10000 + i];
+            long[] changed = TaskSortOrder.move(mDatabase, taskId, ids[i], ids[i + 1]);
+            assertArrayEquals(new long[]{taskId}, changed);
+        }
+        List<Long> order = listOrder();
+        assertEquals(20000, order.size());
+        assertEquals(ids[0], order.get(0).longValue());
+        assertEquals(ids[10000], order.get(1).longValue());
+        assertEquals(ids[1], order.get(2).longValue());
+    }
+
+    @Test
+    public void longList_getsASmallerGap_thatStillFitsAnInt() {
+        assertEquals(TaskSortOrder.GAP, TaskSortOrder.gapFor(0));
+        assertEquals(TaskSortOrder.GAP, TaskSortOrder.gapFor(20000));
+        int count = 3000000;
+        long gap = TaskSortOrder.gapFor(count);
+        assertTrue(gap < TaskSortOrder.GAP);
+        assertTrue(count * gap <= TaskSortOrder.MAX_KEY);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void listTooLongForAnyGap_failsTheRebalance() {
+        TaskSortOrder.gapFor(Integer.MAX_VALUE / 2);
+    }
+
+    @Test
+    public void moveToTheBottom_nearTheLastKey_takesHalfTheRoomLeft() {
+        long[] ids = insertTasks(2, 1);
+        mDatabase.execSQL("update " + TasksContract.TABLE_NAME + " set " + TasksContract.Columns.TASKS_SORTORDER
+                + " = " + (TaskSortOrder.MAX_KEY - 10) + " where " + TasksContract.Columns._ID + " = " + ids[1]);
+
+        assertArrayEquals(new long[]{ids[0]}, TaskSortOrder.move(mDatabase, ids[0], ids[1], TaskSortOrder.NO_TASK));
+        assertEquals(asList(ids[1], ids[0]), listOrder());
+        assertEquals(TaskSortOrder.MAX_KEY - 5, sortOrders(new long[]{ids[0]})[0]);
+    }
+
+    private void moveTask(long taskId, long previousId, long nextId) {
+        Bundle extras = new Bundle();
+        extras.putLong(AppProvider.EXTRA_TASK_ID, taskId);
+        extras.putLong(AppProvider.EXTRA_PREVIOUS_TASK_ID, previousId);
+        extras.putLong(AppProvider.EXTRA_NEXT_TASK_ID, nextId);
+        mContentResolver.call(AppProvider.CONTENT_AUTHORITY_URI, AppProvider.METHOD_MOVE_TASK, null, extras);
+    }
+
+    /**
+     * Inserts count tasks, the first with sortOrder gap and every next one gap further
+     * @return their ids, in list order
+     */
+    private long[] insertTasks(int count, long gap) {
+        long[] ids = new long[count];
+        SQLiteStatement insert = mDatabase.compileStatement("insert into " + TasksContract.TABLE_NAME + " ("
+                + TasksContract.Columns.TASKS_NAME + ", " + TasksContract.Columns.TASKS_SORTORDER + ") values (?, ?)");
+        mDatabase.beginTransaction();
+        try {
+            for(int i = 0; i < count; i++) {
+                insert.bindString(1, "Task " + i);
+                insert.bindLong(2, (i + 1) * gap);
+                ids[i] = insert.executeInsert();
+            }
+            mDatabase.setTransactionSuccessful();
+        } finally {
+            mDatabase.endTransaction();
+            insert.close();
+        }
+        return ids;
+    }
+
+    /**
+     * @return the task ids in list order, as the provider returns them
+     */
+    private List<Long> providerOrder() {
+        return readIds(mContentResolver.query(TasksContract.CONTENT_URI, new String[]{TasksContract.Columns._ID},
+                null, null, TasksContract.DEFAULT_SORT_ORDER));
+    }
+
+    /**
+     * @return the task ids in list order, as the table has them
+     */
+    private List<Long> listOrder() {
+        return readIds(mDatabase.rawQuery("select " + TasksContract.Columns._ID + " from " + TasksContract.TABLE_NAME
+                + " order by " + TasksContract.DEFAULT_SORT_ORDER, null));
+    }
+
+    private static List<Long> readIds(Cursor cursor) {
+        List<Long> ids = new ArrayList<>();
+        try {
+            while(cursor.moveToNext()) {
+                ids.add(cursor.getLong(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return ids;
+    }
+
+    private long[] sortOrders(long[] ids) {
+        long[] sortOrders = new long[ids.length];
+        for(int i = 0; i < ids.length; i++) {
+            Cursor cursor = mDatabase.rawQuery("select " + TasksContract.Columns.TASKS_SORTORDER + " from " + TasksContract.TABLE_NAME
+                    + " where " + TasksContract.Columns._ID + " = ?", new String[]{String.valueOf(ids[i])});
+            try {
+                cursor.moveToFirst();
+                sortOrders[i] = cursor.getLong(0);
+            } finally {
+                cursor.close();
+            }
+        }
+        return sortOrders;
+    }
+
+    private static int countChanged(long[] before, long[] after) {
+        int changed = 0;
+        for(int i = 0; i < before.length; i++) {
+            if(before[i] != after[i]) {
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    private static List<Long> asList(Long... ids) {
+        return Arrays.asList(ids);
+    }
+}
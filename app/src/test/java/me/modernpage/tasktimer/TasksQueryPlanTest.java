@@ -0,0 +1,92 @@
+package me.modernpage.tasktimer;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs EXPLAIN QUERY PLAN on the SQL that {@link AppProvider#query} builds for the Tasks uris,
+ * so a change to the schema or to a query can't quietly bring back a table scan or a temporary sort.
+ *
+ * Reading the whole list in index order shows up as "SCAN ... USING INDEX", that is the plan we want,
+ * only a scan that doesn't use an index fails the test.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class TasksQueryPlanTest {
+    private static final String[] LIST_PROJECTION = {TasksContract.Columns._ID,
+            TasksContract.Columns.TASKS_NAME,
+            TasksContract.Columns.TASKS_DESCRIPTION,
+            TasksContract.Columns.TASKS_SORTORDER};
+
+    private AppDatabase mAppDatabase;
+    private SQLiteDatabase mDatabase;
+
+    @Before
+    public void setUp() {
+        Context context = ApplicationProvider.getApplicationContext();
+        mAppDatabase = AppDatabase.getInstance(context);
+        mDatabase = mAppDatabase.getWritableDatabase();
+    }
+
+    @After
+    public void tearDown() {
+        mAppDatabase.close();
+    }
+
+    @Test
+    public void taskList_isReadInIndexOrder() {
+        List<String> plan = explain(TasksContract.CONTENT_URI, LIST_PROJECTION, null, null,
+                TasksContract.DEFAULT_SORT_ORDER);
+        assertNoScanOrSort(plan);
+    }
+
+    @Test
+    public void taskById_searchesThePrimaryKey() {
+        List<String> plan = explain(TasksContract.buildTaskUri(1), LIST_PROJECTION, null, null, null);
+        assertNoScanOrSort(plan);
+        assertTrue("expected a primary key search, plan was " + plan, plan.get(0).startsWith("SEARCH"));
+    }
+
+    private List<String> explain(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        String sql = AppProvider.buildQuery(uri).buildQuery(projection, selection, null, null, sortOrder, null);
+        List<String> plan = new ArrayList<>();
+        Cursor cursor = mDatabase.rawQuery("EXPLAIN QUERY PLAN " + sql, AppProvider.buildQueryArgs(uri, selectionArgs));
+        try {
+            int detail = cursor.getColumnIndexOrThrow("detail");
+            while(cursor.moveToNext()) {
+                plan.add(cursor.getString(detail));
+            }
+        } finally {
+            cursor.close();
+        }
+        assertFalse("no query plan for " + sql, plan.isEmpty());
+        return plan;
+    }
+
+    private static void assertNoScanOrSort(List<String> plan) {
+        for(String step : plan) {
+            assertFalse("query sorts in a temporary b-tree: " + plan, step.contains("USE TEMP B-TREE"));
+            if(step.startsWith("SCAN")) {
+                assertTrue("query scans without an index: " + plan, step.contains("USING INDEX")
+                        || step.contains("USING COVERING INDEX"));
+            }
+        }
+    }
+}
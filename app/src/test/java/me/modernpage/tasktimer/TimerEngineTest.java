@@ -0,0 +1,150 @@
+package me.modernpage.tasktimer;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static android.os.Looper.getMainLooper;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Checks that timing a task writes one Timings row per timing and that the on-screen tick
+ * only runs while a timer does.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class TimerEngineTest {
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private ContentResolver mContentResolver;
+    private TimerEngine mEngine;
+
+    @Before
+    public void setUp() {
+        Robolectric.setupContentProvider(AppProvider.class, AppProvider.CONTENT_AUTHORITY);
+        mContentResolver = ApplicationProvider.getApplicationContext().getContentResolver();
+        Context context = ApplicationProvider.getApplicationContext();
+        mEngine = new TimerEngine(mContentResolver, DIRECT, new TimerJournal(new File(context.getCacheDir(), "test.journal")));
+        // the empty journal has been read
+        shadowOf(getMainLooper()).idle();
+    }
+
+    @After
+    public void tearDown() {
+        AppDatabase.getInstance(ApplicationProvider.getApplicationContext()).close();
+    }
+
+    @Test
+    public void startAndStop_writeOneTiming() {
+        mEngine.start(new Task(1, "Task 1", null, 1L));
+        assertEquals(0, timingCount());
+
+        shadowOf(getMainLooper()).idleFor(90, TimeUnit.SECONDS);
+        mEngine.stop();
+
+        assertEquals(1, timingCount());
+        assertEquals(90, lastDuration());
+        assertFalse(mEngine.isRunning());
+    }
+
+    @Test
+    public void switchingTasks_writesTheStoppedTimingOnly() {
+        mEngine.start(new Task(1, "Task 1", null, 1L));
+        shadowOf(getMainLooper()).idleFor(10, TimeUnit.SECONDS);
+        mEngine.toggle(new Task(2, "Task 2", null, 1L));
+
+        assertEquals(1, timingCount());
+        assertEquals(2, mEngine.getRunningTaskId());
+
+        mEngine.toggle(new Task(2, "Task 2", null, 1L));
+        assertEquals(2, timingCount());
+        assertFalse(mEngine.isRunning());
+    }
+
+    @Test
+    public void cancel_writesNothing() {
+        mEngine.start(new Task(1, "Task 1", null, 1L));
+        mEngine.cancel(1);
+
+        assertEquals(0, timingCount());
+        assertFalse(mEngine.isRunning());
+    }
+
+    @Test
+    public void ticker_ticksOncePerSecondOnlyWhileATimerRuns() {
+        final List<Long> ticks = new ArrayList<>();
+        TimerTicker ticker = new TimerTicker(mEngine, new TimerTicker.Callback() {
+            @Override
+            public void onTick(long taskId, long elapsedSeconds) {
+                ticks.add(elapsedSeconds);
+            }
+        });
+
+        // idle, nothing is scheduled
+        ticker.start();
+        assertTrue(shadowOf(getMainLooper()).isIdle());
+        assertEquals(0, shadowOf(getMainLooper()).getNextScheduledTaskTime().toMillis());
+
+        mEngine.start(new Task(1, "Task 1", null, 1L));
+        ticker.start();
+        shadowOf(getMainLooper()).idleFor(3, TimeUnit.SECONDS);
+        assertEquals(4, ticks.size());
+        assertEquals(3L, (long) ticks.get(3));
+
+        mEngine.stop();
+        ticker.stop();
+        assertEquals(0, shadowOf(getMainLooper()).getNextScheduledTaskTime().toMillis());
+    }
+
+    @Test
+    public void formatElapsed() {
+        char[] out = new char[32];
+        assertEquals("00:00:05", new String(out, 0, CursorRecyclerViewAdapter.formatElapsed(5, out)));
+        assertEquals("01:02:03", new String(out, 0, CursorRecyclerViewAdapter.formatElapsed(3723, out)));
+        assertEquals("123:00:00", new String(out, 0, CursorRecyclerViewAdapter.formatElapsed(123 * 3600, out)));
+    }
+
+    private int timingCount() {
+        Cursor cursor = mContentResolver.query(TimingsContract.CONTENT_URI, null, null, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private long lastDuration() {
+        Cursor cursor = mContentResolver.query(TimingsContract.CONTENT_URI,
+                new String[]{TimingsContract.Columns.TIMINGS_DURATION}, null, null, TimingsContract.Columns._ID + " DESC");
+        try {
+            cursor.moveToFirst();
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package me.modernpage.tasktimer;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.concurrent.Executor;
+
+import static android.os.Looper.getMainLooper;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Checks that a running timer survives the process and that AppProvider settles it on startup,
+ * with index searches only and before the engine picks it up.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class TimerJournalTest {
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private Context mContext;
+    private File mFile;
+
+    @Before
+    public void setUp() {
+        mContext = ApplicationProvider.getApplicationContext();
+        mFile = new File(mContext.getNoBackupFilesDir(), TimerJournal.FILE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        AppDatabase.getInstance(mContext).close();
+    }
+
+    @Test
+    public void runningTimer_isReadBackByTheNextProcess() {
+        long startElapsed = SystemClock.elapsedRealtime();
+        new TimerJournal(mFile).recordStart(7, "Write notes", 1600000000, startElapsed);
+
+        TimerJournal.Entry entry = new TimerJournal(mFile).read();
+        assertNotNull(entry);
+        assertEquals(7, entry.mTaskId);
+        assertEquals("Write notes", entry.mTaskName);
+        assertEquals(1600000000, entry.mStartTime);
+        assertEquals(startElapsed, entry.mStartElapsed);
+    }
+
+    @Test
+    public void clear_onlyClearsTheSameTimer() {
+        TimerJournal journal = new TimerJournal(mFile);
+        journal.recordStart(7, "Write notes", 1600000000, 0);
+
+        journal.clear(7, 1599999999);
+        journal.clear(8, 1600000000);
+        assertNotNull(journal.read());
+
+        journal.clear(7, 1600000000);
+        assertNull(journal.read());
+    }
+
+    @Test
+    public void damagedRecord_isIgnored() throws Exception {
+        new TimerJournal(mFile).recordStart(7, "Write notes", 1600000000, 0);
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        try {
+            file.seek(10);
+            file.write(0x55);
+        } finally {
+            file.close();
+        }
+        assertNull(new TimerJournal(mFile).read());
+    }
+
+    @Test
+    public void recordedTiming_isDroppedOnStartup() {
+        long taskId = insertTask();
+        insertTiming(taskId, 1600000000);
+        TimerJournal.getInstance(mContext).recordStart(taskId, "Task", 1600000000, 0);
+
+        startProvider();
+        assertNull(TimerJournal.getInstance(mContext).read());
+    }
+
+    @Test
+    public void deletedTask_isDroppedOnStartup() {
+        TimerJournal.getInstance(mContext).recordStart(12345, "Gone", 1600000000, 0);
+
+        startProvider();
+        assertNull(TimerJournal.getInstance(mContext).read());
+    }
+
+    @Test
+    public void openTimer_carriesOnInTheEngine() {
+        long taskId = insertTask();
+        TimerJournal.getInstance(mContext).recordStart(taskId, "Task", 1600000000, SystemClock.elapsedRealtime());
+
+        startProvider();
+        ContentResolver contentResolver = mContext.getContentResolver();
+        TimerEngine engine = new TimerEngine(contentResolver, DIRECT, TimerJournal.getInstance(mContext));
+        shadowOf(getMainLooper()).idle();
+        assertTrue(engine.isRunning());
+        assertEquals(taskId, engine.getRunningTaskId());
+
+        engine.stop();
+        assertNull(TimerJournal.getInstance(mContext).read());
+        Cursor cursor = contentResolver.query(TimingsContract.CONTENT_URI, null, null, null, null);
+        try {
+            assertEquals(1, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void timerStoppedBeforeTheJournalIsRead_staysStopped() {
+        long taskId = insertTask();
+        TimerJournal.getInstance(mContext).recordStart(taskId, "Task", 1600000000, SystemClock.elapsedRealtime());
+
+        startProvider();
+        TimerEngine engine = new TimerEngine(mContext.getContentResolver(), DIRECT, TimerJournal.getInstance(mContext));
+        // the user got there first, before the journal read was handed to the main thread
+        engine.stop();
+        shadowOf(getMainLooper()).idle();
+        assertFalse(engine.isRunning());
+    }
+
+    @Test
+    public void reconcileQueries_searchIndexes() {
+        SQLiteDatabase database = AppDatabase.getInstance(mContext).getReadableDatabase();
+        assertSearch(database, AppProvider.TIMING_EXISTS_SQL, "1", "1600000000");
+        assertSearch(database, AppProvider.TASK_EXISTS_SQL, "1");
+    }
+
+    private static void assertSearch(SQLiteDatabase database, String sql, String... args) {
+        Cursor cursor = database.rawQuery("EXPLAIN QUERY PLAN " + sql, args);
+        try {
+            int detail = cursor.getColumnIndexOrThrow("detail");
+            assertTrue(cursor.moveToFirst());
+            do {
+                String step = cursor.getString(detail);
+                assertFalse("scans the table: " + step, step.startsWith("SCAN"));
+            } while(cursor.moveToNext());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void startProvider() {
+        Robolectric.setupContentProvider(AppProvider.class, AppProvider.CONTENT_AUTHORITY);
+    }
+
+    private long insertTask() {
+        ContentValues values = new ContentValues();
+        values.put(TasksContract.Columns.TASKS_NAME, "Task");
+        values.put(TasksContract.Columns._ID, 1);
+        SQLiteDatabase database = AppDatabase.getInstance(mContext).getWritableDatabase();
+        return database.insert(TasksContract.TABLE_NAME, null, values);
+    }
+
+    private void insertTiming(long taskId, long startTime) {
+        ContentValues values = new ContentValues();
+        values.put(TimingsContract.Columns.TIMINGS_TASK_ID, taskId);
+        values.put(TimingsContract.Columns.TIMINGS_START_TIME, startTime);
+        values.put(TimingsContract.Columns.TIMINGS_DURATION, 60);
+        SQLiteDatabase database = AppDatabase.getInstance(mContext).getWritableDatabase();
+        database.insert(TimingsContract.TABLE_NAME, null, values);
+    }
+}
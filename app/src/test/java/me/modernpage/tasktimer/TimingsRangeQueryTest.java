@@ -0,0 +1,151 @@
+package me.modernpage.tasktimer;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the time range uris are answered from a covering index, in StartTime order without a sort.
+ * How long they take as Timings grows is measured by TimingRangeBenchmark in :persistence-benchmark.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class TimingsRangeQueryTest {
+    private static final String[] PROJECTION = {TimingsContract.Columns._ID,
+            TimingsContract.Columns.TIMINGS_TASK_ID,
+            TimingsContract.Columns.TIMINGS_START_TIME,
+            TimingsContract.Columns.TIMINGS_DURATION};
+
+    private static final int TASK_COUNT = 10;
+    private static final long FIRST_START_TIME = 1600000000;
+    // twenty timings a day, spread over the tasks
+    private static final long INTERVAL = 4320;
+    private static final long WEEK = 7 * 24 * 3600;
+
+    private SQLiteDatabase mDatabase;
+    private ContentResolver mContentResolver;
+
+    @Before
+    public void setUp() {
+        Context context = ApplicationProvider.getApplicationContext();
+        mDatabase = AppDatabase.getInstance(context).getWritableDatabase();
+        Robolectric.setupContentProvider(AppProvider.class, AppProvider.CONTENT_AUTHORITY);
+        mContentResolver = context.getContentResolver();
+    }
+
+    @After
+    public void tearDown() {
+        AppDatabase.getInstance(ApplicationProvider.getApplicationContext()).close();
+    }
+
+    @Test
+    public void timingsRange_isReadFromTheStartTimeIndex() {
+        List<String> plan = explain(TimingsContract.buildRangeUri(FIRST_START_TIME, FIRST_START_TIME + WEEK));
+        assertCoveringSearch(plan, "Timings_StartTime_TaskId_Duration");
+    }
+
+    @Test
+    public void taskTimingsRange_isReadFromTheTaskIndex() {
+        List<String> plan = explain(TimingsContract.buildTaskRangeUri(3, FIRST_START_TIME, FIRST_START_TIME + WEEK));
+        assertCoveringSearch(plan, "Timings_TaskId_StartTime_Duration");
+    }
+
+    @Test
+    public void rangeQueries_returnTheRangeInOrder() {
+        seedTimings(1000);
+        long from = FIRST_START_TIME + 10 * INTERVAL;
+        long to = from + 20 * INTERVAL;
+
+        long[] startTimes = startTimes(TimingsContract.buildRangeUri(from, to));
+        assertEquals(20, startTimes.length);
+        assertEquals(from, startTimes[0]);
+        assertEquals(to - INTERVAL, startTimes[19]);
+        assertSorted(startTimes);
+
+        startTimes = startTimes(TimingsContract.buildTaskRangeUri(3, from, to));
+        // the timings of task 3 are every tenth, starting with the third
+        assertEquals(2, startTimes.length);
+        assertEquals(FIRST_START_TIME + 12 * INTERVAL, startTimes[0]);
+        assertEquals(FIRST_START_TIME + 22 * INTERVAL, startTimes[1]);
+    }
+
+    private long[] startTimes(Uri uri) {
+        Cursor cursor = mContentResolver.query(uri, PROJECTION, null, null, null);
+        try {
+            long[] startTimes = new long[cursor.getCount()];
+            for(int i = 0; cursor.moveToNext(); i++) {
+                startTimes[i] = cursor.getLong(2);
+            }
+            return startTimes;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static void assertSorted(long[] values) {
+        for(int i = 1; i < values.length; i++) {
+            assertTrue(values[i - 1] <= values[i]);
+        }
+    }
+
+    /**
+     * count timings, INTERVAL apart, round robin over the tasks 1 to TASK_COUNT, through the summary triggers
+     */
+    private void seedTimings(int count) {
+        mDatabase.beginTransaction();
+        try {
+            for(int i = 1; i <= TASK_COUNT; i++) {
+                mDatabase.execSQL("insert into Tasks (_id, name, sortOrder) values (?, ?, ?)", new Object[]{i, "Task " + i, i});
+            }
+            mDatabase.execSQL("insert into Timings (TaskId, StartTime, Duration)"
+                    + " with recursive n(i) as (select 0 union all select i + 1 from n where i < ?)"
+                    + " select i % ? + 1, ? + i * ?, 60 + i % 3600 from n",
+                    new Object[]{count - 1, TASK_COUNT, FIRST_START_TIME, INTERVAL});
+            mDatabase.setTransactionSuccessful();
+        } finally {
+            mDatabase.endTransaction();
+        }
+    }
+
+    private List<String> explain(Uri uri) {
+        String sql = AppProvider.buildQuery(uri).buildQuery(PROJECTION, null, null, null, TimingsContract.Columns.TIMINGS_START_TIME, null);
+        List<String> plan = new ArrayList<>();
+        Cursor cursor = mDatabase.rawQuery("EXPLAIN QUERY PLAN " + sql, AppProvider.buildQueryArgs(uri, null));
+        try {
+            int detail = cursor.getColumnIndexOrThrow("detail");
+            while(cursor.moveToNext()) {
+                plan.add(cursor.getString(detail));
+            }
+        } finally {
+            cursor.close();
+        }
+        assertFalse("no query plan for " + sql, plan.isEmpty());
+        return plan;
+    }
+
+    private static void assertCoveringSearch(List<String> plan, String index) {
+        assertEquals("expected one step, plan was " + plan, 1, plan.size());
+        String step = plan.get(0);
+        assertTrue("expected a search of " + index + ", plan was " + plan,
+                step.startsWith("SEARCH") && step.contains("USING COVERING INDEX " + index + " "));
+    }
+}
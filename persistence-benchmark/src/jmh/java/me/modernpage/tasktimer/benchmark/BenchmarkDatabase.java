@@ -0,0 +1,128 @@
+package me.modernpage.tasktimer.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Opens a database with the schema and connection settings of the app's AppDatabase.
+ *
+ * The schema comes from app/schemas, which AppDatabaseSchemaTest keeps in step with what AppDatabase.onCreate runs.
+ * The pragmas are those of AppDatabase.DEFAULT_PROFILE, so the numbers are for WAL with synchronous=NORMAL
+ * as on a device, only with the desktop's disk and SQLite build.
+ */
+final class BenchmarkDatabase {
+    static final int SCHEMA_VERSION = 8;
+
+    // the task list order, TasksContract.DEFAULT_SORT_ORDER
+    static final String TASK_LIST_SQL = "select _id, name, description, sortOrder from Tasks"
+            + " order by sortOrder, name COLLATE NOCASE, _id";
+
+    // first timing of the seeded data, 2020-09-13
+    static final long FIRST_START_TIME = 1600000000;
+
+    private BenchmarkDatabase() {
+    }
+
+    /**
+     * @return a connection to a new database in a temporary file, deleted when the JVM exits
+     */
+    static Connection create(String name) throws IOException, SQLException {
+        File file = File.createTempFile(name, ".db");
+        file.deleteOnExit();
+        new File(file.getPath() + "-wal").deleteOnExit();
+        new File(file.getPath() + "-shm").deleteOnExit();
+
+        Connection connection = DriverManager.getConnection("jdbc:sqlite:" + file.getPath());
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA journal_mode = WAL");
+            statement.execute("PRAGMA synchronous = NORMAL");
+            statement.execute("PRAGMA cache_size = -2048");
+            statement.execute("PRAGMA temp_store = MEMORY");
+            statement.execute("PRAGMA mmap_size = " + 8 * 1024 * 1024);
+            for(String sql : schema()) {
+                statement.execute(sql);
+            }
+        }
+        return connection;
+    }
+
+    /**
+     * @return the statements creating the exported schema, in the order AppDatabase runs them
+     */
+    static List<String> schema() throws IOException {
+        String resource = "/" + SCHEMA_VERSION + ".sql";
+        InputStream in = BenchmarkDatabase.class.getResourceAsStream(resource);
+        if(in == null) {
+            throw new IOException(resource + " not found, run AppDatabaseSchemaTest to export the schema");
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            byte[] buffer = new byte[4096];
+            int read;
+            while((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        // one statement per line, statements inside triggers don't end a line
+        List<String> statements = new ArrayList<>();
+        for(String line : new String(out.toByteArray(), StandardCharsets.UTF_8).split(";\n")) {
+            if(line.trim().length() > 0) {
+                statements.add(line);
+            }
+        }
+        return statements;
+    }
+
+    /**
+     * Inserts tasks 1 to count, with a few shared sort orders so the list is sorted by name as well
+     */
+    static void seedTasks(Connection connection, int count) throws SQLException {
+        connection.setAutoCommit(false);
+        try (PreparedStatement insert = connection.prepareStatement(
+                "insert into Tasks (_id, name, description, sortOrder) values (?, ?, ?, ?)")) {
+            for(int i = 1; i <= count; i++) {
+                insert.setLong(1, i);
+                // names out of id order, so sorting by name does some work
+                insert.setString(2, "Task " + (i * 7919L % 100003));
+                insert.setString(3, i % 3 == 0 ? null : "Description of task " + i);
+                insert.setInt(4, i % 5);
+                insert.executeUpdate();
+            }
+            connection.commit();
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Inserts count timings spread over taskCount tasks, about twenty a day, through the summary triggers
+     * as the app would have inserted them
+     */
+    static void seedTimings(Connection connection, int taskCount, long count) throws SQLException {
+        connection.setAutoCommit(false);
+        try (PreparedStatement insert = connection.prepareStatement(
+                "insert into Timings (TaskId, StartTime, Duration)"
+                        + " with recursive n(i) as (select 0 union all select i + 1 from n where i < ?)"
+                        + " select i % ? + 1, ? + i * 4320, 60 + i % 3600 from n")) {
+            insert.setLong(1, count - 1);
+            insert.setInt(2, taskCount);
+            insert.setLong(3, FIRST_START_TIME);
+            insert.executeUpdate();
+            connection.commit();
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+}
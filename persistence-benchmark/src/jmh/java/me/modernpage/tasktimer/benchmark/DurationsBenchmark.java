@@ -0,0 +1,106 @@
+package me.modernpage.tasktimer.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Summing durations over 10^4 to 10^7 timings.
+ *
+ * The durations report reads vwTaskDurations, served by the TaskDurations summary the triggers maintain,
+ * so it depends on the number of task-days rather than on the number of timings. aggregateTimings is the
+ * same report grouped straight from Timings, what the summary saves. Seeding 10^7 timings takes a minute or so.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class DurationsBenchmark {
+    private static final int TASK_COUNT = 10;
+
+    @Param({"10000", "100000", "1000000", "10000000"})
+    public long timingCount;
+
+    private Connection mConnection;
+    private PreparedStatement mReport;
+    private PreparedStatement mAggregate;
+    private PreparedStatement mTaskTotal;
+    private final Random mRandom = new Random(42);
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        mConnection = BenchmarkDatabase.create("durations");
+        BenchmarkDatabase.seedTasks(mConnection, TASK_COUNT);
+        BenchmarkDatabase.seedTimings(mConnection, TASK_COUNT, timingCount);
+        // the DurationsReport query
+        mReport = mConnection.prepareStatement("select _id, Name, StartDate, Duration from vwTaskDurations"
+                + " order by StartDate DESC, Name COLLATE NOCASE");
+        mAggregate = mConnection.prepareStatement("select TaskId, date(StartTime, 'unixepoch', 'localtime'), sum(Duration)"
+                + " from Timings group by 1, 2 order by 2 DESC");
+        mTaskTotal = mConnection.prepareStatement("select sum(Duration) from TaskDurations where TaskId = ?");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        mReport.close();
+        mAggregate.close();
+        mTaskTotal.close();
+        mConnection.close();
+    }
+
+    @Benchmark
+    public int summaryReport(Blackhole blackhole) throws SQLException {
+        int rows = 0;
+        try (ResultSet resultSet = mReport.executeQuery()) {
+            while(resultSet.next()) {
+                blackhole.consume(resultSet.getString(2));
+                blackhole.consume(resultSet.getString(3));
+                blackhole.consume(resultSet.getLong(4));
+                rows++;
+            }
+        }
+        return rows;
+    }
+
+    @Benchmark
+    public int aggregateTimings(Blackhole blackhole) throws SQLException {
+        int rows = 0;
+        try (ResultSet resultSet = mAggregate.executeQuery()) {
+            while(resultSet.next()) {
+                blackhole.consume(resultSet.getLong(1));
+                blackhole.consume(resultSet.getString(2));
+                blackhole.consume(resultSet.getLong(3));
+                rows++;
+            }
+        }
+        return rows;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long taskTotal() throws SQLException {
+        mTaskTotal.setLong(1, mRandom.nextInt(TASK_COUNT) + 1);
+        try (ResultSet resultSet = mTaskTotal.executeQuery()) {
+            return resultSet.next() ? resultSet.getLong(1) : 0;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package me.modernpage.tasktimer.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Inserting timings one commit each, as AppProvider.insert does, against one commit for a whole batch,
+ * as AppProvider.bulkInsert and applyBatch do. Each insert also runs the Timing_Inserted summary trigger.
+ * Both report the cost per row.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+public class InsertBenchmark {
+    private static final int TASK_COUNT = 100;
+    private static final int BATCH_SIZE = 100;
+
+    private Connection mConnection;
+    private PreparedStatement mInsert;
+    private long mRow;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        mConnection = BenchmarkDatabase.create("insert");
+        BenchmarkDatabase.seedTasks(mConnection, TASK_COUNT);
+        mInsert = mConnection.prepareStatement("insert into Timings (TaskId, StartTime, Duration) values (?, ?, ?)");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        mInsert.close();
+        mConnection.close();
+    }
+
+    @Benchmark
+    public int singleInsert() throws SQLException {
+        return insertNext();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public int batchedInsert() throws SQLException {
+        mConnection.setAutoCommit(false);
+        try {
+            int count = 0;
+            for(int i = 0; i < BATCH_SIZE; i++) {
+                count += insertNext();
+            }
+            mConnection.commit();
+            return count;
+        } finally {
+            mConnection.setAutoCommit(true);
+        }
+    }
+
+    private int insertNext() throws SQLException {
+        mRow++;
+        mInsert.setLong(1, mRow % TASK_COUNT + 1);
+        mInsert.setLong(2, BenchmarkDatabase.FIRST_START_TIME + mRow * 60);
+        mInsert.setLong(3, 60);
+        return mInsert.executeUpdate();
+    }
+}
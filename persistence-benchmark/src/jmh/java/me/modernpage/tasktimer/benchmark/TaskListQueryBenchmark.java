@@ -0,0 +1,74 @@
+package me.modernpage.tasktimer.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Reading the whole task list in TasksContract.DEFAULT_SORT_ORDER, which the Tasks_SortOrder_Name index
+ * serves without a sort, and its first page as TaskPageCursor reads it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+public class TaskListQueryBenchmark {
+    private static final int PAGE_SIZE = 50;
+
+    @Param({"100", "2000", "20000"})
+    public int taskCount;
+
+    private Connection mConnection;
+    private PreparedStatement mList;
+    private PreparedStatement mFirstPage;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        mConnection = BenchmarkDatabase.create("list");
+        BenchmarkDatabase.seedTasks(mConnection, taskCount);
+        mList = mConnection.prepareStatement(BenchmarkDatabase.TASK_LIST_SQL);
+        mFirstPage = mConnection.prepareStatement(BenchmarkDatabase.TASK_LIST_SQL + " limit " + PAGE_SIZE);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        mList.close();
+        mFirstPage.close();
+        mConnection.close();
+    }
+
+    @Benchmark
+    public int sortedList(Blackhole blackhole) throws SQLException {
+        return read(mList, blackhole);
+    }
+
+    @Benchmark
+    public int firstPage(Blackhole blackhole) throws SQLException {
+        return read(mFirstPage, blackhole);
+    }
+
+    private static int read(PreparedStatement query, Blackhole blackhole) throws SQLException {
+        int rows = 0;
+        try (ResultSet resultSet = query.executeQuery()) {
+            while(resultSet.next()) {
+                blackhole.consume(resultSet.getLong(1));
+                blackhole.consume(resultSet.getString(2));
+                blackhole.consume(resultSet.getString(3));
+                blackhole.consume(resultSet.getInt(4));
+                rows++;
+            }
+        }
+        return rows;
+    }
+}
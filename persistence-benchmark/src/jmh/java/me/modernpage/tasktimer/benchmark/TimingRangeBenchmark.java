@@ -0,0 +1,106 @@
+package me.modernpage.tasktimer.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The time range queries of AppProvider (Timings/range/from/to and Tasks/#/Timings/range/from/to) for the last week,
+ * over 10^4 to 10^7 timings. Both are answered from a covering index, so they should take the same time
+ * at every size, it only depends on the number of timings in the week. lastWeekByTableScan is the same week
+ * with the index made unusable ("StartTime + 0"), what the range query would cost without it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class TimingRangeBenchmark {
+    private static final int TASK_COUNT = 10;
+    private static final long WEEK = 7 * 24 * 3600;
+
+    @Param({"10000", "100000", "1000000", "10000000"})
+    public long timingCount;
+
+    private Connection mConnection;
+    private PreparedStatement mRange;
+    private PreparedStatement mTaskRange;
+    private PreparedStatement mScan;
+    private long mEnd;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        mConnection = BenchmarkDatabase.create("range");
+        BenchmarkDatabase.seedTasks(mConnection, TASK_COUNT);
+        BenchmarkDatabase.seedTimings(mConnection, TASK_COUNT, timingCount);
+        // seedTimings spaces the timings 4320s apart
+        mEnd = BenchmarkDatabase.FIRST_START_TIME + timingCount * 4320;
+        mRange = mConnection.prepareStatement("select _id, TaskId, StartTime, Duration from Timings"
+                + " where StartTime >= ? and StartTime < ? order by StartTime");
+        mTaskRange = mConnection.prepareStatement("select _id, TaskId, StartTime, Duration from Timings"
+                + " where TaskId = ? and StartTime >= ? and StartTime < ? order by StartTime");
+        mScan = mConnection.prepareStatement("select _id, TaskId, StartTime, Duration from Timings"
+                + " where StartTime + 0 >= ? and StartTime + 0 < ? order by StartTime");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        mRange.close();
+        mTaskRange.close();
+        mScan.close();
+        mConnection.close();
+    }
+
+    @Benchmark
+    public int lastWeek(Blackhole blackhole) throws SQLException {
+        mRange.setLong(1, mEnd - WEEK);
+        mRange.setLong(2, mEnd);
+        return consume(mRange, blackhole);
+    }
+
+    @Benchmark
+    public int lastWeekOfTask(Blackhole blackhole) throws SQLException {
+        mTaskRange.setLong(1, 3);
+        mTaskRange.setLong(2, mEnd - WEEK);
+        mTaskRange.setLong(3, mEnd);
+        return consume(mTaskRange, blackhole);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int lastWeekByTableScan(Blackhole blackhole) throws SQLException {
+        mScan.setLong(1, mEnd - WEEK);
+        mScan.setLong(2, mEnd);
+        return consume(mScan, blackhole);
+    }
+
+    private static int consume(PreparedStatement statement, Blackhole blackhole) throws SQLException {
+        int rows = 0;
+        try (ResultSet resultSet = statement.executeQuery()) {
+            while(resultSet.next()) {
+                blackhole.consume(resultSet.getLong(2));
+                blackhole.consume(resultSet.getLong(3));
+                blackhole.consume(resultSet.getLong(4));
+                rows++;
+            }
+        }
+        return rows;
+    }
+}
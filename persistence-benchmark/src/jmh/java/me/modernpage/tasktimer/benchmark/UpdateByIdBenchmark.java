@@ -0,0 +1,62 @@
+package me.modernpage.tasktimer.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Random;
+
+/**
+ * Updates of one row by primary key, the statements AppProvider.updateById runs from the StatementCache.
+ * Changing a timing's duration also runs the Timing_Updated trigger on the summary table.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+public class UpdateByIdBenchmark {
+    private static final int TASK_COUNT = 2000;
+    private static final int TIMING_COUNT = 100000;
+
+    private Connection mConnection;
+    private PreparedStatement mUpdateTask;
+    private PreparedStatement mUpdateTiming;
+    private final Random mRandom = new Random(42);
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        mConnection = BenchmarkDatabase.create("update");
+        BenchmarkDatabase.seedTasks(mConnection, TASK_COUNT);
+        BenchmarkDatabase.seedTimings(mConnection, TASK_COUNT, TIMING_COUNT);
+        mUpdateTask = mConnection.prepareStatement("update Tasks set sortOrder = ? where _id = ?");
+        mUpdateTiming = mConnection.prepareStatement("update Timings set Duration = ? where _id = ?");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        mUpdateTask.close();
+        mUpdateTiming.close();
+        mConnection.close();
+    }
+
+    @Benchmark
+    public int updateTask() throws SQLException {
+        mUpdateTask.setInt(1, mRandom.nextInt(10));
+        mUpdateTask.setLong(2, mRandom.nextInt(TASK_COUNT) + 1);
+        return mUpdateTask.executeUpdate();
+    }
+
+    @Benchmark
+    public int updateTiming() throws SQLException {
+        mUpdateTiming.setInt(1, 60 + mRandom.nextInt(3600));
+        mUpdateTiming.setLong(2, mRandom.nextInt(TIMING_COUNT) + 1);
+        return mUpdateTiming.executeUpdate();
+    }
+}
@@ -0,0 +1,128 @@
+package me.modernpage.tasktimer.startup;
+
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+import androidx.test.uiautomator.UiDevice;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Measures cold starts of the installed app, up to the first frame that shows the task list.
+ *
+ * Every run kills the app and starts MainActivity with am start -W. The system reports two times:
+ * "Displayed" (TotalTime from am start), when the first frame of the activity is drawn, and "Fully drawn",
+ * which MainActivityFragment reports once the frame with the first page of tasks from AppProvider is drawn.
+ * The second one is the time to first list frame. The trace sections AppProvider.onCreate, AppDatabase.open,
+ * AppProvider.firstQuery and MainActivityFragment.firstListLoad show where it goes, record a trace while this runs.
+ * Results go to logcat (tag StartupBench) and to the instrumentation status.
+ *
+ * Run with: ./gradlew :startup:connectedAndroidTest
+ */
+@RunWith(AndroidJUnit4.class)
+public class StartupBenchmark {
+    private static final String TAG = "StartupBench";
+
+    private static final String PACKAGE = "me.modernpage.tasktimer";
+    private static final String ACTIVITY = PACKAGE + "/.MainActivity";
+
+    private static final int WARMUP_RUNS = 2;
+    private static final int MEASURED_RUNS = 10;
+    private static final long FULLY_DRAWN_TIMEOUT_MILLIS = 10 * 1000;
+
+    private static final Pattern TOTAL_TIME = Pattern.compile("TotalTime: (\\d+)");
+    // e.g. "Fully drawn me.modernpage.tasktimer/.MainActivity: +1s52ms"
+    private static final Pattern FULLY_DRAWN = Pattern.compile("Fully drawn " + Pattern.quote(ACTIVITY) + ": \\+(?:(\\d+)s)?(\\d+)ms");
+
+    private UiDevice mDevice;
+
+    @Before
+    public void setUp() throws IOException {
+        mDevice = UiDevice.getInstance(InstrumentationRegistry.getInstrumentation());
+        String installed = mDevice.executeShellCommand("pm path " + PACKAGE);
+        assertTrue(PACKAGE + " is not installed, run :app:installDebug first", installed.startsWith("package:"));
+    }
+
+    @Test
+    public void coldStart() throws IOException {
+        for(int i = 0; i < WARMUP_RUNS; i++) {
+            startCold();
+        }
+        long[] displayed = new long[MEASURED_RUNS];
+        long[] fullyDrawn = new long[MEASURED_RUNS];
+        for(int i = 0; i < MEASURED_RUNS; i++) {
+            long[] run = startCold();
+            displayed[i] = run[0];
+            fullyDrawn[i] = run[1];
+            Log.i(TAG, "coldStart: run " + i + " displayed=" + run[0] + "ms fully drawn=" + run[1] + "ms");
+        }
+        report("cold_start", displayed, fullyDrawn);
+    }
+
+    /**
+     * @return the displayed and the fully drawn time of one cold start, in ms
+     */
+    private long[] startCold() throws IOException {
+        mDevice.executeShellCommand("am force-stop " + PACKAGE);
+        mDevice.executeShellCommand("logcat -c");
+        // let the system settle after the kill
+        SystemClock.sleep(1000);
+
+        String output = mDevice.executeShellCommand("am start -W -n " + ACTIVITY);
+        Matcher totalTime = TOTAL_TIME.matcher(output);
+        if(!totalTime.find()) {
+            fail("am start didn't report the start time: " + output);
+        }
+        long displayed = Long.parseLong(totalTime.group(1));
+        return new long[]{displayed, waitForFullyDrawn()};
+    }
+
+    private long waitForFullyDrawn() throws IOException {
+        long deadline = SystemClock.elapsedRealtime() + FULLY_DRAWN_TIMEOUT_MILLIS;
+        while(SystemClock.elapsedRealtime() < deadline) {
+            // ActivityTaskManager from Android 10, ActivityManager before
+            String log = mDevice.executeShellCommand("logcat -d -s ActivityTaskManager:I ActivityManager:I");
+            Matcher matcher = FULLY_DRAWN.matcher(log);
+            if(matcher.find()) {
+                long seconds = matcher.group(1) != null ? Long.parseLong(matcher.group(1)) : 0;
+                return seconds * 1000 + Long.parseLong(matcher.group(2));
+            }
+            SystemClock.sleep(100);
+        }
+        fail("the task list wasn't drawn within " + FULLY_DRAWN_TIMEOUT_MILLIS + "ms");
+        return -1;
+    }
+
+    private static void report(String name, long[] displayed, long[] fullyDrawn) {
+        Arrays.sort(displayed);
+        Arrays.sort(fullyDrawn);
+        Log.i(TAG, name + ": displayed ms min=" + displayed[0] + " p50=" + percentile(displayed, 50)
+                + " max=" + displayed[displayed.length - 1]);
+        Log.i(TAG, name + ": first list frame ms min=" + fullyDrawn[0] + " p50=" + percentile(fullyDrawn, 50)
+                + " max=" + fullyDrawn[fullyDrawn.length - 1]);
+
+        Bundle results = new Bundle();
+        results.putLong(name + "_displayed_p50_ms", percentile(displayed, 50));
+        results.putLong(name + "_first_list_frame_min_ms", fullyDrawn[0]);
+        results.putLong(name + "_first_list_frame_p50_ms", percentile(fullyDrawn, 50));
+        results.putLong(name + "_first_list_frame_max_ms", fullyDrawn[fullyDrawn.length - 1]);
+        InstrumentationRegistry.getInstrumentation().sendStatus(0, results);
+    }
+
+    private static long percentile(long[] sorted, int percent) {
+        return sorted[Math.min(sorted.length - 1, sorted.length * percent / 100)];
+    }
+}